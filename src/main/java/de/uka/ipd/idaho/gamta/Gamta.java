@@ -38,6 +38,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -54,6 +55,7 @@ import de.uka.ipd.idaho.gamta.util.analyzers.ParagraphStructureNormalizer;
 import de.uka.ipd.idaho.gamta.util.analyzers.ParagraphTagger;
 import de.uka.ipd.idaho.gamta.util.analyzers.SectionTagger;
 import de.uka.ipd.idaho.gamta.util.analyzers.SentenceTagger;
+import de.uka.ipd.idaho.gamta.util.analyzers.StructureTagger;
 import de.uka.ipd.idaho.gamta.util.analyzers.WhitespaceNormalizer;
 import de.uka.ipd.idaho.stringUtils.Dictionary;
 import de.uka.ipd.idaho.stringUtils.StringIterator;
@@ -221,6 +223,7 @@ public class Gamta extends StringUtils {
 	private static final WhitespaceNormalizer WHITESPACE_NORMALIZER = new WhitespaceNormalizer();
 	private static final ParagraphStructureNormalizer PARAGRAPH_STRUCTURE_NORMALIZER = new ParagraphStructureNormalizer();
 	private static final LineEndMarker LINE_END_MARKER = new LineEndMarker();
+	private static final StructureTagger STRUCTURE_TAGGER = new StructureTagger();
 	
 	private static final StringVector noiseWords = getNoiseWords();
 	
@@ -588,6 +591,17 @@ public class Gamta extends StringUtils {
 		LINE_END_MARKER.process(data, new Properties());
 	}
 	
+	/**
+	 * Mark up the basic structure of a mutable annotation in a single pass,
+	 * i.e., mark the line ends and add paragraph, sentence, and section tags.
+	 * This produces the same result as calling markLineEnds(), tagParagraphs(),
+	 * tagSentences(), and tagSections() in sequence, only faster.
+	 * @param data the mutable annotation to mark up the structure of
+	 */
+	public static void tagStructure(MutableAnnotation data) {
+		STRUCTURE_TAGGER.process(data, new Properties());
+	}
+	
 	/**
 	 * Check if a String is a closing bracket closing another String that is an
 	 * opening bracket.
@@ -3432,32 +3446,45 @@ public class Gamta extends StringUtils {
 	/**
 	 * Create a new Annotation ID (can be used for other purposes as well).
 	 * Basically, this method produces a 128 bit random number and returns its
-	 * hex representation.
+	 * hex representation. The random bits come from a thread local generator,
+	 * so creating IDs from many threads in parallel does not contend on a
+	 * shared lock the way Math.random() does.
 	 * @return a new 128 bit hex String
 	 */
 	public static String getAnnotationID() {
-		
-		//	generate 128 random bits, packed in a char array
-		char[] bits = new char[8];
-		for (int i = 0; i < 8; i++) {
-			double r = Math.random();
-			bits[i] = (char) (r * 65536);
-		}
-		
-		//	convert each 16 bit block (char) into it's four-char hex representation
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		return getAnnotationID(random.nextLong(), random.nextLong());
+	}
+	
+	/**
+	 * Create half of the bits of a new Annotation ID. Client code that needs
+	 * to hold large numbers of IDs can store two results of this method in
+	 * two long fields and use the getAnnotationID(long, long) method to render
+	 * the actual ID only when it is requested.
+	 * @return 64 random bits for a new Annotation ID
+	 */
+	public static long getAnnotationIdBits() {
+		return ThreadLocalRandom.current().nextLong();
+	}
+	
+	/**
+	 * Render the 128 bits of an Annotation ID, given as two longs, in the
+	 * standard 32 character hex representation.
+	 * @param highBits the 64 high bits of the ID
+	 * @param lowBits the 64 low bits of the ID
+	 * @return the 128 bit hex String
+	 */
+	public static String getAnnotationID(long highBits, long lowBits) {
 		char[] hex = new char[32];
-		for (int i = 0; i < 8; i++) {
-			char c = bits[i];
-			for (int j = 0; j < 4; j++) {
-				byte b = ((byte) (c & 15));
-				hex[((4*i) + (3-j))] = ((b < 10) ? ((char) (b + '0')) : ((char) (b + '7'))); //	'7' = 'A' - 10
-				c >>= 4;
-			}
+		for (int i = 15; i >= 0; i--) {
+			hex[i] = HEX_DIGITS[((int) highBits) & 15];
+			highBits >>>= 4;
 		}
-		
-		//	compose ID String and return it
-		StringBuffer id = new StringBuffer();
-		for (int i = 0; i < hex.length; i++) id.append(hex[i]);
-		return (id.toString());
+		for (int i = 31; i >= 16; i--) {
+			hex[i] = HEX_DIGITS[((int) lowBits) & 15];
+			lowBits >>>= 4;
+		}
+		return new String(hex);
 	}
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
 }
@@ -28,29 +28,31 @@
 package de.uka.ipd.idaho.gamta.defaultImplementation;
 
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-
 import de.uka.ipd.idaho.gamta.Attributed;
 
 /**
  * Abstract implementation of the Attributed interface, providing standard
- * implementations for all the methods in the latter interface, including lazy
- * instantiation of the HashMap used for storing the attributes. Note that this
+ * implementations for all the methods in the latter interface. Note that this
  * class is not abstract, despite its name, because it can serve as a standalone
- * store for arbitrary attributes, with some convenience over a plain HashMap.
+ * store for arbitrary attributes, with some convenience over a plain HashMap.<br>
+ * Instead of a map of its own, each instance stores the values of its
+ * attributes in a flat array, sharing the attribute names with all other
+ * instances that have the same attributes via an interned shape. As large
+ * numbers of annotations tend to have the same few attributes, this saves a
+ * lot of memory compared to individual maps, and looking up an attribute
+ * value boils down to a short scan over the names of the shape.
  * 
  * @author sautter
  */
 public class AbstractAttributed implements Attributed {
 	
-	private HashMap attributes = null; // initialize to null, create only on demand
+	private AttributeShape attributeShape = AttributeShape.EMPTY; // the names of the attributes, shared with other objects
+	private Object[] attributeValues = null; // initialize to null, create only on demand
 	
 	/** @see de.uka.ipd.idaho.gamta.Attributed#clearAttributes()
 	 */
 	public void clearAttributes() {
-		if (this.attributes == null)
+		if (this.attributeValues == null)
 			return;
 		String[] attributeNames = this.getAttributeNames();
 		for (int a = 0; a < attributeNames.length; a++)
@@ -62,9 +64,6 @@ public class AbstractAttributed implements Attributed {
 	public void copyAttributes(Attributed source) {
 		if (source != null) {
 			String[] attributeNames = source.getAttributeNames();
-			if (attributeNames.length == 0) return; // no need for initializing map if no attributes to copy
-			if (this.attributes == null) //	initialize with appropriate capacity so resizing won't occur here
-				this.attributes = new HashMap(Math.max(((3 * attributeNames.length) / 2), 2)) ;
 			for (int a = 0; a < attributeNames.length; a++)
 				this.setAttribute(attributeNames[a], source.getAttribute(attributeNames[a]));
 		}
@@ -73,29 +72,28 @@ public class AbstractAttributed implements Attributed {
 	/** @see de.uka.ipd.idaho.gamta.Attributed#getAttribute(java.lang.String, java.lang.Object)
 	 */
 	public Object getAttribute(String name, Object def) {
-		return (((this.attributes != null) && this.attributes.containsKey(name)) ? this.attributes.get(name) : def);
+		if (this.attributeValues == null)
+			return def;
+		int index = this.attributeShape.indexOf(name);
+		return ((index == -1) ? def : this.attributeValues[index]);
 	}
 	
 	/** @see de.uka.ipd.idaho.gamta.Attributed#getAttribute(java.lang.String)
 	 */
 	public Object getAttribute(String name) {
-		return ((this.attributes == null) ? null : this.attributes.get(name));
+		return this.getAttribute(name, null);
 	}
 	
 	/** @see de.uka.ipd.idaho.gamta.Attributed#getAttributeNames()
 	 */
 	public String[] getAttributeNames() {
-		if (this.attributes == null)
-			return new String[0];
-		ArrayList names = new ArrayList(this.attributes.keySet());
-		Collections.sort(names);
-		return ((String[]) names.toArray(new String[names.size()]));
+		return this.attributeShape.getSortedNames();
 	}
 	
 	/** @see de.uka.ipd.idaho.gamta.Attributed#hasAttribute(java.lang.String)
 	 */
 	public boolean hasAttribute(String name) {
-		return ((this.attributes != null) && this.attributes.containsKey(name));
+		return ((this.attributeValues != null) && (this.attributeShape.indexOf(name) != -1));
 	}
 	
 	/** @see de.uka.ipd.idaho.gamta.Attributed#removeAttribute(java.lang.String)
@@ -117,18 +115,41 @@ public class AbstractAttributed implements Attributed {
 	 * @see de.uka.ipd.idaho.gamta.Attributed#setAttribute(java.lang.String, java.lang.Object)
 	 */
 	public Object setAttribute(String name, Object value) {
+		int index = ((this.attributeValues == null) ? -1 : this.attributeShape.indexOf(name));
+		
+		//	remove attribute
 		if (value == null) {
-			if (this.attributes == null)
+			if (index == -1)
 				return null;
-			Object oldValue = this.attributes.remove(name);
-			if (this.attributes.isEmpty())
-				this.attributes = null;
+			Object oldValue = this.attributeValues[index];
+			this.attributeShape = this.attributeShape.withoutAttribute(index);
+			if (this.attributeShape.names.length == 0)
+				this.attributeValues = null;
+			else {
+				Object[] attributeValues = new Object[this.attributeShape.names.length];
+				System.arraycopy(this.attributeValues, 0, attributeValues, 0, index);
+				System.arraycopy(this.attributeValues, (index + 1), attributeValues, index, (attributeValues.length - index));
+				this.attributeValues = attributeValues;
+			}
+			return oldValue;
+		}
+		
+		//	replace attribute value
+		else if (index != -1) {
+			Object oldValue = this.attributeValues[index];
+			this.attributeValues[index] = value;
 			return oldValue;
 		}
+		
+		//	add attribute
 		else {
-			if (this.attributes == null)
-				this.attributes = new HashMap(2);
-			return this.attributes.put(name, value);
+			this.attributeShape = this.attributeShape.withAttribute(name);
+			Object[] attributeValues = new Object[this.attributeShape.names.length];
+			if (this.attributeValues != null)
+				System.arraycopy(this.attributeValues, 0, attributeValues, 0, this.attributeValues.length);
+			attributeValues[attributeValues.length - 1] = value;
+			this.attributeValues = attributeValues;
+			return null;
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitt Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITT KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.defaultImplementation;
+
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The layout of the attributes of an AbstractAttributed object, i.e., the
+ * names of the attributes and the positions of their values in the value
+ * array. Shapes are interned: all objects that have received the same
+ * attribute names in the same order share the same shape instance, starting
+ * from the empty shape and transitioning to a new shape whenever an attribute
+ * is added or removed. This way, the attribute names only exist once for all
+ * the annotations sharing a shape, and each individual object only needs to
+ * store a flat array of attribute values. Transitions to shapes no object
+ * uses any longer are held only weakly, and transitions whose target shape
+ * has been garbage collected are purged the next time a transition is created,
+ * so objects with one-off attribute names do not accumulate shapes or
+ * transitions indefinitely.
+ *
+ * @author sautter
+ */
+final class AttributeShape {
+	
+	/** the empty shape all attribute layouts start from */
+	static final AttributeShape EMPTY = new AttributeShape(new String[0], null);
+	
+	//	up to this number of attributes, a linear search is faster than a hash lookup
+	private static final int MAX_LINEAR_SEARCH_SIZE = 8;
+	
+	/** the attribute names, in the order of the values */
+	final String[] names;
+	private final String[] sortedNames;
+	private final HashMap indices; // only for shapes too large for linear search
+	private final AttributeShape parent; // keeps the path of transitions from the empty shape alive as long as this shape is in use
+	
+	//	transitions are looked up without locking, the lock on the shape is only taken to create a missing transition
+	private final ConcurrentHashMap addTransitions = new ConcurrentHashMap(2);
+	private final ConcurrentHashMap removeTransitions = new ConcurrentHashMap(2);
+	private final ReferenceQueue clearedTransitions = new ReferenceQueue();
+	
+	private AttributeShape(String[] names, AttributeShape parent) {
+		this.names = names;
+		this.parent = parent;
+		this.sortedNames = ((String[]) names.clone());
+		Arrays.sort(this.sortedNames);
+		if (this.names.length > MAX_LINEAR_SEARCH_SIZE) {
+			this.indices = new HashMap(this.names.length * 2);
+			for (int n = 0; n < this.names.length; n++)
+				this.indices.put(this.names[n], new Integer(n));
+		}
+		else this.indices = null;
+	}
+	
+	/**
+	 * Find the position of the value of an attribute in the value array of an
+	 * object of this shape.
+	 * @param name the name of the attribute
+	 * @return the position of the attribute value, or -1 if there is no
+	 *            attribute with the argument name
+	 */
+	int indexOf(String name) {
+		if (this.indices != null) {
+			Integer index = ((Integer) this.indices.get(name));
+			return ((index == null) ? -1 : index.intValue());
+		}
+		for (int n = 0; n < this.names.length; n++) {
+			if (this.names[n] == name)
+				return n;
+		}
+		for (int n = 0; n < this.names.length; n++) {
+			if (this.names[n].equals(name))
+				return n;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Retrieve the attribute names of this shape in lexicographical order.
+	 * @return a fresh array holding the attribute names
+	 */
+	String[] getSortedNames() {
+		return ((String[]) this.sortedNames.clone());
+	}
+	
+	/**
+	 * Obtain the shape resulting from appending an attribute to this shape.
+	 * The value of the added attribute goes to the end of the value array.
+	 * @param name the name of the attribute to add
+	 * @return the shape with the argument attribute added
+	 */
+	AttributeShape withAttribute(String name) {
+		AttributeShape shape = getTransition(this.addTransitions, name);
+		if (shape != null)
+			return shape;
+		
+		//	create transition, unless some other thread did so while we were waiting for the lock
+		synchronized (this) {
+			this.purgeClearedTransitions();
+			shape = getTransition(this.addTransitions, name);
+			if (shape == null) {
+				String[] names = new String[this.names.length + 1];
+				System.arraycopy(this.names, 0, names, 0, this.names.length);
+				names[this.names.length] = name;
+				shape = new AttributeShape(names, this);
+				this.addTransitions.put(name, new Transition(shape, this.clearedTransitions, this.addTransitions, name));
+			}
+			return shape;
+		}
+	}
+	
+	/**
+	 * Obtain the shape resulting from removing an attribute from this shape.
+	 * The values of attributes after the removed one move one position to
+	 * the front in the value array.
+	 * @param index the position of the attribute to remove
+	 * @return the shape with the argument attribute removed
+	 */
+	AttributeShape withoutAttribute(int index) {
+		
+		//	removing last attribute leads back to where we came from
+		if ((index + 1) == this.names.length)
+			return this.parent;
+		
+		//	use cached transition if possible
+		AttributeShape shape = getTransition(this.removeTransitions, this.names[index]);
+		if (shape != null)
+			return shape;
+		
+		//	walk remaining names from empty shape, so we end up with the same shape as objects that never had the removed attribute (shapes are interned, so concurrent walks end up with the same shape)
+		shape = EMPTY;
+		for (int n = 0; n < this.names.length; n++) {
+			if (n != index)
+				shape = shape.withAttribute(this.names[n]);
+		}
+		
+		//	cache transition
+		synchronized (this) {
+			this.purgeClearedTransitions();
+			this.removeTransitions.put(this.names[index], new Transition(shape, this.clearedTransitions, this.removeTransitions, this.names[index]));
+		}
+		return shape;
+	}
+	
+	private static AttributeShape getTransition(ConcurrentHashMap transitions, String name) {
+		WeakReference shapeRef = ((WeakReference) transitions.get(name));
+		return ((shapeRef == null) ? null : ((AttributeShape) shapeRef.get()));
+	}
+	
+	private void purgeClearedTransitions() {
+		for (Transition transition; (transition = ((Transition) this.clearedTransitions.poll())) != null;)
+			transition.transitions.remove(transition.name, transition); // make sure not to remove a transition that replaced the cleared one in the meantime
+	}
+	
+	//	weak reference to a target shape that remembers where it is mapped, so it can be removed once cleared
+	private static class Transition extends WeakReference {
+		final ConcurrentHashMap transitions;
+		final String name;
+		Transition(AttributeShape shape, ReferenceQueue queue, ConcurrentHashMap transitions, String name) {
+			super(shape, queue);
+			this.transitions = transitions;
+			this.name = name;
+		}
+	}
+}
@@ -0,0 +1,695 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitt Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITT KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.defaultImplementation;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Properties;
+
+import de.uka.ipd.idaho.gamta.Annotation;
+import de.uka.ipd.idaho.gamta.AnnotationUtils;
+import de.uka.ipd.idaho.gamta.Attributed;
+import de.uka.ipd.idaho.gamta.DocumentRoot;
+import de.uka.ipd.idaho.gamta.QueriableAnnotation;
+import de.uka.ipd.idaho.gamta.Token;
+import de.uka.ipd.idaho.gamta.TokenSequence;
+import de.uka.ipd.idaho.gamta.Tokenizer;
+import de.uka.ipd.idaho.stringUtils.StringVector;
+
+/**
+ * Immutable point-in-time copy of a GamtaDocument, as created by the
+ * snapshot() method of the latter. The text, the token boundaries, and the
+ * annotations are held in flat arrays that are shared between the document
+ * level view and all the annotation views retrieved from it, so a snapshot
+ * costs a single pass over the document, and retrieving annotations from it
+ * only ever creates lightweight view objects. Since none of the arrays is
+ * ever modified after construction, any number of threads can read from a
+ * snapshot concurrently without any locking, while the original document
+ * continues to be modified. Any attempt of modifying the type or an
+ * attribute of an annotation or token retrieved from a snapshot results in
+ * a RuntimeException being thrown.
+ *
+ * @author sautter
+ */
+final class DocumentSnapshot {
+	
+	private final String text; // the full text, including leading and tailing whitespace
+	private final String leadingWhitespace;
+	private final Tokenizer tokenizer;
+	
+	private final int[] tokenStartOffsets;
+	private final int[] tokenEndOffsets;
+	private final Attributed[] tokenAttributes; // null for tokens without attributes
+	
+	private final String[] annotTypes; // in the sort order of the annotation store of the original document
+	private final int[] annotStartIndices;
+	private final int[] annotSizes;
+	private final String[] annotIDs;
+	private final Attributed[] annotAttributes; // null for annotations without attributes
+	private final HashMap annotIndicesByType = new HashMap(); // type-filtered annotation indices for document level retrieval
+	private final String[] annotationTypes;
+	
+	private final String docId;
+	private final Attributed docAttributes;
+	private final Properties docProperties;
+	private final String[] docPropertyNames;
+	
+	private final String annotationNestingOrder;
+	private final Comparator nestingOrder;
+	private final Comparator typeNestingOrder;
+	
+	private final SnapshotAnnotation root;
+	
+	DocumentSnapshot(String text, String leadingWhitespace, Tokenizer tokenizer, int[] tokenStartOffsets, int[] tokenEndOffsets, Attributed[] tokenAttributes, String[] annotTypes, int[] annotStartIndices, int[] annotSizes, String[] annotIDs, Attributed[] annotAttributes, String docId, Attributed docAttributes, Properties docProperties, String[] docPropertyNames, String annotationNestingOrder) {
+		this.text = text;
+		this.leadingWhitespace = leadingWhitespace;
+		this.tokenizer = tokenizer;
+		
+		this.tokenStartOffsets = tokenStartOffsets;
+		this.tokenEndOffsets = tokenEndOffsets;
+		this.tokenAttributes = tokenAttributes;
+		
+		this.annotTypes = annotTypes;
+		this.annotStartIndices = annotStartIndices;
+		this.annotSizes = annotSizes;
+		this.annotIDs = annotIDs;
+		this.annotAttributes = annotAttributes;
+		
+		this.docId = docId;
+		this.docAttributes = docAttributes;
+		this.docProperties = docProperties;
+		this.docPropertyNames = docPropertyNames;
+		
+		this.annotationNestingOrder = annotationNestingOrder;
+		this.nestingOrder = AnnotationUtils.getComparator(this.annotationNestingOrder);
+		this.typeNestingOrder = AnnotationUtils.getTypeComparator(this.annotationNestingOrder);
+		
+		//	index annotations by type (we're still single-threaded here, so we can use a temporary mutable index)
+		HashMap typeIndexLists = new HashMap();
+		for (int a = 0; a < this.annotTypes.length; a++) {
+			ArrayList typeIndexList = ((ArrayList) typeIndexLists.get(this.annotTypes[a]));
+			if (typeIndexList == null) {
+				typeIndexList = new ArrayList();
+				typeIndexLists.put(this.annotTypes[a], typeIndexList);
+			}
+			typeIndexList.add(new Integer(a));
+		}
+		StringVector types = new StringVector();
+		for (int a = 0; a < this.annotTypes.length; a++) {
+			ArrayList typeIndexList = ((ArrayList) typeIndexLists.remove(this.annotTypes[a]));
+			if (typeIndexList == null)
+				continue;
+			int[] typeIndices = new int[typeIndexList.size()];
+			for (int i = 0; i < typeIndices.length; i++)
+				typeIndices[i] = ((Integer) typeIndexList.get(i)).intValue();
+			this.annotIndicesByType.put(this.annotTypes[a], typeIndices);
+			types.addElementIgnoreDuplicates(this.annotTypes[a]);
+		}
+		types.sortLexicographically(false, false);
+		this.annotationTypes = types.toStringArray();
+		
+		this.root = new SnapshotAnnotation(-1, 0, this.tokenStartOffsets.length, null);
+	}
+	
+	/**
+	 * Retrieve the document level view of the snapshot.
+	 * @return the document level view
+	 */
+	QueriableAnnotation getDocument() {
+		return this.root;
+	}
+	
+	/**	a view on a range of tokens in the snapshot
+	 */
+	private class SnapshotTokens implements TokenSequence {
+		final int absoluteStartIndex;
+		final int size;
+		final int absoluteStartOffset;
+		final int absoluteEndOffset;
+		final boolean isDocument;
+		SnapshotTokens(int absoluteStartIndex, int size, boolean isDocument) {
+			this.absoluteStartIndex = absoluteStartIndex;
+			this.size = size;
+			this.isDocument = isDocument;
+			if (this.isDocument) {
+				this.absoluteStartOffset = 0;
+				this.absoluteEndOffset = text.length();
+			}
+			else if (this.size == 0) {
+				this.absoluteStartOffset = ((this.absoluteStartIndex < tokenStartOffsets.length) ? tokenStartOffsets[this.absoluteStartIndex] : text.length());
+				this.absoluteEndOffset = this.absoluteStartOffset;
+			}
+			else {
+				this.absoluteStartOffset = tokenStartOffsets[this.absoluteStartIndex];
+				this.absoluteEndOffset = tokenEndOffsets[this.absoluteStartIndex + this.size - 1];
+			}
+		}
+		private int checkIndex(int index) {
+			if ((index < 0) || (index >= this.size))
+				throw new IndexOutOfBoundsException("" + index + " >= " + this.size);
+			return (index + this.absoluteStartIndex);
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.TokenSequence#tokenAt(int)
+		 */
+		public Token tokenAt(int index) {
+			return new SnapshotToken(this.checkIndex(index), this.absoluteStartOffset);
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.TokenSequence#firstToken()
+		 */
+		public Token firstToken() {
+			return this.tokenAt(0);
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.TokenSequence#lastToken()
+		 */
+		public Token lastToken() {
+			return this.tokenAt(this.size - 1);
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.TokenSequence#valueAt(int)
+		 */
+		public String valueAt(int index) {
+			int t = this.checkIndex(index);
+			return text.substring(tokenStartOffsets[t], tokenEndOffsets[t]);
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.TokenSequence#firstValue()
+		 */
+		public String firstValue() {
+			return this.valueAt(0);
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.TokenSequence#lastValue()
+		 */
+		public String lastValue() {
+			return this.valueAt(this.size - 1);
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.TokenSequence#getLeadingWhitespace()
+		 */
+		public String getLeadingWhitespace() {
+			return (this.isDocument ? leadingWhitespace : "");
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.TokenSequence#getWhitespaceAfter(int)
+		 */
+		public String getWhitespaceAfter(int index) {
+			int t = this.checkIndex(index);
+			if ((index + 1) < this.size)
+				return text.substring(tokenEndOffsets[t], tokenStartOffsets[t+1]);
+			else if (this.isDocument)
+				return text.substring(tokenEndOffsets[t]);
+			else return "";
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.TokenSequence#size()
+		 */
+		public int size() {
+			return this.size;
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.TokenSequence#getTokenizer()
+		 */
+		public Tokenizer getTokenizer() {
+			return tokenizer;
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.TokenSequence#getSubsequence(int, int)
+		 */
+		public TokenSequence getSubsequence(int start, int size) {
+			if ((start < 0) || ((start + size) > this.size))
+				throw new IndexOutOfBoundsException("" + start + "+" + size + " > " + this.size);
+			return new SnapshotTokens((this.absoluteStartIndex + start), size, false);
+		}
+		/* (non-Javadoc)
+		 * @see java.lang.CharSequence#length()
+		 */
+		public int length() {
+			return (this.absoluteEndOffset - this.absoluteStartOffset);
+		}
+		/* (non-Javadoc)
+		 * @see java.lang.CharSequence#charAt(int)
+		 */
+		public char charAt(int index) {
+			if (index >= this.length())
+				throw new IndexOutOfBoundsException("" + index + " >= " + this.length());
+			return text.charAt(index + this.absoluteStartOffset);
+		}
+		/* (non-Javadoc)
+		 * @see java.lang.CharSequence#subSequence(int, int)
+		 */
+		public CharSequence subSequence(int start, int end) {
+			if (start < 0)
+				throw new IndexOutOfBoundsException("" + start + " < " + 0);
+			else if (end > this.length())
+				throw new IndexOutOfBoundsException("" + end + " > " + this.length());
+			return text.substring((start + this.absoluteStartOffset), (end + this.absoluteStartOffset));
+		}
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		public String toString() {
+			return text.substring(this.absoluteStartOffset, this.absoluteEndOffset);
+		}
+	}
+	
+	/**	a view on an annotation in the snapshot, or on the snapshot as a whole, behaving relative to the annotation it was retrieved from
+	 */
+	private class SnapshotAnnotation extends SnapshotTokens implements QueriableAnnotation {
+		private final int index; // the index of the annotation in the arrays, -1 for document
+		private final SnapshotAnnotation base; // the view this one was retrieved from, null for document
+		SnapshotAnnotation(int index, int absoluteStartIndex, int size, SnapshotAnnotation base) {
+			super(absoluteStartIndex, size, (index == -1));
+			this.index = index;
+			this.base = base;
+		}
+		private Attributed getAttributes() {
+			return (this.isDocument ? docAttributes : annotAttributes[this.index]);
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.QueriableAnnotation#getAbsoluteStartIndex()
+		 */
+		public int getAbsoluteStartIndex() {
+			return this.absoluteStartIndex;
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.QueriableAnnotation#getAbsoluteStartOffset()
+		 */
+		public int getAbsoluteStartOffset() {
+			return this.absoluteStartOffset;
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.QueriableAnnotation#getAnnotations()
+		 */
+		public QueriableAnnotation[] getAnnotations() {
+			return this.getAnnotations(null);
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.QueriableAnnotation#getAnnotations(java.lang.String)
+		 */
+		public QueriableAnnotation[] getAnnotations(String type) {
+			ArrayList annotationList = new ArrayList();
+			
+			//	document level, use type index
+			if (this.isDocument && (type != null)) {
+				int[] typeIndices = ((int[]) annotIndicesByType.get(type));
+				if (typeIndices != null)
+					for (int i = 0; i < typeIndices.length; i++)
+						annotationList.add(this.getAnnotation(typeIndices[i]));
+			}
+			
+			//	document level, return all
+			else if (this.isDocument) {
+				for (int a = 0; a < annotTypes.length; a++)
+					annotationList.add(this.getAnnotation(a));
+			}
+			
+			//	scan range of this annotation
+			else {
+				int absoluteEndIndex = (this.absoluteStartIndex + this.size);
+				for (int a = this.getFirstAnnotationIndex(); a < annotTypes.length; a++) {
+					if (annotStartIndices[a] >= absoluteEndIndex)
+						break;
+					if (((type == null) || type.equals(annotTypes[a])) && ((annotStartIndices[a] + annotSizes[a]) <= absoluteEndIndex))
+						annotationList.add(this.getAnnotation(a));
+				}
+			}
+			
+			QueriableAnnotation[] annotations = ((QueriableAnnotation[]) annotationList.toArray(new QueriableAnnotation[annotationList.size()]));
+			Arrays.sort(annotations, nestingOrder);
+			return annotations;
+		}
+		private SnapshotAnnotation getAnnotation(int a) {
+			return new SnapshotAnnotation(a, annotStartIndices[a], annotSizes[a], this);
+		}
+		private int getFirstAnnotationIndex() {
+			int left = 0;
+			int right = annotStartIndices.length;
+			while (left < right) {
+				int middle = ((left + right) >>> 1);
+				if (annotStartIndices[middle] < this.absoluteStartIndex)
+					left = (middle + 1);
+				else right = middle;
+			}
+			return left;
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.QueriableAnnotation#getAnnotationTypes()
+		 */
+		public String[] getAnnotationTypes() {
+			if (this.isDocument)
+				return ((String[]) annotationTypes.clone());
+			StringVector types = new StringVector();
+			int absoluteEndIndex = (this.absoluteStartIndex + this.size);
+			for (int a = this.getFirstAnnotationIndex(); a < annotTypes.length; a++) {
+				if (annotStartIndices[a] >= absoluteEndIndex)
+					break;
+				if ((annotStartIndices[a] + annotSizes[a]) <= absoluteEndIndex)
+					types.addElementIgnoreDuplicates(annotTypes[a]);
+			}
+			return types.toStringArray();
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.QueriableAnnotation#getAnnotationNestingOrder()
+		 */
+		public String getAnnotationNestingOrder() {
+			return annotationNestingOrder;
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Annotation#getStartIndex()
+		 */
+		public int getStartIndex() {
+			return ((this.base == null) ? 0 : (this.absoluteStartIndex - this.base.absoluteStartIndex));
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Annotation#getEndIndex()
+		 */
+		public int getEndIndex() {
+			return (this.getStartIndex() + this.size);
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.CharSpan#getStartOffset()
+		 */
+		public int getStartOffset() {
+			return ((this.base == null) ? 0 : (this.absoluteStartOffset - this.base.absoluteStartOffset));
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.CharSpan#getEndOffset()
+		 */
+		public int getEndOffset() {
+			return (this.getStartOffset() + this.length());
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Annotation#getType()
+		 */
+		public String getType() {
+			return (this.isDocument ? DocumentRoot.DOCUMENT_TYPE : annotTypes[this.index]);
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Annotation#changeTypeTo(java.lang.String)
+		 */
+		public String changeTypeTo(String newType) {
+			throw new RuntimeException("Illegal modification of annotation type.");
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Annotation#getAnnotationID()
+		 */
+		public String getAnnotationID() {
+			return (this.isDocument ? docId : annotIDs[this.index]);
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Annotation#getValue()
+		 */
+		public String getValue() {
+			if (this.isDocument)
+				return ((this.size == 0) ? "" : text.substring(tokenStartOffsets[0], tokenEndOffsets[this.size - 1]));
+			else return text.substring(this.absoluteStartOffset, this.absoluteEndOffset);
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.defaultImplementation.DocumentSnapshot.SnapshotTokens#toString()
+		 */
+		public String toString() {
+			return (this.isDocument ? super.toString() : this.getValue());
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Annotation#toXML()
+		 */
+		public String toXML() {
+			return (AnnotationUtils.produceStartTag(this) + AnnotationUtils.escapeForXml(this.getValue()) + AnnotationUtils.produceEndTag(this));
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Annotation#getDocument()
+		 */
+		public QueriableAnnotation getDocument() {
+			return root;
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Annotation#getDocumentProperty(java.lang.String)
+		 */
+		public String getDocumentProperty(String propertyName) {
+			return docProperties.getProperty(propertyName);
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Annotation#getDocumentProperty(java.lang.String, java.lang.String)
+		 */
+		public String getDocumentProperty(String propertyName, String defaultValue) {
+			return docProperties.getProperty(propertyName, defaultValue);
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Annotation#getDocumentPropertyNames()
+		 */
+		public String[] getDocumentPropertyNames() {
+			return ((String[]) docPropertyNames.clone());
+		}
+		/* (non-Javadoc)
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		public int compareTo(Object obj) {
+			if (this.isDocument)
+				return -1;
+			if (obj instanceof Annotation) {
+				int c = AnnotationUtils.compare(this, ((Annotation) obj));
+				if (c != 0) return c;
+				c = typeNestingOrder.compare(this.getType(), ((Annotation) obj).getType());
+				if (c != 0) return c;
+				return this.getType().compareTo(((Annotation) obj).getType());
+			}
+			else return -1;
+		}
+		/* (non-Javadoc)
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		public boolean equals(Object obj) {
+			return (this.compareTo(obj) == 0);
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Annotation#getAttribute(java.lang.String)
+		 */
+		public Object getAttribute(String name) {
+			return this.getAttribute(name, null);
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Annotation#getAttribute(java.lang.String, java.lang.Object)
+		 */
+		public Object getAttribute(String name, Object def) {
+			if (START_INDEX_ATTRIBUTE.equals(name)) return new Integer(this.getStartIndex());
+			else if (SIZE_ATTRIBUTE.equals(name)) return new Integer(this.size);
+			else if (END_INDEX_ATTRIBUTE.equals(name)) return new Integer(this.getEndIndex());
+			else if (ANNOTATION_VALUE_ATTRIBUTE.equals(name)) return this.getValue();
+			else if (ANNOTATION_ID_ATTRIBUTE.equals(name)) return this.getAnnotationID();
+			Attributed attributes = this.getAttributes();
+			return ((attributes == null) ? def : attributes.getAttribute(name, def));
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Annotation#hasAttribute(java.lang.String)
+		 */
+		public boolean hasAttribute(String name) {
+			if (START_INDEX_ATTRIBUTE.equals(name) || SIZE_ATTRIBUTE.equals(name) || END_INDEX_ATTRIBUTE.equals(name) || ANNOTATION_VALUE_ATTRIBUTE.equals(name) || ANNOTATION_ID_ATTRIBUTE.equals(name))
+				return true;
+			Attributed attributes = this.getAttributes();
+			return ((attributes != null) && attributes.hasAttribute(name));
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Attributed#getAttributeNames()
+		 */
+		public String[] getAttributeNames() {
+			Attributed attributes = this.getAttributes();
+			return ((attributes == null) ? new String[0] : attributes.getAttributeNames());
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Attributed#clearAttributes()
+		 */
+		public void clearAttributes() {
+			throw new RuntimeException("Illegal modification of annotation attributes.");
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Attributed#copyAttributes(de.uka.ipd.idaho.gamta.Attributed)
+		 */
+		public void copyAttributes(Attributed source) {
+			throw new RuntimeException("Illegal modification of annotation attributes.");
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Attributed#removeAttribute(java.lang.String)
+		 */
+		public Object removeAttribute(String name) {
+			throw new RuntimeException("Illegal modification of annotation attributes.");
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Attributed#setAttribute(java.lang.String)
+		 */
+		public void setAttribute(String name) {
+			throw new RuntimeException("Illegal modification of annotation attributes.");
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Annotation#setAttribute(java.lang.String, java.lang.Object)
+		 */
+		public Object setAttribute(String name, Object value) {
+			throw new RuntimeException("Illegal modification of annotation attributes.");
+		}
+	}
+	
+	/**	a view on a token in the snapshot, behaving relative to the token sequence it was retrieved from
+	 */
+	private class SnapshotToken implements Token {
+		private final int index; // the absolute index of the token
+		private final int baseOffset; // the absolute start offset of the token sequence this token was retrieved from
+		SnapshotToken(int index, int baseOffset) {
+			this.index = index;
+			this.baseOffset = baseOffset;
+		}
+		/* (non-Javadoc)
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		public boolean equals(Object obj) {
+			return this.getValue().equals(obj);
+		}
+		/* (non-Javadoc)
+		 * @see java.lang.Object#hashCode()
+		 */
+		public int hashCode() {
+			return this.getValue().hashCode();
+		}
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		public String toString() {
+			return this.getValue();
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Token#getValue()
+		 */
+		public String getValue() {
+			return text.substring(tokenStartOffsets[this.index], tokenEndOffsets[this.index]);
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Token#getTokenizer()
+		 */
+		public Tokenizer getTokenizer() {
+			return tokenizer;
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.CharSpan#getStartOffset()
+		 */
+		public int getStartOffset() {
+			return (tokenStartOffsets[this.index] - this.baseOffset);
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.CharSpan#getEndOffset()
+		 */
+		public int getEndOffset() {
+			return (tokenEndOffsets[this.index] - this.baseOffset);
+		}
+		/* (non-Javadoc)
+		 * @see java.lang.CharSequence#length()
+		 */
+		public int length() {
+			return (tokenEndOffsets[this.index] - tokenStartOffsets[this.index]);
+		}
+		/* (non-Javadoc)
+		 * @see java.lang.CharSequence#charAt(int)
+		 */
+		public char charAt(int index) {
+			if (index < 0)
+				throw new IndexOutOfBoundsException("" + index + " < " + 0);
+			else if (index >= this.length())
+				throw new IndexOutOfBoundsException("" + index + " >= " + this.length());
+			return text.charAt(tokenStartOffsets[this.index] + index);
+		}
+		/* (non-Javadoc)
+		 * @see java.lang.CharSequence#subSequence(int, int)
+		 */
+		public CharSequence subSequence(int start, int end) {
+			if (start < 0)
+				throw new IndexOutOfBoundsException("" + start + " < " + 0);
+			else if (end > this.length())
+				throw new IndexOutOfBoundsException("" + end + " > " + this.length());
+			else if (start > end)
+				throw new IndexOutOfBoundsException("" + start + " > " + end);
+			return text.substring((tokenStartOffsets[this.index] + start), (tokenStartOffsets[this.index] + end));
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Attributed#getAttribute(java.lang.String)
+		 */
+		public Object getAttribute(String name) {
+			return ((tokenAttributes[this.index] == null) ? null : tokenAttributes[this.index].getAttribute(name));
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Attributed#getAttribute(java.lang.String, java.lang.Object)
+		 */
+		public Object getAttribute(String name, Object def) {
+			return ((tokenAttributes[this.index] == null) ? def : tokenAttributes[this.index].getAttribute(name, def));
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Attributed#hasAttribute(java.lang.String)
+		 */
+		public boolean hasAttribute(String name) {
+			return ((tokenAttributes[this.index] != null) && tokenAttributes[this.index].hasAttribute(name));
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Attributed#getAttributeNames()
+		 */
+		public String[] getAttributeNames() {
+			return ((tokenAttributes[this.index] == null) ? new String[0] : tokenAttributes[this.index].getAttributeNames());
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Attributed#clearAttributes()
+		 */
+		public void clearAttributes() {
+			throw new RuntimeException("Illegal modification of token attributes.");
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Attributed#copyAttributes(de.uka.ipd.idaho.gamta.Attributed)
+		 */
+		public void copyAttributes(Attributed source) {
+			throw new RuntimeException("Illegal modification of token attributes.");
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Attributed#removeAttribute(java.lang.String)
+		 */
+		public Object removeAttribute(String name) {
+			throw new RuntimeException("Illegal modification of token attributes.");
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Attributed#setAttribute(java.lang.String)
+		 */
+		public void setAttribute(String name) {
+			throw new RuntimeException("Illegal modification of token attributes.");
+		}
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.Attributed#setAttribute(java.lang.String, java.lang.Object)
+		 */
+		public Object setAttribute(String name, Object value) {
+			throw new RuntimeException("Illegal modification of token attributes.");
+		}
+	}
+}
@@ -28,11 +28,15 @@
 package de.uka.ipd.idaho.gamta.defaultImplementation;
 
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
 import java.util.Vector;
 
@@ -76,7 +80,7 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 	private Comparator nestingOrder = AnnotationUtils.getComparator(this.annotationNestingOrder);
 	private Comparator typeNestingOrder = AnnotationUtils.getTypeComparator(this.annotationNestingOrder);
 	
-	private ArrayList annotationListeners = null;
+	private volatile Object[] annotationListeners = null; // copy-on-write, so notification can iterate without locking
 	
 	/**
 	 * Constructor creating an annotation overlay for a mutable token sequence
@@ -391,15 +395,6 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 		return -1;
 	}
 
-	/* (non-Javadoc)
-	 * @see de.gamta.defaultImplementation.GamtaTokenSequence#finalize()
-	 */
-	protected void finalize() throws Throwable {
-		super.finalize();
-		this.tokenData.removeTokenSequenceListener(this.adjuster);
-		this.annotations.clear();
-	}
-	
 	/* (non-Javadoc)
 	 * @see de.gamta.defaultImplementation.GamtaTokenSequence#firstToken()
 	 */
@@ -553,6 +548,28 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 	public CharSequence setWhitespaceAfter(CharSequence whitespace, int index) throws IllegalArgumentException {
 		return this.tokenData.setWhitespaceAfter(whitespace, index);
 	}
+	
+	/**
+	 * Set the whitespace after a series of consecutive tokens in one go. This
+	 * has the same effect as calling <code>setWhitespaceAfter()</code> for
+	 * every token in the series. If the underlying token sequence supports
+	 * bulk whitespace changes, the latter happen in a single pass over the
+	 * tokens, with a single change event.
+	 * @param whitespace an array holding the whitespace to set, one element
+	 *            per token; null elements leave the respective whitespace
+	 *            unchanged
+	 * @param index the index of the first token to set the whitespace after
+	 * @throws IllegalArgumentException if any of the argument whitespace
+	 *             contains non-whitespace characters
+	 */
+	public void setWhitespacesAfter(CharSequence[] whitespace, int index) throws IllegalArgumentException {
+		if (this.tokenData instanceof TokenizedMutableCharSequence)
+			((TokenizedMutableCharSequence) this.tokenData).setWhitespacesAfter(whitespace, index);
+		else for (int w = 0; w < whitespace.length; w++) {
+			if ((whitespace[w] != null) && !whitespace[w].toString().equals(this.tokenData.getWhitespaceAfter(index + w).toString()))
+				this.tokenData.setWhitespaceAfter(whitespace[w], (index + w));
+		}
+	}
 
 	/* (non-Javadoc)
 	 * @see de.gamta.defaultImplementation.GamtaTokenSequence#size()
@@ -636,6 +653,73 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 		return this.annotations.getAnnotationTypes();
 	}
 	
+	/**
+	 * Create an immutable snapshot of this document. The snapshot copies the
+	 * text, the token boundaries, token attributes, and all annotations with
+	 * their attributes into flat arrays that are shared between all the views
+	 * retrieved from the snapshot. Unlike the views retrieved from the
+	 * document proper, the snapshot and all annotations retrieved from it are
+	 * entirely detached from this document, i.e., they do not register for
+	 * any events and do not reflect any later changes. Thus any number of
+	 * threads can query and export the snapshot concurrently without any
+	 * locking while this document continues to be modified. Because
+	 * modifications to the token sequence and the adjustment of the
+	 * annotations are two separate steps, this method should be invoked by
+	 * the thread that modifies the document, or while modifications are
+	 * otherwise excluded, so the snapshot reflects a consistent state.
+	 * Annotation IDs are preserved. Any attempt of modifying the snapshot or
+	 * an annotation or token retrieved from it results in a RuntimeException
+	 * being thrown.
+	 * @return an immutable snapshot of this document
+	 */
+	public QueriableAnnotation snapshot() {
+		synchronized (this.annotations) {
+			
+			//	copy text and token boundaries
+			String text = this.tokenData.subSequence(0, this.tokenData.length()).toString();
+			int[] tokenStartOffsets = new int[this.tokenData.size()];
+			int[] tokenEndOffsets = new int[this.tokenData.size()];
+			Attributed[] tokenAttributes = new Attributed[this.tokenData.size()];
+			for (int t = 0; t < tokenStartOffsets.length; t++) {
+				Token token = this.tokenData.tokenAt(t);
+				tokenStartOffsets[t] = token.getStartOffset();
+				tokenEndOffsets[t] = token.getEndOffset();
+				if (token.getAttributeNames().length != 0) {
+					tokenAttributes[t] = new AbstractAttributed();
+					tokenAttributes[t].copyAttributes(token);
+				}
+			}
+			
+			//	copy annotations in store order
+			int annotCount = this.annotations.annotations.size();
+			String[] annotTypes = new String[annotCount];
+			int[] annotStartIndices = new int[annotCount];
+			int[] annotSizes = new int[annotCount];
+			String[] annotIDs = new String[annotCount];
+			Attributed[] annotAttributes = new Attributed[annotCount];
+			for (int a = 0; a < annotCount; a++) {
+				AnnotationBase ab = ((AnnotationBase) this.annotations.annotations.get(a));
+				annotTypes[a] = ab.type;
+				annotStartIndices[a] = ab.absoluteStartIndex;
+				annotSizes[a] = ab.size;
+				annotIDs[a] = ab.annotationId;
+				if (ab.getAttributeNames().length != 0) {
+					annotAttributes[a] = new AbstractAttributed();
+					annotAttributes[a].copyAttributes(ab);
+				}
+			}
+			
+			//	copy document attributes and properties
+			AbstractAttributed docAttributes = new AbstractAttributed();
+			docAttributes.copyAttributes(this);
+			Properties docProperties = new Properties();
+			docProperties.putAll(this.documentProperties);
+			
+			//	wrap it all up
+			return new DocumentSnapshot(text, this.tokenData.getLeadingWhitespace(), this.tokenData.getTokenizer(), tokenStartOffsets, tokenEndOffsets, tokenAttributes, annotTypes, annotStartIndices, annotSizes, annotIDs, annotAttributes, this.annotationId, docAttributes, docProperties, this.getDocumentPropertyNames(), this.annotationNestingOrder).getDocument();
+		}
+	}
+	
 	/* (non-Javadoc)
 	 * @see de.gamta.MutableAnnotation#addAnnotation(de.gamta.Annotation)
 	 */
@@ -680,6 +764,46 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 		return new MutableAnnotationView(ab, this);
 	}
 	
+	/**
+	 * Add a batch of Annotations to the document. This has the same effect as
+	 * adding the Annotations one by one via addAnnotation(String, int, int) in
+	 * the order given, but merges them into the Annotation index in a single
+	 * pass instead of inserting them one at a time, which pays off when adding
+	 * large numbers of Annotations at once, e.g. in structural markup. The
+	 * listeners are notified of the added Annotations in the order given after
+	 * all of them are in place. Like for addAnnotation(), an entry with an
+	 * invalid start index or size yields null in the returned array.
+	 * @param types the types of the Annotations to add
+	 * @param startIndexes the start indexes of the Annotations to add
+	 * @param sizes the sizes of the Annotations to add
+	 * @return an array holding the Annotations that were added
+	 */
+	public MutableAnnotation[] addAnnotations(String[] types, int[] startIndexes, int[] sizes) {
+		
+		//	check parameters
+		if ((types.length != startIndexes.length) || (types.length != sizes.length))
+			throw new IllegalArgumentException("Annotation types, start indexes, and sizes must be of the same number");
+		
+		//	create AnnotationBases
+		AnnotationBase[] abs = new AnnotationBase[types.length];
+		for (int a = 0; a < abs.length; a++) {
+			if ((startIndexes[a] >= 0) && (sizes[a] >= 1))
+				abs[a] = new AnnotationBase(types[a], startIndexes[a], sizes[a]);
+		}
+		
+		//	store them all at once
+		this.annotations.storeAnnotations(abs);
+		
+		//	notify listeners and wrap Annotations
+		MutableAnnotation[] mas = new MutableAnnotation[abs.length];
+		for (int a = 0; a < abs.length; a++)
+			if (abs[a] != null) {
+				this.notifyAnnotationAdded(abs[a]);
+				mas[a] = new MutableAnnotationView(abs[a], this);
+			}
+		return mas;
+	}
+	
 	//	add an Annotation
 	private AnnotationBase addAnnotationAbsolute(String type, int startIndex, int size) {
 		//	check parameters
@@ -741,27 +865,50 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 	/* (non-Javadoc)
 	 * @see de.gamta.MutableAnnotation#addAnnotationListener(de.gamta.AnnotationListener)
 	 */
-	public void addAnnotationListener(AnnotationListener al) {
-		if (al != null) {
-			if (this.annotationListeners == null)
-				this.annotationListeners = new ArrayList(2);
-			this.annotationListeners.add(al);
-		}
+	public synchronized void addAnnotationListener(AnnotationListener al) {
+		if (al != null)
+			this.annotationListeners = addListener(this.annotationListeners, al);
 	}
 
 	/* (non-Javadoc)
 	 * @see de.gamta.MutableAnnotation#removeAnnotationListener(de.gamta.AnnotationListener)
 	 */
-	public void removeAnnotationListener(AnnotationListener al) {
-		if (this.annotationListeners != null) this.annotationListeners.remove(al);
+	public synchronized void removeAnnotationListener(AnnotationListener al) {
+		if (this.annotationListeners != null)
+			this.annotationListeners = removeListener(this.annotationListeners, al);
+	}
+	
+	//	add a listener to a copy-on-write listener array (callers synchronize on the owner of the array, which has to be volatile)
+	private static Object[] addListener(Object[] listeners, Object listener) {
+		if (listeners == null)
+			return new Object[] {listener};
+		Object[] newListeners = new Object[listeners.length + 1];
+		System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+		newListeners[listeners.length] = listener;
+		return newListeners;
+	}
+	
+	//	remove a listener from a copy-on-write listener array, returning null if the last listener is removed (callers synchronize like for adding)
+	private static Object[] removeListener(Object[] listeners, Object listener) {
+		for (int l = 0; l < listeners.length; l++)
+			if (listeners[l].equals(listener)) {
+				if (listeners.length == 1)
+					return null;
+				Object[] newListeners = new Object[listeners.length - 1];
+				System.arraycopy(listeners, 0, newListeners, 0, l);
+				System.arraycopy(listeners, (l + 1), newListeners, l, (newListeners.length - l));
+				return newListeners;
+			}
+		return listeners;
 	}
 	
 	private void notifyAnnotationAdded(AnnotationBase added) {
-		if (this.annotationListeners != null) {
+		Object[] annotationListeners = this.annotationListeners;
+		if (annotationListeners != null) {
 			QueriableAnnotation doc = new ImmutableAnnotation(this);
 			Annotation addedAnnotation = new ImmutableAnnotation(new QueriableAnnotationView(added, this));
-			for (int l = 0; l < this.annotationListeners.size(); l++) try {
-				((AnnotationListener) this.annotationListeners.get(l)).annotationAdded(doc, addedAnnotation);
+			for (int l = 0; l < annotationListeners.length; l++) try {
+				((AnnotationListener) annotationListeners[l]).annotationAdded(doc, addedAnnotation);
 			}
 			catch (Exception e) {
 				System.out.println("Exception notifying annotation added: " + e.getMessage());
@@ -771,13 +918,14 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 	}
 	
 	private void notifyAnnotationRemoved(AnnotationBase removed) {
-		if (this.annotationListeners != null) {
+		Object[] annotationListeners = this.annotationListeners;
+		if (annotationListeners != null) {
 			QueriableAnnotation doc = new ImmutableAnnotation(this);
 			Annotation removedAnnotation = new TemporaryAnnotation(doc, removed.getType(), removed.getAbsoluteStartIndex(), removed.size());
 			removedAnnotation.copyAttributes(removed);
 			removedAnnotation.setAttribute(ANNOTATION_ID_ATTRIBUTE, removed.annotationId);
-			for (int l = 0; l < this.annotationListeners.size(); l++) try {
-				((AnnotationListener) this.annotationListeners.get(l)).annotationRemoved(doc, removedAnnotation);
+			for (int l = 0; l < annotationListeners.length; l++) try {
+				((AnnotationListener) annotationListeners[l]).annotationRemoved(doc, removedAnnotation);
 			}
 			catch (Exception e) {
 				System.out.println("Exception notifying annotation removed: " + e.getMessage());
@@ -787,11 +935,12 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 	}
 	
 	private void notifyAnnotationTypeChanged(AnnotationBase reTyped, String oldType) {
-		if (this.annotationListeners != null) {
+		Object[] annotationListeners = this.annotationListeners;
+		if (annotationListeners != null) {
 			QueriableAnnotation doc = new ImmutableAnnotation(this);
 			Annotation reTypedAnnotation = new ImmutableAnnotation(new QueriableAnnotationView(reTyped, this));
-			for (int l = 0; l < this.annotationListeners.size(); l++) try {
-				((AnnotationListener) this.annotationListeners.get(l)).annotationTypeChanged(doc, reTypedAnnotation, oldType);
+			for (int l = 0; l < annotationListeners.length; l++) try {
+				((AnnotationListener) annotationListeners[l]).annotationTypeChanged(doc, reTypedAnnotation, oldType);
 			}
 			catch (Exception e) {
 				System.out.println("Exception notifying annotation type change: " + e.getMessage());
@@ -801,11 +950,12 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 	}
 	
 	private void notifyAnnotationAttributeChanged(AnnotationBase target, String attributeName, Object oldValue) {
-		if (this.annotationListeners != null) {
+		Object[] annotationListeners = this.annotationListeners;
+		if (annotationListeners != null) {
 			QueriableAnnotation doc = new ImmutableAnnotation(this);
 			Annotation targetAnnotation = new ImmutableAnnotation(new QueriableAnnotationView(target, this));
-			for (int l = 0; l < this.annotationListeners.size(); l++) try {
-				((AnnotationListener) this.annotationListeners.get(l)).annotationAttributeChanged(doc, targetAnnotation, attributeName, oldValue);
+			for (int l = 0; l < annotationListeners.length; l++) try {
+				((AnnotationListener) annotationListeners[l]).annotationAttributeChanged(doc, targetAnnotation, attributeName, oldValue);
 			}
 			catch (Exception e) {
 				System.out.println("Exception notifying annotation attribute change: " + e.getMessage());
@@ -1221,20 +1371,11 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 	/**	a mutable view of an annotation, behaving relative to the annotation its was retrieved from
 	 */
 	private class MutableAnnotationView extends QueriableAnnotationView implements MutableAnnotation {
-		private Vector charListeners = null;
-		private Vector tokenListeners = null;
-		private Vector annotationListeners = null;
+		private volatile Object[] charListeners = null; // copy-on-write, like all listener arrays
+		private volatile Object[] tokenListeners = null;
+		private volatile Object[] annotationListeners = null;
 		private MutableAnnotationView(AnnotationBase data, QueriableAnnotation base) {
 			super(data, base);
-			this.data.views.add(this);
-		}
-		/* (non-Javadoc)
-		 * @see de.gamta.defaultImplementation.GamtaDocument.QueriableAnnotationView#finalize()
-		 */
-		protected void finalize() throws Throwable {
-			if (this.data != null)
-				this.data.views.remove(this);
-			super.finalize();
 		}
 		/* (non-Javadoc)
 		 * @see de.gamta.defaultImplementation.GamtaDocument.AnnotationBase#addAnnotation(de.gamta.Annotation)
@@ -1370,16 +1511,20 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 		/* (non-Javadoc)
 		 * @see de.gamta.defaultImplementation.GamtaDocument.AnnotationBase#addCharSequenceListener(de.gamta.CharSequenceListener)
 		 */
-		public void addCharSequenceListener(CharSequenceListener csl) {
-			if (this.charListeners == null) this.charListeners = new Vector(2);
-			this.charListeners.add(csl);
+		public synchronized void addCharSequenceListener(CharSequenceListener csl) {
+			if ((this.charListeners == null) && (this.tokenListeners == null))
+				this.data.addView(this);
+			this.charListeners = addListener(this.charListeners, csl);
 		}
 		/* (non-Javadoc)
 		 * @see de.gamta.defaultImplementation.GamtaDocument.AnnotationBase#removeCharSequenceListener(de.gamta.CharSequenceListener)
 		 */
-		public void removeCharSequenceListener(CharSequenceListener csl) {
-			if (this.charListeners != null)
-				this.charListeners.remove(csl);
+		public synchronized void removeCharSequenceListener(CharSequenceListener csl) {
+			if (this.charListeners == null)
+				return;
+			this.charListeners = removeListener(this.charListeners, csl);
+			if ((this.charListeners == null) && (this.tokenListeners == null))
+				this.data.removeView(this);
 		}
 		/* (non-Javadoc)
 		 * @see de.gamta.defaultImplementation.GamtaDocument.AnnotationBase#removeTokens(de.gamta.Annotation)
@@ -1396,36 +1541,41 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 		/* (non-Javadoc)
 		 * @see de.gamta.defaultImplementation.GamtaDocument.AnnotationBase#addTokenSequenceListener(de.gamta.TokenSequenceListener)
 		 */
-		public void addTokenSequenceListener(TokenSequenceListener tsl) {
-			if (this.tokenListeners == null) this.tokenListeners = new Vector(2);
-			this.tokenListeners.add(tsl);
+		public synchronized void addTokenSequenceListener(TokenSequenceListener tsl) {
+			if ((this.charListeners == null) && (this.tokenListeners == null))
+				this.data.addView(this);
+			this.tokenListeners = addListener(this.tokenListeners, tsl);
 		}
 		/* (non-Javadoc)
 		 * @see de.gamta.defaultImplementation.GamtaDocument.AnnotationBase#removeTokenSequenceListener(de.gamta.TokenSequenceListener)
 		 */
-		public void removeTokenSequenceListener(TokenSequenceListener tsl) {
-			if (this.tokenListeners != null)
-				this.tokenListeners.remove(tsl);
+		public synchronized void removeTokenSequenceListener(TokenSequenceListener tsl) {
+			if (this.tokenListeners == null)
+				return;
+			this.tokenListeners = removeListener(this.tokenListeners, tsl);
+			if ((this.charListeners == null) && (this.tokenListeners == null))
+				this.data.removeView(this);
 		}
 		//	promote a change to the underlying token sequence to listeners listening to this view
 		private void notifyTokenSequenceChanged(TokenSequenceEvent tse) {
-			if ((this.charListeners == null) && (this.tokenListeners == null)) return;
+			Object[] charListeners = this.charListeners;
+			Object[] tokenListeners = this.tokenListeners;
+			if ((charListeners == null) && (tokenListeners == null)) return;
 			
 			//	produce char sequence event refering to this view
 			CharSequenceEvent vCse = new CharSequenceEvent(this, tse.cause.offset, tse.cause.inserted, tse.cause.removed);
 			
-			if (this.charListeners != null)
-				for (int l = 0; l < this.charListeners.size(); l++)
-					((CharSequenceListener) this.charListeners.get(l)).charSequenceChanged(vCse);
+			if (charListeners != null)
+				for (int l = 0; l < charListeners.length; l++)
+					((CharSequenceListener) charListeners[l]).charSequenceChanged(vCse);
 			
-			if (this.tokenListeners == null) return;
+			if (tokenListeners == null) return;
 			
 			//	produce token sequence event refering to this view
 			TokenSequenceEvent vTse = new TokenSequenceEvent(this, tse.index, tse.inserted, tse.removed, vCse);
 			
-			if (this.tokenListeners != null)
-				for (int l = 0; l < this.tokenListeners.size(); l++)
-					((TokenSequenceListener) this.tokenListeners.get(l)).tokenSequenceChanged(vTse);
+			for (int l = 0; l < tokenListeners.length; l++)
+				((TokenSequenceListener) tokenListeners[l]).tokenSequenceChanged(vTse);
 		}
 		/* (non-Javadoc)
 		 * @see de.gamta.defaultImplementation.GamtaDocument.AnnotationBase#setChar(char, int)
@@ -1460,27 +1610,25 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 		/* (non-Javadoc)
 		 * @see de.gamta.MutableAnnotation#addAnnotationListener(de.gamta.AnnotationListener)
 		 */
-		public void addAnnotationListener(AnnotationListener al) {
-			if (al != null) {
-				if (this.annotationListeners == null)
-					this.annotationListeners = new Vector();
-				this.annotationListeners.add(al);
-			}
+		public synchronized void addAnnotationListener(AnnotationListener al) {
+			if (al != null)
+				this.annotationListeners = addListener(this.annotationListeners, al);
 		}
 		/* (non-Javadoc)
 		 * @see de.gamta.MutableAnnotation#removeAnnotationListener(de.gamta.AnnotationListener)
 		 */
-		public void removeAnnotationListener(AnnotationListener al) {
+		public synchronized void removeAnnotationListener(AnnotationListener al) {
 			if (this.annotationListeners != null)
-				this.annotationListeners.remove(al);
+				this.annotationListeners = removeListener(this.annotationListeners, al);
 		}
 		
 		private void notifyAnnotationAdded(AnnotationBase added) {
-			if (this.annotationListeners != null) {
+			Object[] annotationListeners = this.annotationListeners;
+			if (annotationListeners != null) {
 				QueriableAnnotation doc = new ImmutableAnnotation(this);
 				Annotation addedAnnotation = new ImmutableAnnotation(new QueriableAnnotationView(added, this));
-				for (int l = 0; l < this.annotationListeners.size(); l++)
-					((AnnotationListener) this.annotationListeners.get(l)).annotationAdded(doc, addedAnnotation);
+				for (int l = 0; l < annotationListeners.length; l++)
+					((AnnotationListener) annotationListeners[l]).annotationAdded(doc, addedAnnotation);
 			}
 			
 			QueriableAnnotation base = this.base;
@@ -1499,12 +1647,13 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 		}
 		
 		private void notifyAnnotationRemoved(AnnotationBase removed) {
-			if (this.annotationListeners != null) {
+			Object[] annotationListeners = this.annotationListeners;
+			if (annotationListeners != null) {
 				QueriableAnnotation doc = new ImmutableAnnotation(this);
 				Annotation removedAnnotation = new TemporaryAnnotation(doc, removed.getType(), (removed.getAbsoluteStartIndex() - this.getAbsoluteStartIndex()), removed.size());
 				removedAnnotation.copyAttributes(removed);
-				for (int l = 0; l < this.annotationListeners.size(); l++)
-					((AnnotationListener) this.annotationListeners.get(l)).annotationRemoved(doc, removedAnnotation);
+				for (int l = 0; l < annotationListeners.length; l++)
+					((AnnotationListener) annotationListeners[l]).annotationRemoved(doc, removedAnnotation);
 			}
 			
 			QueriableAnnotation base = this.base;
@@ -1523,11 +1672,12 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 		}
 		
 		private void notifyAnnotationTypeChanged(AnnotationBase reTyped, String oldType) {
-			if ((reTyped != this.data) && (this.annotationListeners != null)) {
+			Object[] annotationListeners = this.annotationListeners;
+			if ((reTyped != this.data) && (annotationListeners != null)) {
 				QueriableAnnotation doc = new ImmutableAnnotation(this);
 				Annotation reTypedAnnotation = new ImmutableAnnotation(new QueriableAnnotationView(reTyped, this));
-				for (int l = 0; l < this.annotationListeners.size(); l++)
-					((AnnotationListener) this.annotationListeners.get(l)).annotationTypeChanged(doc, reTypedAnnotation, oldType);
+				for (int l = 0; l < annotationListeners.length; l++)
+					((AnnotationListener) annotationListeners[l]).annotationTypeChanged(doc, reTypedAnnotation, oldType);
 			}
 			
 			QueriableAnnotation base = this.base;
@@ -1546,11 +1696,12 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 		}
 		
 		private void notifyAnnotationAttributeChanged(AnnotationBase target, String attributeName, Object oldValue) {
-			if (this.annotationListeners != null) {
+			Object[] annotationListeners = this.annotationListeners;
+			if (annotationListeners != null) {
 				QueriableAnnotation doc = new ImmutableAnnotation(this);
 				Annotation targetAnnotation = new ImmutableAnnotation(new QueriableAnnotationView(target, this));
-				for (int l = 0; l < this.annotationListeners.size(); l++)
-					((AnnotationListener) this.annotationListeners.get(l)).annotationAttributeChanged(doc, targetAnnotation, attributeName, oldValue);
+				for (int l = 0; l < annotationListeners.length; l++)
+					((AnnotationListener) annotationListeners[l]).annotationAttributeChanged(doc, targetAnnotation, attributeName, oldValue);
 			}
 			
 			QueriableAnnotation base = this.base;
@@ -1707,7 +1858,7 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 		
 		private Change change = null; // the change originating from the current update to the underlaying token sequence (will be null unless a change is in progress)
 		
-		private Vector views = new Vector(); // the views currently refering to this AbbotationBase, for event notification purposes
+		private WeakReference[] views = null; // the views with char or token sequence listeners currently refering to this AnnotationBase, for event notification purposes (weak, so the views remain garbage collectable, and copy-on-write, so notification can iterate without locking)
 		
 		AnnotationBase(String type, int startIndex, int size) {
 			if ((type == null) || (type.trim().length() == 0))
@@ -2036,9 +2187,13 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 				this.absoluteStartIndex += this.change.startIndexDelta;
 				this.size += this.change.sizeDelta;
 				
-				if (this.change.cause != null)
-					for (int v = 0; v < this.views.size(); v++)
-						((MutableAnnotationView) this.views.get(v)).notifyTokenSequenceChanged(this.change.cause);
+				WeakReference[] views = this.views;
+				if ((this.change.cause != null) && (views != null))
+					for (int v = 0; v < views.length; v++) {
+						MutableAnnotationView mav = ((MutableAnnotationView) views[v].get());
+						if (mav != null)
+							mav.notifyTokenSequenceChanged(this.change.cause);
+					}
 				
 				this.change = null;
 			}
@@ -2060,6 +2215,7 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 				throw new IllegalArgumentException("'" + newType + "' is not a valid Annotation type");
 			String oldType = this.type;
 			this.type = newType;
+			annotations.annotationTypeChanged(this, oldType);
 			return oldType;
 		}
 		String getAnnotationID() {
@@ -2100,23 +2256,46 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 			tokenData.removeTokensAt(this.absoluteStartIndex, this.size);
 			modificationSource = null;
 		}
-		protected void finalize() throws Throwable {
-			
-			//	clean up views
-			for (int v = 0; v < this.views.size(); v++) {
-				MutableAnnotationView mav = ((MutableAnnotationView) this.views.get(v));
-				if (mav.charListeners != null)
-					mav.charListeners.clear();
-				if (mav.tokenListeners != null)
-					mav.tokenListeners.clear();
-				mav.data = null;
+		//	register a view for token sequence change notification, discarding views that have been garbage collected
+		synchronized void addView(MutableAnnotationView mav) {
+			int liveViews = 0;
+			if (this.views != null)
+				for (int v = 0; v < this.views.length; v++) {
+					if (this.views[v].get() != null)
+						liveViews++;
+				}
+			WeakReference[] views = new WeakReference[liveViews + 1];
+			liveViews = 0;
+			if (this.views != null)
+				for (int v = 0; v < this.views.length; v++) {
+					if (this.views[v].get() != null)
+						views[liveViews++] = this.views[v];
+				}
+			views[liveViews] = new WeakReference(mav);
+			this.views = views;
+		}
+		//	unregister a view from token sequence change notification, discarding views that have been garbage collected
+		synchronized void removeView(MutableAnnotationView mav) {
+			if (this.views == null)
+				return;
+			int liveViews = 0;
+			for (int v = 0; v < this.views.length; v++) {
+				Object view = this.views[v].get();
+				if ((view != null) && (view != mav))
+					liveViews++;
 			}
-			
-			//	clear attributes
-			this.clearAttributes();
-			
-			//	discart views
-			this.views.clear();
+			if (liveViews == 0) {
+				this.views = null;
+				return;
+			}
+			WeakReference[] views = new WeakReference[liveViews];
+			liveViews = 0;
+			for (int v = 0; v < this.views.length; v++) {
+				Object view = this.views[v].get();
+				if ((view != null) && (view != mav))
+					views[liveViews++] = this.views[v];
+			}
+			this.views = views;
 		}
 		Token firstToken() {
 			return tokenData.tokenAt(this.absoluteStartIndex);
@@ -2348,12 +2527,80 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 		}
 	}
 	
+	/**	the sort order of Annotations in the AnnotationStore
+	 */
+	private final Comparator annotationBaseOrder = new Comparator() {
+		public int compare(Object obj1, Object obj2) {
+			return ((AnnotationBase) obj1).compareTo((AnnotationBase) obj2);
+		}
+	};
+	
 	/**	the storage for Annotations
 	 */
 	private class AnnotationStore {
 		
 		private Vector annotations = new Vector();
 		private HashSet annotationIDs = new HashSet();
+		private HashMap annotationsByType = new HashMap(); // per-type lists of the Annotations, sorted the same way as the main list
+		
+		/**	retrieve the list of Annotations of a given type
+		 * @param	type	the type of the desired Annotations
+		 * @param	create	create the list if it does not exist?
+		 * @return the list of Annotations of the argument type
+		 */
+		private List getTypeAnnotations(String type, boolean create) {
+			List typeAnnotations = ((List) this.annotationsByType.get(type));
+			if ((typeAnnotations == null) && create) {
+				typeAnnotations = new ArrayList();
+				this.annotationsByType.put(type, typeAnnotations);
+			}
+			return typeAnnotations;
+		}
+		
+		/**	remove an Annotation from the list of Annotations of a given type, discarding the list if it becomes empty
+		 * @param	ab		the Annotation to remove
+		 * @param	type	the type of the list to remove the Annotation from
+		 */
+		private void removeTypeAnnotation(AnnotationBase ab, String type) {
+			List typeAnnotations = this.getTypeAnnotations(type, false);
+			if (typeAnnotations == null)
+				return;
+			for (int a = 0; a < typeAnnotations.size(); a++)
+				if (typeAnnotations.get(a) == ab) {
+					typeAnnotations.remove(a);
+					break;
+				}
+			if (typeAnnotations.isEmpty())
+				this.annotationsByType.remove(type);
+		}
+		
+		/**	move an Annotation to the list of its new type after a type change
+		 * @param	ab		the Annotation whose type changed
+		 * @param	oldType	the type of the Annotation before the change
+		 */
+		private synchronized void annotationTypeChanged(AnnotationBase ab, String oldType) {
+			if (!this.containsAnnotation(ab) || ab.type.equals(oldType))
+				return;
+			this.removeTypeAnnotation(ab, oldType);
+			insertAnnotation(this.getTypeAnnotations(ab.type, true), ab);
+		}
+		
+		/**	find the position of the first Annotation in a list that starts at or after a given token index
+		 * @param	annotations	the list to search
+		 * @param	absoluteStartIndex	the token index
+		 * @return the position of the first Annotation starting at or after the argument index
+		 */
+		private int findFirstAnnotation(List annotations, int absoluteStartIndex) {
+			int left = 0;
+			int right = annotations.size();
+			while (left < right) {
+				int middle = ((left + right) >>> 1);
+				if (((AnnotationBase) annotations.get(middle)).absoluteStartIndex < absoluteStartIndex)
+					left = (middle + 1);
+				else right = middle;
+			}
+			return left;
+		}
 		
 		/**	store an Annotation
 		 * @param	ab	the Annotation to be stored
@@ -2366,59 +2613,133 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 				//	add Annotation to content index
 				this.annotationIDs.add(ab.annotationId);
 				
-				//	start searching insertion point at end points
-				int left = 0;
-				int right = this.annotations.size();
+				//	add Annotation to main list and type list
+				insertAnnotation(this.annotations, ab);
+				insertAnnotation(this.getTypeAnnotations(ab.type, true), ab);
+			}
+		}
+		
+		/**	store a batch of Annotations, merging them into the main list and the type lists in a single pass
+		 * @param	abs	the Annotations to be stored (null entries are ignored)
+		 */
+		private synchronized void storeAnnotations(AnnotationBase[] abs) {
+			
+			//	collect Annotations not inserted before
+			ArrayList newAnnotations = new ArrayList(abs.length);
+			for (int a = 0; a < abs.length; a++) {
+				if ((abs[a] != null) && !this.containsAnnotation(abs[a])) {
+					this.annotationIDs.add(abs[a].annotationId);
+					newAnnotations.add(abs[a]);
+				}
+			}
+			if (newAnnotations.isEmpty())
+				return;
+			
+			//	sort new Annotations (sort is stable, so equal Annotations remain in insertion order)
+			Collections.sort(newAnnotations, annotationBaseOrder);
+			
+			//	merge new Annotations into main list
+			mergeAnnotations(this.annotations, newAnnotations);
+			
+			//	group new Annotations by type, and merge groups into type lists
+			HashMap newAnnotationsByType = new HashMap();
+			for (int a = 0; a < newAnnotations.size(); a++) {
+				AnnotationBase ab = ((AnnotationBase) newAnnotations.get(a));
+				List newTypeAnnotations = ((List) newAnnotationsByType.get(ab.type));
+				if (newTypeAnnotations == null) {
+					newTypeAnnotations = new ArrayList();
+					newAnnotationsByType.put(ab.type, newTypeAnnotations);
+				}
+				newTypeAnnotations.add(ab);
+			}
+			for (Iterator tit = newAnnotationsByType.keySet().iterator(); tit.hasNext();) {
+				String type = ((String) tit.next());
+				mergeAnnotations(this.getTypeAnnotations(type, true), ((List) newAnnotationsByType.get(type)));
+			}
+		}
+		
+		/**	merge a sorted list of new Annotations into a sorted list of Annotations, placing new Annotations after equal ones already contained, just as insertAnnotation() does
+		 * @param	annotations		the list to merge the new Annotations into
+		 * @param	newAnnotations	the sorted list of Annotations to merge in
+		 */
+		private void mergeAnnotations(List annotations, List newAnnotations) {
+			
+			//	catch special case of appending (happens most often, as Annotations tend to be added in document order)
+			if (annotations.isEmpty() || (((AnnotationBase) annotations.get(annotations.size() - 1)).compareTo((AnnotationBase) newAnnotations.get(0)) <= 0)) {
+				annotations.addAll(newAnnotations);
+				return;
+			}
+			
+			//	merge lists
+			Object[] merged = new Object[annotations.size() + newAnnotations.size()];
+			int a = 0;
+			int n = 0;
+			for (int m = 0; m < merged.length; m++) {
+				if ((n == newAnnotations.size()) || ((a < annotations.size()) && (((AnnotationBase) annotations.get(a)).compareTo((AnnotationBase) newAnnotations.get(n)) <= 0)))
+					merged[m] = annotations.get(a++);
+				else merged[m] = newAnnotations.get(n++);
+			}
+			annotations.clear();
+			annotations.addAll(Arrays.asList(merged));
+		}
+		
+		/**	insert an Annotation in a list of Annotations, maintaining sort order
+		 * @param	annotations	the list to insert the Annotation in
+		 * @param	ab	the Annotation to be inserted
+		 */
+		private void insertAnnotation(List annotations, AnnotationBase ab) {
+			//	start searching insertion point at end points
+			int left = 0;
+			int right = annotations.size();
+			
+			//	catch special cases (head or tail insert)
+			if (!annotations.isEmpty()) {
 				
-				//	catch special cases (head or tail insert)
-				if (!this.annotations.isEmpty()) {
+				//	larget than larges Annotation contained so far (check first, in order to save time when adding Annotations in ascending order, which happens more often than in descending order)
+				if (((AnnotationBase) annotations.get(right - 1)).compareTo(ab) <= 0) {
+					annotations.add(right, ab);
+					return;
 					
-					//	larget than larges Annotation contained so far (check first, in order to save time when adding Annotations in ascending order, which happens more often than in descending order)
-					if (((AnnotationBase) this.annotations.get(right - 1)).compareTo(ab) <= 0) {
-						this.annotations.insertElementAt(ab, right);
-						return;
-						
-					//	smaller than smallest annotation contained so far
-					} else if (((AnnotationBase) this.annotations.get(0)).compareTo(ab) > 0) {
-						this.annotations.insertElementAt(ab, 0);
-						return;
-					}
+				//	smaller than smallest annotation contained so far
+				} else if (((AnnotationBase) annotations.get(0)).compareTo(ab) > 0) {
+					annotations.add(0, ab);
+					return;
 				}
-				
-				//	narrow insertion point with binary search down to a 2 interval
-				int c = -1;
-				int middle;
-				while ((right - left) > 2) {
-					middle = ((left + right) / 2);
-					c = ((AnnotationBase) this.annotations.get(middle)).compareTo(ab);
-					if (c < 0) left = middle; // insertion right is left of middle
-					else if (c == 0) { // Annotation at middle is equal to inserted Annotation, search insertion point rightward to maintain insertion order
-						int lastC;
-						for (int i = middle; i < right; i++) {
-							lastC = c;
-							c = ((AnnotationBase) this.annotations.get(i)).compareTo(ab);
-							if (lastC <= 0 && c > 0) {
-								this.annotations.insertElementAt(ab, i);
-								return;
-							}
+			}
+			
+			//	narrow insertion point with binary search down to a 2 interval
+			int c = -1;
+			int middle;
+			while ((right - left) > 2) {
+				middle = ((left + right) / 2);
+				c = ((AnnotationBase) annotations.get(middle)).compareTo(ab);
+				if (c < 0) left = middle; // insertion right is left of middle
+				else if (c == 0) { // Annotation at middle is equal to inserted Annotation, search insertion point rightward to maintain insertion order
+					int lastC;
+					for (int i = middle; i < right; i++) {
+						lastC = c;
+						c = ((AnnotationBase) annotations.get(i)).compareTo(ab);
+						if (lastC <= 0 && c > 0) {
+							annotations.add(i, ab);
+							return;
 						}
-						this.annotations.insertElementAt(ab, right);
-						return;
-					} else right = middle;  // insertion point is left of middle
-				}
-				
-				//	insert with linear search in order to avoid special case treatments in binary search
-				int lastC;
-				for (int i = left; i < right; i++) {
-					lastC = c;
-					c = ((AnnotationBase) this.annotations.get(i)).compareTo(ab);
-					if (lastC <= 0 && c > 0) {
-						this.annotations.insertElementAt(ab, i);
-						return;
 					}
+					annotations.add(right, ab);
+					return;
+				} else right = middle;  // insertion point is left of middle
+			}
+			
+			//	insert with linear search in order to avoid special case treatments in binary search
+			int lastC;
+			for (int i = left; i < right; i++) {
+				lastC = c;
+				c = ((AnnotationBase) annotations.get(i)).compareTo(ab);
+				if (lastC <= 0 && c > 0) {
+					annotations.add(i, ab);
+					return;
 				}
-				this.annotations.insertElementAt(ab, right);
 			}
+			annotations.add(right, ab);
 		}
 		
 		/**	retrieve all Annotations of a particular type contained in this AnnotationStore
@@ -2426,6 +2747,10 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 		 * @return all Annotations of the specified type contained in this AnnotationStore packed in an array
 		 */
 		private AnnotationBase[] getAnnotations(String type) {
+			if (type != null) {
+				List typeAnnotations = this.getTypeAnnotations(type, false);
+				return ((typeAnnotations == null) ? new AnnotationBase[0] : ((AnnotationBase[]) typeAnnotations.toArray(new AnnotationBase[typeAnnotations.size()])));
+			}
 			ArrayList list = new ArrayList();
 			AnnotationBase annot;
 			for (int a = 0; a < this.annotations.size(); a++) {
@@ -2443,6 +2768,24 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 		 */
 		private AnnotationBase[] getAnnotations(AnnotationBase base, String type) {
 			int baseAbsoluteStartIndex = base.getAbsoluteStartIndex();
+			
+			//	use type list if type given
+			if (type != null) {
+				List typeAnnotations = this.getTypeAnnotations(type, false);
+				if (typeAnnotations == null)
+					return new AnnotationBase[0];
+				int absoluteStartIndexLimit = base.getAbsoluteStartIndex() + base.size();
+				ArrayList annotationList = new ArrayList();
+				for (int a = this.findFirstAnnotation(typeAnnotations, baseAbsoluteStartIndex); a < typeAnnotations.size(); a++) {
+					AnnotationBase ab = ((AnnotationBase) typeAnnotations.get(a));
+					if (ab.absoluteStartIndex >= absoluteStartIndexLimit)
+						break;
+					if (ab.getEndIndex() <= absoluteStartIndexLimit)
+						annotationList.add(ab);
+				}
+				return ((AnnotationBase[]) annotationList.toArray(new AnnotationBase[annotationList.size()]));
+			}
+			
 			int start = -1;
 			
 			//	binary search first annotation, start searching insertion point at end points
@@ -2492,8 +2835,7 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 		 */
 		private String[] getAnnotationTypes() {
 			StringVector types = new StringVector();
-			for (int a = 0; a < this.annotations.size(); a++)
-				types.addElementIgnoreDuplicates(((AnnotationBase) this.annotations.get(a)).getType());
+			types.addContentIgnoreDuplicates((String[]) this.annotationsByType.keySet().toArray(new String[this.annotationsByType.size()]));
 			types.sortLexicographically(false, false);
 			return types.toStringArray();
 		}
@@ -2612,6 +2954,7 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 						if (ab.annotationId.equals(annotation.getAnnotationID())) {
 							this.annotations.removeElementAt(a);
 							this.annotationIDs.remove(ab.annotationId);
+							this.removeTypeAnnotation(ab, ab.type);
 							return ab;
 						}
 					}
@@ -2620,6 +2963,7 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 					else if (ab.type.equals(annotation.getType()) && AttributeUtils.hasEqualAttributes(ab, annotation)) {
 						this.annotations.removeElementAt(a);
 						this.annotationIDs.remove(ab.annotationId);
+						this.removeTypeAnnotation(ab, ab.type);
 						return ab;
 					}
 				}
@@ -2662,6 +3006,7 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 				AnnotationBase ab = ((AnnotationBase) this.annotations.get(a));
 				if (ab.size() <= 0) {
 					this.annotations.removeElementAt(a);
+					this.removeTypeAnnotation(ab, ab.type);
 					if (AnnotationBase.DEBUG_CHANGE || ab.printDebugInfo())
 						System.out.println("REMOVED: " + ab.type + " at " + ab.absoluteStartIndex + " sized " + ab.size);
 				}
@@ -2674,6 +3019,7 @@ public class GamtaDocument extends AbstractAttributed implements DocumentRoot {
 		private void clear() {
 			this.annotations.clear();
 			this.annotationIDs.clear();
+			this.annotationsByType.clear();
 		}
 	}
 }
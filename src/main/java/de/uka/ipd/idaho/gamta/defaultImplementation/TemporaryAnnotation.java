@@ -42,7 +42,9 @@ import de.uka.ipd.idaho.gamta.Tokenizer;
  */
 public class TemporaryAnnotation extends AbstractAttributed implements StandaloneAnnotation {
 	
-	private String annotationId = Gamta.getAnnotationID();
+	private String annotationId = null; // rendered from the bits below only on demand, as many temporary annotations never have their ID requested
+	private long annotationIdHighBits = Gamta.getAnnotationIdBits();
+	private long annotationIdLowBits = Gamta.getAnnotationIdBits();
 	private TokenSequence tokens;
 	
 	private String type;
@@ -106,7 +108,7 @@ public class TemporaryAnnotation extends AbstractAttributed implements Standalon
 		else if (SIZE_ATTRIBUTE.equals(name)) return new Integer(this.size());
 		else if (END_INDEX_ATTRIBUTE.equals(name)) return new Integer(this.getEndIndex());
 		else if (ANNOTATION_VALUE_ATTRIBUTE.equals(name)) return this.getValue();
-		else if (ANNOTATION_ID_ATTRIBUTE.equals(name)) return this.annotationId;
+		else if (ANNOTATION_ID_ATTRIBUTE.equals(name)) return this.getAnnotationID();
 		else return super.getAttribute(name);
 	}
 	
@@ -118,7 +120,7 @@ public class TemporaryAnnotation extends AbstractAttributed implements Standalon
 		else if (SIZE_ATTRIBUTE.equals(name)) return new Integer(this.size());
 		else if (END_INDEX_ATTRIBUTE.equals(name)) return new Integer(this.getEndIndex());
 		else if (ANNOTATION_VALUE_ATTRIBUTE.equals(name)) return this.getValue();
-		else if (ANNOTATION_ID_ATTRIBUTE.equals(name)) return this.annotationId;
+		else if (ANNOTATION_ID_ATTRIBUTE.equals(name)) return this.getAnnotationID();
 		else return super.getAttribute(name, def);
 	}
 	
@@ -136,8 +138,8 @@ public class TemporaryAnnotation extends AbstractAttributed implements Standalon
 		if (START_INDEX_ATTRIBUTE.equals(name) || SIZE_ATTRIBUTE.equals(name) || END_INDEX_ATTRIBUTE.equals(name) || ANNOTATION_VALUE_ATTRIBUTE.equals(name))
 			return value;
 		else if (ANNOTATION_ID_ATTRIBUTE.equals(name)) {
-			if ((value != null) && (value instanceof String) && (value.toString().trim().length() == this.annotationId.length())) {
-				String oldId = this.annotationId;
+			String oldId = this.getAnnotationID();
+			if ((value != null) && (value instanceof String) && (value.toString().trim().length() == oldId.length())) {
 				this.annotationId = value.toString();
 				return oldId;
 			}
@@ -178,6 +180,8 @@ public class TemporaryAnnotation extends AbstractAttributed implements Standalon
 	/** @see de.uka.ipd.idaho.gamta.Annotation#getAnnotationID()
 	 */
 	public String getAnnotationID() {
+		if (this.annotationId == null)
+			this.annotationId = Gamta.getAnnotationID(this.annotationIdHighBits, this.annotationIdLowBits);
 		return this.annotationId;
 	}
 	
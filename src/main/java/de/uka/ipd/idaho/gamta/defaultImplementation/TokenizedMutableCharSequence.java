@@ -151,6 +151,78 @@ public class TokenizedMutableCharSequence extends TokenizedCharSequence implemen
 		return ow.toString();
 	}
 	
+	/**
+	 * Set the whitespace after a series of consecutive tokens in one go. This
+	 * has the same effect as calling <code>setWhitespaceAfter()</code> for
+	 * every token in the series, but adjusts the offsets of subsequent tokens
+	 * only once, and notifies listeners with a single event spanning from the
+	 * first to the last actually modified whitespace.
+	 * @param whitespace an array holding the whitespace to set, one element
+	 *            per token; null elements leave the respective whitespace
+	 *            unchanged
+	 * @param index the index of the first token to set the whitespace after
+	 * @throws IllegalArgumentException if any of the argument whitespace
+	 *             contains non-whitespace characters
+	 */
+	public void setWhitespacesAfter(CharSequence[] whitespace, int index) throws IllegalArgumentException {
+		if ((index + whitespace.length) > this.size())
+			throw new IndexOutOfBoundsException("" + (index + whitespace.length) + " > " + this.size());
+		
+		//	check whitespace and find range of actual changes before modifying anything
+		int first = -1;
+		int last = -1;
+		for (int w = 0; w < whitespace.length; w++) {
+			if (whitespace[w] == null)
+				continue;
+			if (whitespace[w].toString().trim().length() != 0)
+				throw new IllegalArgumentException("Whitespace must not contain non-whitespace characters.");
+			if (!equals(this.tcsTokenAt(index + w).whitespace, whitespace[w])) {
+				if (first == -1)
+					first = w;
+				last = w;
+			}
+		}
+		if (first == -1)
+			return;
+		
+		//	set whitespace, collecting removed and inserted chars for change event
+		int offset = this.tcsTokenAt(index + first).getEndOffset();
+		StringBuffer removed = new StringBuffer();
+		StringBuffer inserted = new StringBuffer();
+		for (int w = first; w <= last; w++) {
+			GamtaToken gt = this.tcsTokenAt(index + w);
+			if (w != first) {
+				removed.append(gt.value);
+				inserted.append(gt.value);
+			}
+			removed.append(gt.whitespace);
+			if (whitespace[w] != null)
+				gt.whitespace = new StringBuffer(whitespace[w].toString());
+			inserted.append(gt.whitespace);
+		}
+		this.length += (inserted.length() - removed.length());
+		
+		//	adjust offsets of subsequent tokens in a single pass
+		int tokenOffset = this.tcsTokenAt(index + first).startOffset;
+		for (int t = (index + first); t < this.tokens.size(); t++) {
+			GamtaToken gt = this.tcsTokenAt(t);
+			gt.startOffset = tokenOffset;
+			tokenOffset += gt.gtLength();
+		}
+		
+		this.notifyCharSequenceChanged(offset, inserted.toString(), removed.toString());
+	}
+	
+	private static boolean equals(StringBuffer sb, CharSequence cs) {
+		if (sb.length() != cs.length())
+			return false;
+		for (int c = 0; c < sb.length(); c++) {
+			if (sb.charAt(c) != cs.charAt(c))
+				return false;
+		}
+		return true;
+	}
+	
 	/* (non-Javadoc)
 	 * @see de.gamta.MutableTokenSequence#removeTokensAt(int, int)
 	 */
@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitt Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITT KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.util;
+
+
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import de.uka.ipd.idaho.gamta.MutableAnnotation;
+
+/**
+ * Batch runner processing a stream of documents through a chain of Analyzers
+ * as a pipeline. Loading documents, each Analyzer, and storing documents form
+ * the stages of the pipeline, which work on different documents at the same
+ * time, each in its own threads. Bounded queues between the stages hold
+ * documents that have passed one stage and wait for the next one; if a stage
+ * falls behind, the queue before it fills up, and the stages upstream of it
+ * block until there is room again, so the number of documents in memory at
+ * any time is limited.<br>
+ * By default, each Analyzer stage runs in a single thread, so Analyzers that
+ * are not thread safe can be used without further precautions. Analyzers that
+ * are thread safe can be added with a higher concurrency limit, making the
+ * respective stage process multiple documents at the same time. Loading
+ * documents always happens in a single thread, as document sources are
+ * inherently sequential.<br>
+ * Documents that go through stages with a concurrency limit above one may be
+ * handed to the <code>DocumentSink</code> in a different order than the one
+ * they were loaded in.
+ * 
+ * @author sautter
+ */
+public class AnalyzerPipeline {
+	
+	/**
+	 * Source of documents to process in an <code>AnalyzerPipeline</code>.
+	 * 
+	 * @author sautter
+	 */
+	public static interface DocumentSource {
+		
+		/**
+		 * Retrieve the next document to process. This method is only ever
+		 * called from a single thread. If this method throws an exception, the
+		 * pipeline reports the failure to the <code>DocumentSink</code> and
+		 * then treats the document stream as ended, as a source that failed
+		 * once cannot be expected to recover on its own; sources that can
+		 * skip over individual bad documents should do so internally.
+		 * @return the next document, or null if there are no more documents
+		 * @throws Exception
+		 */
+		public abstract MutableAnnotation getNextDocument() throws Exception;
+	}
+	
+	/**
+	 * Receiver of the documents processed in an <code>AnalyzerPipeline</code>.
+	 * 
+	 * @author sautter
+	 */
+	public static interface DocumentSink {
+		
+		/**
+		 * Store a document that has been processed by all Analyzers in the
+		 * pipeline. This method is called from as many threads at the same
+		 * time as the concurrency limit of the store stage of the pipeline
+		 * allows.
+		 * @param doc the document to store
+		 * @throws Exception
+		 */
+		public abstract void storeDocument(MutableAnnotation doc) throws Exception;
+		
+		/**
+		 * Receive notification that processing a document has failed. The
+		 * document does not go through any further stages of the pipeline.
+		 * If loading a document fails, the document argument is null. This
+		 * method may be called from multiple threads at the same time.
+		 * @param doc the document whose processing failed
+		 * @param stage the name of the pipeline stage that failed
+		 * @param error the exception that caused the failure
+		 */
+		public abstract void documentFailed(MutableAnnotation doc, String stage, Exception error);
+	}
+	
+	//	marker signaling the end of the document stream to a stage
+	private static final Object END = new Object();
+	
+	private int queueCapacity;
+	private ArrayList analyzers = new ArrayList();
+	private ArrayList analyzerConcurrencies = new ArrayList();
+	private int storeConcurrency = 1;
+	
+	/**
+	 * Constructor
+	 * @param queueCapacity the maximum number of documents waiting between
+	 *            any two stages of the pipeline
+	 */
+	public AnalyzerPipeline(int queueCapacity) {
+		if (queueCapacity < 1)
+			throw new IllegalArgumentException("Queue capacity must be positive, but is " + queueCapacity);
+		this.queueCapacity = queueCapacity;
+	}
+	
+	/**
+	 * Append an Analyzer to the pipeline, to process one document at a time.
+	 * @param analyzer the Analyzer to add
+	 */
+	public void addAnalyzer(Analyzer analyzer) {
+		this.addAnalyzer(analyzer, 1);
+	}
+	
+	/**
+	 * Append an Analyzer to the pipeline, to process up to a given number of
+	 * documents at the same time. Concurrency limits above one require the
+	 * argument Analyzer to be thread safe.
+	 * @param analyzer the Analyzer to add
+	 * @param maxConcurrency the maximum number of documents to process with
+	 *            the argument Analyzer at the same time
+	 */
+	public void addAnalyzer(Analyzer analyzer, int maxConcurrency) {
+		if (maxConcurrency < 1)
+			throw new IllegalArgumentException("Concurrency limit must be positive, but is " + maxConcurrency);
+		this.analyzers.add(analyzer);
+		this.analyzerConcurrencies.add(new Integer(maxConcurrency));
+	}
+	
+	/**
+	 * Set the maximum number of documents to hand to the
+	 * <code>DocumentSink</code> at the same time. The default is one.
+	 * @param storeConcurrency the concurrency limit of the store stage
+	 */
+	public void setStoreConcurrency(int storeConcurrency) {
+		if (storeConcurrency < 1)
+			throw new IllegalArgumentException("Concurrency limit must be positive, but is " + storeConcurrency);
+		this.storeConcurrency = storeConcurrency;
+	}
+	
+	/**
+	 * Process all documents from a <code>DocumentSource</code> through the
+	 * pipeline, handing them to a <code>DocumentSink</code> afterward. This
+	 * method returns only after all documents have been stored or failed. If
+	 * the <code>DocumentSource</code> throws an exception, the pipeline stops
+	 * loading documents, but processes the ones already loaded as usual. If
+	 * an <code>Error</code> occurs in any stage, or if the
+	 * <code>DocumentSink</code> throws a <code>RuntimeException</code> when
+	 * notified of a failed document, the pipeline stops loading further
+	 * documents, lets the documents already loaded run out without processing
+	 * them any further, and re-throws the error.
+	 * @param source the source of the documents to process
+	 * @param sink the receiver of the processed documents
+	 * @param parameters the parameters to hand to the Analyzers
+	 */
+	public void process(DocumentSource source, DocumentSink sink, Properties parameters) {
+		PipelineRun run = new PipelineRun(source, sink, parameters);
+		
+		//	create stages, back to front, so each stage knows its successor
+		Stage store = new StoreStage(run, this.storeConcurrency, new ArrayBlockingQueue(this.queueCapacity));
+		Stage next = store;
+		ArrayList stages = new ArrayList();
+		stages.add(store);
+		for (int a = (this.analyzers.size() - 1); a >= 0; a--) {
+			Analyzer analyzer = ((Analyzer) this.analyzers.get(a));
+			int concurrency = ((Integer) this.analyzerConcurrencies.get(a)).intValue();
+			next = new AnalyzerStage(run, analyzer, concurrency, new ArrayBlockingQueue(this.queueCapacity), next);
+			stages.add(0, next);
+		}
+		
+		//	start stages
+		ArrayList threads = new ArrayList();
+		for (int s = 0; s < stages.size(); s++)
+			((Stage) stages.get(s)).start(threads);
+		
+		//	load documents in calling thread
+		try {
+			while (!run.isAborted()) {
+				MutableAnnotation doc;
+				try {
+					doc = source.getNextDocument();
+				}
+				catch (Exception e) {
+					run.documentFailed(null, "Load", e);
+					break;
+				}
+				if (doc == null)
+					break;
+				next.put(doc);
+			}
+		}
+		catch (RuntimeException re) {
+			run.abort(re);
+		}
+		catch (Error e) {
+			run.abort(e);
+		}
+		finally {
+			next.put(END);
+		}
+		
+		//	wait for stages to run out
+		for (int t = 0; t < threads.size(); t++) try {
+			((Thread) threads.get(t)).join();
+		} catch (InterruptedException ie) {t--; /* we have to make sure all threads are finished before returning */}
+		
+		//	propagate fatal error
+		if (run.error instanceof RuntimeException)
+			throw ((RuntimeException) run.error);
+		else if (run.error instanceof Error)
+			throw ((Error) run.error);
+	}
+	
+	private static class PipelineRun {
+		final DocumentSource source;
+		final DocumentSink sink;
+		final Properties parameters;
+		private volatile Throwable error = null;
+		PipelineRun(DocumentSource source, DocumentSink sink, Properties parameters) {
+			this.source = source;
+			this.sink = sink;
+			this.parameters = parameters;
+		}
+		void documentFailed(MutableAnnotation doc, String stage, Exception error) {
+			try {
+				this.sink.documentFailed(doc, stage, error);
+			}
+			catch (RuntimeException re) {
+				this.abort(re);
+			}
+		}
+		synchronized void abort(Throwable error) {
+			if (this.error == null)
+				this.error = error;
+		}
+		boolean isAborted() {
+			return (this.error != null);
+		}
+	}
+	
+	private static abstract class Stage implements Runnable {
+		final PipelineRun run;
+		final String name;
+		private int concurrency;
+		private BlockingQueue input;
+		private Stage next;
+		private int active;
+		Stage(PipelineRun run, String name, int concurrency, BlockingQueue input, Stage next) {
+			this.run = run;
+			this.name = name;
+			this.concurrency = concurrency;
+			this.input = input;
+			this.next = next;
+		}
+		void start(ArrayList threads) {
+			this.active = this.concurrency;
+			for (int t = 0; t < this.concurrency; t++) {
+				Thread thread = new Thread(this, ("AnalyzerPipeline-" + this.name + "-" + t));
+				thread.start();
+				threads.add(thread);
+			}
+		}
+		void put(Object doc) {
+			while (true) try {
+				this.input.put(doc);
+				return;
+			} catch (InterruptedException ie) { /* we have to hand on the document, or the pipeline jams */ }
+		}
+		private Object take() {
+			while (true) try {
+				return this.input.take();
+			} catch (InterruptedException ie) { /* we have to wait for the end marker, or the pipeline jams */ }
+		}
+		public void run() {
+			try {
+				while (true) {
+					Object obj = this.take();
+					
+					//	end of stream, pass end marker on to sibling threads
+					if (obj == END) {
+						this.put(END);
+						return;
+					}
+					
+					//	once aborted, only let documents run out
+					MutableAnnotation doc = ((MutableAnnotation) obj);
+					if (this.run.isAborted())
+						continue;
+					
+					//	process document, and hand it to next stage on success
+					try {
+						this.process(doc);
+						if (this.next != null)
+							this.next.put(doc);
+					}
+					catch (Exception e) {
+						this.run.documentFailed(doc, this.name, e);
+					}
+					catch (Error e) {
+						this.run.abort(e);
+					}
+				}
+			}
+			
+			//	last thread of stage to finish signals end of stream to next stage
+			finally {
+				boolean last;
+				synchronized (this) {
+					last = (--this.active == 0);
+				}
+				if (last && (this.next != null))
+					this.next.put(END);
+			}
+		}
+		abstract void process(MutableAnnotation doc) throws Exception;
+	}
+	
+	private static class AnalyzerStage extends Stage {
+		private Analyzer analyzer;
+		AnalyzerStage(PipelineRun run, Analyzer analyzer, int concurrency, BlockingQueue input, Stage next) {
+			super(run, getStageName(analyzer), concurrency, input, next);
+			this.analyzer = analyzer;
+		}
+		void process(MutableAnnotation doc) throws Exception {
+			this.analyzer.process(doc, this.run.parameters);
+		}
+	}
+	
+	private static String getStageName(Analyzer analyzer) {
+		String name = analyzer.getClass().getName();
+		return name.substring(name.lastIndexOf('.') + 1);
+	}
+	
+	private static class StoreStage extends Stage {
+		StoreStage(PipelineRun run, int concurrency, BlockingQueue input) {
+			super(run, "Store", concurrency, input, null);
+		}
+		void process(MutableAnnotation doc) throws Exception {
+			this.run.sink.storeDocument(doc);
+		}
+	}
+}
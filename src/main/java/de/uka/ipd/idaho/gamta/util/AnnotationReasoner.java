@@ -29,7 +29,11 @@ package de.uka.ipd.idaho.gamta.util;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.uka.ipd.idaho.gamta.Annotation;
 import de.uka.ipd.idaho.gamta.Gamta;
@@ -478,159 +482,26 @@ public class AnnotationReasoner {
 		envWidth = Math.max(envWidth, (leftEnvWidth + rightEnvWidth));
 		
 		//	collect environments
+		TokenIndex tokens = new TokenIndex(data, caseSensitive);
 		Annotation[] basicAnnotations = data.getAnnotations(sourceType);
-		StringVector environments = new StringVector(caseSensitive);
-		StringVector environment = new StringVector();
-		int index;
-		for (int a = 0; a < basicAnnotations.length; a++) {
-			
-			//	switch from outmost left to outmost right environment
-			for (int effectiveLeftEnv, effectiveRightEnv = rightEnvWidth;
-				(effectiveLeftEnv = (envWidth - effectiveRightEnv)) >= leftEnvWidth;
-				effectiveRightEnv++) {
-				
-				environment.clear();
-				
-				//	extract environment
-				int left = basicAnnotations[a].getStartIndex() - effectiveLeftEnv;
-				if (left < 0) left = 0;
-				index = left;
-				while (index < basicAnnotations[a].getStartIndex()) {
-					environment.addElement(data.valueAt(index));
-					index++;
-				}
-				
-				int right = basicAnnotations[a].getEndIndex() + effectiveRightEnv;
-				if (right > data.size()) right = data.size();
-				index = basicAnnotations[a].getEndIndex();
-				while (index < right) {
-					environment.addElement(data.valueAt(index));
-					index++;
-				}
-				
-				//	store environment
-				environments.addElementIgnoreDuplicates(environment.concatStrings(" "), caseSensitive);
-			}
-			
-//			environment.clear();
-//			
-//			//	extract environment
-//			int left = basicAnnotations[a].getStartIndex() - leftEnvWidth;
-//			if (left < 0) left = 0;
-//			index = left;
-//			while (index < basicAnnotations[a].getStartIndex()) {
-//				environment.addElement(data.valueAt(index));
-//				index++;
-//			}
-//			
-//			int right = basicAnnotations[a].getEndIndex() + rightEnvWidth;
-//			if (right > data.size()) right = data.size();
-//			index = basicAnnotations[a].getEndIndex();
-//			while (index < right) {
-//				environment.addElement(data.valueAt(index));
-//				index++;
-//			}
-//			
-//			//	store environment
-//			environments.addElementIgnoreDuplicates(environment.concatStrings(" "), caseSensitive);
-		}
+		ContextTable environments = new ContextTable();
+		for (int a = 0; a < basicAnnotations.length; a++)
+			environments.addAll(tokens.getEnvironments(basicAnnotations[a], envWidth, leftEnvWidth, rightEnvWidth));
 		
 		Annotation[] targetAnnotations = data.getAnnotations(targetType);
 		ArrayList annotationList = new ArrayList();
 		
 		for (int a = 0; a < targetAnnotations.length; a++) {
 			
-			//	switch from outmost left to outmost right environment
-			for (int effectiveLeftEnv, effectiveRightEnv = rightEnvWidth;
-				(effectiveLeftEnv = (envWidth - effectiveRightEnv)) >= leftEnvWidth;
-				effectiveRightEnv++) {
-				
-				environment.clear();
-				
-				//	extract environment
-				int left = targetAnnotations[a].getStartIndex() - effectiveLeftEnv;
-				if (left < 0) left = 0;
-				index = left;
-				while (index < targetAnnotations[a].getStartIndex()) {
-					environment.addElement(data.valueAt(index));
-					index++;
-				}
-				
-				int right = targetAnnotations[a].getEndIndex() + effectiveRightEnv;
-				if (right > data.size()) right = data.size();
-				index = targetAnnotations[a].getEndIndex();
-				while (index < right) {
-					environment.addElement(data.valueAt(index));
-					index++;
-				}
-				
-				//	lookup environment
-				if (environments.contains(environment.concatStrings(" "))
-						|| (!caseSensitive && environments.containsIgnoreCase(environment.concatStrings(" ")))
-						) {
+			//	switch from outmost left to outmost right environment, and lookup environments
+			int[][] targetEnvironments = tokens.getEnvironments(targetAnnotations[a], envWidth, leftEnvWidth, rightEnvWidth);
+			for (int e = 0; e < targetEnvironments.length; e++)
+				if (environments.contains(targetEnvironments[e])) {
 					annotationList.add(Gamta.newAnnotation(data, null, targetAnnotations[a].getStartIndex(), targetAnnotations[a].size()));
-					
-					//	terminate environment shift loop
-					effectiveRightEnv = (envWidth + leftEnvWidth + 1);
+					break;
 				}
-			}
-			
-//			environment.clear();
-//			
-//			//	extract environment
-//			int left = annotations[a].getStartIndex() - leftEnvWidth;
-//			if (left < 0) left = 0;
-//			index = left;
-//			while (index < annotations[a].getStartIndex()) {
-//				environment.addElement(data.valueAt(index));
-//				index++;
-//			}
-//			
-//			int right = annotations[a].getEndIndex() + rightEnvWidth;
-//			if (right > data.size()) right = data.size();
-//			index = annotations[a].getEndIndex();
-//			while (index < right) {
-//				environment.addElement(data.valueAt(index));
-//				index++;
-//			}
-//			
-//			//	lookup environment
-//			if (environments.contains(environment.concatStrings(" "))
-//					|| (!caseSensitive && environments.containsIgnoreCase(environment.concatStrings(" ")))
-//					) {
-//				annotationList.add(Gamta.newAnnotation(data, null, targetAnnotations[a].getStartIndex(), targetAnnotations[a].size()));
-//			}
 		}
 		
-//		//	remove duplicates
-//		annotations = ((Annotation[]) annotationList.toArray(new Annotation[annotationList.size()]));
-//		annotationList.clear();
-//		int basicAnnotationIndex = 0;
-//		for (int a = 0; a < annotations.length; a++) {
-//			
-//			//	find possible duplicates
-//			while ((basicAnnotationIndex < basicAnnotations.length) && basicAnnotations[basicAnnotationIndex].getStartIndex() < annotations[a].getStartIndex())
-//				basicAnnotationIndex ++;
-//			
-//			//	no more basic Annotations left that could be equal to the new Annotation
-//			if (basicAnnotationIndex == basicAnnotations.length) {
-//				annotationList.add(annotations[a]);
-//			} else {
-//				int i = 0;
-//				while ((basicAnnotationIndex + i) < basicAnnotations.length) {
-//					if (basicAnnotations[basicAnnotationIndex + i].getStartIndex() > annotations[a].getStartIndex()) {
-//						annotationList.add(annotations[a]);
-//						i = basicAnnotations.length;
-//					} else if (basicAnnotations[basicAnnotationIndex + i].size() < annotations[a].size()) {
-//						annotationList.add(annotations[a]);
-//						i = basicAnnotations.length;
-//					} else if (basicAnnotations[basicAnnotationIndex + i].size() == annotations[a].size()) {
-//						i = basicAnnotations.length;
-//					} else i++;
-//				}
-//			}
-//		}
-		
 		return ((Annotation[]) annotationList.toArray(new Annotation[annotationList.size()]));
 	}
 	
@@ -709,233 +580,46 @@ public class AnnotationReasoner {
 		envWidth = Math.max(envWidth, (leftEnvWidth + rightEnvWidth));
 		
 		//	collect basic values and environments
+		TokenIndex tokens = new TokenIndex(data, caseSensitive);
 		Annotation[] sourceAnnotations = data.getAnnotations(sourceType);
-		
-		StringVector values = new StringVector();
-		
-		StringVector environments = new StringVector(caseSensitive);
-		StringVector environment = new StringVector();
-		int index;
-		
+		HashSet values = new HashSet();
+		ContextTable environments = new ContextTable();
 		for (int a = 0; a < sourceAnnotations.length; a++) {
-			
-			//	store value
-			values.addElementIgnoreDuplicates(sourceAnnotations[a].getValue(), caseSensitive);
-			
-			
-			//	switch from outmost left to outmost right environment
-			for (int effectiveLeftEnv, effectiveRightEnv = rightEnvWidth;
-				(effectiveLeftEnv = (envWidth - effectiveRightEnv)) >= leftEnvWidth;
-				effectiveRightEnv++) {
-				
-				environment.clear();
-				
-				//	extract environment
-				int left = sourceAnnotations[a].getStartIndex() - effectiveLeftEnv;
-				if (left < 0) left = 0;
-				index = left;
-				while (index < sourceAnnotations[a].getStartIndex()) {
-					environment.addElement(data.valueAt(index));
-					index++;
-				}
-				
-				int right = sourceAnnotations[a].getEndIndex() + effectiveRightEnv;
-				if (right > data.size()) right = data.size();
-				index = sourceAnnotations[a].getEndIndex();
-				while (index < right) {
-					environment.addElement(data.valueAt(index));
-					index++;
-				}
-				
-				//	store environment
-				environments.addElementIgnoreDuplicates(environment.concatStrings(" "), caseSensitive);
-			}
-			
-//			//	extract environment
-//			environment.clear();
-//			int left = sourceAnnotations[a].getStartIndex() - leftEnvWidth;
-//			if (left < 0) left = 0;
-//			index = left;
-//			while (index < sourceAnnotations[a].getStartIndex()) {
-//				environment.addElement(data.valueAt(index));
-//				index++;
-//			}
-//			
-//			int right = sourceAnnotations[a].getEndIndex() + rightEnvWidth;
-//			if (right > data.size()) right = data.size();
-//			index = sourceAnnotations[a].getEndIndex();
-//			while (index < right) {
-//				environment.addElement(data.valueAt(index));
-//				index++;
-//			}
-//			
-//			//	store environment
-//			environments.addElementIgnoreDuplicates(environment.concatStrings(" "), caseSensitive);
+			values.add(tokens.getValueKey(sourceAnnotations[a].getValue()));
+			environments.addAll(tokens.getEnvironments(sourceAnnotations[a], envWidth, leftEnvWidth, rightEnvWidth));
 		}
 		
-		//	get subjects of reasoning
+		//	get subjects of reasoning, and index their values and environments once, as these don't change between rounds
 		Annotation[] targetAnnotations = data.getAnnotations(targetType);
-		ArrayList annotationList = new ArrayList();
+		String[] targetValues = new String[targetAnnotations.length];
+		int[][][] targetEnvironments = new int[targetAnnotations.length][][];
+		for (int a = 0; a < targetAnnotations.length; a++) {
+			targetValues[a] = tokens.getValueKey(targetAnnotations[a].getValue());
+			targetEnvironments[a] = tokens.getEnvironments(targetAnnotations[a], envWidth, leftEnvWidth, rightEnvWidth);
+		}
+		boolean[] approved = new boolean[targetAnnotations.length];
 		
 		//	iterate
 		int round = 0;
 		boolean newAnnotation;
 		do {
-			newAnnotation = false;
 			
 			//	do value reasoning, collecting environments on the fly
-			for (int a = 0; a < targetAnnotations.length; a++) {
-				if ((targetAnnotations[a] != null) && (caseSensitive ? values.contains(targetAnnotations[a].getValue()) : values.containsIgnoreCase(targetAnnotations[a].getValue()))) {
-					annotationList.add(Gamta.newAnnotation(data, null, targetAnnotations[a].getStartIndex(), targetAnnotations[a].size()));
-					newAnnotation = true;
-					
-					//	switch from outmost left to outmost right environment
-					for (int effectiveLeftEnv, effectiveRightEnv = rightEnvWidth;
-						(effectiveLeftEnv = (envWidth - effectiveRightEnv)) >= leftEnvWidth;
-						effectiveRightEnv++) {
-						
-						environment.clear();
-						
-						//	extract environment
-						int left = targetAnnotations[a].getStartIndex() - effectiveLeftEnv;
-						if (left < 0) left = 0;
-						index = left;
-						while (index < targetAnnotations[a].getStartIndex()) {
-							environment.addElement(data.valueAt(index));
-							index++;
-						}
-						
-						int right = targetAnnotations[a].getEndIndex() + effectiveRightEnv;
-						if (right > data.size()) right = data.size();
-						index = targetAnnotations[a].getEndIndex();
-						while (index < right) {
-							environment.addElement(data.valueAt(index));
-							index++;
-						}
-						
-						//	store environment
-						environments.addElementIgnoreDuplicates(environment.concatStrings(" "), caseSensitive);
-					}
-					
-//					//	extract environment
-//					environment.clear();
-//					int left = targetAnnotations[a].getStartIndex() - leftEnvWidth;
-//					if (left < 0) left = 0;
-//					index = left;
-//					while (index < targetAnnotations[a].getStartIndex()) {
-//						environment.addElement(data.valueAt(index));
-//						index++;
-//					}
-//					
-//					int right = targetAnnotations[a].getEndIndex() + rightEnvWidth;
-//					if (right > data.size()) right = data.size();
-//					index = targetAnnotations[a].getEndIndex();
-//					while (index < right) {
-//						environment.addElement(data.valueAt(index));
-//						index++;
-//					}
-//					
-//					//	store environment
-//					environments.addElementIgnoreDuplicates(environment.concatStrings(" "), caseSensitive);
-					
-					//	remove approved Annotation from targets (saves duplicate elimination)
-					targetAnnotations[a] = null;
-				}
-			}
+			ValueReasoningRound valueRound = new ValueReasoningRound(targetValues, targetEnvironments, approved, values, environments);
+			runReasoningRound(valueRound, targetAnnotations.length);
+			newAnnotation = valueRound.newAnnotation;
 			
-			//	do environment reasoning, collecting values on the fly
-			for (int a = 0; a < targetAnnotations.length; a++) {
-				if (targetAnnotations[a] != null) {
-					
-					//	switch from outmost left to outmost right environment
-					for (int effectiveLeftEnv, effectiveRightEnv = rightEnvWidth;
-						(effectiveLeftEnv = (envWidth - effectiveRightEnv)) >= leftEnvWidth;
-						effectiveRightEnv++) {
-						
-						environment.clear();
-						
-						//	extract environment
-						int left = targetAnnotations[a].getStartIndex() - effectiveLeftEnv;
-						if (left < 0) left = 0;
-						index = left;
-						while (index < targetAnnotations[a].getStartIndex()) {
-							environment.addElement(data.valueAt(index));
-							index++;
-						}
-						
-						int right = targetAnnotations[a].getEndIndex() + effectiveRightEnv;
-						if (right > data.size()) right = data.size();
-						index = targetAnnotations[a].getEndIndex();
-						while (index < right) {
-							environment.addElement(data.valueAt(index));
-							index++;
-						}
-						
-						//	lookup environment
-						if (caseSensitive ? environments.contains(environment.concatStrings(" ")) : environments.containsIgnoreCase(environment.concatStrings(" "))) {
-							
-							//	store value for next round
-							values.addElementIgnoreDuplicates(targetAnnotations[a].getValue(), caseSensitive);
-							
-							/*
-							 * do not add annotation immediately (except in last
-							 * round or if environment is not shifting), for
-							 * this would prevent all environments except not
-							 * yet collected (possibly all but the matched one)
-							 * from being entered in the list. Just remember
-							 * value if there's a next round to do the rest
-							 */
-							if ((round + 1) == maximumRounds) {
-								annotationList.add(Gamta.newAnnotation(data, null, targetAnnotations[a].getStartIndex(), targetAnnotations[a].size()));
-								
-								//	remove approved Annotation from targets (saves duplicate elimination)
-								targetAnnotations[a] = null;
-							}
-							
-							else if ((leftEnvWidth + rightEnvWidth) == envWidth) {
-								annotationList.add(Gamta.newAnnotation(data, null, targetAnnotations[a].getStartIndex(), targetAnnotations[a].size()));
-								
-								//	remove approved Annotation from targets (saves duplicate elimination)
-								targetAnnotations[a] = null;
-							}
-							newAnnotation = true;
-							
-							//	terminate environment shift loop
-							effectiveRightEnv = (envWidth + leftEnvWidth + 1);
-						}
-					}
-					
-//					//	extract environment
-//					environment.clear();
-//					int left = targetAnnotations[a].getStartIndex() - leftEnvWidth;
-//					if (left < 0) left = 0;
-//					index = left;
-//					while (index < targetAnnotations[a].getStartIndex()) {
-//						environment.addElement(data.valueAt(index));
-//						index++;
-//					}
-//					
-//					int right = targetAnnotations[a].getEndIndex() + rightEnvWidth;
-//					if (right > data.size()) right = data.size();
-//					index = targetAnnotations[a].getEndIndex();
-//					while (index < right) {
-//						environment.addElement(data.valueAt(index));
-//						index++;
-//					}
-//					
-//					//	lookup environment
-//					if (caseSensitive ? environments.contains(environment.concatStrings(" ")) : environments.containsIgnoreCase(environment.concatStrings(" "))) {
-//						annotationList.add(Gamta.newAnnotation(data, null, targetAnnotations[a].getStartIndex(), targetAnnotations[a].size()));
-//						newAnnotation = true;
-//						
-//						//	store value for next round
-//						values.addElementIgnoreDuplicates(targetAnnotations[a].getValue(), caseSensitive);
-//						
-//						//	remove approved Annotation from targets (saves duplicate elimination)
-//						targetAnnotations[a] = null;
-//					}
-				}
-			}
+			/*
+			 * do environment reasoning, collecting values on the fly, but do
+			 * not approve annotations immediately (except in last round or if
+			 * environment is not shifting), for this would prevent all
+			 * environments except not yet collected (possibly all but the
+			 * matched one) from being entered in the list. Just remember value
+			 * if there's a next round to do the rest
+			 */
+			EnvironmentReasoningRound environmentRound = new EnvironmentReasoningRound(targetValues, targetEnvironments, approved, values, environments, (((round + 1) == maximumRounds) || ((leftEnvWidth + rightEnvWidth) == envWidth)));
+			runReasoningRound(environmentRound, targetAnnotations.length);
+			newAnnotation = (newAnnotation || environmentRound.newAnnotation);
 			
 			//	switch to next round
 			round ++;
@@ -944,8 +628,266 @@ public class AnnotationReasoner {
 		//	check whether to continue
 		while (newAnnotation && (round < maximumRounds));
 		
-		//	sort and return result Annotations
+		//	create, sort, and return result Annotations
+		ArrayList annotationList = new ArrayList();
+		for (int a = 0; a < targetAnnotations.length; a++) {
+			if (approved[a])
+				annotationList.add(Gamta.newAnnotation(data, null, targetAnnotations[a].getStartIndex(), targetAnnotations[a].size()));
+		}
 		Collections.sort(annotationList);
 		return ((Annotation[]) annotationList.toArray(new Annotation[annotationList.size()]));
 	}
+	
+	//	minimum number of target Annotations to distribute a reasoning round over multiple threads
+	private static final int MIN_PARALLEL_TARGETS = 1024;
+	
+	//	number of target Annotations a thread claims at a time in a reasoning round
+	private static final int TARGET_CHUNK_SIZE = 64;
+	
+	private static void runReasoningRound(ReasoningRound round, int targetCount) {
+		if (targetCount < MIN_PARALLEL_TARGETS)
+			round.run();
+		else ParallelJobRunner.runParallelJob(round, -1);
+	}
+	
+	/**
+	 * A round of reasoning, i.e., a single pass over the target Annotations
+	 * that are not approved yet. Each thread working on the round collects its
+	 * findings in its own partial result, and these partial results are merged
+	 * into the shared index when the thread is done, so the threads do not
+	 * have to synchronize on every single target Annotation. This works
+	 * because a value reasoning round only reads the known values and only
+	 * adds to the known environments, while an environment reasoning round
+	 * only reads the known environments and only adds to the known values.
+	 * 
+	 * @author sautter
+	 */
+	private static abstract class ReasoningRound implements Runnable {
+		final String[] targetValues;
+		final int[][][] targetEnvironments;
+		final boolean[] approved;
+		final HashSet values;
+		final ContextTable environments;
+		private AtomicInteger nextTarget = new AtomicInteger(0);
+		boolean newAnnotation = false;
+		ReasoningRound(String[] targetValues, int[][][] targetEnvironments, boolean[] approved, HashSet values, ContextTable environments) {
+			this.targetValues = targetValues;
+			this.targetEnvironments = targetEnvironments;
+			this.approved = approved;
+			this.values = values;
+			this.environments = environments;
+		}
+		public void run() {
+			PartialResult partial = new PartialResult();
+			for (int from; (from = this.nextTarget.getAndAdd(TARGET_CHUNK_SIZE)) < this.approved.length;) {
+				int to = Math.min((from + TARGET_CHUNK_SIZE), this.approved.length);
+				for (int t = from; t < to; t++) {
+					if (!this.approved[t])
+						this.doReasoning(t, partial);
+				}
+			}
+			this.mergeResult(partial);
+		}
+		abstract void doReasoning(int target, PartialResult partial);
+		synchronized void mergeResult(PartialResult partial) {
+			if (partial.newAnnotation)
+				this.newAnnotation = true;
+			if (partial.values != null)
+				this.values.addAll(partial.values);
+			if (partial.environments != null)
+				this.environments.addAll(partial.environments);
+		}
+	}
+	
+	//	the findings of a single thread in a reasoning round
+	private static class PartialResult {
+		boolean newAnnotation = false;
+		HashSet values = null;
+		ContextTable environments = null;
+	}
+	
+	private static class ValueReasoningRound extends ReasoningRound {
+		ValueReasoningRound(String[] targetValues, int[][][] targetEnvironments, boolean[] approved, HashSet values, ContextTable environments) {
+			super(targetValues, targetEnvironments, approved, values, environments);
+		}
+		void doReasoning(int target, PartialResult partial) {
+			if (!this.values.contains(this.targetValues[target]))
+				return;
+			
+			//	approve Annotation, and collect its environments for the next environment reasoning round
+			this.approved[target] = true;
+			partial.newAnnotation = true;
+			if (partial.environments == null)
+				partial.environments = new ContextTable();
+			partial.environments.addAll(this.targetEnvironments[target]);
+		}
+	}
+	
+	private static class EnvironmentReasoningRound extends ReasoningRound {
+		private boolean approve;
+		EnvironmentReasoningRound(String[] targetValues, int[][][] targetEnvironments, boolean[] approved, HashSet values, ContextTable environments, boolean approve) {
+			super(targetValues, targetEnvironments, approved, values, environments);
+			this.approve = approve;
+		}
+		void doReasoning(int target, PartialResult partial) {
+			int[][] targetEnvironments = this.targetEnvironments[target];
+			for (int e = 0; e < targetEnvironments.length; e++)
+				if (this.environments.contains(targetEnvironments[e])) {
+					
+					//	store value for next round
+					if (partial.values == null)
+						partial.values = new HashSet();
+					partial.values.add(this.targetValues[target]);
+					
+					//	approve Annotation right away if required to
+					if (this.approve)
+						this.approved[target] = true;
+					partial.newAnnotation = true;
+					return;
+				}
+		}
+	}
+	
+	/**
+	 * An index of the token values of a document, mapping each distinct value
+	 * to an integer ID, so environments can be represented as arrays of IDs
+	 * instead of concatenated strings. Values are assigned IDs on demand. In
+	 * case insensitive mode, values differing only in case map to the same ID.
+	 * 
+	 * @author sautter
+	 */
+	private static class TokenIndex {
+		private QueriableAnnotation data;
+		private boolean caseSensitive;
+		private int[] tokenIds;
+		private HashMap valueIds = new HashMap();
+		TokenIndex(QueriableAnnotation data, boolean caseSensitive) {
+			this.data = data;
+			this.caseSensitive = caseSensitive;
+			this.tokenIds = new int[data.size()];
+			Arrays.fill(this.tokenIds, -1);
+		}
+		String getValueKey(String value) {
+			return (this.caseSensitive ? value : value.toLowerCase());
+		}
+		int getTokenId(int index) {
+			if (this.tokenIds[index] == -1) {
+				String value = this.getValueKey(this.data.valueAt(index));
+				Integer id = ((Integer) this.valueIds.get(value));
+				if (id == null) {
+					id = new Integer(this.valueIds.size());
+					this.valueIds.put(value, id);
+				}
+				this.tokenIds[index] = id.intValue();
+			}
+			return this.tokenIds[index];
+		}
+		
+		/**
+		 * Extract the environments of an Annotation, switching from the
+		 * outmost left to the outmost right one. Each environment holds the
+		 * IDs of the tokens to the left of the Annotation, followed by the IDs
+		 * of the tokens to the right of it.
+		 * @param annotation the Annotation to extract the environments of
+		 * @param envWidth the overall number of environment tokens
+		 * @param leftEnvWidth the minimum number of environment tokens to the
+		 *            left of the Annotation
+		 * @param rightEnvWidth the minimum number of environment tokens to the
+		 *            right of the Annotation
+		 * @return an array holding the environments
+		 */
+		int[][] getEnvironments(Annotation annotation, int envWidth, int leftEnvWidth, int rightEnvWidth) {
+			int[][] environments = new int[envWidth - leftEnvWidth - rightEnvWidth + 1][];
+			int startIndex = annotation.getStartIndex();
+			int endIndex = annotation.getEndIndex();
+			for (int effectiveLeftEnv, effectiveRightEnv = rightEnvWidth, e = 0;
+				(effectiveLeftEnv = (envWidth - effectiveRightEnv)) >= leftEnvWidth;
+				effectiveRightEnv++, e++) {
+				int left = Math.max((startIndex - effectiveLeftEnv), 0);
+				int right = Math.min((endIndex + effectiveRightEnv), this.data.size());
+				int[] environment = new int[(startIndex - left) + (right - endIndex)];
+				int i = 0;
+				for (int index = left; index < startIndex; index++)
+					environment[i++] = this.getTokenId(index);
+				for (int index = endIndex; index < right; index++)
+					environment[i++] = this.getTokenId(index);
+				environments[e] = environment;
+			}
+			return environments;
+		}
+	}
+	
+	/**
+	 * A hash table of token ID sequences (the n-grams forming the environments
+	 * of Annotations), counting how often each sequence was added. The table
+	 * uses open addressing with linear probing on plain arrays, avoiding the
+	 * creation of a wrapper object per entry.
+	 * 
+	 * @author sautter
+	 */
+	private static class ContextTable {
+		private int[][] keys = new int[64][];
+		private int[] hashes = new int[64];
+		private int[] counts = new int[64];
+		private int size = 0;
+		
+		void addAll(int[][] keys) {
+			for (int k = 0; k < keys.length; k++)
+				this.add(keys[k], 1);
+		}
+		void addAll(ContextTable ct) {
+			for (int k = 0; k < ct.keys.length; k++) {
+				if (ct.keys[k] != null)
+					this.add(ct.keys[k], ct.counts[k]);
+			}
+		}
+		void add(int[] key, int count) {
+			if ((this.size * 2) >= this.keys.length)
+				this.grow();
+			int hash = hashCode(key);
+			int slot = this.findSlot(key, hash);
+			if (this.keys[slot] == null) {
+				this.keys[slot] = key;
+				this.hashes[slot] = hash;
+				this.size++;
+			}
+			this.counts[slot] += count;
+		}
+		boolean contains(int[] key) {
+			return (this.getCount(key) != 0);
+		}
+		int getCount(int[] key) {
+			int slot = this.findSlot(key, hashCode(key));
+			return ((this.keys[slot] == null) ? 0 : this.counts[slot]);
+		}
+		private int findSlot(int[] key, int hash) {
+			int mask = (this.keys.length - 1);
+			for (int slot = (hash & mask);; slot = ((slot + 1) & mask)) {
+				if (this.keys[slot] == null)
+					return slot;
+				if ((this.hashes[slot] == hash) && Arrays.equals(this.keys[slot], key))
+					return slot;
+			}
+		}
+		private void grow() {
+			int[][] keys = this.keys;
+			int[] hashes = this.hashes;
+			int[] counts = this.counts;
+			this.keys = new int[keys.length * 2][];
+			this.hashes = new int[keys.length * 2];
+			this.counts = new int[keys.length * 2];
+			for (int k = 0; k < keys.length; k++) {
+				if (keys[k] == null)
+					continue;
+				int slot = this.findSlot(keys[k], hashes[k]);
+				this.keys[slot] = keys[k];
+				this.hashes[slot] = hashes[k];
+				this.counts[slot] = counts[k];
+			}
+		}
+		private static int hashCode(int[] key) {
+			int hash = Arrays.hashCode(key);
+			return (hash ^ (hash >>> 16)); // spread high bits, as table sizes are powers of two
+		}
+	}
 }
@@ -0,0 +1,520 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitt Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITT KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.util;
+
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.uka.ipd.idaho.gamta.Annotation;
+import de.uka.ipd.idaho.gamta.AnnotationListener;
+import de.uka.ipd.idaho.gamta.CharSequenceListener;
+import de.uka.ipd.idaho.gamta.MutableAnnotation;
+import de.uka.ipd.idaho.gamta.MutableCharSequence.CharSequenceEvent;
+import de.uka.ipd.idaho.gamta.QueriableAnnotation;
+
+/**
+ * Wrapper for Analyzers measuring each invocation of the wrapped Analyzer's
+ * <code>process()</code> method. In particular, this class measures wall
+ * time, CPU time and allocated bytes of the processing thread (if the JVM
+ * supports the latter two), the change in the number of tokens and
+ * annotations, and the number of change events fired by the processed
+ * document. The measurements are aggregated in <code>Statistics</code>
+ * objects, one for each Analyzer name, which are available through the
+ * <code>getStatistics()</code> method, and as a whole in the report created
+ * by the <code>getReport()</code> method. In addition, each individual
+ * measurement is handed to any <code>MetricsRegistry</code> registered via
+ * the <code>addMetricsRegistry()</code> method, e.g. to export it to an
+ * external monitoring facility.<br>
+ * CPU time and allocated bytes only cover the thread calling the
+ * <code>process()</code> method; work the wrapped Analyzer does in other
+ * threads, e.g. via <code>ParallelJobRunner</code>, is not included.
+ * 
+ * @author sautter
+ */
+public class InstrumentedAnalyzer implements MonitorableAnalyzer {
+	
+	/**
+	 * The measurements taken during a single invocation of the
+	 * <code>process()</code> method of an instrumented Analyzer. Times are in
+	 * nanoseconds. Values that could not be measured are -1.
+	 * 
+	 * @author sautter
+	 */
+	public static class Measurement {
+		
+		/** the wall time the invocation took */
+		public final long wallNanos;
+		
+		/** the CPU time the processing thread used */
+		public final long cpuNanos;
+		
+		/** the number of bytes the processing thread allocated */
+		public final long allocatedBytes;
+		
+		/** the change in the number of tokens in the processed document */
+		public final int tokenDelta;
+		
+		/** the change in the number of annotations in the processed document */
+		public final int annotationDelta;
+		
+		/** the number of change events the processed document fired */
+		public final int changeEvents;
+		
+		Measurement(long wallNanos, long cpuNanos, long allocatedBytes, int tokenDelta, int annotationDelta, int changeEvents) {
+			this.wallNanos = wallNanos;
+			this.cpuNanos = cpuNanos;
+			this.allocatedBytes = allocatedBytes;
+			this.tokenDelta = tokenDelta;
+			this.annotationDelta = annotationDelta;
+			this.changeEvents = changeEvents;
+		}
+	}
+	
+	/**
+	 * Receiver of the measurements of instrumented Analyzers, e.g. for
+	 * exporting them to an external monitoring facility. The
+	 * <code>record()</code> method is called after every invocation of an
+	 * instrumented Analyzer, in the thread that called the Analyzer, so
+	 * implementations should be quick and thread safe.
+	 * 
+	 * @author sautter
+	 */
+	public static interface MetricsRegistry {
+		
+		/**
+		 * Record the measurements taken during an invocation of an
+		 * instrumented Analyzer.
+		 * @param analyzerName the name of the Analyzer
+		 * @param measurement the measurements
+		 */
+		public abstract void record(String analyzerName, Measurement measurement);
+	}
+	
+	/**
+	 * Aggregate statistics over all the invocations of the instrumented
+	 * Analyzers with a given name.
+	 * 
+	 * @author sautter
+	 */
+	public static class Statistics {
+		private final String analyzerName;
+		private long invocations = 0;
+		private long wallNanos = 0;
+		private long maxWallNanos = 0;
+		private long cpuNanos = 0;
+		private long allocatedBytes = 0;
+		private long tokenDelta = 0;
+		private long annotationDelta = 0;
+		private long changeEvents = 0;
+		private boolean cpuMeasured = true;
+		private boolean allocationMeasured = true;
+		
+		Statistics(String analyzerName) {
+			this.analyzerName = analyzerName;
+		}
+		
+		synchronized void add(Measurement measurement) {
+			this.invocations++;
+			this.wallNanos += measurement.wallNanos;
+			this.maxWallNanos = Math.max(this.maxWallNanos, measurement.wallNanos);
+			if (measurement.cpuNanos < 0)
+				this.cpuMeasured = false;
+			else this.cpuNanos += measurement.cpuNanos;
+			if (measurement.allocatedBytes < 0)
+				this.allocationMeasured = false;
+			else this.allocatedBytes += measurement.allocatedBytes;
+			this.tokenDelta += measurement.tokenDelta;
+			this.annotationDelta += measurement.annotationDelta;
+			this.changeEvents += measurement.changeEvents;
+		}
+		
+		synchronized void reset() {
+			this.invocations = 0;
+			this.wallNanos = 0;
+			this.maxWallNanos = 0;
+			this.cpuNanos = 0;
+			this.allocatedBytes = 0;
+			this.tokenDelta = 0;
+			this.annotationDelta = 0;
+			this.changeEvents = 0;
+			this.cpuMeasured = true;
+			this.allocationMeasured = true;
+		}
+		
+		/**
+		 * @return the name of the Analyzer
+		 */
+		public String getAnalyzerName() {
+			return this.analyzerName;
+		}
+		
+		/**
+		 * @return the number of invocations
+		 */
+		public synchronized long getInvocations() {
+			return this.invocations;
+		}
+		
+		/**
+		 * @return the total wall time of all invocations, in nanoseconds
+		 */
+		public synchronized long getWallNanos() {
+			return this.wallNanos;
+		}
+		
+		/**
+		 * @return the longest wall time of a single invocation, in
+		 *            nanoseconds
+		 */
+		public synchronized long getMaxWallNanos() {
+			return this.maxWallNanos;
+		}
+		
+		/**
+		 * @return the total CPU time of all invocations, in nanoseconds, or -1
+		 *            if the JVM does not support measuring CPU time
+		 */
+		public synchronized long getCpuNanos() {
+			return (this.cpuMeasured ? this.cpuNanos : -1);
+		}
+		
+		/**
+		 * @return the total number of bytes allocated in all invocations, or
+		 *            -1 if the JVM does not support measuring allocation
+		 */
+		public synchronized long getAllocatedBytes() {
+			return (this.allocationMeasured ? this.allocatedBytes : -1);
+		}
+		
+		/**
+		 * @return the total change in the number of tokens
+		 */
+		public synchronized long getTokenDelta() {
+			return this.tokenDelta;
+		}
+		
+		/**
+		 * @return the total change in the number of annotations
+		 */
+		public synchronized long getAnnotationDelta() {
+			return this.annotationDelta;
+		}
+		
+		/**
+		 * @return the total number of change events fired
+		 */
+		public synchronized long getChangeEvents() {
+			return this.changeEvents;
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		public synchronized String toString() {
+			StringBuffer sb = new StringBuffer(this.analyzerName);
+			sb.append(": " + this.invocations + " invocations");
+			sb.append(", wall " + (this.wallNanos / 1000000) + "ms");
+			sb.append(" (avg " + ((this.invocations == 0) ? 0 : (this.wallNanos / (this.invocations * 1000000))) + "ms, max " + (this.maxWallNanos / 1000000) + "ms)");
+			if (this.cpuMeasured)
+				sb.append(", CPU " + (this.cpuNanos / 1000000) + "ms");
+			if (this.allocationMeasured)
+				sb.append(", allocated " + (this.allocatedBytes / 1024) + "KB");
+			sb.append(", tokens " + ((this.tokenDelta < 0) ? "" : "+") + this.tokenDelta);
+			sb.append(", annotations " + ((this.annotationDelta < 0) ? "" : "+") + this.annotationDelta);
+			sb.append(", " + this.changeEvents + " change events");
+			return sb.toString();
+		}
+	}
+	
+	private static TreeMap statisticsByName = new TreeMap();
+	private static MetricsRegistry[] metricsRegistries = new MetricsRegistry[0];
+	
+	/**
+	 * Retrieve the aggregate statistics for the instrumented Analyzers with a
+	 * given name.
+	 * @param analyzerName the name of the Analyzer
+	 * @return the statistics, or null if there are no instrumented Analyzers
+	 *            with the argument name
+	 */
+	public static Statistics getStatistics(String analyzerName) {
+		synchronized (statisticsByName) {
+			return ((Statistics) statisticsByName.get(analyzerName));
+		}
+	}
+	
+	/**
+	 * Retrieve the aggregate statistics for all instrumented Analyzers.
+	 * @return an array holding the statistics
+	 */
+	public static Statistics[] getStatistics() {
+		synchronized (statisticsByName) {
+			return ((Statistics[]) statisticsByName.values().toArray(new Statistics[statisticsByName.size()]));
+		}
+	}
+	
+	/**
+	 * Discard the aggregate statistics for all instrumented Analyzers. The
+	 * statistics are zeroed in place rather than removed, so existing
+	 * InstrumentedAnalyzer instances keep aggregating into the ones visible
+	 * via getStatistics().
+	 */
+	public static void resetStatistics() {
+		synchronized (statisticsByName) {
+			for (Iterator sit = statisticsByName.values().iterator(); sit.hasNext();)
+				((Statistics) sit.next()).reset();
+		}
+	}
+	
+	private static Statistics getOrCreateStatistics(String analyzerName) {
+		synchronized (statisticsByName) {
+			Statistics statistics = ((Statistics) statisticsByName.get(analyzerName));
+			if (statistics == null) {
+				statistics = new Statistics(analyzerName);
+				statisticsByName.put(analyzerName, statistics);
+			}
+			return statistics;
+		}
+	}
+	
+	/**
+	 * Create a report from the aggregate statistics for all instrumented
+	 * Analyzers, one line per Analyzer name, sorted by total wall time in
+	 * descending order, so the Analyzers dominating processing time come
+	 * first.
+	 * @return the report
+	 */
+	public static String getReport() {
+		Statistics[] statistics = getStatistics();
+		Arrays.sort(statistics, new Comparator() {
+			public int compare(Object obj1, Object obj2) {
+				long wn1 = ((Statistics) obj1).getWallNanos();
+				long wn2 = ((Statistics) obj2).getWallNanos();
+				return ((wn1 == wn2) ? 0 : ((wn1 < wn2) ? 1 : -1));
+			}
+		});
+		StringBuffer report = new StringBuffer();
+		for (int s = 0; s < statistics.length; s++) {
+			report.append(statistics[s].toString());
+			report.append("\n");
+		}
+		return report.toString();
+	}
+	
+	/**
+	 * Register a metrics registry to receive the measurements of all
+	 * instrumented Analyzers.
+	 * @param mr the metrics registry to add
+	 */
+	public static synchronized void addMetricsRegistry(MetricsRegistry mr) {
+		if (mr == null)
+			return;
+		ArrayList mrs = new ArrayList(Arrays.asList(metricsRegistries));
+		if (mrs.contains(mr))
+			return;
+		mrs.add(mr);
+		metricsRegistries = ((MetricsRegistry[]) mrs.toArray(new MetricsRegistry[mrs.size()]));
+	}
+	
+	/**
+	 * Remove a metrics registry.
+	 * @param mr the metrics registry to remove
+	 */
+	public static synchronized void removeMetricsRegistry(MetricsRegistry mr) {
+		ArrayList mrs = new ArrayList(Arrays.asList(metricsRegistries));
+		if (mrs.remove(mr))
+			metricsRegistries = ((MetricsRegistry[]) mrs.toArray(new MetricsRegistry[mrs.size()]));
+	}
+	
+	private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+	private static final boolean cpuTimeSupported;
+	static {
+		boolean cts = false;
+		try {
+			cts = threadMXBean.isCurrentThreadCpuTimeSupported();
+			if (cts && !threadMXBean.isThreadCpuTimeEnabled())
+				threadMXBean.setThreadCpuTimeEnabled(true);
+		} catch (Exception e) { /* we have to do without CPU time */ }
+		cpuTimeSupported = cts;
+	}
+	
+	//	com.sun.management.ThreadMXBean.getThreadAllocatedBytes(long), not available on all JVMs
+	private static final Method getThreadAllocatedBytes;
+	static {
+		Method gtab = null;
+		try {
+			Method method = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", new Class[] {long.class});
+			if (method.getDeclaringClass().isInstance(threadMXBean) && (((Long) method.invoke(threadMXBean, new Object[] {new Long(Thread.currentThread().getId())})).longValue() >= 0))
+				gtab = method;
+		} catch (Exception e) { /* we have to do without allocation measurement */ }
+		getThreadAllocatedBytes = gtab;
+	}
+	
+	private static long getCurrentThreadCpuTime() {
+		return (cpuTimeSupported ? threadMXBean.getCurrentThreadCpuTime() : -1);
+	}
+	
+	private static long getCurrentThreadAllocatedBytes() {
+		if (getThreadAllocatedBytes == null)
+			return -1;
+		try {
+			return ((Long) getThreadAllocatedBytes.invoke(threadMXBean, new Object[] {new Long(Thread.currentThread().getId())})).longValue();
+		}
+		catch (Exception e) {
+			return -1;
+		}
+	}
+	
+	private Analyzer analyzer;
+	private String analyzerName;
+	private Statistics statistics;
+	
+	/**
+	 * Constructor naming the statistics after the class of the wrapped
+	 * Analyzer
+	 * @param analyzer the Analyzer to instrument
+	 */
+	public InstrumentedAnalyzer(Analyzer analyzer) {
+		this(analyzer, analyzer.getClass().getName());
+	}
+	
+	/**
+	 * Constructor
+	 * @param analyzer the Analyzer to instrument
+	 * @param analyzerName the name to aggregate the statistics under
+	 */
+	public InstrumentedAnalyzer(Analyzer analyzer, String analyzerName) {
+		this.analyzer = analyzer;
+		this.analyzerName = analyzerName;
+		this.statistics = getOrCreateStatistics(analyzerName);
+	}
+	
+	/**
+	 * @return the wrapped Analyzer
+	 */
+	public Analyzer getAnalyzer() {
+		return this.analyzer;
+	}
+	
+	/**
+	 * @return the name the statistics are aggregated under
+	 */
+	public String getAnalyzerName() {
+		return this.analyzerName;
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.Analyzer#process(de.uka.ipd.idaho.gamta.MutableAnnotation, java.util.Properties)
+	 */
+	public void process(MutableAnnotation data, Properties parameters) {
+		this.process(data, parameters, null);
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.MonitorableAnalyzer#process(de.uka.ipd.idaho.gamta.MutableAnnotation, java.util.Properties, de.uka.ipd.idaho.gamta.util.ProgressMonitor)
+	 */
+	public void process(MutableAnnotation data, Properties parameters, ProgressMonitor pm) {
+		ChangeCounter changeCounter = new ChangeCounter();
+		data.addCharSequenceListener(changeCounter);
+		data.addAnnotationListener(changeCounter);
+		int startSize = data.size();
+		long startAllocatedBytes = getCurrentThreadAllocatedBytes();
+		long startCpuNanos = getCurrentThreadCpuTime();
+		long startNanos = System.nanoTime();
+		try {
+			if ((pm != null) && (this.analyzer instanceof MonitorableAnalyzer))
+				((MonitorableAnalyzer) this.analyzer).process(data, parameters, pm);
+			else this.analyzer.process(data, parameters);
+		}
+		finally {
+			long wallNanos = (System.nanoTime() - startNanos);
+			long cpuNanos = ((startCpuNanos < 0) ? -1 : (getCurrentThreadCpuTime() - startCpuNanos));
+			long allocatedBytes = ((startAllocatedBytes < 0) ? -1 : (getCurrentThreadAllocatedBytes() - startAllocatedBytes));
+			data.removeCharSequenceListener(changeCounter);
+			data.removeAnnotationListener(changeCounter);
+			Measurement measurement = new Measurement(wallNanos, cpuNanos, allocatedBytes, (data.size() - startSize), ((int) (changeCounter.annotationsAdded.get() - changeCounter.annotationsRemoved.get())), ((int) changeCounter.changeEvents.get()));
+			this.statistics.add(measurement);
+			MetricsRegistry[] mrs = metricsRegistries;
+			for (int r = 0; r < mrs.length; r++)
+				mrs[r].record(this.analyzerName, measurement);
+		}
+	}
+	
+	//	every edit fires a CharSequenceEvent, token changes fire a TokenSequenceEvent on top of it, so we only count the former
+	private static class ChangeCounter implements CharSequenceListener, AnnotationListener {
+		final AtomicLong changeEvents = new AtomicLong();
+		final AtomicLong annotationsAdded = new AtomicLong();
+		final AtomicLong annotationsRemoved = new AtomicLong();
+		public void charSequenceChanged(CharSequenceEvent change) {
+			this.changeEvents.incrementAndGet();
+		}
+		public void annotationAdded(QueriableAnnotation doc, Annotation annotation) {
+			this.changeEvents.incrementAndGet();
+			this.annotationsAdded.incrementAndGet();
+		}
+		public void annotationRemoved(QueriableAnnotation doc, Annotation annotation) {
+			this.changeEvents.incrementAndGet();
+			this.annotationsRemoved.incrementAndGet();
+		}
+		public void annotationTypeChanged(QueriableAnnotation doc, Annotation annotation, String oldType) {
+			this.changeEvents.incrementAndGet();
+		}
+		public void annotationAttributeChanged(QueriableAnnotation doc, Annotation annotation, String attributeName, Object oldValue) {
+			this.changeEvents.incrementAndGet();
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.Analyzer#setDataProvider(de.uka.ipd.idaho.gamta.util.AnalyzerDataProvider)
+	 */
+	public void setDataProvider(AnalyzerDataProvider dataProvider) {
+		this.analyzer.setDataProvider(dataProvider);
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.Analyzer#configureProcessor()
+	 */
+	public void configureProcessor() {
+		this.analyzer.configureProcessor();
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.Analyzer#exit()
+	 */
+	public void exit() {
+		this.analyzer.exit();
+	}
+}
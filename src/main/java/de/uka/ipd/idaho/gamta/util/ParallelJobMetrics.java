@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitt Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITT KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.util;
+
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics sink for <code>ParallelJobRunner</code>, aggregating wall time,
+ * worker busy, idle, and queue wait time, item throughput, and load imbalance
+ * over all the parallel jobs executed while an instance of this class is
+ * installed via <code>ParallelJobRunner.setMetrics()</code>. Client code can
+ * retrieve the current values as a consistent <code>Snapshot</code>, or make
+ * them available through JMX via the <code>registerMBean()</code> method.
+ * 
+ * @author sautter
+ */
+public class ParallelJobMetrics implements ParallelJobMetricsMBean {
+	
+	private long jobCount = 0;
+	private long workerCount = 0;
+	private long itemCount = 0;
+	private long wallNanos = 0;
+	private long busyNanos = 0;
+	private long idleNanos = 0;
+	private long queueWaitNanos = 0;
+	private long maxQueueWaitNanos = 0;
+	private double loadImbalanceSum = 0;
+	private double maxLoadImbalance = 0;
+	
+	private ObjectName mBeanName = null;
+	
+	/**
+	 * Record the execution of a parallel job. The arrays hold the times for
+	 * the individual workers that executed the job.
+	 * @param wallNanos the wall time of the job
+	 * @param queueWaitNanos the times the workers waited to be started
+	 * @param busyNanos the times the workers spent running the job
+	 * @param items the number of items processed in the job
+	 */
+	synchronized void recordJob(long wallNanos, long[] queueWaitNanos, long[] busyNanos, long items) {
+		this.jobCount++;
+		this.workerCount += busyNanos.length;
+		this.itemCount += items;
+		this.wallNanos += wallNanos;
+		long jobBusyNanos = 0;
+		long maxBusyNanos = 0;
+		for (int w = 0; w < busyNanos.length; w++) {
+			jobBusyNanos += busyNanos[w];
+			maxBusyNanos = Math.max(maxBusyNanos, busyNanos[w]);
+			this.queueWaitNanos += queueWaitNanos[w];
+			this.maxQueueWaitNanos = Math.max(this.maxQueueWaitNanos, queueWaitNanos[w]);
+			this.idleNanos += Math.max(0, (wallNanos - queueWaitNanos[w] - busyNanos[w]));
+		}
+		this.busyNanos += jobBusyNanos;
+		if (jobBusyNanos != 0) {
+			double loadImbalance = ((((double) maxBusyNanos) * busyNanos.length) / jobBusyNanos) - 1;
+			this.loadImbalanceSum += loadImbalance;
+			this.maxLoadImbalance = Math.max(this.maxLoadImbalance, loadImbalance);
+		}
+	}
+	
+	/**
+	 * Retrieve a snapshot of the current values of the metrics.
+	 * @return a snapshot of the metrics
+	 */
+	public synchronized Snapshot getSnapshot() {
+		return new Snapshot(this.jobCount, this.workerCount, this.itemCount, this.wallNanos, this.busyNanos, this.idleNanos, this.queueWaitNanos, this.maxQueueWaitNanos, this.loadImbalanceSum, this.maxLoadImbalance);
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.ParallelJobMetricsMBean#reset()
+	 */
+	public synchronized void reset() {
+		this.jobCount = 0;
+		this.workerCount = 0;
+		this.itemCount = 0;
+		this.wallNanos = 0;
+		this.busyNanos = 0;
+		this.idleNanos = 0;
+		this.queueWaitNanos = 0;
+		this.maxQueueWaitNanos = 0;
+		this.loadImbalanceSum = 0;
+		this.maxLoadImbalance = 0;
+	}
+	
+	/**
+	 * Register this metrics sink with the platform MBean server, so the
+	 * metrics are available through JMX.
+	 * @param name the name to register the metrics under, distinguishing
+	 *            multiple instances
+	 * @throws JMException
+	 */
+	public synchronized void registerMBean(String name) throws JMException {
+		if (this.mBeanName != null)
+			return;
+		MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		ObjectName mBeanName = new ObjectName(ParallelJobMetrics.class.getPackage().getName() + ":type=ParallelJobMetrics,name=" + ObjectName.quote(name));
+		mbs.registerMBean(this, mBeanName);
+		this.mBeanName = mBeanName;
+	}
+	
+	/**
+	 * Remove this metrics sink from the platform MBean server.
+	 * @throws JMException
+	 */
+	public synchronized void unregisterMBean() throws JMException {
+		if (this.mBeanName == null)
+			return;
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.mBeanName);
+		this.mBeanName = null;
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.ParallelJobMetricsMBean#getJobCount()
+	 */
+	public long getJobCount() {
+		return this.getSnapshot().getJobCount();
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.ParallelJobMetricsMBean#getWorkerCount()
+	 */
+	public long getWorkerCount() {
+		return this.getSnapshot().getWorkerCount();
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.ParallelJobMetricsMBean#getItemCount()
+	 */
+	public long getItemCount() {
+		return this.getSnapshot().getItemCount();
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.ParallelJobMetricsMBean#getWallTime()
+	 */
+	public long getWallTime() {
+		return this.getSnapshot().getWallTime();
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.ParallelJobMetricsMBean#getAverageWallTime()
+	 */
+	public double getAverageWallTime() {
+		return this.getSnapshot().getAverageWallTime();
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.ParallelJobMetricsMBean#getBusyTime()
+	 */
+	public long getBusyTime() {
+		return this.getSnapshot().getBusyTime();
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.ParallelJobMetricsMBean#getIdleTime()
+	 */
+	public long getIdleTime() {
+		return this.getSnapshot().getIdleTime();
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.ParallelJobMetricsMBean#getQueueWaitTime()
+	 */
+	public long getQueueWaitTime() {
+		return this.getSnapshot().getQueueWaitTime();
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.ParallelJobMetricsMBean#getMaxQueueWaitTime()
+	 */
+	public long getMaxQueueWaitTime() {
+		return this.getSnapshot().getMaxQueueWaitTime();
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.ParallelJobMetricsMBean#getItemThroughput()
+	 */
+	public double getItemThroughput() {
+		return this.getSnapshot().getItemThroughput();
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.ParallelJobMetricsMBean#getUtilization()
+	 */
+	public double getUtilization() {
+		return this.getSnapshot().getUtilization();
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.ParallelJobMetricsMBean#getAverageLoadImbalance()
+	 */
+	public double getAverageLoadImbalance() {
+		return this.getSnapshot().getAverageLoadImbalance();
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.gamta.util.ParallelJobMetricsMBean#getMaxLoadImbalance()
+	 */
+	public double getMaxLoadImbalance() {
+		return this.getSnapshot().getMaxLoadImbalance();
+	}
+	
+	/**
+	 * An immutable snapshot of the values of a <code>ParallelJobMetrics</code>
+	 * at a given point in time. All times are in milliseconds.
+	 * 
+	 * @author sautter
+	 */
+	public static final class Snapshot {
+		private final long jobCount;
+		private final long workerCount;
+		private final long itemCount;
+		private final long wallNanos;
+		private final long busyNanos;
+		private final long idleNanos;
+		private final long queueWaitNanos;
+		private final long maxQueueWaitNanos;
+		private final double loadImbalanceSum;
+		private final double maxLoadImbalance;
+		Snapshot(long jobCount, long workerCount, long itemCount, long wallNanos, long busyNanos, long idleNanos, long queueWaitNanos, long maxQueueWaitNanos, double loadImbalanceSum, double maxLoadImbalance) {
+			this.jobCount = jobCount;
+			this.workerCount = workerCount;
+			this.itemCount = itemCount;
+			this.wallNanos = wallNanos;
+			this.busyNanos = busyNanos;
+			this.idleNanos = idleNanos;
+			this.queueWaitNanos = queueWaitNanos;
+			this.maxQueueWaitNanos = maxQueueWaitNanos;
+			this.loadImbalanceSum = loadImbalanceSum;
+			this.maxLoadImbalance = maxLoadImbalance;
+		}
+		
+		/**
+		 * @return the number of parallel jobs executed
+		 */
+		public long getJobCount() {
+			return this.jobCount;
+		}
+		
+		/**
+		 * @return the number of parallel executions of all jobs
+		 */
+		public long getWorkerCount() {
+			return this.workerCount;
+		}
+		
+		/**
+		 * @return the number of items processed by all jobs
+		 */
+		public long getItemCount() {
+			return this.itemCount;
+		}
+		
+		/**
+		 * @return the total wall time of all jobs
+		 */
+		public long getWallTime() {
+			return (this.wallNanos / 1000000);
+		}
+		
+		/**
+		 * @return the average wall time of a job
+		 */
+		public double getAverageWallTime() {
+			return ((this.jobCount == 0) ? 0 : (((double) this.wallNanos) / (this.jobCount * 1000000)));
+		}
+		
+		/**
+		 * @return the total time workers spent running a job
+		 */
+		public long getBusyTime() {
+			return (this.busyNanos / 1000000);
+		}
+		
+		/**
+		 * @return the total time workers spent waiting for the other workers
+		 *            of their job to finish
+		 */
+		public long getIdleTime() {
+			return (this.idleNanos / 1000000);
+		}
+		
+		/**
+		 * @return the total time workers waited to be started
+		 */
+		public long getQueueWaitTime() {
+			return (this.queueWaitNanos / 1000000);
+		}
+		
+		/**
+		 * @return the longest time a single worker waited to be started
+		 */
+		public long getMaxQueueWaitTime() {
+			return (this.maxQueueWaitNanos / 1000000);
+		}
+		
+		/**
+		 * @return the number of items processed per second of job wall time
+		 */
+		public double getItemThroughput() {
+			return ((this.wallNanos == 0) ? 0 : ((this.itemCount * 1000000000.0) / this.wallNanos));
+		}
+		
+		/**
+		 * @return the fraction of worker time spent running a job
+		 */
+		public double getUtilization() {
+			long workerNanos = (this.busyNanos + this.idleNanos + this.queueWaitNanos);
+			return ((workerNanos == 0) ? 0 : (((double) this.busyNanos) / workerNanos));
+		}
+		
+		/**
+		 * @return the average load imbalance of a job, i.e., the factor by
+		 *            which the busiest worker exceeded the average busy time,
+		 *            less 1
+		 */
+		public double getAverageLoadImbalance() {
+			return ((this.jobCount == 0) ? 0 : (this.loadImbalanceSum / this.jobCount));
+		}
+		
+		/**
+		 * @return the highest load imbalance of a single job
+		 */
+		public double getMaxLoadImbalance() {
+			return this.maxLoadImbalance;
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		public String toString() {
+			return ("jobs: " + this.jobCount + ", workers: " + this.workerCount + ", items: " + this.itemCount + ", wall time: " + this.getWallTime() + "ms" + ", busy: " + this.getBusyTime() + "ms" + ", idle: " + this.getIdleTime() + "ms" + ", queue wait: " + this.getQueueWaitTime() + "ms (max " + this.getMaxQueueWaitTime() + "ms)" + ", throughput: " + Math.round(this.getItemThroughput()) + " items/s" + ", utilization: " + Math.round(this.getUtilization() * 100) + "%" + ", load imbalance: " + Math.round(this.getAverageLoadImbalance() * 100) + "% (max " + Math.round(this.getMaxLoadImbalance() * 100) + "%)");
+		}
+	}
+}
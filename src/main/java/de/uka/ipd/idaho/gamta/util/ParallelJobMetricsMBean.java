@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitt Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITT KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.util;
+
+
+/**
+ * JMX management interface of <code>ParallelJobMetrics</code>. All times are
+ * in milliseconds.
+ * 
+ * @author sautter
+ */
+public interface ParallelJobMetricsMBean {
+	
+	/**
+	 * @return the number of parallel jobs executed
+	 */
+	public abstract long getJobCount();
+	
+	/**
+	 * @return the number of parallel executions of all jobs, i.e., the sum of
+	 *            the number of workers of each job
+	 */
+	public abstract long getWorkerCount();
+	
+	/**
+	 * @return the number of items processed by all jobs, e.g. the number of
+	 *            runs through a loop body
+	 */
+	public abstract long getItemCount();
+	
+	/**
+	 * @return the total wall time of all jobs
+	 */
+	public abstract long getWallTime();
+	
+	/**
+	 * @return the average wall time of a job
+	 */
+	public abstract double getAverageWallTime();
+	
+	/**
+	 * @return the total time workers spent running a job
+	 */
+	public abstract long getBusyTime();
+	
+	/**
+	 * @return the total time workers spent waiting for the other workers of
+	 *            their job to finish
+	 */
+	public abstract long getIdleTime();
+	
+	/**
+	 * @return the total time workers waited to be started after their job was
+	 *            submitted
+	 */
+	public abstract long getQueueWaitTime();
+	
+	/**
+	 * @return the longest time a single worker waited to be started
+	 */
+	public abstract long getMaxQueueWaitTime();
+	
+	/**
+	 * @return the number of items processed per second of job wall time
+	 */
+	public abstract double getItemThroughput();
+	
+	/**
+	 * @return the fraction of worker time spent running a job, between 0 and 1
+	 */
+	public abstract double getUtilization();
+	
+	/**
+	 * @return the average load imbalance of a job, i.e., the factor by which
+	 *            the busiest worker exceeded the average busy time, less 1
+	 */
+	public abstract double getAverageLoadImbalance();
+	
+	/**
+	 * @return the highest load imbalance of a single job
+	 */
+	public abstract double getMaxLoadImbalance();
+	
+	/**
+	 * Reset all the metrics to zero.
+	 */
+	public abstract void reset();
+}
@@ -27,17 +27,32 @@
  */
 package de.uka.ipd.idaho.gamta.util;
 
+import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class provides the facilities to run a chunk of code on multiple CPU
  * cores in parallel. This helps doing computationally intensive operations
  * faster on modern multi-core machines. Synchronization of data structures
  * shared between multiple executions of the parallelized code is up to the
- * implementation of the latter.
+ * implementation of the latter.<br>
+ * All parallel execution happens on a single <code>ForkJoinPool</code>
+ * shared by all the methods of this class, so parallel jobs do not pay for
+ * creating threads, and nested parallel jobs do not multiply the number of
+ * threads. The thread calling any of the methods of this class participates
+ * in the execution of the job it hands over.<br>
+ * Jobs that spend most of their time blocking, e.g. on local I/O, can use
+ * the <code>runBlockingParallel...()</code> methods instead, which are not
+ * limited to the number of CPU cores. They run on virtual threads if the JVM
+ * supports them, and on platform threads otherwise.
  * 
  * @author sautter
  */
@@ -70,15 +85,107 @@ public class ParallelJobRunner {
 		runLinear = linear;
 	}
 	
+	private static ParallelJobMetrics metrics = null;
+	
+	/**
+	 * Retrieve the metrics sink parallel jobs currently report to.
+	 * @return the metrics sink, or null if metrics recording is switched off
+	 */
+	public static ParallelJobMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Install a metrics sink for parallel jobs to report to. Setting the
+	 * metrics sink to null switches off recording metrics, which is the
+	 * default. Only jobs actually running in parallel report to the metrics
+	 * sink, jobs running linear do not.
+	 * @param metrics the metrics sink to install
+	 */
+	public static void setMetrics(ParallelJobMetrics metrics) {
+		ParallelJobRunner.metrics = metrics;
+	}
+	
+	private static boolean useVirtualThreads = true;
+	
+	/**
+	 * Test if blocking parallel jobs use virtual threads. This is the case if
+	 * the runtime JVM supports virtual threads and their use is not switched
+	 * off.
+	 * @return true if blocking parallel jobs use virtual threads
+	 */
+	public static boolean isUsingVirtualThreads() {
+		return (useVirtualThreads && (startVirtualThread != null));
+	}
+	
+	/**
+	 * Switch on or off the use of virtual threads for blocking parallel jobs.
+	 * This only has an effect if the runtime JVM supports virtual threads in
+	 * the first place; otherwise, blocking parallel jobs always run on
+	 * platform threads. Virtual threads are used by default if available.
+	 * @param useVirtual use virtual threads if available?
+	 */
+	public static void setUseVirtualThreads(boolean useVirtual) {
+		useVirtualThreads = useVirtual;
+	}
+	
+	//	Thread.startVirtualThread(Runnable), only present in JVMs supporting virtual threads (Java 21 and later)
+	private static final Method startVirtualThread;
+	static {
+		Method svt = null;
+		try {
+			svt = Thread.class.getMethod("startVirtualThread", new Class[] {Runnable.class});
+			
+			//	make sure virtual threads actually work (the method is present, but throws an exception if they are a disabled preview feature)
+			((Thread) svt.invoke(null, new Object[] {new Runnable() {
+				public void run() {}
+			}})).join();
+		} catch (Exception e) { svt = null; /* no virtual threads in this JVM */ }
+		startVirtualThread = svt;
+	}
+	
+	//	default number of threads for blocking parallel jobs
+	private static final int DEFAULT_BLOCKING_THREADS = 256;
+	
+	//	maximum number of platform threads per CPU core for blocking parallel jobs
+	private static final int MAX_BLOCKING_PLATFORM_THREADS_PER_CORE = 8;
+	
+	//	number of chunks each worker should get from a range on average, trading claiming overhead against load balance
+	private static final int CHUNKS_PER_WORKER = 4;
+	
+	//	maximum number of elements to fetch from an iterator at once
+	private static final int MAX_ITERATOR_BATCH_SIZE = 32;
+	
+	private static ForkJoinPool pool = null;
+	
+	private static synchronized ForkJoinPool getPool() {
+		if (pool == null)
+			pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+				public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+					ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+					thread.setName("ParallelJobRunner-" + thread.getPoolIndex());
+					thread.setDaemon(true);
+					return thread;
+				}
+			}, null, false);
+		return pool;
+	}
+	
+	private static int getWorkerCount(int maxCores) {
+		if (maxCores < 1)
+			maxCores = Integer.MAX_VALUE;
+		return Math.min(maxCores, Runtime.getRuntime().availableProcessors());
+	}
+	
 	/**
 	 * Execute a <code>Runnable</code> in multiple threads in parallel. If
 	 * the <code>maxCores</code> parameter is set to a value less than 1, the
 	 * job runs in as many parallel threads as possible, which is the number of
-	 * available CPU cores less 1; the latter is the core running the thread
-	 * that called this method. This method creates a new <code>Thread</code>
-	 * for every parallel execution, which incurs some overhead. Thus, client
-	 * code should only make use of this method if the overhead is offset by
-	 * the performance it gains from parallel execution.
+	 * available CPU cores. One of the executions happens in the thread that
+	 * called this method, the others run on the threads of a shared pool.
+	 * This method only returns after all executions of the job are finished.
+	 * If any of them throws a <code>RuntimeException</code> or an
+	 * <code>Error</code>, the first one is re-thrown from this method.
 	 * @param job the job to execute
 	 * @param maxCores the maximum number of CPU cores to use
 	 */
@@ -87,37 +194,131 @@ public class ParallelJobRunner {
 			job.run();
 			return;
 		}
-		if (maxCores < 1)
-			maxCores = Integer.MAX_VALUE;
-		maxCores = Math.min(maxCores, Runtime.getRuntime().availableProcessors());
-		Thread[] threads = new Thread[maxCores];
-		for (int t = 0; t < threads.length; t++)
-			threads[t] = new Thread(job);
-		for (int t = 0; t < threads.length; t++)
-			threads[t].start();
-		for (int t = 0; t < threads.length; t++) try {
-			threads[t].join();
-		} catch (InterruptedException ie) {t--; /* we have to make sure all threads are finished before returning */}
+		int workers = getWorkerCount(maxCores);
+		if (workers < 2) {
+			job.run();
+			return;
+		}
+		
+		//	measure executions if metrics switched on
+		ParallelJobMetrics metrics = ParallelJobRunner.metrics;
+		long startNanos = ((metrics == null) ? 0 : System.nanoTime());
+		Runnable[] jobs = getWorkerJobs(job, workers, metrics, startNanos);
+		
+		//	hand all but one execution to the pool (forking if we are in the pool ourselves, so joining can help out)
+		ForkJoinPool pool = getPool();
+		Thread thread = Thread.currentThread();
+		boolean inPool = ((thread instanceof ForkJoinWorkerThread) && (((ForkJoinWorkerThread) thread).getPool() == pool));
+		ForkJoinTask[] tasks = new ForkJoinTask[workers - 1];
+		for (int t = 0; t < tasks.length; t++) {
+			tasks[t] = ForkJoinTask.adapt(jobs[t + 1]);
+			if (inPool)
+				tasks[t].fork();
+			else pool.execute(tasks[t]);
+		}
+		
+		//	do our own share of the work
+		Throwable error = null;
+		try {
+			jobs[0].run();
+		}
+		catch (RuntimeException re) {
+			error = re;
+		}
+		catch (Error e) {
+			error = e;
+		}
+		
+		//	wait for the other executions (we have to make sure all of them are finished before returning)
+		for (int t = 0; t < tasks.length; t++) try {
+			tasks[t].join();
+		}
+		catch (RuntimeException re) {
+			if (error == null)
+				error = re;
+		}
+		catch (Error e) {
+			if (error == null)
+				error = e;
+		}
+		
+		//	report to metrics sink
+		if (metrics != null)
+			recordJob(metrics, job, jobs, startNanos);
+		
+		//	propagate first error
+		if (error instanceof RuntimeException)
+			throw ((RuntimeException) error);
+		else if (error instanceof Error)
+			throw ((Error) error);
+	}
+	
+	private static Runnable[] getWorkerJobs(Runnable job, int workers, ParallelJobMetrics metrics, long startNanos) {
+		Runnable[] jobs = new Runnable[workers];
+		for (int w = 0; w < jobs.length; w++)
+			jobs[w] = ((metrics == null) ? job : new MeteredJob(job, startNanos));
+		return jobs;
+	}
+	
+	private static void recordJob(ParallelJobMetrics metrics, Runnable job, Runnable[] jobs, long startNanos) {
+		long wallNanos = (System.nanoTime() - startNanos);
+		long[] queueWaitNanos = new long[jobs.length];
+		long[] busyNanos = new long[jobs.length];
+		for (int w = 0; w < jobs.length; w++) {
+			MeteredJob meteredJob = ((MeteredJob) jobs[w]);
+			queueWaitNanos[w] = (meteredJob.runStartNanos - meteredJob.submitNanos);
+			busyNanos[w] = (meteredJob.runEndNanos - meteredJob.runStartNanos);
+		}
+		long items = ((job instanceof ItemCountingJob) ? ((ItemCountingJob) job).getItemCount() : jobs.length);
+		metrics.recordJob(wallNanos, queueWaitNanos, busyNanos, items);
+	}
+	
+	private static class MeteredJob implements Runnable {
+		private Runnable job;
+		long submitNanos;
+		long runStartNanos;
+		long runEndNanos;
+		MeteredJob(Runnable job, long submitNanos) {
+			this.job = job;
+			this.submitNanos = submitNanos;
+		}
+		public void run() {
+			this.runStartNanos = System.nanoTime();
+			try {
+				this.job.run();
+			}
+			finally {
+				this.runEndNanos = System.nanoTime();
+			}
+		}
+	}
+	
+	//	parallel jobs that know how many items they processed
+	private static interface ItemCountingJob {
+		long getItemCount();
 	}
 	
 	private static abstract class ParallelLoop {
-		private Exception loopBodyException = null;
+		private volatile Exception loopBodyException = null;
+		private volatile boolean cancelled = false;
 		
 		/**
 		 * Check if an exception has occurred in one of the parallel executions
 		 * of the loop.
 		 * @return true if there is an exception, false otherwise
 		 */
-		public synchronized boolean hasException() {
+		public boolean hasException() {
 			return (this.loopBodyException != null);
 		}
 		
 		/**
 		 * Retrieve an exception that has occurred in one of the parallel
-		 * executions of the loop.
+		 * executions of the loop. If multiple executions have thrown an
+		 * exception, this method returns the first one, with the others
+		 * attached to it as suppressed exceptions.
 		 * @return the exception
 		 */
-		public synchronized Exception getException() {
+		public Exception getException() {
 			return this.loopBodyException;
 		}
 		
@@ -126,13 +327,39 @@ public class ParallelJobRunner {
 		 * of the loop, and throw it if throw it if there is one.
 		 * @throws Exception
 		 */
-		public synchronized void checkException() throws Exception {
-			if (this.loopBodyException != null)
-				throw this.loopBodyException;
+		public void checkException() throws Exception {
+			Exception loopBodyException = this.loopBodyException;
+			if (loopBodyException != null)
+				throw loopBodyException;
 		}
 		
 		synchronized void setException(Exception e) {
-			this.loopBodyException = e;
+			if (this.loopBodyException == null)
+				this.loopBodyException = e;
+			else if (this.loopBodyException != e)
+				this.loopBodyException.addSuppressed(e);
+		}
+		
+		/**
+		 * Cancel the loop. Executions of the loop body that are running
+		 * continue to their end, but no further ones start. Code in the loop
+		 * body can call this method to end the loop early, e.g. after it has
+		 * found what it was looking for.
+		 */
+		public void cancel() {
+			this.cancelled = true;
+		}
+		
+		/**
+		 * Check if the loop has been cancelled.
+		 * @return true if the loop has been cancelled, false otherwise
+		 */
+		public boolean isCancelled() {
+			return this.cancelled;
+		}
+		
+		boolean isStopped() {
+			return (this.cancelled || (this.loopBodyException != null));
 		}
 	}
 	
@@ -140,18 +367,18 @@ public class ParallelJobRunner {
 	 * Execute a <code>ParallelFor</code> in multiple threads in parallel. If
 	 * the <code>maxCores</code> parameter is set to a value less than 1, the
 	 * job runs in as many parallel threads as possible, which is the number of
-	 * available CPU cores less 1; the latter is the core running the thread
-	 * that called this method. This method creates a new <code>Thread</code>
-	 * for every parallel execution, which incurs some overhead. Thus, client
-	 * code should only make use of this method if the overhead is offset by
-	 * the performance it gains from parallel execution.
+	 * available CPU cores. The index range is split into chunks that the
+	 * parallel executions claim one by one, starting with large chunks and
+	 * getting smaller towards the end of the range, so the executions finish
+	 * close to one another.
 	 * The <code>doFor()</code> method of the argument <code>ParallelFor</code>
 	 * is called exactly once for each integer between 0 (inclusive) and
-	 * <code>count</code> (exclusive). The numbers are generally in increasing
-	 * order, but not strictly due to concurrency. Implementations of the
-	 * <code>doFor()</code> method must thus work on one index only, without
-	 * looking backward or forward. It is best to have the loop body work on an
-	 * array; if it works on a <code>List</code>, it must not modify the latter.
+	 * <code>count</code> (exclusive), unless the loop is cancelled or throws
+	 * an exception. The numbers are generally in increasing order, but not
+	 * strictly due to concurrency. Implementations of the <code>doFor()</code>
+	 * method must thus work on one index only, without looking backward or
+	 * forward. It is best to have the loop body work on an array; if it works
+	 * on a <code>List</code>, it must not modify the latter.
 	 * @param loop the for loop body to execute
 	 * @param count the number of times to run through the loop body
 	 * @param maxCores the maximum number of CPU cores to use
@@ -164,15 +391,15 @@ public class ParallelJobRunner {
 	 * Execute a <code>ParallelFor</code> in multiple threads in parallel. If
 	 * the <code>maxCores</code> parameter is set to a value less than 1, the
 	 * job runs in as many parallel threads as possible, which is the number of
-	 * available CPU cores less 1; the latter is the core running the thread
-	 * that called this method. This method creates a new <code>Thread</code>
-	 * for every parallel execution, which incurs some overhead. Thus, client
-	 * code should only make use of this method if the overhead is offset by
-	 * the performance it gains from parallel execution.
+	 * available CPU cores. The index range is split into chunks that the
+	 * parallel executions claim one by one, starting with large chunks and
+	 * getting smaller towards the end of the range, so the executions finish
+	 * close to one another.
 	 * The <code>doFor()</code> method of the argument <code>ParallelFor</code>
 	 * is called exactly once for each integer between <code>from</code>
-	 * (inclusive) and <code>to</code> (exclusive). The numbers are generally
-	 * in increasing order, but not strictly due to concurrency. Implementations
+	 * (inclusive) and <code>to</code> (exclusive), unless the loop is
+	 * cancelled or throws an exception. The numbers are generally in
+	 * increasing order, but not strictly due to concurrency. Implementations
 	 * of the <code>doFor()</code> method must thus work on one index only,
 	 * without looking backward or forward. It is best to have the loop body
 	 * work on an array; if it works on a <code>List</code>, it must not modify
@@ -185,16 +412,19 @@ public class ParallelJobRunner {
 	public static void runParallelFor(ParallelFor loop, int from, int to, int maxCores) {
 		if (to <= from)
 			return;
-		if (((to - from) != 1) && (maxCores != 1) && !runLinear)
-			runParallelJob(new ParallelForJob(loop, from, to), Math.min(maxCores, (to - from)));
-		else try {
-			if ((to - from) == 1)
-				loop.doFor(from);
-			else for (int i = from; i < to; i++)
-				loop.doFor(i);
+		int workers = (runLinear ? 1 : getWorkerCount(maxCores));
+		if ((to - from) < workers)
+			workers = (to - from);
+		if (workers > 1)
+			runParallelJob(new ParallelForJob(loop, from, to, workers), workers);
+		else for (int i = from; i < to; i++) try {
+			if (loop.isStopped())
+				return;
+			loop.doFor(i);
 		}
 		catch (Exception e) {
 			loop.setException(e);
+			return;
 		}
 	}
 	
@@ -217,89 +447,102 @@ public class ParallelJobRunner {
 		public abstract void doFor(int index) throws Exception;
 	}
 	
-	private static class ParallelForJob implements Runnable {
-		private ParallelFor loop;
-		private LinkedList indices = new LinkedList();
-		ParallelForJob(ParallelFor loop, int from, int to) {
+	private static abstract class ParallelRangeJob implements Runnable, ItemCountingJob {
+		private ParallelLoop loop;
+		private int from;
+		private int to;
+		private int chunkDivisor;
+		private AtomicInteger next;
+		ParallelRangeJob(ParallelLoop loop, int from, int to, int workers) {
 			this.loop = loop;
-			for (int i = from; i < to; i++)
-				this.indices.addLast(new Integer(i));
+			this.from = from;
+			this.to = to;
+			this.chunkDivisor = (workers * CHUNKS_PER_WORKER);
+			this.next = new AtomicInteger(from);
 		}
 		public void run() {
 			while (true) {
 				
-				//	check for exception in parallel executions
-				if (this.loop.hasException())
-					return;
-				
-				//	get next index
-				int index;
-				synchronized (this.indices) {
-					if (this.indices.isEmpty())
+				//	claim next chunk, sized in proportion to the remaining range
+				int start;
+				int end;
+				while (true) {
+					start = this.next.get();
+					if (start >= this.to)
 						return;
-					else index = ((Integer) this.indices.removeFirst()).intValue();
+					end = ((int) Math.min(this.to, (start + Math.max(1, ((((long) this.to) - start) / this.chunkDivisor)))));
+					if (this.next.compareAndSet(start, end))
+						break;
 				}
 				
 				//	do the work
-				try {
-					this.loop.doFor(index);
-				}
-				catch (Exception t) {
-					this.loop.setException(t);
-					return;
+				for (int index = start; index < end; index++) {
+					
+					//	check for exception in parallel executions, or cancellation
+					if (this.loop.isStopped())
+						return;
+					
+					try {
+						this.doIndex(index);
+					}
+					catch (Exception t) {
+						this.loop.setException(t);
+						return;
+					}
 				}
 			}
 		}
+		public long getItemCount() {
+			return (Math.min(this.next.get(), this.to) - ((long) this.from));
+		}
+		abstract void doIndex(int index) throws Exception;
+	}
+	
+	private static class ParallelForJob extends ParallelRangeJob {
+		private ParallelFor loop;
+		ParallelForJob(ParallelFor loop, int from, int to, int workers) {
+			super(loop, from, to, workers);
+			this.loop = loop;
+		}
+		void doIndex(int index) throws Exception {
+			this.loop.doFor(index);
+		}
 	}
 	
 	/**
-	 * Execute a <code>ParallelFor</code> in multiple threads in parallel. If
-	 * the <code>maxCores</code> parameter is set to a value less than 1, the
-	 * job runs in as many parallel threads as possible, which is the number of
-	 * available CPU cores less 1; the latter is the core running the thread
-	 * that called this method. This method creates a new <code>Thread</code>
-	 * for every parallel execution, which incurs some overhead. Thus, client
-	 * code should only make use of this method if the overhead is offset by
-	 * the performance it gains from parallel execution.
+	 * Execute a <code>ParallelIteration</code> in multiple threads in
+	 * parallel. If the <code>maxCores</code> parameter is set to a value less
+	 * than 1, the job runs in as many parallel threads as possible, which is
+	 * the number of available CPU cores. The array is processed in chunks of
+	 * indexes, like the index range of a <code>ParallelFor</code>.
 	 * The <code>doIteration()</code> method of the argument
 	 * <code>ParallelIteration</code> is called exactly once for each object in
-	 * the argument array, generally in increasing order. The runtime type of
-	 * the objects handed to the <code>doIteration()</code> method corresponds
-	 * to that of the elements in the argument array.
+	 * the argument array, generally in increasing order, unless the loop is
+	 * cancelled or throws an exception. The runtime type of the objects handed
+	 * to the <code>doIteration()</code> method corresponds to that of the
+	 * elements in the argument array.
 	 * @param loop the loop body to execute
 	 * @param objects an array holding the objects to process
 	 * @param maxCores the maximum number of CPU cores to use
 	 */
 	public static void runParallelIteration(ParallelIteration loop, Object[] objects, int maxCores) {
-		if (objects.length == 0)
-			return;
-		if ((objects.length != 1) && (maxCores != 1) && !runLinear)
-			runParallelIteration(loop, Arrays.asList(objects).iterator(), Math.min(maxCores, objects.length));
-		else try {
-			if (objects.length == 1)
-				loop.doIteration(objects[0]);
-			else for (int o = 0; o < objects.length; o++)
-				loop.doIteration(objects[o]);
-		}
-		catch (Exception e) {
-			loop.setException(e);
-		}
+		runParallelIteration(loop, Arrays.asList(objects), maxCores);
 	}
 	
 	/**
-	 * Execute a <code>ParallelFor</code> in multiple threads in parallel. If
-	 * the <code>maxCores</code> parameter is set to a value less than 1, the
-	 * job runs in as many parallel threads as possible, which is the number of
-	 * available CPU cores less 1; the latter is the core running the thread
-	 * that called this method. This method creates a new <code>Thread</code>
-	 * for every parallel execution, which incurs some overhead. Thus, client
-	 * code should only make use of this method if the overhead is offset by
-	 * the performance it gains from parallel execution.
+	 * Execute a <code>ParallelIteration</code> in multiple threads in
+	 * parallel. If the <code>maxCores</code> parameter is set to a value less
+	 * than 1, the job runs in as many parallel threads as possible, which is
+	 * the number of available CPU cores. If the argument <code>List</code>
+	 * supports fast random access, it is processed in chunks of indexes, like
+	 * the index range of a <code>ParallelFor</code>; otherwise, it is
+	 * processed through its <code>Iterator</code>.
 	 * The <code>doIteration()</code> method of the argument
 	 * <code>ParallelIteration</code> is called exactly once for each element
-	 * of the argument <code>List</code>, generally in increasing order. The
-	 * runtime type of the objects handed to the <code>doIteration()</code>
-	 * method corresponds to that of the elements in the argument <code>List</code>.
+	 * of the argument <code>List</code>, generally in increasing order, unless
+	 * the loop is cancelled or throws an exception. The runtime type of the
+	 * objects handed to the <code>doIteration()</code> method corresponds to
+	 * that of the elements in the argument <code>List</code>.
 	 * @param loop the loop body to execute
 	 * @param list a list whose elements to process
 	 * @param maxCores the maximum number of CPU cores to use
@@ -307,31 +550,37 @@ public class ParallelJobRunner {
 	public static void runParallelIteration(ParallelIteration loop, List list, int maxCores) {
 		if (list.isEmpty())
 			return;
-		if (list.size() != 1)
-			runParallelIteration(loop, list.iterator(), Math.min(maxCores, list.size()));
-		else try {
-			loop.doIteration(list.get(0));
+		if (!(list instanceof RandomAccess)) {
+			runParallelIteration(loop, list.iterator(), Math.min(getWorkerCount(maxCores), list.size()));
+			return;
+		}
+		int workers = (runLinear ? 1 : Math.min(getWorkerCount(maxCores), list.size()));
+		if (workers > 1)
+			runParallelJob(new ParallelListIterationJob(loop, list, workers), workers);
+		else for (int o = 0; o < list.size(); o++) try {
+			if (loop.isStopped())
+				return;
+			loop.doIteration(list.get(o));
 		}
 		catch (Exception e) {
 			loop.setException(e);
+			return;
 		}
 	}
 	
 	/**
-	 * Execute a <code>ParallelFor</code> in multiple threads in parallel. If
-	 * the <code>maxCores</code> parameter is set to a value less than 1, the
-	 * job runs in as many parallel threads as possible, which is the number of
-	 * available CPU cores less 1; the latter is the core running the thread
-	 * that called this method. This method creates a new <code>Thread</code>
-	 * for every parallel execution, which incurs some overhead. Thus, client
-	 * code should only make use of this method if the overhead is offset by
-	 * the performance it gains from parallel execution.
+	 * Execute a <code>ParallelIteration</code> in multiple threads in
+	 * parallel. If the <code>maxCores</code> parameter is set to a value less
+	 * than 1, the job runs in as many parallel threads as possible, which is
+	 * the number of available CPU cores. The parallel executions fetch the
+	 * elements from the argument <code>Iterator</code> in small batches, which
+	 * grow as the iteration proceeds, to reduce contention on the latter.
 	 * The <code>doIteration()</code> method of the argument
 	 * <code>ParallelIteration</code> is called exactly once for each element
-	 * returned by <code>next()</code> method of the argument <code>Iterator</code>.
-	 * The runtime type of the objects handed to the <code>doIteration()</code>
-	 * method corresponds to that of the elements in the argument
-	 * <code>Iterator</code>.
+	 * returned by <code>next()</code> method of the argument <code>Iterator</code>,
+	 * unless the loop is cancelled or throws an exception. The runtime type of
+	 * the objects handed to the <code>doIteration()</code> method corresponds
+	 * to that of the elements in the argument <code>Iterator</code>.
 	 * @param loop the loop body to execute
 	 * @param iterator an <code>Iterator</code> over the elements to process
 	 * @param maxCores the maximum number of CPU cores to use
@@ -339,10 +588,11 @@ public class ParallelJobRunner {
 	public static void runParallelIteration(ParallelIteration loop, Iterator iterator, int maxCores) {
 		if (!iterator.hasNext())
 			return;
-		if ((maxCores != 1) && !runLinear)
-			runParallelJob(new ParallelIterationJob(loop, iterator), maxCores);
+		int workers = (runLinear ? 1 : getWorkerCount(maxCores));
+		if (workers > 1)
+			runParallelJob(new ParallelIterationJob(loop, iterator, workers), workers);
 		else try {
-			while (iterator.hasNext())
+			while (iterator.hasNext() && !loop.isStopped())
 				loop.doIteration(iterator.next());
 		}
 		catch (Exception e) {
@@ -369,49 +619,76 @@ public class ParallelJobRunner {
 		public abstract void doIteration(Object obj) throws Exception;
 	}
 	
-	private static class ParallelIterationJob implements Runnable {
+	private static class ParallelListIterationJob extends ParallelRangeJob {
+		private ParallelIteration loop;
+		private List list;
+		ParallelListIterationJob(ParallelIteration loop, List list, int workers) {
+			super(loop, 0, list.size(), workers);
+			this.loop = loop;
+			this.list = list;
+		}
+		void doIndex(int index) throws Exception {
+			this.loop.doIteration(this.list.get(index));
+		}
+	}
+	
+	private static class ParallelIterationJob implements Runnable, ItemCountingJob {
 		private ParallelIteration loop;
 		private Iterator iterator;
-		ParallelIterationJob(ParallelIteration loop, Iterator iterator) {
+		private int batchDivisor;
+		private int fetched = 0;
+		ParallelIterationJob(ParallelIteration loop, Iterator iterator, int workers) {
 			this.loop = loop;
 			this.iterator = iterator;
+			this.batchDivisor = (workers * CHUNKS_PER_WORKER);
 		}
 		public void run() {
+			Object[] batch = new Object[MAX_ITERATOR_BATCH_SIZE];
 			while (true) {
 				
-				//	check for exception in parallel executions
-				if (this.loop.hasException())
+				//	check for exception in parallel executions, or cancellation
+				if (this.loop.isStopped())
 					return;
 				
-				//	get next object
-				Object object;
+				//	get next objects, batch size growing with number of objects fetched so far (we don't know how many remain)
+				int batchSize = 0;
 				synchronized (this.iterator) {
-					if (this.iterator.hasNext())
-						object = this.iterator.next();
-					else return;
+					int maxBatchSize = Math.max(1, Math.min(MAX_ITERATOR_BATCH_SIZE, (this.fetched / this.batchDivisor)));
+					while ((batchSize < maxBatchSize) && this.iterator.hasNext())
+						batch[batchSize++] = this.iterator.next();
+					this.fetched += batchSize;
 				}
+				if (batchSize == 0)
+					return;
 				
 				//	do the work
-				try {
-					this.loop.doIteration(object);
-				}
-				catch (Exception t) {
-					this.loop.setException(t);
-					return;
+				for (int o = 0; o < batchSize; o++) {
+					Object object = batch[o];
+					batch[o] = null;
+					if (this.loop.isStopped())
+						return;
+					try {
+						this.loop.doIteration(object);
+					}
+					catch (Exception t) {
+						this.loop.setException(t);
+						return;
+					}
 				}
 			}
 		}
+		public long getItemCount() {
+			synchronized (this.iterator) {
+				return this.fetched;
+			}
+		}
 	}
 	
 	/**
 	 * Execute a <code>ParallelWhile</code> in multiple threads in parallel. If
 	 * the <code>maxCores</code> parameter is set to a value less than 1, the
 	 * job runs in as many parallel threads as possible, which is the number of
-	 * available CPU cores less 1; the latter is the core running the thread
-	 * that called this method. This method creates a new <code>Thread</code>
-	 * for every parallel execution, which incurs some overhead. Thus, client
-	 * code should only make use of this method if the overhead is offset by
-	 * the performance it gains from parallel execution.
+	 * available CPU cores.
 	 * @param loop the loop body to execute
 	 * @param maxCores the maximum number of CPU cores to use
 	 */
@@ -419,7 +696,7 @@ public class ParallelJobRunner {
 		if ((maxCores != 1) && !runLinear)
 			runParallelJob(new ParallelWhileJob(loop), maxCores);
 		else try {
-			while (loop.doWhile()) {}
+			while (!loop.isStopped() && loop.doWhile()) {}
 		}
 		catch (Exception e) {
 			loop.setException(e);
@@ -430,7 +707,7 @@ public class ParallelJobRunner {
 	 * The body of a <b>while</b> loop to execute in parallel. Each invocation
 	 * of the <code>doWhile()</code> method represents a single run through the
 	 * loop body. The <code>doWhile()</code> method is called until it returns
-	 * <code>false</code>.
+	 * <code>false</code>, or until the loop is cancelled.
 	 * 
 	 * @author sautter
 	 */
@@ -446,28 +723,185 @@ public class ParallelJobRunner {
 		public abstract boolean doWhile() throws Exception;
 	}
 	
-	private static class ParallelWhileJob implements Runnable {
+	private static class ParallelWhileJob implements Runnable, ItemCountingJob {
 		private ParallelWhile loop;
+		private AtomicLong itemCount = new AtomicLong();
 		ParallelWhileJob(ParallelWhile loop) {
 			this.loop = loop;
 		}
 		public void run() {
-			while (true) {
-				
-				//	check for exception in parallel executions
-				if (this.loop.hasException())
-					return;
-				
-				//	do the work
-				try {
-					if (!this.loop.doWhile())
+			long items = 0;
+			try {
+				while (true) {
+					
+					//	check for exception in parallel executions, or cancellation
+					if (this.loop.isStopped())
 						return;
+					
+					//	do the work
+					try {
+						if (!this.loop.doWhile())
+							return;
+						items++;
+					}
+					catch (Exception t) {
+						this.loop.setException(t);
+						return;
+					}
 				}
-				catch (Exception t) {
-					this.loop.setException(t);
-					return;
-				}
 			}
+			finally {
+				this.itemCount.addAndGet(items);
+			}
+		}
+		public long getItemCount() {
+			return this.itemCount.get();
+		}
+	}
+	
+	/**
+	 * Execute a <code>Runnable</code> that spends most of its time blocking,
+	 * e.g. on local I/O, in multiple threads in parallel. Unlike the
+	 * <code>runParallelJob()</code> method, this method is not limited to
+	 * the number of available CPU cores, as blocked threads do not occupy a
+	 * core. On JVMs supporting virtual threads, the executions run on virtual
+	 * threads, so thousands of them are no problem. Otherwise, this method
+	 * falls back to platform threads, limiting their number to a small
+	 * multiple of the number of available CPU cores. If the
+	 * <code>maxThreads</code> parameter is set to a value less than 1, the job
+	 * runs in a default number of parallel threads. One of the executions
+	 * happens in the thread that called this method. This method only returns
+	 * after all executions of the job are finished. If any of them throws a
+	 * <code>RuntimeException</code> or an <code>Error</code>, the first one is
+	 * re-thrown from this method.
+	 * @param job the job to execute
+	 * @param maxThreads the maximum number of threads to use
+	 */
+	public static void runBlockingParallelJob(Runnable job, int maxThreads) {
+		if (runLinear || (maxThreads == 1)) {
+			job.run();
+			return;
+		}
+		boolean useVirtualThreads = isUsingVirtualThreads(); // decide once, so thread count and thread type match even if setting changes
+		int threadCount = getBlockingThreadCount(maxThreads, useVirtualThreads);
+		if (threadCount < 2) {
+			job.run();
+			return;
+		}
+		
+		//	measure executions if metrics switched on
+		BlockingJob blockingJob = new BlockingJob(job);
+		ParallelJobMetrics metrics = ParallelJobRunner.metrics;
+		long startNanos = ((metrics == null) ? 0 : System.nanoTime());
+		Runnable[] jobs = getWorkerJobs(blockingJob, threadCount, metrics, startNanos);
+		
+		//	start all but one execution in threads of their own
+		Thread[] threads = new Thread[threadCount - 1];
+		for (int t = 0; t < threads.length; t++)
+			threads[t] = startThread(jobs[t + 1], useVirtualThreads);
+		
+		//	do our own share of the work
+		jobs[0].run();
+		
+		//	wait for the other executions
+		for (int t = 0; t < threads.length; t++) try {
+			threads[t].join();
+		} catch (InterruptedException ie) {t--; /* we have to make sure all threads are finished before returning */}
+		
+		//	report to metrics sink
+		if (metrics != null)
+			recordJob(metrics, job, jobs, startNanos);
+		
+		//	propagate first error
+		if (blockingJob.error instanceof RuntimeException)
+			throw ((RuntimeException) blockingJob.error);
+		else if (blockingJob.error instanceof Error)
+			throw ((Error) blockingJob.error);
+	}
+	
+	private static int getBlockingThreadCount(int maxThreads, boolean useVirtualThreads) {
+		if (maxThreads < 1)
+			maxThreads = DEFAULT_BLOCKING_THREADS;
+		if (useVirtualThreads)
+			return maxThreads;
+		else return Math.min(maxThreads, (Runtime.getRuntime().availableProcessors() * MAX_BLOCKING_PLATFORM_THREADS_PER_CORE));
+	}
+	
+	private static Thread startThread(Runnable job, boolean useVirtualThreads) {
+		if (useVirtualThreads) try {
+			return ((Thread) startVirtualThread.invoke(null, new Object[] {job}));
+		} catch (Exception e) { /* virtual threads verified on class loading, so this is exceptional, and we'd rather start a platform thread than fail the whole job */ }
+		Thread thread = new Thread(job);
+		thread.start();
+		return thread;
+	}
+	
+	private static class BlockingJob implements Runnable {
+		private Runnable job;
+		private Throwable error = null;
+		BlockingJob(Runnable job) {
+			this.job = job;
+		}
+		public void run() {
+			try {
+				this.job.run();
+			}
+			catch (RuntimeException re) {
+				this.setError(re);
+			}
+			catch (Error e) {
+				this.setError(e);
+			}
+		}
+		private synchronized void setError(Throwable error) {
+			if (this.error == null)
+				this.error = error;
+		}
+	}
+	
+	/**
+	 * Execute a <code>ParallelIteration</code> whose loop body spends most of
+	 * its time blocking, e.g. on local I/O, in multiple threads in parallel.
+	 * The parallel executions run on virtual threads if the JVM supports them,
+	 * and on platform threads otherwise, as described for the
+	 * <code>runBlockingParallelJob()</code> method. The semantics of the loop
+	 * are the same as in the <code>runParallelIteration()</code> method.
+	 * @param loop the loop body to execute
+	 * @param iterator an <code>Iterator</code> over the elements to process
+	 * @param maxThreads the maximum number of threads to use
+	 */
+	public static void runBlockingParallelIteration(ParallelIteration loop, Iterator iterator, int maxThreads) {
+		if (!iterator.hasNext())
+			return;
+		int threadCount = (runLinear ? 1 : getBlockingThreadCount(maxThreads, isUsingVirtualThreads()));
+		if (threadCount > 1)
+			runBlockingParallelJob(new ParallelIterationJob(loop, iterator, threadCount), threadCount);
+		else try {
+			while (iterator.hasNext() && !loop.isStopped())
+				loop.doIteration(iterator.next());
+		}
+		catch (Exception e) {
+			loop.setException(e);
+		}
+	}
+	
+	/**
+	 * Execute a <code>ParallelWhile</code> whose loop body spends most of its
+	 * time blocking, e.g. on local I/O, in multiple threads in parallel. The
+	 * parallel executions run on virtual threads if the JVM supports them,
+	 * and on platform threads otherwise, as described for the
+	 * <code>runBlockingParallelJob()</code> method.
+	 * @param loop the loop body to execute
+	 * @param maxThreads the maximum number of threads to use
+	 */
+	public static void runBlockingParallelWhile(ParallelWhile loop, int maxThreads) {
+		if ((maxThreads != 1) && !runLinear)
+			runBlockingParallelJob(new ParallelWhileJob(loop), maxThreads);
+		else try {
+			while (!loop.isStopped() && loop.doWhile()) {}
+		}
+		catch (Exception e) {
+			loop.setException(e);
 		}
 	}
-}
\ No newline at end of file
+}
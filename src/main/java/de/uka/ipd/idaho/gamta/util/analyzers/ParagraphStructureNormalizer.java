@@ -28,13 +28,17 @@
 package de.uka.ipd.idaho.gamta.util.analyzers;
 
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Properties;
+import java.util.Random;
 
 import de.uka.ipd.idaho.gamta.Annotation;
 import de.uka.ipd.idaho.gamta.Gamta;
 import de.uka.ipd.idaho.gamta.MutableAnnotation;
 import de.uka.ipd.idaho.gamta.Token;
+import de.uka.ipd.idaho.gamta.defaultImplementation.GamtaDocument;
 import de.uka.ipd.idaho.gamta.util.AbstractAnalyzer;
 import de.uka.ipd.idaho.gamta.util.AnalyzerDataProvider;
 import de.uka.ipd.idaho.gamta.util.constants.LiteratureConstants;
@@ -69,6 +73,11 @@ public class ParagraphStructureNormalizer extends AbstractAnalyzer implements Li
 	/** @see de.uka.ipd.idaho.gamta.util.Analyzer#process(de.uka.ipd.idaho.gamta.MutableAnnotation, Properties)
 	 */
 	public void process(MutableAnnotation data, Properties parameters) {
+		this.process(data, true);
+	}
+	
+	//	normalize paragraph structure, in batch mode if allowed and paragraphs don't overlap
+	private void process(MutableAnnotation data, boolean inBatch) {
 		if ((data == null) || (data.length() == 0)) return;
 		
 		//	get paragraphs
@@ -121,7 +130,47 @@ public class ParagraphStructureNormalizer extends AbstractAnalyzer implements Li
 			data.tokenAt(t).setAttribute(PAGE_NUMBER_ATTRIBUTE, pageNumberObject);
 		}
 		
-		//	normalize paragraphs
+		//	normalize paragraphs, in batch mode unless paragraphs overlap
+		if (inBatch && this.canNormalizeInBatch(paragraphs))
+			this.normalizeParagraphsInBatch(data, paragraphs, tokens);
+		else this.normalizeParagraphs(data, paragraphs, tokens);
+		
+		//	restore page starts
+		pageBreakTokens = data.getAnnotations(PAGE_BREAK_TOKEN_TYPE);
+		HashSet seenPageIds = new HashSet();
+		HashSet seenPageNumbers = new HashSet();
+		for (int b = 0; b < pageBreakTokens.length; b++) {
+			if (seenPageIds.add(pageBreakTokens[b].getAttribute(PAGE_ID_ATTRIBUTE)) | seenPageNumbers.add(pageBreakTokens[b].getAttribute(PAGE_NUMBER_ATTRIBUTE)))
+				pageBreakTokens[b].setAttribute(PAGE_START_ATTRIBUTE, PAGE_START_ATTRIBUTE);
+		}
+		
+		//	restore annotation start and end attributes
+		Annotation[] annotations = data.getAnnotations();
+		for (int a = 0; a < annotations.length; a++) {
+			Object pageId = annotations[a].firstToken().getAttribute(PAGE_ID_ATTRIBUTE);
+			if (pageId != null)
+				annotations[a].setAttribute(PAGE_ID_ATTRIBUTE, pageId);
+			Object pageNumber = annotations[a].firstToken().getAttribute(PAGE_NUMBER_ATTRIBUTE);
+			if (pageNumber != null)
+				annotations[a].setAttribute(PAGE_NUMBER_ATTRIBUTE, pageNumber);
+			
+			Object lastPageId = annotations[a].lastToken().getAttribute(PAGE_ID_ATTRIBUTE);
+			if ((lastPageId != null) && !lastPageId.equals(pageId))
+				annotations[a].setAttribute(LAST_PAGE_ID_ATTRIBUTE, lastPageId);
+			Object lastPageNumber = annotations[a].lastToken().getAttribute(PAGE_NUMBER_ATTRIBUTE);
+			if ((lastPageNumber != null) && !lastPageNumber.equals(pageNumber))
+				annotations[a].setAttribute(LAST_PAGE_NUMBER_ATTRIBUTE, lastPageNumber);
+		}
+		
+		//	clean up token attributes
+		for (int t = paragraphs[0].getStartIndex(); t < data.size(); t++) {
+			data.tokenAt(t).removeAttribute(PAGE_ID_ATTRIBUTE);
+			data.tokenAt(t).removeAttribute(PAGE_NUMBER_ATTRIBUTE);
+		}
+	}
+	
+	//	normalize paragraphs one by one, editing the data for every join and whitespace change
+	private void normalizeParagraphs(MutableAnnotation data, MutableAnnotation[] paragraphs, StringVector tokens) {
 		for (int p = 0; p < paragraphs.length; p++) {
 			MutableAnnotation paragraph = paragraphs[p];
 			if (paragraph.size() == 0)
@@ -183,38 +232,118 @@ public class ParagraphStructureNormalizer extends AbstractAnalyzer implements Li
 			if (whitespace.indexOf("\n") == -1)
 				data.setWhitespaceAfter("\n", (paragraph.getEndIndex() - 1));
 		}
+	}
+	
+	//	check if paragraphs are disjoint, so they can be normalized independently of one another
+	private boolean canNormalizeInBatch(MutableAnnotation[] paragraphs) {
+		for (int p = 1; p < paragraphs.length; p++) {
+			if (paragraphs[p].getStartIndex() < paragraphs[p-1].getEndIndex())
+				return false;
+		}
+		return true;
+	}
+	
+	/*
+	 * Normalize paragraphs in batch mode: plan all token joins from a single
+	 * pass over the tokens before changing anything, then apply the joins
+	 * back to front, so the planned indexes remain valid, and finally collect
+	 * all whitespace changes and apply them in one bulk edit instead of one
+	 * edit per token. This produces the same result as normalizeParagraphs(),
+	 * as checked by the main() method of this class, but avoids having every
+	 * annotation react to every single whitespace change.
+	 */
+	private void normalizeParagraphsInBatch(MutableAnnotation data, MutableAnnotation[] paragraphs, StringVector tokens) {
 		
-		//	restore page starts
-		pageBreakTokens = data.getAnnotations(PAGE_BREAK_TOKEN_TYPE);
-		HashSet seenPageIds = new HashSet();
-		HashSet seenPageNumbers = new HashSet();
-		for (int b = 0; b < pageBreakTokens.length; b++) {
-			if (seenPageIds.add(pageBreakTokens[b].getAttribute(PAGE_ID_ATTRIBUTE)) | seenPageNumbers.add(pageBreakTokens[b].getAttribute(PAGE_NUMBER_ATTRIBUTE)))
-				pageBreakTokens[b].setAttribute(PAGE_START_ATTRIBUTE, PAGE_START_ATTRIBUTE);
+		//	plan joins (setting a token value replaces the token, so a joined token loses its line end and is never joined again)
+		int[][] joinIndexes = new int[paragraphs.length][];
+		String[][] jointForms = new String[paragraphs.length][];
+		for (int p = 0; p < paragraphs.length; p++) {
+			int paragraphStart = paragraphs[p].getStartIndex();
+			int[] pJoinIndexes = new int[paragraphs[p].size() / 2];
+			String[] pJointForms = new String[paragraphs[p].size() / 2];
+			int joins = 0;
+			for (int t = 0; (t + 1) < paragraphs[p].size(); t++) {
+				Token t1 = data.tokenAt(paragraphStart + t);
+				if (!t1.hasAttribute(Token.PARAGRAPH_END_ATTRIBUTE))
+					continue;
+				String jointForm = this.getJointForm(t1, data.tokenAt(paragraphStart + t + 1), tokens);
+				if (jointForm == null)
+					continue;
+				pJoinIndexes[joins] = t;
+				pJointForms[joins] = jointForm;
+				joins++;
+				t++; // second token goes away in join
+			}
+			joinIndexes[p] = new int[joins];
+			System.arraycopy(pJoinIndexes, 0, joinIndexes[p], 0, joins);
+			jointForms[p] = new String[joins];
+			System.arraycopy(pJointForms, 0, jointForms[p], 0, joins);
 		}
 		
-		//	restore annotation start and end attributes
-		Annotation[] annotations = data.getAnnotations();
-		for (int a = 0; a < annotations.length; a++) {
-			Object pageId = annotations[a].firstToken().getAttribute(PAGE_ID_ATTRIBUTE);
-			if (pageId != null)
-				annotations[a].setAttribute(PAGE_ID_ATTRIBUTE, pageId);
-			Object pageNumber = annotations[a].firstToken().getAttribute(PAGE_NUMBER_ATTRIBUTE);
-			if (pageNumber != null)
-				annotations[a].setAttribute(PAGE_NUMBER_ATTRIBUTE, pageNumber);
+		//	apply joins back to front, so planned indexes remain valid
+		for (int p = (paragraphs.length - 1); p >= 0; p--) {
+			for (int j = 0; j < joinIndexes[p].length; j++)
+				this.joinTokens(paragraphs[p], (joinIndexes[p][j] - j), jointForms[p][j]); // account for tokens removed in previous joins
+		}
+		
+		//	collect whitespace changes, and normalize line end property
+		String[] whitespaces = new String[data.size()];
+		for (int p = 0; p < paragraphs.length; p++) {
+			MutableAnnotation paragraph = paragraphs[p];
+			if (paragraph.size() == 0)
+				continue;
 			
-			Object lastPageId = annotations[a].lastToken().getAttribute(PAGE_ID_ATTRIBUTE);
-			if ((lastPageId != null) && !lastPageId.equals(pageId))
-				annotations[a].setAttribute(LAST_PAGE_ID_ATTRIBUTE, lastPageId);
-			Object lastPageNumber = annotations[a].lastToken().getAttribute(PAGE_NUMBER_ATTRIBUTE);
-			if ((lastPageNumber != null) && !lastPageNumber.equals(pageNumber))
-				annotations[a].setAttribute(LAST_PAGE_NUMBER_ATTRIBUTE, lastPageNumber);
+			//	normalize line end property and whitespace
+			int paragraphEnd = paragraph.getEndIndex();
+			for (int t = paragraph.getStartIndex(); t < (paragraphEnd - 1); t++) {
+				String oldWhitespace = data.getWhitespaceAfter(t);
+				String whitespace = oldWhitespace;
+				whitespace = whitespace.replaceAll("\\r\\n", " ");
+				whitespace = whitespace.replaceAll("\\r", " ");
+				whitespace = whitespace.replaceAll("\\n", " ");
+				if (!whitespace.equals(oldWhitespace))
+					whitespaces[t] = whitespace;
+				data.tokenAt(t).removeAttribute(Token.PARAGRAPH_END_ATTRIBUTE);
+			}
+			
+			//	set line break at end of paragraph
+			data.tokenAt(paragraphEnd - 1).setAttribute(Token.PARAGRAPH_END_ATTRIBUTE, Token.PARAGRAPH_END_ATTRIBUTE);
+			String whitespace = data.getWhitespaceAfter(paragraphEnd - 1);
+			if (whitespace.indexOf("\n") == -1)
+				whitespaces[paragraphEnd - 1] = "\n";
 		}
 		
-		//	clean up token attributes
-		for (int t = paragraphs[0].getStartIndex(); t < data.size(); t++) {
-			data.tokenAt(t).removeAttribute(PAGE_ID_ATTRIBUTE);
-			data.tokenAt(t).removeAttribute(PAGE_NUMBER_ATTRIBUTE);
+		//	apply whitespace changes in bulk if possible
+		if (data instanceof GamtaDocument)
+			((GamtaDocument) data).setWhitespacesAfter(whitespaces, 0);
+		
+		//	apply whitespace changes one by one otherwise
+		else for (int t = 0; t < whitespaces.length; t++) {
+			if (whitespaces[t] != null)
+				data.setWhitespaceAfter(whitespaces[t], t);
+		}
+	}
+	
+	//	join a token with the one after it, preserving page breaks
+	private void joinTokens(MutableAnnotation paragraph, int t, String jointForm) {
+		
+		//	store page break indicator attributes
+		Token firstToken = paragraph.tokenAt(t);
+		Object ftPageId = firstToken.getAttribute(PAGE_ID_ATTRIBUTE);
+		Object ftPageNumber = firstToken.getAttribute(PAGE_NUMBER_ATTRIBUTE);
+		Token secondToken = paragraph.tokenAt(t+1);
+		Object stPageId = secondToken.getAttribute(PAGE_ID_ATTRIBUTE);
+		Object stPageNumber = secondToken.getAttribute(PAGE_NUMBER_ATTRIBUTE);
+		
+		//	join tokens
+		paragraph.setValueAt(jointForm, t);
+		paragraph.removeTokensAt((t+1), 1);
+		
+		//	restore page break
+		if (((ftPageId != null) && !ftPageId.equals(stPageId)) || ((ftPageNumber != null) && !ftPageNumber.equals(stPageNumber))) {
+			Annotation pageBreak = paragraph.addAnnotation(PAGE_BREAK_TOKEN_TYPE, t+1, 1);
+			pageBreak.setAttribute(PAGE_ID_ATTRIBUTE, stPageId);
+			pageBreak.setAttribute(PAGE_NUMBER_ATTRIBUTE, stPageNumber);
 		}
 	}
 	
@@ -266,6 +395,114 @@ public class ParagraphStructureNormalizer extends AbstractAnalyzer implements Li
 		//	no indication, be conservative
 		return null;
 	}
+	
+	/**
+	 * Check that normalizing paragraphs in batch mode yields the same result as
+	 * normalizing them one by one, on random documents with hyphenated line
+	 * ends, page breaks, and nested annotations, both on documents proper and
+	 * on views. The optional argument is the number of documents to check.
+	 * @param args the arguments
+	 */
+	public static void main(String[] args) throws Exception {
+		int docs = ((args.length == 0) ? 300 : Integer.parseInt(args[0]));
+		ParagraphStructureNormalizer psn = new ParagraphStructureNormalizer();
+		psn.setDataProvider(null);
+		for (int d = 0; d < docs; d++) {
+			MutableAnnotation oneByOne = createTestDocument((1 + (d % 30)), d);
+			MutableAnnotation inBatch = createTestDocument((1 + (d % 30)), d);
+			
+			//	process every fourth document through a view
+			if (((d % 4) == 1) && (oneByOne.size() > 6)) {
+				psn.process(oneByOne.addAnnotation("view", 0, (oneByOne.size() - 2)), false);
+				psn.process(inBatch.addAnnotation("view", 0, (inBatch.size() - 2)), true);
+			}
+			else {
+				psn.process(oneByOne, false);
+				psn.process(inBatch, true);
+			}
+			
+			String oneByOneResult = dumpTestDocument(oneByOne);
+			String inBatchResult = dumpTestDocument(inBatch);
+			if (!oneByOneResult.equals(inBatchResult)) {
+				System.out.println("Results differ for document " + d + ":");
+				System.out.println(oneByOneResult);
+				System.out.println(inBatchResult);
+				System.exit(1);
+			}
+		}
+		System.out.println("Results equal for " + docs + " documents");
+	}
+	
+	private static MutableAnnotation createTestDocument(int paragraphs, long seed) {
+		Random random = new Random(seed);
+		String[] words = {"the", "exam", "ple", "fox", "Dr.", "jumps", "over", "it", "B", "carotin", "and", "or", "con", "tent", "well", "Yes", "results", "stud", "ies", "s"};
+		String[] lineEnds = {"-\n", "\u2013\r\n", "~\n", "\n", "\r\n"};
+		StringBuffer text = new StringBuffer();
+		ArrayList paragraphOffsets = new ArrayList();
+		for (int p = 0; p < paragraphs; p++) {
+			int paragraphStart = text.length();
+			int lines = (1 + random.nextInt(8));
+			for (int l = 0; l < lines; l++) {
+				int lineWords = (1 + random.nextInt(9));
+				for (int w = 0; w < lineWords; w++) {
+					if (w != 0)
+						text.append((random.nextInt(7) == 0) ? "  " : " ");
+					text.append(words[random.nextInt(words.length)]);
+				}
+				if ((l + 1) < lines)
+					text.append(lineEnds[random.nextInt(lineEnds.length)]);
+			}
+			paragraphOffsets.add(new int[] {paragraphStart, text.length()});
+			text.append((random.nextInt(3) == 0) ? " " : "\n");
+		}
+		
+		MutableAnnotation doc = Gamta.newDocument(Gamta.newTokenSequence(text, Gamta.INNER_PUNCTUATION_TOKENIZER));
+		for (int p = 0, t = 0; p < paragraphOffsets.size(); p++) {
+			int[] offsets = ((int[]) paragraphOffsets.get(p));
+			while ((t < doc.size()) && (doc.tokenAt(t).getStartOffset() < offsets[0]))
+				t++;
+			int start = t;
+			while ((t < doc.size()) && (doc.tokenAt(t).getStartOffset() < offsets[1]))
+				t++;
+			if (start == t)
+				continue;
+			Annotation paragraph = doc.addAnnotation(MutableAnnotation.PARAGRAPH_TYPE, start, (t - start));
+			paragraph.setAttribute(PAGE_ID_ATTRIBUTE, ("" + (p / 5)));
+			paragraph.setAttribute(PAGE_NUMBER_ATTRIBUTE, ("" + ((p / 5) + 1)));
+			if (((p % 5) == 0) && (p != 0)) {
+				Annotation pageBreak = doc.addAnnotation(PAGE_BREAK_TOKEN_TYPE, start, 1);
+				pageBreak.setAttribute(PAGE_ID_ATTRIBUTE, ("" + (p / 5)));
+				pageBreak.setAttribute(PAGE_NUMBER_ATTRIBUTE, ("" + ((p / 5) + 1)));
+			}
+			if ((random.nextInt(3) == 0) && ((t - start) > 1))
+				doc.addAnnotation(EMPHASIS_TYPE, (start + 1), Math.min((t - start - 1), 3));
+		}
+		return doc;
+	}
+	
+	private static String dumpTestDocument(MutableAnnotation doc) {
+		StringBuffer dump = new StringBuffer();
+		dump.append(doc.toString().replaceAll("\\r", "\\\\r").replaceAll("\\n", "\\\\n"));
+		dump.append("\n");
+		for (int t = 0; t < doc.size(); t++) {
+			String[] names = doc.tokenAt(t).getAttributeNames();
+			Arrays.sort(names);
+			for (int n = 0; n < names.length; n++)
+				dump.append(t + "." + names[n] + "=" + doc.tokenAt(t).getAttribute(names[n]) + "\n");
+		}
+		Annotation[] annotations = doc.getAnnotations();
+		for (int a = 0; a < annotations.length; a++) {
+			dump.append(annotations[a].getType() + "@" + annotations[a].getStartIndex() + "+" + annotations[a].size());
+			String[] names = annotations[a].getAttributeNames();
+			Arrays.sort(names);
+			for (int n = 0; n < names.length; n++) {
+				if (!Annotation.ANNOTATION_ID_ATTRIBUTE.equals(names[n]))
+					dump.append(" " + names[n] + "=" + annotations[a].getAttribute(names[n]));
+			}
+			dump.append("\n");
+		}
+		return dump.toString();
+	}
 }
 //public class ParagraphStructureNormalizer extends AbstractAnalyzer implements LiteratureConstants {
 //	
@@ -32,6 +32,7 @@ import java.util.Properties;
 
 import de.uka.ipd.idaho.gamta.MutableAnnotation;
 import de.uka.ipd.idaho.gamta.Gamta;
+import de.uka.ipd.idaho.gamta.TokenSequence;
 import de.uka.ipd.idaho.gamta.util.AbstractAnalyzer;
 
 /**
@@ -40,8 +41,8 @@ import de.uka.ipd.idaho.gamta.util.AbstractAnalyzer;
  */
 public class SectionTagger extends AbstractAnalyzer {
 	
-	private static final int MAX_TITLE_TOKENS = 15;
-	private static final int ENVIRONMENT_LENGHT_FACTOR = 3;
+	static final int MAX_TITLE_TOKENS = 15;
+	static final int ENVIRONMENT_LENGHT_FACTOR = 3;
 	
 	/** @see de.uka.ipd.idaho.gamta.util.Analyzer#process(de.uka.ipd.idaho.gamta.MutableAnnotation, Properties)
 	 */
@@ -54,7 +55,7 @@ public class SectionTagger extends AbstractAnalyzer {
 		
 		for (int p = 0; p < paragraphs.length; p++) {
 			MutableAnnotation paragraph = paragraphs[p];
-			if (this.isSectionTitle(paragraph) 
+			if (isSectionTitle(paragraph) 
 					&& ((p + 1) < paragraphs.length) 
 					&& ((p == 0) || ((paragraph.size() * ENVIRONMENT_LENGHT_FACTOR) < paragraphs[p - 1].size()))
 					&& ((paragraph.size() * ENVIRONMENT_LENGHT_FACTOR) < paragraphs[p + 1].size())
@@ -68,7 +69,7 @@ public class SectionTagger extends AbstractAnalyzer {
 		if (sectionSize != 0) data.addAnnotation(MutableAnnotation.SECTION_TYPE, sectionStart, sectionSize);
 	}
 	
-	private boolean isSectionTitle(MutableAnnotation paragraph) {
+	static boolean isSectionTitle(TokenSequence paragraph) {
 		if (paragraph.size() > MAX_TITLE_TOKENS) return false;
 		return (Gamta.hasWord(paragraph) && (Gamta.isTitleCase(paragraph) || Gamta.isAllUpperCase(paragraph)));
 	}
@@ -86,7 +86,7 @@ public class SentenceTagger extends AbstractAnalyzer {
 			//	end of quotations
 			if (token.equals(quoter)) {
 //				if ((lastToken != null) && Gamta.isSentenceEnd(lastToken.toString())) {
-				if ((lastToken != null) && Gamta.isSentenceEnd(lastToken.toString()) && !this.isSentenceContinued(nextToken)) {
+				if ((lastToken != null) && Gamta.isSentenceEnd(lastToken.toString()) && !isSentenceContinued(nextToken)) {
 					data.addAnnotation(MutableAnnotation.SENTENCE_TYPE, sentenceStart, sentenceSize);
 					sentenceStart = t;
 					sentenceSize = 0;
@@ -110,7 +110,7 @@ public class SentenceTagger extends AbstractAnalyzer {
 					(sentenceSize != 0)
 					&&
 //					((nextToken == null) || !Gamta.isLowerCaseWord(nextToken.toString()))
-					!this.isSentenceContinued(nextToken)
+					!isSentenceContinued(nextToken)
 					) {
 				data.addAnnotation(MutableAnnotation.SENTENCE_TYPE, sentenceStart, sentenceSize);
 				sentenceStart = t;
@@ -122,7 +122,7 @@ public class SentenceTagger extends AbstractAnalyzer {
 		if (sentenceSize != 0) data.addAnnotation(MutableAnnotation.SENTENCE_TYPE, sentenceStart, sentenceSize);
 	}
 	
-	private boolean isSentenceContinued(Token token) {
+	static boolean isSentenceContinued(Token token) {
 		if (token == null)
 			return false;
 		else if (token.length() == 0)
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitt Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITT KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.util.analyzers;
+
+
+import java.util.Properties;
+import java.util.Stack;
+
+import de.uka.ipd.idaho.gamta.Gamta;
+import de.uka.ipd.idaho.gamta.MutableAnnotation;
+import de.uka.ipd.idaho.gamta.Token;
+import de.uka.ipd.idaho.gamta.defaultImplementation.GamtaDocument;
+import de.uka.ipd.idaho.gamta.util.AbstractAnalyzer;
+
+/**
+ * Analyzer marking up the basic structure of a document, namely line ends,
+ * paragraphs, sentences, and sections, in a single pass over the tokens. The
+ * result is the same as running LineEndMarker, ParagraphTagger,
+ * SentenceTagger, and SectionTagger one after another, but the paragraphs,
+ * sentences, and sections are collected first and then added to the data in
+ * one batch, which is considerably faster on large documents. If the data
+ * already contains paragraphs, this analyzer runs the four individual
+ * analyzers in sequence instead, as their output depends on the existing
+ * paragraphs in this case.
+ * 
+ * @author sautter
+ */
+public class StructureTagger extends AbstractAnalyzer {
+	
+	private LineEndMarker lineEndMarker = new LineEndMarker();
+	private ParagraphTagger paragraphTagger = new ParagraphTagger();
+	private SentenceTagger sentenceTagger = new SentenceTagger();
+	private SectionTagger sectionTagger = new SectionTagger();
+	
+	/** Constructor
+	 */
+	public StructureTagger() {}
+	
+	/** @see de.uka.ipd.idaho.gamta.util.Analyzer#process(de.uka.ipd.idaho.gamta.MutableAnnotation, Properties)
+	 */
+	public void process(MutableAnnotation data, Properties parameters) {
+		if ((data == null) || (data.length() == 0)) return;
+		
+		//	existing paragraphs affect sentences and sections, use individual analyzers
+		if (data.getAnnotations(MutableAnnotation.PARAGRAPH_TYPE).length != 0) {
+			this.lineEndMarker.process(data, parameters);
+			this.paragraphTagger.process(data, parameters);
+			this.sentenceTagger.process(data, parameters);
+			this.sectionTagger.process(data, parameters);
+			return;
+		}
+		
+		AnnotationBuffer paragraphs = new AnnotationBuffer(MutableAnnotation.PARAGRAPH_TYPE);
+		AnnotationBuffer sentences = new AnnotationBuffer(MutableAnnotation.SENTENCE_TYPE);
+		AnnotationBuffer sections = new AnnotationBuffer(MutableAnnotation.SECTION_TYPE);
+		
+		int paragraphStart = 0;
+		int sectionStart = 0;
+		int sectionSize = 0;
+		
+		Token lastToken = null;
+		Token token = null;
+		Token nextToken = data.firstToken();
+		
+		int sentenceStart = 0;
+		int sentenceSize = 0;
+		
+		Token lastOpenBracket = null;
+		Stack openBrackets = new Stack();
+		String quoter = null;
+		
+		for (int t = 0; t < data.size(); t++) {
+			lastToken = token;
+			token = nextToken;
+			
+			//	mark line end
+			String whitespace = data.getWhitespaceAfter(t);
+			if ((whitespace.indexOf('\n') != -1) || (whitespace.indexOf('\r') != -1))
+				token.setAttribute(Token.PARAGRAPH_END_ATTRIBUTE, Token.PARAGRAPH_END_ATTRIBUTE);
+			
+			//	check paragraph end
+			boolean paragraphEnd = (token.hasAttribute(Token.PARAGRAPH_END_ATTRIBUTE) || ((t + 1) == data.size()));
+			nextToken = ((t + 1) < data.size()) ? data.tokenAt(t + 1) : null;
+			Token nextParagraphToken = (paragraphEnd ? null : nextToken);
+			sentenceSize++;
+			
+			//	trace brackets
+			if (Gamta.isOpeningBracket(token.toString())) {
+				openBrackets.push(token);
+				lastOpenBracket = token;
+			}
+			else if ((lastOpenBracket != null) && Gamta.closes(token.toString(), lastOpenBracket.toString())) {
+				openBrackets.pop();
+				lastOpenBracket = ((openBrackets.size() == 0) ? null : (Token) openBrackets.peek());
+			}
+			
+			//	end of quotations
+			if (token.equals(quoter)) {
+				if ((lastToken != null) && Gamta.isSentenceEnd(lastToken.toString()) && !SentenceTagger.isSentenceContinued(nextParagraphToken)) {
+					sentences.add(sentenceStart, sentenceSize);
+					sentenceStart = (t + 1);
+					sentenceSize = 0;
+				}
+				quoter = null;
+			}
+			
+			//	start of quotations
+			else if (token.equals("\"") || token.equals("'")) {
+				quoter = token.getValue();
+			}
+			
+			//	end of sentence
+			else if (
+					Gamta.isSentenceEnd(token.toString())
+					&&
+					(lastOpenBracket == null)
+					&&
+					(quoter == null)
+					&&
+					(sentenceSize != 0)
+					&&
+					!SentenceTagger.isSentenceContinued(nextParagraphToken)
+					) {
+				sentences.add(sentenceStart, sentenceSize);
+				sentenceStart = (t + 1);
+				sentenceSize = 0;
+			}
+			
+			//	continue with next token if paragraph continues
+			if (!paragraphEnd)
+				continue;
+			
+			//	mark remaining part of paragraph as sentence, and reset sentence state
+			if (sentenceSize != 0)
+				sentences.add(sentenceStart, sentenceSize);
+			sentenceStart = (t + 1);
+			sentenceSize = 0;
+			token = null;
+			lastOpenBracket = null;
+			openBrackets.clear();
+			quoter = null;
+			
+			//	mark paragraph
+			paragraphs.add(paragraphStart, (t + 1 - paragraphStart));
+			paragraphStart = (t + 1);
+			
+			//	check if previous paragraph starts a section now that its successor is known
+			if (paragraphs.size > 1) {
+				int p = (paragraphs.size - 2);
+				if (this.isSectionTitle(data, paragraphs, p)) {
+					sections.add(sectionStart, sectionSize);
+					sectionStart = paragraphs.starts[p];
+					sectionSize = paragraphs.sizes[p];
+				}
+				else sectionSize += paragraphs.sizes[p];
+			}
+		}
+		
+		//	last paragraph never starts a section
+		if (paragraphs.size != 0)
+			sectionSize += paragraphs.sizes[paragraphs.size - 1];
+		if (sectionSize != 0)
+			sections.add(sectionStart, sectionSize);
+		
+		//	add annotations in the order the individual analyzers would add them
+		AnnotationBuffer structure = new AnnotationBuffer(null);
+		structure.addAll(paragraphs);
+		structure.addAll(sentences);
+		structure.addAll(sections);
+		structure.trimToSize();
+		
+		//	add annotations in bulk if possible
+		if (data instanceof GamtaDocument)
+			((GamtaDocument) data).addAnnotations(structure.types, structure.starts, structure.sizes);
+		
+		//	add annotations one by one otherwise
+		else for (int a = 0; a < structure.size; a++)
+			data.addAnnotation(structure.types[a], structure.starts[a], structure.sizes[a]);
+	}
+	
+	//	check if some paragraph is the title of a section, requires the paragraph to have a successor
+	private boolean isSectionTitle(MutableAnnotation data, AnnotationBuffer paragraphs, int p) {
+		int size = paragraphs.sizes[p];
+		if (size > SectionTagger.MAX_TITLE_TOKENS)
+			return false;
+		if ((p != 0) && ((size * SectionTagger.ENVIRONMENT_LENGHT_FACTOR) >= paragraphs.sizes[p - 1]))
+			return false;
+		if ((size * SectionTagger.ENVIRONMENT_LENGHT_FACTOR) >= paragraphs.sizes[p + 1])
+			return false;
+		return SectionTagger.isSectionTitle(data.getSubsequence(paragraphs.starts[p], size));
+	}
+	
+	//	growable list of annotation types, start indexes, and sizes
+	private static class AnnotationBuffer {
+		private String type;
+		String[] types = new String[16];
+		int[] starts = new int[16];
+		int[] sizes = new int[16];
+		int size = 0;
+		AnnotationBuffer(String type) {
+			this.type = type;
+		}
+		void add(int start, int size) {
+			this.add(this.type, start, size);
+		}
+		void add(String type, int start, int size) {
+			if (this.size == this.types.length) {
+				String[] types = new String[this.types.length * 2];
+				System.arraycopy(this.types, 0, types, 0, this.size);
+				this.types = types;
+				int[] starts = new int[this.starts.length * 2];
+				System.arraycopy(this.starts, 0, starts, 0, this.size);
+				this.starts = starts;
+				int[] sizes = new int[this.sizes.length * 2];
+				System.arraycopy(this.sizes, 0, sizes, 0, this.size);
+				this.sizes = sizes;
+			}
+			this.types[this.size] = type;
+			this.starts[this.size] = start;
+			this.sizes[this.size] = size;
+			this.size++;
+		}
+		void trimToSize() {
+			if (this.size == this.types.length)
+				return;
+			String[] types = new String[this.size];
+			System.arraycopy(this.types, 0, types, 0, this.size);
+			this.types = types;
+			int[] starts = new int[this.size];
+			System.arraycopy(this.starts, 0, starts, 0, this.size);
+			this.starts = starts;
+			int[] sizes = new int[this.size];
+			System.arraycopy(this.sizes, 0, sizes, 0, this.size);
+			this.sizes = sizes;
+		}
+		void addAll(AnnotationBuffer ab) {
+			for (int a = 0; a < ab.size; a++)
+				this.add(ab.types[a], ab.starts[a], ab.sizes[a]);
+		}
+	}
+}
@@ -33,6 +33,7 @@ import java.util.Properties;
 import de.uka.ipd.idaho.gamta.Gamta;
 import de.uka.ipd.idaho.gamta.MutableAnnotation;
 import de.uka.ipd.idaho.gamta.Token;
+import de.uka.ipd.idaho.gamta.defaultImplementation.GamtaDocument;
 import de.uka.ipd.idaho.gamta.util.AbstractAnalyzer;
 
 /**
@@ -48,15 +49,27 @@ public class WhitespaceNormalizer extends AbstractAnalyzer {
 	public void process(MutableAnnotation data, Properties parameters) {
 		if ((data == null) || (data.size() < 2)) return;
 		
+		//	compute normalized whitespace in one pass
+		String[] whitespace = new String[data.size() - 1];
 		Token token = data.tokenAt(0);
 		Token lastToken;
 		for (int t = 1; t < data.size(); t++) {
 			lastToken = token;
 			token = data.tokenAt(t);
 			
-			if (lastToken.hasAttribute(Token.PARAGRAPH_END_ATTRIBUTE)) data.setWhitespaceAfter("\n", (t-1));
-			else if (Gamta.insertSpace(lastToken, token)) data.setWhitespaceAfter(" ", (t-1));
-			else data.setWhitespaceAfter("", (t-1));
+			if (lastToken.hasAttribute(Token.PARAGRAPH_END_ATTRIBUTE)) whitespace[t-1] = "\n";
+			else if (Gamta.insertSpace(lastToken, token)) whitespace[t-1] = " ";
+			else whitespace[t-1] = "";
+		}
+		
+		//	apply whitespace in bulk if possible
+		if (data instanceof GamtaDocument)
+			((GamtaDocument) data).setWhitespacesAfter(whitespace, 0);
+		
+		//	apply whitespace token by token otherwise, skipping unchanged whitespace
+		else for (int t = 0; t < whitespace.length; t++) {
+			if (!whitespace[t].equals(data.getWhitespaceAfter(t).toString()))
+				data.setWhitespaceAfter(whitespace[t], t);
 		}
 	}
 }
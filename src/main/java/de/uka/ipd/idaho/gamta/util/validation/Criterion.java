@@ -98,6 +98,10 @@ public class Criterion extends ProcessPart {
 			this.predicate = GPathParser.parseExpression(predicate);
 		}
 		
+		GPath getContextPath() {
+			return this.contextPath;
+		}
+		
 		/*
 		 * @see de.uka.ipd.idaho.gamta.util.validation.Validator#validate(de.uka.ipd.idaho.gamta.MutableAnnotation)
 		 */
@@ -111,11 +115,24 @@ public class Criterion extends ProcessPart {
 		}
 		
 		ValidationResult validate(QueriableAnnotation[] annotations) {
+			return this.validate(annotations, annotations);
+		}
+		
+		/**
+		 * Test the predicate of this criterion on a series of annotations, and
+		 * report failures with the instances at the same index in a second
+		 * array. This facilitates evaluating the predicate on an immutable
+		 * copy of a document and reporting the original annotations.
+		 * @param annotations the annotations to test the predicate on
+		 * @param instances the annotations to report in the result
+		 * @return the validation result
+		 */
+		ValidationResult validate(QueriableAnnotation[] annotations, Annotation[] instances) {
 			try {
 				ArrayList failedList = new ArrayList();
 				for (int a = 0; a < annotations.length; a++) {
 					if (GPath.evaluateExpression(this.predicate, annotations[a], null).asBoolean().value)
-						failedList.add(annotations[a]);
+						failedList.add(instances[a]);
 				}
 				return new CriterionValidationResult(this, annotations.length, ((Annotation[]) failedList.toArray(new Annotation[failedList.size()])));
 			}
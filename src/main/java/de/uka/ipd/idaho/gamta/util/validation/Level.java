@@ -148,11 +148,23 @@ public class Level extends ProcessPart {
 		 * @see de.uka.ipd.idaho.gamta.util.validation.Validator#validate(de.uka.ipd.idaho.gamta.MutableAnnotation)
 		 */
 		public ValidationResult validate(QueriableAnnotation data) {
+			return this.validate(data, null);
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.util.validation.Validator#validate(de.uka.ipd.idaho.gamta.QueriableAnnotation, de.uka.ipd.idaho.gamta.util.validation.ValidationExecutor.ValidationRun)
+		 */
+		ValidationResult validate(QueriableAnnotation data, ValidationExecutor.ValidationRun run) {
+			
+			//	evaluate the criterions of all tasks concurrently up front, results of skipped tasks are simply not used
+			if (run != null)
+				run.validateCriterions(this);
+			
 			String firstError = null;
 			ValidationResult[] taskResults = new ValidationResult[this.tasks.length];
 			for (int t = 0; t < this.tasks.length; t++) {
 				if (firstError == null) {
-					ValidationResult tvr = this.tasks[t].validate(data);
+					ValidationResult tvr = this.tasks[t].validate(data, run);
 					taskResults[t] = tvr;
 					firstError = tvr.getErrorDescription();
 				}
@@ -161,6 +173,14 @@ public class Level extends ProcessPart {
 			return new LevelValidationResult(this, firstError, taskResults/*, criterionResults*/);
 		}
 		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.util.validation.Validator#addCriterionValidators(java.util.ArrayList)
+		 */
+		void addCriterionValidators(ArrayList criterions) {
+			for (int t = 0; t < this.tasks.length; t++)
+				this.tasks[t].addCriterionValidators(criterions);
+		}
+		
 		/*
 		 * @see de.uka.ipd.idaho.gamta.util.validation.Validator#getDetailDescription()
 		 */
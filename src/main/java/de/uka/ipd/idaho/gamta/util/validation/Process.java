@@ -153,11 +153,18 @@ public class Process extends ProcessPart {
 		 * @see de.uka.ipd.idaho.gamta.util.validation.Validator#validate(de.uka.ipd.idaho.gamta.MutableAnnotation)
 		 */
 		public ValidationResult validate(QueriableAnnotation data) {
+			return this.validate(data, null);
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.util.validation.Validator#validate(de.uka.ipd.idaho.gamta.QueriableAnnotation, de.uka.ipd.idaho.gamta.util.validation.ValidationExecutor.ValidationRun)
+		 */
+		ValidationResult validate(QueriableAnnotation data, ValidationExecutor.ValidationRun run) {
 			String firstError = null;
 			ValidationResult[] levelResults = new ValidationResult[this.levels.length];
 			for (int l = 0; l < this.levels.length; l++) {
 				if (firstError == null) {
-					ValidationResult svr = this.levels[l].validate(data);
+					ValidationResult svr = this.levels[l].validate(data, run);
 					levelResults[l] = svr;
 					firstError = svr.getErrorDescription();
 				}
@@ -166,6 +173,14 @@ public class Process extends ProcessPart {
 			return new ProcessValidationResult(this, firstError, levelResults);
 		}
 		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.util.validation.Validator#addCriterionValidators(java.util.ArrayList)
+		 */
+		void addCriterionValidators(ArrayList criterions) {
+			for (int l = 0; l < this.levels.length; l++)
+				this.levels[l].addCriterionValidators(criterions);
+		}
+		
 		/*
 		 * @see de.uka.ipd.idaho.gamta.util.validation.Validator#getDetailDescription()
 		 */
@@ -132,19 +132,32 @@ public class Step extends ProcessPart {
 		 * @see de.uka.ipd.idaho.gamta.util.validation.Validator#validate(de.uka.ipd.idaho.gamta.MutableAnnotation)
 		 */
 		public ValidationResult validate(QueriableAnnotation data) {
+			return this.validate(data, null);
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.util.validation.Validator#validate(de.uka.ipd.idaho.gamta.QueriableAnnotation, de.uka.ipd.idaho.gamta.util.validation.ValidationExecutor.ValidationRun)
+		 */
+		ValidationResult validate(QueriableAnnotation data, ValidationExecutor.ValidationRun run) {
 			if (this.failIgnoreAttribute == null)
 				this.failIgnoreAttribute = ("_ignore_" + this.getFullName().hashCode());
 			
 			try {
 				
 				//	get context instances
-				QueriableAnnotation[] instances = this.contextPath.evaluate(data, null);
+				QueriableAnnotation[] instances;
+				if (run == null)
+					instances = this.contextPath.evaluate(data, null);
+				else {
+					run.validateCriterions(this);
+					instances = run.getContextInstances(this.contextPath);
+				}
 				
 				//	collect annotations failing individual criterions
 				HashMap errorDetailLists = new HashMap();
 				CriterionValidationResult[] criterionResults = new CriterionValidationResult[this.criterions.length];
 				for (int c = 0; c < this.criterions.length; c++) {
-					criterionResults[c] = ((CriterionValidationResult) this.criterions[c].validate(instances));
+					criterionResults[c] = ((CriterionValidationResult) ((run == null) ? this.criterions[c].validate(instances) : run.getCriterionResult(this.criterions[c])));
 					Annotation[] failed = criterionResults[c].getFailed();
 					for (int f = 0; f < failed.length; f++)
 						if (!"true".equals(failed[f].getAttribute(this.failIgnoreAttribute))) {
@@ -174,6 +187,14 @@ public class Step extends ProcessPart {
 			}
 		}
 		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.util.validation.Validator#addCriterionValidators(java.util.ArrayList)
+		 */
+		void addCriterionValidators(ArrayList criterions) {
+			for (int c = 0; c < this.criterions.length; c++)
+				criterions.add(this.criterions[c]);
+		}
+		
 		/*
 		 * @see de.uka.ipd.idaho.gamta.util.validation.Validator#getDetailDescription()
 		 */
@@ -118,11 +118,23 @@ public class Task extends ProcessPart {
 		 * @see de.uka.ipd.idaho.gamta.util.validation.Validator#validate(de.uka.ipd.idaho.gamta.MutableAnnotation)
 		 */
 		public ValidationResult validate(QueriableAnnotation data) {
+			return this.validate(data, null);
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.util.validation.Validator#validate(de.uka.ipd.idaho.gamta.QueriableAnnotation, de.uka.ipd.idaho.gamta.util.validation.ValidationExecutor.ValidationRun)
+		 */
+		ValidationResult validate(QueriableAnnotation data, ValidationExecutor.ValidationRun run) {
+			
+			//	evaluate criterions concurrently (no-op if done by level already)
+			if (run != null)
+				run.validateCriterions(this);
+			
 			String firstError = null;
 			ValidationResult[] stepResults = new ValidationResult[this.steps.length];
 			for (int s = 0; s < this.steps.length; s++) {
 				if (firstError == null) {
-					ValidationResult svr = this.steps[s].validate(data);
+					ValidationResult svr = this.steps[s].validate(data, run);
 					stepResults[s] = svr;
 					firstError = svr.getErrorDescription();
 				}
@@ -131,6 +143,14 @@ public class Task extends ProcessPart {
 			return new TaskValidationResult(this, firstError, stepResults);
 		}
 		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.gamta.util.validation.Validator#addCriterionValidators(java.util.ArrayList)
+		 */
+		void addCriterionValidators(ArrayList criterions) {
+			for (int s = 0; s < this.steps.length; s++)
+				this.steps[s].addCriterionValidators(criterions);
+		}
+		
 		/*
 		 * @see de.uka.ipd.idaho.gamta.util.validation.Validator#getDetailDescription()
 		 */
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitt Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITT KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.gamta.util.validation;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import de.uka.ipd.idaho.gamta.QueriableAnnotation;
+import de.uka.ipd.idaho.gamta.defaultImplementation.GamtaDocument;
+import de.uka.ipd.idaho.gamta.util.ParallelJobRunner;
+import de.uka.ipd.idaho.gamta.util.ParallelJobRunner.ParallelFor;
+import de.uka.ipd.idaho.gamta.util.gPath.GPath;
+import de.uka.ipd.idaho.gamta.util.gPath.exceptions.GPathException;
+import de.uka.ipd.idaho.gamta.util.validation.Criterion.CriterionValidationResult;
+import de.uka.ipd.idaho.gamta.util.validation.Criterion.CriterionValidator;
+
+/**
+ * Executor validating documents against a markup process with the criterions
+ * evaluated concurrently. The results are the same as those of the validate()
+ * method of the validator of the process part proper, and so is the order in
+ * which the parts are checked: as soon as a level fails, all subsequent levels
+ * are skipped without any of their criterions being evaluated. Within a level,
+ * however, the context paths of all the steps are evaluated up front, each
+ * distinct path only once, and then all the criterions of the level are
+ * evaluated concurrently, discarding the results of steps that turn out to be
+ * skipped after a failure.<br>
+ * If the document to validate is a GamtaDocument, all evaluation works on an
+ * immutable snapshot of the latter, and the annotations reported in the result
+ * are mapped back to the document proper by their IDs, so they can be
+ * corrected. Other documents are not safe for concurrent reading, so for them
+ * the criterions are evaluated in a single thread, still sharing the results
+ * of context paths.
+ * 
+ * @author sautter
+ */
+public class ValidationExecutor {
+	
+	private int maxThreads;
+	
+	/** Constructor using as many threads as there are CPU cores
+	 */
+	public ValidationExecutor() {
+		this(-1);
+	}
+	
+	/** Constructor
+	 * @param	maxThreads	the maximum number of threads to use for evaluating criterions (values less than 1 indicate the number of CPU cores)
+	 */
+	public ValidationExecutor(int maxThreads) {
+		this.maxThreads = maxThreads;
+	}
+	
+	/**
+	 * Test whether a document complies with the requirements of a part of a
+	 * markup process.
+	 * @param part the process part to validate against
+	 * @param data the document to test
+	 * @return a ValidationResult describing the result of the test
+	 */
+	public ValidationResult validate(ProcessPart part, QueriableAnnotation data) {
+		return this.validate(part.getValidator(), data);
+	}
+	
+	/**
+	 * Test whether a document complies with the requirements of a Validator.
+	 * @param validator the Validator to validate against
+	 * @param data the document to test
+	 * @return a ValidationResult describing the result of the test
+	 */
+	public ValidationResult validate(Validator validator, QueriableAnnotation data) {
+		return validator.validate(data, new ValidationRun(data, this.maxThreads));
+	}
+	
+	/**
+	 * The state of a single validation, namely the document view to evaluate
+	 * on and the results of context paths and criterions evaluated so far.
+	 * 
+	 * @author sautter
+	 */
+	static class ValidationRun {
+		private QueriableAnnotation data;
+		private QueriableAnnotation view;
+		private int maxThreads;
+		private HashMap annotationsById = null;
+		private HashMap contextResults = new HashMap();
+		private HashMap criterionResults = new HashMap();
+		
+		ValidationRun(QueriableAnnotation data, int maxThreads) {
+			this.data = data;
+			if (data instanceof GamtaDocument) {
+				this.view = ((GamtaDocument) data).snapshot();
+				this.maxThreads = maxThreads;
+			}
+			else {
+				this.view = data;
+				this.maxThreads = 1;
+			}
+		}
+		
+		/**
+		 * Evaluate all the criterions nested in a Validator that have not been
+		 * evaluated before, as well as their context paths.
+		 * @param validator the Validator whose criterions to evaluate
+		 */
+		void validateCriterions(Validator validator) {
+			ArrayList criterionList = new ArrayList();
+			validator.addCriterionValidators(criterionList);
+			
+			//	collect pending criterions and the distinct context paths they depend on
+			ArrayList pendingCriterions = new ArrayList();
+			ArrayList pendingContexts = new ArrayList();
+			for (int c = 0; c < criterionList.size(); c++) {
+				CriterionValidator criterion = ((CriterionValidator) criterionList.get(c));
+				if (this.criterionResults.containsKey(criterion))
+					continue;
+				pendingCriterions.add(criterion);
+				String contextKey = criterion.getContextPath().toString();
+				if (this.contextResults.containsKey(contextKey))
+					continue;
+				ContextResult context = new ContextResult(criterion.getContextPath());
+				this.contextResults.put(contextKey, context);
+				pendingContexts.add(context);
+			}
+			if (pendingCriterions.isEmpty())
+				return;
+			
+			//	evaluate context paths
+			final ContextResult[] contexts = ((ContextResult[]) pendingContexts.toArray(new ContextResult[pendingContexts.size()]));
+			if ((contexts.length != 0) && (this.view != this.data))
+				this.indexAnnotations();
+			this.runParallelFor(new ParallelFor() {
+				public void doFor(int index) throws Exception {
+					evaluateContext(contexts[index]);
+				}
+			}, contexts.length);
+			
+			//	evaluate criterions
+			final CriterionValidator[] criterions = ((CriterionValidator[]) pendingCriterions.toArray(new CriterionValidator[pendingCriterions.size()]));
+			final ValidationResult[] results = new ValidationResult[criterions.length];
+			this.runParallelFor(new ParallelFor() {
+				public void doFor(int index) throws Exception {
+					results[index] = evaluateCriterion(criterions[index]);
+				}
+			}, criterions.length);
+			for (int c = 0; c < criterions.length; c++)
+				this.criterionResults.put(criterions[c], results[c]);
+		}
+		
+		/**
+		 * Retrieve the result of a context path, evaluating it if it has not
+		 * been evaluated before.
+		 * @param contextPath the context path
+		 * @return the annotations of the document proper the context path
+		 *         matches
+		 * @throws GPathException
+		 */
+		QueriableAnnotation[] getContextInstances(GPath contextPath) throws GPathException {
+			ContextResult context = this.getContextResult(contextPath);
+			if (context.error != null)
+				throw context.error;
+			return context.instances;
+		}
+		
+		/**
+		 * Retrieve the result of a criterion, evaluating it if it has not been
+		 * evaluated before.
+		 * @param criterion the criterion validator
+		 * @return the result of the criterion
+		 */
+		ValidationResult getCriterionResult(CriterionValidator criterion) {
+			ValidationResult result = ((ValidationResult) this.criterionResults.get(criterion));
+			if (result == null) {
+				result = this.evaluateCriterion(criterion);
+				this.criterionResults.put(criterion, result);
+			}
+			return result;
+		}
+		
+		private ContextResult getContextResult(GPath contextPath) {
+			String contextKey = contextPath.toString();
+			ContextResult context = ((ContextResult) this.contextResults.get(contextKey));
+			if (context == null) {
+				context = new ContextResult(contextPath);
+				if (this.view != this.data)
+					this.indexAnnotations();
+				this.evaluateContext(context);
+				this.contextResults.put(contextKey, context);
+			}
+			return context;
+		}
+		
+		private void evaluateContext(ContextResult context) {
+			try {
+				context.viewInstances = context.contextPath.evaluate(this.view, null);
+			}
+			catch (GPathException gpe) {
+				context.error = gpe;
+				return;
+			}
+			
+			//	evaluated on document proper, nothing to map
+			if (this.view == this.data) {
+				context.instances = context.viewInstances;
+				return;
+			}
+			
+			//	map annotations from snapshot back to document proper
+			context.instances = new QueriableAnnotation[context.viewInstances.length];
+			for (int i = 0; i < context.viewInstances.length; i++) {
+				context.instances[i] = ((QueriableAnnotation) this.annotationsById.get(context.viewInstances[i].getAnnotationID()));
+				if (context.instances[i] == null)
+					context.instances[i] = context.viewInstances[i];
+			}
+		}
+		
+		private ValidationResult evaluateCriterion(CriterionValidator criterion) {
+			ContextResult context = this.getContextResult(criterion.getContextPath());
+			if (context.error != null)
+				return new CriterionValidationResult(criterion, 0, 0);
+			return criterion.validate(context.viewInstances, context.instances);
+		}
+		
+		private void indexAnnotations() {
+			if (this.annotationsById != null)
+				return;
+			this.annotationsById = new HashMap();
+			this.annotationsById.put(this.data.getAnnotationID(), this.data);
+			QueriableAnnotation[] annotations = this.data.getAnnotations();
+			for (int a = 0; a < annotations.length; a++)
+				this.annotationsById.put(annotations[a].getAnnotationID(), annotations[a]);
+		}
+		
+		private void runParallelFor(ParallelFor loop, int count) {
+			ParallelJobRunner.runParallelFor(loop, count, this.maxThreads);
+			Exception e = loop.getException();
+			if (e instanceof RuntimeException)
+				throw ((RuntimeException) e);
+			else if (e != null)
+				throw new RuntimeException(e);
+		}
+	}
+	
+	//	result of evaluating a context path, on a snapshot and mapped back to the document proper
+	private static class ContextResult {
+		final GPath contextPath;
+		QueriableAnnotation[] viewInstances;
+		QueriableAnnotation[] instances;
+		GPathException error;
+		ContextResult(GPath contextPath) {
+			this.contextPath = contextPath;
+		}
+	}
+}
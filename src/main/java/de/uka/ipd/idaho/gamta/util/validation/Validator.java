@@ -30,6 +30,7 @@ package de.uka.ipd.idaho.gamta.util.validation;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
 
 import de.uka.ipd.idaho.gamta.QueriableAnnotation;
 
@@ -204,6 +205,29 @@ public abstract class Validator {
 	 */
 	public abstract ValidationResult validate(QueriableAnnotation data);
 	
+	/**
+	 * Test whether a document complies with the requirements of this
+	 * Validator as part of a run of a ValidationExecutor. This default
+	 * implementation ignores the run and delegates to the one-argument
+	 * version, sub classes composed of other validators overwrite it to hand
+	 * the run on to their parts.
+	 * @param data the document to test
+	 * @param run the validation executor run to use
+	 * @return a ValidationResult describing the result of the test
+	 */
+	ValidationResult validate(QueriableAnnotation data, ValidationExecutor.ValidationRun run) {
+		return this.validate(data);
+	}
+	
+	/**
+	 * Add the validators of all the criterions nested in this Validator to a
+	 * list, in document order of the backing markup process. This default
+	 * implementation does nothing, sub classes composed of other validators
+	 * overwrite it to recurse to their parts.
+	 * @param criterions the list to add the criterion validators to
+	 */
+	void addCriterionValidators(ArrayList criterions) {}
+	
 	/**
 	 * @return a name identifying the Validator, in particular the name of the
 	 *         backing markup process part
@@ -0,0 +1,651 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitt Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITT KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.htmlXmlUtil;
+
+
+import java.io.IOException;
+import java.util.HashMap;
+
+import de.uka.ipd.idaho.htmlXmlUtil.grammars.Grammar;
+import de.uka.ipd.idaho.htmlXmlUtil.grammars.StandardGrammar;
+
+/**
+ * Compact, read-only representation of an HTML/XML tree. Instead of one
+ * TreeNode object per node, each with its own attribute set and child node
+ * list, this class stores the tree in parallel int arrays indexed by node
+ * number: parent, first child, next sibling, number of children, type, the
+ * range of the node value in a single shared char array, and the range of the
+ * node attributes in a further set of parallel arrays. Node types and
+ * attribute names come from a string pool, so there is only one String object
+ * for every distinct type or name. The nodes are numbered in document order,
+ * with the root at number 0, so the number of a node is also its document
+ * order position.<br>
+ * Client code can work on the node numbers directly, or use the TreeNode
+ * objects returned by getRoot() and getNode(). The latter are read-only
+ * facades created on demand and cached, so the same node number always yields
+ * the same TreeNode object, and they can be handed to any code working on
+ * TreeNodes, like XPath or TreeTools. All methods that would modify the tree
+ * throw an UnsupportedOperationException. Instances of this class are not
+ * thread safe, as facades are created on demand without synchronization.
+ * 
+ * @author sautter
+ */
+public class CompactTree {
+	
+	private static final String READ_ONLY_MESSAGE = "CompactTree is read-only";
+	
+	private Grammar grammar;
+	
+	//	node structure
+	private int size = 0;
+	private int[] parents;
+	private int[] firstChildren;
+	private int[] nextSiblings;
+	private int[] childCounts;
+	private int[] typeIds;
+	private int[] valueStarts;
+	private int[] valueLengths;
+	private int[] attributeStarts;
+	private int[] attributeCounts;
+	
+	//	attributes, consecutive for each node
+	private int attributeCount = 0;
+	private int[] attributeNameIds;
+	private int[] attributeValueStarts;
+	private int[] attributeValueLengths;
+	
+	//	characters of all node values and attribute values
+	private char[] text;
+	private int textLength = 0;
+	
+	//	node types and attribute names
+	private String[] strings = new String[64];
+	private int stringCount = 0;
+	private HashMap stringIds = new HashMap();
+	
+	//	last child of each node, only required while building the tree
+	private int[] lastChildren;
+	
+	//	facades, created on demand
+	private TreeNode[] nodes = null;
+	
+	private CompactTree(Grammar grammar, int capacity) {
+		this.grammar = ((grammar == null) ? new StandardGrammar() : grammar);
+		this.parents = new int[capacity];
+		this.firstChildren = new int[capacity];
+		this.nextSiblings = new int[capacity];
+		this.childCounts = new int[capacity];
+		this.typeIds = new int[capacity];
+		this.valueStarts = new int[capacity];
+		this.valueLengths = new int[capacity];
+		this.attributeStarts = new int[capacity];
+		this.attributeCounts = new int[capacity];
+		this.lastChildren = new int[capacity];
+		this.attributeNameIds = new int[capacity];
+		this.attributeValueStarts = new int[capacity];
+		this.attributeValueLengths = new int[capacity];
+		this.text = new char[capacity * 16];
+	}
+	
+	/** Constructor copying an existing tree, using the StandardGrammar for
+	 * generating attribute strings
+	 * @param	root	the root of the tree to copy
+	 */
+	public CompactTree(TreeNode root) {
+		this(root, null);
+	}
+	
+	/** Constructor copying an existing tree
+	 * @param	root	the root of the tree to copy
+	 * @param	grammar	the Grammar to use for generating attribute strings
+	 */
+	public CompactTree(TreeNode root, Grammar grammar) {
+		this(grammar, Math.max(16, root.countNodesInSubtree()));
+		this.addSubtree(-1, root);
+		this.trimToSize();
+	}
+	
+	/** Constructor building a tree from the events of a pull parser, the
+	 * same way Parser builds a tree from the tokens of a TokenSource
+	 * @param	parser	the pull parser to read from
+	 * @throws IOException
+	 */
+	public CompactTree(PullParser parser) throws IOException {
+		this(parser.getGrammar(), 1024);
+		int node = this.addNode(-1, TreeNode.ROOT_NODE_TYPE);
+		for (int event; (event = parser.next()) != PullParser.END_OF_INPUT;) {
+			
+			//	descend to new element (singular tags are followed by an END_TAG event right away)
+			if (event == PullParser.START_TAG) {
+				node = this.addNode(node, parser.getTagType());
+				if (this.mayHaveAttributes(parser.getBuffer(), parser.getOffset(), parser.getLength())) {
+					TreeNodeAttributeSet attributes = parser.getAttributes();
+					String[] attributeNames = attributes.getAttributeNames();
+					for (int a = 0; a < attributeNames.length; a++)
+						this.addAttribute(node, attributeNames[a], attributes.getAttribute(attributeNames[a]));
+				}
+			}
+			
+			//	rise to parent
+			else if (event == PullParser.END_TAG)
+				node = this.parents[node];
+			
+			//	character data, unescaped as in Parser
+			else if (event == PullParser.TEXT) {
+				int data = this.addNode(node, TreeNode.DATA_NODE_TYPE);
+				String value = this.grammar.unescape(parser.getText());
+				this.valueStarts[data] = this.addText(value);
+				this.valueLengths[data] = value.length();
+			}
+			
+			//	comments, DTDs, and processing instructions, stored as they are
+			else {
+				String type;
+				if (event == PullParser.COMMENT)
+					type = TreeNode.COMMENT_NODE_TYPE;
+				else if (event == PullParser.DTD)
+					type = TreeNode.DTD_NODE_TYPE;
+				else type = TreeNode.PROCESSING_INSTRUCTION_NODE_TYPE;
+				int other = this.addNode(node, type);
+				this.valueStarts[other] = this.addText(parser.getBuffer(), parser.getOffset(), parser.getLength());
+				this.valueLengths[other] = parser.getLength();
+			}
+		}
+		this.trimToSize();
+	}
+	
+	//	check if a tag contains any whitespace after its type, i.e., might have attributes at all
+	private boolean mayHaveAttributes(char[] tag, int offset, int length) {
+		for (int c = (offset + 1); c < (offset + length); c++) {
+			if (this.grammar.isWhitespace(tag[c]))
+				return true;
+		}
+		return false;
+	}
+	
+	private void addSubtree(int parent, TreeNode treeNode) {
+		int node = this.addNode(parent, treeNode.getNodeType());
+		String value = treeNode.getNodeValue();
+		if ((value != null) && (value.length() != 0)) {
+			this.valueStarts[node] = this.addText(value);
+			this.valueLengths[node] = value.length();
+		}
+		String[] attributeNames = treeNode.getAttributeNames();
+		for (int a = 0; a < attributeNames.length; a++)
+			this.addAttribute(node, attributeNames[a], treeNode.getAttribute(attributeNames[a]));
+		for (int c = 0; c < treeNode.getChildNodeCount(); c++) {
+			TreeNode child = treeNode.getChildNode(c);
+			if (child != null)
+				this.addSubtree(node, child);
+		}
+	}
+	
+	private int addNode(int parent, String type) {
+		if (this.size == this.parents.length) {
+			int capacity = (this.size * 2);
+			this.parents = grow(this.parents, capacity);
+			this.firstChildren = grow(this.firstChildren, capacity);
+			this.nextSiblings = grow(this.nextSiblings, capacity);
+			this.childCounts = grow(this.childCounts, capacity);
+			this.typeIds = grow(this.typeIds, capacity);
+			this.valueStarts = grow(this.valueStarts, capacity);
+			this.valueLengths = grow(this.valueLengths, capacity);
+			this.attributeStarts = grow(this.attributeStarts, capacity);
+			this.attributeCounts = grow(this.attributeCounts, capacity);
+			this.lastChildren = grow(this.lastChildren, capacity);
+		}
+		int node = this.size++;
+		this.parents[node] = parent;
+		this.firstChildren[node] = -1;
+		this.nextSiblings[node] = -1;
+		this.childCounts[node] = 0;
+		this.typeIds[node] = this.getStringId(type);
+		this.valueStarts[node] = 0;
+		this.valueLengths[node] = 0;
+		this.attributeStarts[node] = this.attributeCount;
+		this.attributeCounts[node] = 0;
+		this.lastChildren[node] = -1;
+		
+		//	link to parent
+		if (parent != -1) {
+			if (this.lastChildren[parent] == -1)
+				this.firstChildren[parent] = node;
+			else this.nextSiblings[this.lastChildren[parent]] = node;
+			this.lastChildren[parent] = node;
+			this.childCounts[parent]++;
+		}
+		return node;
+	}
+	
+	//	attributes have to be added right after their node, before the next node
+	private void addAttribute(int node, String name, String value) {
+		if (this.attributeCount == this.attributeNameIds.length) {
+			int capacity = (this.attributeCount * 2);
+			this.attributeNameIds = grow(this.attributeNameIds, capacity);
+			this.attributeValueStarts = grow(this.attributeValueStarts, capacity);
+			this.attributeValueLengths = grow(this.attributeValueLengths, capacity);
+		}
+		int attribute = this.attributeCount++;
+		this.attributeNameIds[attribute] = this.getStringId(name);
+		this.attributeValueStarts[attribute] = this.addText(value);
+		this.attributeValueLengths[attribute] = value.length();
+		this.attributeCounts[node]++;
+	}
+	
+	private int addText(String str) {
+		this.ensureTextCapacity(str.length());
+		str.getChars(0, str.length(), this.text, this.textLength);
+		int start = this.textLength;
+		this.textLength += str.length();
+		return start;
+	}
+	
+	private int addText(char[] chars, int offset, int length) {
+		this.ensureTextCapacity(length);
+		System.arraycopy(chars, offset, this.text, this.textLength, length);
+		int start = this.textLength;
+		this.textLength += length;
+		return start;
+	}
+	
+	private void ensureTextCapacity(int length) {
+		if ((this.textLength + length) <= this.text.length)
+			return;
+		char[] text = new char[Math.max((this.text.length * 2), (this.textLength + length))];
+		System.arraycopy(this.text, 0, text, 0, this.textLength);
+		this.text = text;
+	}
+	
+	private int getStringId(String str) {
+		Integer id = ((Integer) this.stringIds.get(str));
+		if (id != null)
+			return id.intValue();
+		if (this.stringCount == this.strings.length) {
+			String[] strings = new String[this.strings.length * 2];
+			System.arraycopy(this.strings, 0, strings, 0, this.stringCount);
+			this.strings = strings;
+		}
+		this.strings[this.stringCount] = str;
+		this.stringIds.put(str, new Integer(this.stringCount));
+		return this.stringCount++;
+	}
+	
+	private void trimToSize() {
+		this.parents = grow(this.parents, this.size);
+		this.firstChildren = grow(this.firstChildren, this.size);
+		this.nextSiblings = grow(this.nextSiblings, this.size);
+		this.childCounts = grow(this.childCounts, this.size);
+		this.typeIds = grow(this.typeIds, this.size);
+		this.valueStarts = grow(this.valueStarts, this.size);
+		this.valueLengths = grow(this.valueLengths, this.size);
+		this.attributeStarts = grow(this.attributeStarts, this.size);
+		this.attributeCounts = grow(this.attributeCounts, this.size);
+		this.attributeNameIds = grow(this.attributeNameIds, this.attributeCount);
+		this.attributeValueStarts = grow(this.attributeValueStarts, this.attributeCount);
+		this.attributeValueLengths = grow(this.attributeValueLengths, this.attributeCount);
+		if (this.textLength < this.text.length) {
+			char[] text = new char[this.textLength];
+			System.arraycopy(this.text, 0, text, 0, this.textLength);
+			this.text = text;
+		}
+		this.lastChildren = null;
+		this.stringIds = null;
+	}
+	
+	private static int[] grow(int[] array, int length) {
+		if (array.length == length)
+			return array;
+		int[] newArray = new int[length];
+		System.arraycopy(array, 0, newArray, 0, Math.min(array.length, length));
+		return newArray;
+	}
+	
+	/**
+	 * @return the number of nodes in the tree
+	 */
+	public int size() {
+		return this.size;
+	}
+	
+	/**
+	 * @return the Grammar used for generating attribute strings
+	 */
+	public Grammar getGrammar() {
+		return this.grammar;
+	}
+	
+	/**
+	 * Retrieve the number of the parent of a node.
+	 * @param node the number of the node
+	 * @return the number of the parent node, or -1 for the root
+	 */
+	public int getParent(int node) {
+		return this.parents[node];
+	}
+	
+	/**
+	 * Retrieve the number of the first child of a node.
+	 * @param node the number of the node
+	 * @return the number of the first child node, or -1 if there is none
+	 */
+	public int getFirstChild(int node) {
+		return this.firstChildren[node];
+	}
+	
+	/**
+	 * Retrieve the number of the next sibling of a node.
+	 * @param node the number of the node
+	 * @return the number of the next sibling node, or -1 if there is none
+	 */
+	public int getNextSibling(int node) {
+		return this.nextSiblings[node];
+	}
+	
+	/**
+	 * Retrieve the number of children of a node.
+	 * @param node the number of the node
+	 * @return the number of child nodes
+	 */
+	public int getChildNodeCount(int node) {
+		return this.childCounts[node];
+	}
+	
+	/**
+	 * Retrieve the type of a node.
+	 * @param node the number of the node
+	 * @return the type of the node
+	 */
+	public String getNodeType(int node) {
+		return this.strings[this.typeIds[node]];
+	}
+	
+	/**
+	 * Retrieve the value of a node. This method creates a new String on
+	 * every invocation.
+	 * @param node the number of the node
+	 * @return the value of the node, the empty string for elements
+	 */
+	public String getNodeValue(int node) {
+		return ((this.valueLengths[node] == 0) ? "" : new String(this.text, this.valueStarts[node], this.valueLengths[node]));
+	}
+	
+	/**
+	 * Retrieve the names of the attributes of a node.
+	 * @param node the number of the node
+	 * @return an array holding the attribute names
+	 */
+	public String[] getAttributeNames(int node) {
+		String[] attributeNames = new String[this.attributeCounts[node]];
+		for (int a = 0; a < attributeNames.length; a++)
+			attributeNames[a] = this.strings[this.attributeNameIds[this.attributeStarts[node] + a]];
+		return attributeNames;
+	}
+	
+	/**
+	 * Retrieve the value of an attribute of a node. Attribute names are case
+	 * insensitive, as in TreeNodeAttributeSet.
+	 * @param node the number of the node
+	 * @param name the name of the attribute
+	 * @return the value of the attribute, or null if the node does not have
+	 *         the attribute
+	 */
+	public String getAttribute(int node, String name) {
+		int attribute = this.findAttribute(node, name);
+		return ((attribute == -1) ? null : new String(this.text, this.attributeValueStarts[attribute], this.attributeValueLengths[attribute]));
+	}
+	
+	private int findAttribute(int node, String name) {
+		if (name == null)
+			return -1;
+		for (int a = this.attributeStarts[node]; a < (this.attributeStarts[node] + this.attributeCounts[node]); a++) {
+			String attributeName = this.strings[this.attributeNameIds[a]];
+			if ((attributeName == name) || attributeName.equalsIgnoreCase(name))
+				return a;
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return the root of the tree, as a read-only TreeNode
+	 */
+	public TreeNode getRoot() {
+		return this.getNode(0);
+	}
+	
+	/**
+	 * Retrieve a node of the tree as a read-only TreeNode. The TreeNode is
+	 * created on the first request for the node, subsequent requests return
+	 * the same object.
+	 * @param node the number of the node
+	 * @return the TreeNode representing the node
+	 */
+	public TreeNode getNode(int node) {
+		if (this.nodes == null)
+			this.nodes = new TreeNode[this.size];
+		if (this.nodes[node] == null)
+			this.nodes[node] = new Node(node);
+		return this.nodes[node];
+	}
+	
+	/**
+	 * Read-only TreeNode facade for a node of the tree. The document order
+	 * position is pre-set to the node number.
+	 * 
+	 * @author sautter
+	 */
+	private class Node extends TreeNode {
+		private final int node;
+		private String value = null;
+		private TreeNode[] children = null;
+		
+		Node(int node) {
+			super(strings[typeIds[node]]);
+			this.node = node;
+			this.setDocumentOrderPosition(node);
+		}
+		
+		private TreeNode[] getChildren() {
+			if (this.children == null) {
+				this.children = new TreeNode[childCounts[this.node]];
+				for (int c = 0, child = firstChildren[this.node]; child != -1; c++, child = nextSiblings[child])
+					this.children[c] = getNode(child);
+			}
+			return this.children;
+		}
+		
+		private TreeNodeAttributeSet getAttributeSet() {
+			TreeNodeAttributeSet attributes = new TreeNodeAttributeSet(grammar);
+			String[] attributeNames = this.getAttributeNames();
+			for (int a = 0; a < attributeNames.length; a++)
+				attributes.setAttribute(attributeNames[a], this.getAttribute(attributeNames[a]));
+			return attributes;
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#getChildNodeCount()
+		 */
+		public int getChildNodeCount() {
+			return childCounts[this.node];
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#getChildNode(int)
+		 */
+		public TreeNode getChildNode(int index) {
+			if (index < childCounts[this.node])
+				return this.getChildren()[index];
+			else return null;
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#getChildNodes()
+		 */
+		public TreeNode[] getChildNodes() {
+			TreeNode[] children = this.getChildren();
+			TreeNode[] childNodes = new TreeNode[children.length];
+			System.arraycopy(children, 0, childNodes, 0, children.length);
+			return childNodes;
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#getParent()
+		 */
+		public TreeNode getParent() {
+			return ((parents[this.node] == -1) ? null : getNode(parents[this.node]));
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#getNodeValue()
+		 */
+		public String getNodeValue() {
+			if (this.value == null)
+				this.value = CompactTree.this.getNodeValue(this.node);
+			return this.value;
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#hasAttribute(java.lang.String)
+		 */
+		public boolean hasAttribute(String attribute) {
+			return (findAttribute(this.node, attribute) != -1);
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#getAttribute(java.lang.String)
+		 */
+		public String getAttribute(String attribute) {
+			return CompactTree.this.getAttribute(this.node, attribute);
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#getAttribute(java.lang.String, java.lang.String)
+		 */
+		public String getAttribute(String attribute, String def) {
+			String value = CompactTree.this.getAttribute(this.node, attribute);
+			return ((value == null) ? def : value);
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#getAttributeNames()
+		 */
+		public String[] getAttributeNames() {
+			return CompactTree.this.getAttributeNames(this.node);
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#getAttributeValuePairs(de.uka.ipd.idaho.htmlXmlUtil.grammars.Grammar)
+		 */
+		public String[] getAttributeValuePairs(Grammar grammar) {
+			return this.getAttributeSet().getAttributeValuePairs(grammar);
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#getAttributeValuePairs(char, char)
+		 */
+		public String[] getAttributeValuePairs(char attributeValueSeparator, char quoter) {
+			return this.getAttributeSet().getAttributeValuePairs(attributeValueSeparator, quoter);
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#getAttributesForTag(de.uka.ipd.idaho.htmlXmlUtil.grammars.Grammar)
+		 */
+		public String getAttributesForTag(Grammar grammar) {
+			return ((attributeCounts[this.node] == 0) ? "" : this.getAttributeSet().getAttributeValueString(grammar));
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#getAttributesForTag(char, char, char)
+		 */
+		public String getAttributesForTag(char attributeSeparator, char attributeValueSeparator, char quoter) {
+			return ((attributeCounts[this.node] == 0) ? "" : this.getAttributeSet().getAttributeValueString(attributeSeparator, attributeValueSeparator, quoter));
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#deleteSubtree()
+		 */
+		public void deleteSubtree() {
+			//	nothing to clean up, the arrays go with the tree as a whole
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#addChildNode(de.uka.ipd.idaho.htmlXmlUtil.TreeNode)
+		 */
+		public void addChildNode(TreeNode newChildNode) {
+			throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#removeChildNode(de.uka.ipd.idaho.htmlXmlUtil.TreeNode)
+		 */
+		public void removeChildNode(TreeNode childNode) {
+			throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#replaceChildNode(de.uka.ipd.idaho.htmlXmlUtil.TreeNode, de.uka.ipd.idaho.htmlXmlUtil.TreeNode)
+		 */
+		public void replaceChildNode(TreeNode oldChild, TreeNode newChild) {
+			throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#removeChildNodes()
+		 */
+		public void removeChildNodes() {
+			throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#setParent(de.uka.ipd.idaho.htmlXmlUtil.TreeNode)
+		 */
+		public void setParent(TreeNode parent) {
+			throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#setAttribute(java.lang.String, java.lang.String)
+		 */
+		public String setAttribute(String attribute, String value) {
+			throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#removeAttribute(java.lang.String)
+		 */
+		public String removeAttribute(String attribute) {
+			throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+		}
+		
+		/* (non-Javadoc)
+		 * @see de.uka.ipd.idaho.htmlXmlUtil.TreeNode#clearAttributes()
+		 */
+		public void clearAttributes() {
+			throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+		}
+	}
+}
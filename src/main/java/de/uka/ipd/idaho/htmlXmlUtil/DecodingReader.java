@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitt Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITT KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.htmlXmlUtil;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reader decoding the bytes from an InputStream in the encoding indicated by
+ * the byte order mark or the XML declaration at the start of the data. If the
+ * data has neither, it is decoded as UTF-8, unless its start is not valid
+ * UTF-8, in which case it is decoded as ISO-8859-1. Decoding works on large
+ * chunks of bytes, and right into the char array handed to the read() method,
+ * so wrapping this reader in a LookaheadReader decodes the bytes straight into
+ * the buffer of the latter. ISO-8859-1 is decoded by a plain loop, with no
+ * decoder involved at all.<br>
+ * Apart from the start of the data, which has to be available for detecting
+ * the encoding, this reader does not wait for more bytes than a single read
+ * from the underlying InputStream yields, and returns from the read() method
+ * as soon as it has decoded some characters, so it can decode data from a
+ * socket or pipe as it arrives.
+ * 
+ * @author sautter
+ */
+class DecodingReader extends Reader {
+	
+	private static final int BYTE_BUFFER_SIZE = 65536;
+	private static final int DECLARATION_LOOKAHEAD = 1024;
+	
+	private static final Pattern ENCODING_PATTERN = Pattern.compile("encoding\\s*\\=\\s*[\\\"\\']([A-Za-z][A-Za-z0-9\\.\\_\\-\\:]*)[\\\"\\']");
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+	
+	private InputStream in;
+	private ByteBuffer bytes;
+	private boolean inputEnded = false;
+	private boolean flushed = false;
+	
+	private Charset charset;
+	private CharsetDecoder decoder;
+	
+	/** Constructor
+	 * @param	in	the InputStream to read from
+	 * @throws IOException
+	 */
+	DecodingReader(InputStream in) throws IOException {
+		this.in = in;
+		this.bytes = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+		this.bytes.limit(0);
+		this.readBytes(DECLARATION_LOOKAHEAD);
+		
+		//	detect encoding, and skip byte order mark
+		this.charset = this.detectEncoding();
+		if (this.charset != ISO_8859_1)
+			this.decoder = this.charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+	
+	/**
+	 * @return the name of the encoding the bytes are decoded in
+	 */
+	String getEncoding() {
+		return this.charset.name();
+	}
+	
+	//	read bytes until the buffer holds at least the argument number (or is full), blocking only as long as the underlying stream does, returning false at end of input
+	private boolean readBytes(int minBytes) throws IOException {
+		if (this.inputEnded)
+			return false;
+		this.bytes.compact();
+		minBytes = Math.min(minBytes, this.bytes.capacity());
+		try {
+			while (this.bytes.position() < minBytes) {
+				int r = this.in.read(this.bytes.array(), (this.bytes.arrayOffset() + this.bytes.position()), this.bytes.remaining());
+				if (r == -1) {
+					this.inputEnded = true;
+					break;
+				}
+				this.bytes.position(this.bytes.position() + r);
+			}
+		}
+		finally {
+			this.bytes.flip();
+		}
+		return true;
+	}
+	
+	private Charset detectEncoding() {
+		byte[] b = this.bytes.array();
+		int l = this.bytes.limit();
+		
+		//	byte order marks
+		if ((l >= 3) && ((b[0] & 0xFF) == 0xEF) && ((b[1] & 0xFF) == 0xBB) && ((b[2] & 0xFF) == 0xBF)) {
+			this.bytes.position(3);
+			return UTF_8;
+		}
+		if ((l >= 2) && ((b[0] & 0xFF) == 0xFE) && ((b[1] & 0xFF) == 0xFF)) {
+			this.bytes.position(2);
+			return Charset.forName("UTF-16BE");
+		}
+		if ((l >= 2) && ((b[0] & 0xFF) == 0xFF) && ((b[1] & 0xFF) == 0xFE)) {
+			this.bytes.position(2);
+			return Charset.forName("UTF-16LE");
+		}
+		
+		//	UTF-16 without byte order mark (an XML declaration or a tag start in either byte order)
+		if ((l >= 4) && (b[0] == '<') && (b[1] == 0) && (b[2] != 0) && (b[3] == 0))
+			return Charset.forName("UTF-16LE");
+		if ((l >= 4) && (b[0] == 0) && (b[1] == '<') && (b[2] == 0) && (b[3] != 0))
+			return Charset.forName("UTF-16BE");
+		
+		//	XML declaration
+		if ((l >= 5) && (b[0] == '<') && (b[1] == '?') && (b[2] == 'x') && (b[3] == 'm') && (b[4] == 'l')) {
+			int declEnd = 5;
+			while ((declEnd < Math.min(l, DECLARATION_LOOKAHEAD)) && (b[declEnd] != '>'))
+				declEnd++;
+			Matcher m = ENCODING_PATTERN.matcher(new String(b, 0, declEnd, ISO_8859_1));
+			String encoding = (m.find() ? m.group(1).toUpperCase() : null);
+			
+			//	we can read the declaration byte by byte, so it cannot be a multi-byte encoding
+			if ((encoding != null) && !encoding.startsWith("UTF-16") && !encoding.startsWith("UTF-32")) {
+				try {
+					Charset charset = Charset.forName(encoding);
+					return (ISO_8859_1.equals(charset) ? ISO_8859_1 : charset);
+				}
+				catch (RuntimeException re) {
+					//	illegal or unsupported encoding name, fall back to default below
+				}
+			}
+		}
+		
+		//	no indication, use UTF-8 if start of data is valid UTF-8, ISO-8859-1 otherwise
+		CharsetDecoder utf8Decoder = UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+		ByteBuffer start = this.bytes.duplicate();
+		CharBuffer chars = CharBuffer.allocate(1024);
+		while (true) {
+			CoderResult cr = utf8Decoder.decode(start, chars, this.inputEnded);
+			if (cr.isOverflow())
+				chars.clear();
+			else if (cr.isError())
+				return ISO_8859_1;
+			else return UTF_8; // underflow, we're through, except for possibly incomplete sequence at end of buffer
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.io.Reader#read(char[], int, int)
+	 */
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (this.decoder == null)
+			return this.readIso8859(cbuf, off, len);
+		
+		CharBuffer chars = CharBuffer.wrap(cbuf, off, len);
+		while (chars.hasRemaining() && !this.flushed) {
+			CoderResult cr = this.decoder.decode(this.bytes, chars, this.inputEnded);
+			
+			//	char array full
+			if (cr.isOverflow())
+				break;
+			
+			//	out of bytes, return what we have rather than wait for more
+			if (chars.position() > off)
+				break;
+			
+			//	nothing decoded so far, get more bytes (at least one more, as there might be an incomplete multi-byte sequence left)
+			if (this.readBytes(this.bytes.remaining() + 1))
+				continue;
+			
+			//	end of input, flush decoder
+			this.decoder.decode(this.bytes, chars, true);
+			if (this.decoder.flush(chars).isOverflow())
+				break;
+			this.flushed = true;
+		}
+		int read = (chars.position() - off);
+		return (((read == 0) && this.flushed) ? -1 : read);
+	}
+	
+	private int readIso8859(char[] cbuf, int off, int len) throws IOException {
+		int read = 0;
+		while (read < len) {
+			
+			//	out of bytes, return what we have rather than wait for more
+			if (!this.bytes.hasRemaining() && ((read != 0) || !this.readBytes(1)))
+				break;
+			byte[] b = this.bytes.array();
+			int start = this.bytes.position();
+			int end = Math.min(this.bytes.limit(), (start + len - read));
+			for (int i = start; i < end; i++)
+				cbuf[off + read++] = ((char) (b[i] & 0xFF));
+			this.bytes.position(end);
+		}
+		return (((read == 0) && this.inputEnded && !this.bytes.hasRemaining()) ? -1 : read);
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.io.Reader#close()
+	 */
+	public void close() throws IOException {
+		this.in.close();
+	}
+}
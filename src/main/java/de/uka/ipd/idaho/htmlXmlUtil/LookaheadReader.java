@@ -27,7 +27,6 @@
  */
 package de.uka.ipd.idaho.htmlXmlUtil;
 
-import java.io.BufferedReader;
 import java.io.FilterReader;
 import java.io.IOException;
 import java.io.Reader;
@@ -48,8 +47,9 @@ class LookaheadReader extends FilterReader {
 	private int bufferStart = 0;
 	private int bufferEnd;
 	private int lookahead;
+	private boolean inputEnded = false;
 	LookaheadReader(Reader in, int lookahead) throws IOException {
-		super((in instanceof BufferedReader) ? ((BufferedReader) in) : new BufferedReader(in));
+		super(in); // no need for a BufferedReader, we read in bulk
 		this.lookahead = Math.max(lookahead, 256);
 		this.charBuffer = new char[Math.max((this.lookahead * 2), 2048)];
 	}
@@ -58,22 +58,25 @@ class LookaheadReader extends FilterReader {
 			return;
 		if (min < (this.bufferEnd - this.bufferStart))
 			return;
+		
+		//	move remaining characters to start of buffer
 		if (this.bufferStart != 0) {
-			for (int i = 0; i < (this.bufferEnd - this.bufferStart); i++)
-				this.charBuffer[i] = this.charBuffer[this.bufferStart + i];
+			System.arraycopy(this.charBuffer, this.bufferStart, this.charBuffer, 0, (this.bufferEnd - this.bufferStart));
 			this.bufferEnd -= this.bufferStart;
 			this.bufferStart = 0;
 		}
+		
+		//	fill up buffer in as few reads as possible
 		while (this.bufferEnd < this.charBuffer.length) {
-			int r = super.read();
-			if (r == -1)
+			int r = this.in.read(this.charBuffer, this.bufferEnd, (this.charBuffer.length - this.bufferEnd));
+			if (r == -1) {
+				this.inputEnded = true;
 				break;
-			this.charBuffer[this.bufferEnd++] = ((char) r);
+			}
+			this.bufferEnd += r;
 		}
 		if (this.bufferStart == this.bufferEnd)
 			this.bufferEnd = -1;
-		//	TODO_not consider using small char buffer instead of char-by-char reading
-		//	==> looking inside BufferedReader, the single char read() method looks like the best choice
 	}
 	public boolean markSupported() {
 		return false;
@@ -92,13 +95,9 @@ class LookaheadReader extends FilterReader {
 		this.fillBuffer(this.lookahead + len);
 		if (this.bufferEnd == -1)
 			return -1;
-		int read = 0;
-		while (read < len) {
-			if (this.bufferStart == this.bufferEnd)
-				break;
-			cbuf[off + read] = this.charBuffer[this.bufferStart++];
-			read++;
-		}
+		int read = Math.min(len, (this.bufferEnd - this.bufferStart));
+		System.arraycopy(this.charBuffer, this.bufferStart, cbuf, off, read);
+		this.bufferStart += read;
 		return read;
 	}
 	public long skip(long n) throws IOException {
@@ -131,13 +130,8 @@ class LookaheadReader extends FilterReader {
 		this.fillBuffer(this.lookahead + 1);
 		if (this.bufferEnd == -1)
 			return -1;
-		int peek = 0;
-		while (peek < len) {
-			if ((this.bufferStart + peek) == this.bufferEnd)
-				break;
-			cbuf[off + peek] = this.charBuffer[this.bufferStart + peek];
-			peek++;
-		}
+		int peek = Math.min(len, (this.bufferEnd - this.bufferStart));
+		System.arraycopy(this.charBuffer, this.bufferStart, cbuf, off, peek);
 		return peek;
 	}
 	boolean startsWith(String prefix, boolean caseSensitive) throws IOException {
@@ -149,14 +143,58 @@ class LookaheadReader extends FilterReader {
 		this.fillBuffer(this.lookahead + 1);
 		if (this.bufferEnd < (this.bufferStart + from + prefix.length()))
 			return false;
-		for (int c = 0; c < prefix.length(); c++) {
-			if ((this.bufferStart + from + c) == this.bufferEnd)
-				return false;
-			if (caseSensitive ? (this.charBuffer[this.bufferStart + from + c] != prefix.charAt(c)) : (Character.toLowerCase(this.charBuffer[this.bufferStart + from + c]) != Character.toLowerCase(prefix.charAt(c))))
+		return this.matches(prefix, caseSensitive, (this.bufferStart + from));
+	}
+	private boolean matches(String prefix, boolean caseSensitive, int start) {
+		char[] charBuffer = this.charBuffer;
+		if (caseSensitive) {
+			for (int c = 0; c < prefix.length(); c++) {
+				if (charBuffer[start + c] != prefix.charAt(c))
+					return false;
+			}
+		}
+		else for (int c = 0; c < prefix.length(); c++) {
+			char ch = charBuffer[start + c];
+			char pch = prefix.charAt(c);
+			if ((ch != pch) && (Character.toLowerCase(ch) != Character.toLowerCase(pch)))
 				return false;
 		}
 		return true;
 	}
+	
+	/* Bulk access to the buffer proper, for scanning token boundaries without
+	 * going through peek() for every single character. Other than peek(),
+	 * these methods are not limited to the lookahead, but reach up to the
+	 * end of the buffer. Unless isInputBuffered() returns true, the input
+	 * continues beyond the end of the buffer, so callers have to make sure
+	 * not to decide on a token boundary too close to the latter. */
+	int getBufferedLength() throws IOException {
+		this.fillBuffer(this.lookahead + 1);
+		return ((this.bufferEnd == -1) ? 0 : (this.bufferEnd - this.bufferStart));
+	}
+	boolean isInputBuffered() {
+		return this.inputEnded;
+	}
+	char getBufferedChar(int index) {
+		return this.charBuffer[this.bufferStart + index];
+	}
+	boolean bufferedStartsWith(String prefix, boolean caseSensitive, int from) {
+		if (this.bufferEnd < (this.bufferStart + from + prefix.length()))
+			return false;
+		return this.matches(prefix, caseSensitive, (this.bufferStart + from));
+	}
+	String readString(int length) throws IOException {
+		int read = Math.min(length, this.getBufferedLength());
+		String str = new String(this.charBuffer, this.bufferStart, read);
+		this.bufferStart += read;
+		return str;
+	}
+	void read(StringBuilder sb, int length) throws IOException {
+		int read = Math.min(length, this.getBufferedLength());
+		sb.append(this.charBuffer, this.bufferStart, read);
+		this.bufferStart += read;
+	}
+	
 	int indexOf(char ch) throws IOException {
 		return this.indexOf(ch, 0);
 	}
@@ -164,9 +202,12 @@ class LookaheadReader extends FilterReader {
 		this.fillBuffer(this.lookahead + 1);
 		if (this.bufferEnd == -1)
 			return -1;
-		for (int i = from; i < (this.bufferEnd - this.bufferStart); i++) {
-			if (this.charBuffer[this.bufferStart + i] == ch)
-				return i;
+		char[] charBuffer = this.charBuffer;
+		int start = this.bufferStart;
+		int end = this.bufferEnd;
+		for (int i = (start + from); i < end; i++) {
+			if (charBuffer[i] == ch)
+				return (i - start);
 		}
 		return -1;
 	}
@@ -181,21 +222,23 @@ class LookaheadReader extends FilterReader {
 			return from;
 		if (this.lookahead < (from + infix.length()))
 			return -1;
+		char[] charBuffer = this.charBuffer;
+		int start = this.bufferStart;
+		int end = this.bufferEnd;
 		char infixStartChar = infix.charAt(0);
-		for (int i = from; i < (this.bufferEnd - this.bufferStart); i++) {
-			if (this.charBuffer[this.bufferStart + i] != infixStartChar)
+		for (int i = (start + from); i < end; i++) {
+			if (charBuffer[i] != infixStartChar)
 				continue;
+			if ((i + infix.length()) > end)
+				return -1;
 			boolean match = true;
-			for (int c = 1; c < infix.length(); c++) {
-				if ((this.bufferStart + i + c) == this.bufferEnd)
-					return -1;
-				if (this.charBuffer[this.bufferStart + i + c] != infix.charAt(c)) {
+			for (int c = 1; c < infix.length(); c++)
+				if (charBuffer[i + c] != infix.charAt(c)) {
 					match = false;
 					break;
 				}
-			}
 			if (match)
-				return i;
+				return (i - start);
 		}
 		return -1;
 	}
@@ -227,31 +270,60 @@ class LookaheadReader extends FilterReader {
 	private static final char NULLCHAR = '\u0000';
 	
 	static final String cropName(LookaheadReader charSource) throws IOException {
-		StringBuffer name = new StringBuffer();
-		while (charSource.peek() != -1) {
-			if (Character.isLetter((char) charSource.peek()))
-				name.append((char) charSource.read());
-			else if ("_:".indexOf((char) charSource.peek()) != -1)
-				name.append((char) charSource.read());
-			else if (name.length() == 0)
+		StringBuilder name = null;
+		int nameLength = 0;
+		while (true) {
+			int buffered = charSource.getBufferedLength();
+			if (buffered == 0)
+				break;
+			
+			//	scan name characters in buffer
+			int length = 0;
+			while (length < buffered) {
+				char ch = charSource.getBufferedChar(length);
+				if (Character.isLetter(ch) || ("_:".indexOf(ch) != -1)) {}
+				else if ((nameLength + length) == 0)
+					break;
+				else if (Character.isDigit(ch) || ("-.".indexOf(ch) != -1)) {}
+				else break;
+				length++;
+			}
+			
+			//	name ends inside buffer, slice it in one go if possible
+			if ((length < buffered) || charSource.isInputBuffered()) {
+				if (name == null)
+					return charSource.readString(length);
+				charSource.read(name, length);
 				break;
-			else if (Character.isDigit((char) charSource.peek()))
-				name.append((char) charSource.read());
-			else if ("-.".indexOf((char) charSource.peek()) != -1)
-				name.append((char) charSource.read());
-			else break;
+			}
+			
+			//	name continues beyond buffer (very unlikely, but possible)
+			if (name == null)
+				name = new StringBuilder();
+			charSource.read(name, length);
+			nameLength += length;
 		}
-		return name.toString();
+		return ((name == null) ? "" : name.toString());
 	}
 	
 	static final String cropAttributeValue(LookaheadReader charSource, Grammar grammar, String tagType, String attribName, char tagEnd, char endTagMarker) throws IOException {
-		StringBuffer value = new StringBuffer();
 		char quoter = NULLCHAR;
 		
 		//	read quoter, if any
 		if (grammar.isTagAttributeValueQuoter((char) charSource.peek()))
 			quoter = ((char) charSource.read());
 		
+		//	quoted value ending only at its quoter, slice it in one go if end quoter is in buffer
+		if ((quoter != NULLCHAR) && !grammar.correctCharEncoding() && (!grammar.correctErrors() || grammar.valueMayContainWhitespace(tagType, attribName))) {
+			int quoterIndex = charSource.indexOf(quoter);
+			if (quoterIndex != -1) {
+				String value = charSource.readString(quoterIndex);
+				charSource.read();
+				return value;
+			}
+		}
+		
+		StringBuilder value = new StringBuilder();
 		//	read value
 		while (charSource.peek() != -1) {
 			
@@ -310,7 +382,7 @@ class LookaheadReader extends FilterReader {
 	}
 	
 	static final String cropCharCode(LookaheadReader charSource, Grammar grammar) throws IOException {
-		StringBuffer charCode = new StringBuffer("&");
+		StringBuilder charCode = new StringBuilder("&");
 		
 		//	check if we have a semicolon to terminate the character code
 		int nextSemicolonIndex = charSource.indexOf(';');
@@ -32,6 +32,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.io.StringReader;
 import java.io.Writer;
 import java.util.Stack;
 import java.util.Vector;
@@ -52,8 +53,9 @@ import de.uka.ipd.idaho.htmlXmlUtil.grammars.StandardGrammar;
  * sending out tokens to a TokenReceiver as it processed the input data stream,
  * and in a DOM-like tree building mode (the parse() methods), which return the
  * root TreeNode of the parsed input data. Internally, the Parser always builds
- * a tree, but in streaming mode, the tree is destroyed as soon as the end tag
- * of an element has been sent to the TokenReceiver.
+ * a tree, but in streaming mode, the nodes are not linked to their parents,
+ * and each element is destroyed as soon as its end tag has been sent to the
+ * TokenReceiver, so only the currently open elements are held in memory.
  * 
  * @author sautter
  */
@@ -76,6 +78,12 @@ public class Parser {
 		this.correctErrors = this.grammar.correctErrors();
 	}
 	
+	/**	@return	the Grammar this Parser uses
+	 */
+	public Grammar getGrammar() {
+		return this.grammar;
+	}
+	
 	/**	build an XML tree out of the chars provided by the specified InputStream
 	 * @param	input		the InputStream providing the char sequence to be parsed
 	 * @return	the root node of the XML tree
@@ -355,6 +363,59 @@ public class Parser {
 	public ParserInstance getInstance(String input, TokenReceiver output) throws IOException {
 		return new ParserInstance(TokenSource.getTokenSource(input, this.grammar), output, true);
 	}
+	
+	/**	build a compact, read-only tree out of the chars provided by the specified InputStream, with the encoding
+	 * of the data detected from its byte order mark or XML declaration. The tree is built from the events of a pull
+	 * parser, so the token sequence check of the Grammar does not apply.
+	 * @param	input		the InputStream providing the char sequence to be parsed
+	 * @return	the compact tree
+	 */
+	public CompactTree parseCompact(InputStream input) throws IOException {
+		return new CompactTree(this.getPullParser(input));
+	}
+	
+	/**	build a compact, read-only tree out of the chars provided by the specified Reader. The tree is built from the
+	 * events of a pull parser, so the token sequence check of the Grammar does not apply.
+	 * @param	input		the Reader providing the char sequence to be parsed
+	 * @return	the compact tree
+	 */
+	public CompactTree parseCompact(Reader input) throws IOException {
+		return new CompactTree(this.getPullParser(input));
+	}
+	
+	/**	build a compact, read-only tree out of the specified String. The tree is built from the events of a pull
+	 * parser, so the token sequence check of the Grammar does not apply.
+	 * @param	input		the String containing the char sequence to be parsed
+	 * @return	the compact tree
+	 */
+	public CompactTree parseCompact(String input) throws IOException {
+		return new CompactTree(this.getPullParser(input));
+	}
+	
+	/**	create a pull parser reading from the specified InputStream, using the Grammar of this Parser, with the
+	 * encoding of the data detected from its byte order mark or XML declaration
+	 * @param	input		the InputStream providing the char sequence to be parsed
+	 * @return	a pull parser reading from the specified InputStream
+	 */
+	public PullParser getPullParser(InputStream input) throws IOException {
+		return this.getPullParser(new DecodingReader(input));
+	}
+	
+	/**	create a pull parser reading from the specified Reader, using the Grammar of this Parser
+	 * @param	input		the Reader providing the char sequence to be parsed
+	 * @return	a pull parser reading from the specified Reader
+	 */
+	public PullParser getPullParser(Reader input) throws IOException {
+		return new PullParser(new LookaheadReader(input, (this.grammar.getCharLookahead() + 1)), this.grammar);
+	}
+	
+	/**	create a pull parser reading from the specified String, using the Grammar of this Parser
+	 * @param	input		the String containing the char sequence to be parsed
+	 * @return	a pull parser reading from the specified String
+	 */
+	public PullParser getPullParser(String input) throws IOException {
+		return this.getPullParser(new StringReader(input));
+	}
 //	
 //	//	method used for parsing
 //	private TreeNode processTree(TokenSource input, TokenReceiver output, boolean build) throws IOException {
@@ -678,7 +739,8 @@ public class Parser {
 					
 					//	create new node and link it to the tree
 					newNode = new TreeNode(this.node, grammar.translateTag(tagType), "", TreeNodeAttributeSet.getTagAttributes(token, grammar));
-					this.node.addChildNode(newNode);
+					if (!this.stream)
+						this.node.addChildNode(newNode);
 					
 					//	descend to new node if tag not singular, and write start tag
 					if (!grammar.isSingularTag(token)) {
@@ -713,28 +775,32 @@ public class Parser {
 			else if (grammar.isComment(token)) {
 				if (this.output != null)
 					this.output.storeToken(token, this.stack.size() + 1);
-				this.node.addChildNode(new TreeNode(this.node, TreeNode.COMMENT_NODE_TYPE, token));
+				if (!this.stream)
+					this.node.addChildNode(new TreeNode(this.node, TreeNode.COMMENT_NODE_TYPE, token));
 			}
 			
 			//	handle DTD node
 			else if (grammar.isDTD(token)) {
 				if (this.output != null)
 					this.output.storeToken(token, this.stack.size() + 1);
-				this.node.addChildNode(new TreeNode(this.node, TreeNode.DTD_NODE_TYPE, token));
+				if (!this.stream)
+					this.node.addChildNode(new TreeNode(this.node, TreeNode.DTD_NODE_TYPE, token));
 			}
 			
 			//	handle processing instruction node
 			else if (grammar.isProcessingInstruction(token)) {
 				if (this.output != null)
 					this.output.storeToken(token, this.stack.size() + 1);
-				this.node.addChildNode(new TreeNode(this.node, TreeNode.PROCESSING_INSTRUCTION_NODE_TYPE, token));
+				if (!this.stream)
+					this.node.addChildNode(new TreeNode(this.node, TreeNode.PROCESSING_INSTRUCTION_NODE_TYPE, token));
 			}
 			
 			//	handle content node
 			else {
 				if (this.output != null)
 					this.output.storeToken(token, this.stack.size() + 1);
-				this.node.addChildNode(new TreeNode(this.node, TreeNode.DATA_NODE_TYPE, grammar.unescape(token)));
+				if (!this.stream)
+					this.node.addChildNode(new TreeNode(this.node, TreeNode.DATA_NODE_TYPE, grammar.unescape(token)));
 			}
 		}
 	}
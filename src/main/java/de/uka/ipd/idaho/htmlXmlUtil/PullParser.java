@@ -0,0 +1,677 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitt Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITT KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.htmlXmlUtil;
+
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Vector;
+
+import de.uka.ipd.idaho.htmlXmlUtil.accessories.TreeTools;
+import de.uka.ipd.idaho.htmlXmlUtil.exceptions.InvalidNestingException;
+import de.uka.ipd.idaho.htmlXmlUtil.exceptions.MissingEndTagException;
+import de.uka.ipd.idaho.htmlXmlUtil.exceptions.UnexpectedEndTagException;
+import de.uka.ipd.idaho.htmlXmlUtil.grammars.Grammar;
+
+/**
+ * A StAX-like pull parser for HTML and XML data. Client code drives the parser
+ * by calling next(), which returns the type of the next event. Unlike the
+ * stream() methods of Parser, this class does not create a String object for
+ * each token. The characters of the current token are available via the
+ * getBuffer(), getOffset(), and getLength() methods instead, and the buffer is
+ * re-used for every token, so its content is only valid until the next call to
+ * next(). Client code that needs a token as a String can use getText().<br>
+ * Markup is split into tokens the same way as by TokenSource, i.e., a tag
+ * starts with the tag start character of the grammar, followed by a letter,
+ * '_', ':', or the end tag marker. Whether or not such a token actually is a
+ * tag, and its type, are determined by the isTag(), isEndTag(), and getType()
+ * methods of the Grammar in use, as in Parser, with the tag name ending at the
+ * first tag whitespace; tokens that are not tags are reported as TEXT events.
+ * The nesting of the reported tags follows the same rules as in Parser, based
+ * on the isSingularTag(), translateTag(), canBeChildOf(), and
+ * canBeEmbeddedIn() methods of the Grammar in use: if the grammar allows for
+ * error correction, a start tag that cannot be nested in the currently open
+ * elements implicitly closes the latter, an end tag closes any elements
+ * opened after its start tag, and end tags that match no open element are
+ * ignored. Implicitly closed elements are reported as END_TAG events whose
+ * buffer holds a generated end tag. Singular tags are reported as a START_TAG
+ * event immediately followed by an END_TAG event, and any elements still open
+ * at the end of the input are closed by END_TAG events before END_OF_INPUT.<br>
+ * Tag types are obtained from the grammar only once for every distinct tag
+ * name and then cached, so they do not result in a String being created for
+ * every tag either. Tag attributes are only parsed on a call
+ * to getAttributes(). Tokens are reported as they occur in the input, i.e.,
+ * attribute values are not normalized, and characters are neither escaped nor
+ * unescaped; use the escape() and unescape() methods of the grammar for the
+ * latter. Whitespace between two tags is not reported, as in Parser, and
+ * neither is the token sequence check of the grammar, which works on String
+ * tokens. Instances of this class are not thread safe.
+ * 
+ * @author sautter
+ */
+public class PullParser {
+	
+	/** event type indicating the start of an element, or a singular tag */
+	public static final int START_TAG = 1;
+	
+	/** event type indicating the end of an element */
+	public static final int END_TAG = 2;
+	
+	/** event type indicating character data */
+	public static final int TEXT = 3;
+	
+	/** event type indicating a comment */
+	public static final int COMMENT = 4;
+	
+	/** event type indicating an embedded DTD */
+	public static final int DTD = 5;
+	
+	/** event type indicating a processing instruction */
+	public static final int PROCESSING_INSTRUCTION = 6;
+	
+	/** event type indicating the end of the input */
+	public static final int END_OF_INPUT = -1;
+	
+	private static final int START_OF_INPUT = 0;
+	
+	private final LookaheadReader charSource;
+	private final Grammar grammar;
+	private final boolean correctErrors;
+	
+	private final char tagStart;
+	private final char tagEnd;
+	private final char endTagMarker;
+	private final String commentStartMarker;
+	private final String commentEndMarker;
+	private final String processingInstructionStartMarker;
+	private final String processingInstructionEndMarker;
+	private final String dtdStartMarker;
+	private final String dtdEndMarker;
+	
+	//	characters of the last token read from the input
+	private char[] tokenChars = new char[256];
+	private int tokenLength = 0;
+	
+	//	characters of generated end tags
+	private char[] endTagChars = new char[32];
+	
+	//	events waiting to be reported, the token read last always comes last
+	private int[] queueTypes = new int[8];
+	private TagType[] queueTags = new TagType[8];
+	private int[] queueDepths = new int[8];
+	private boolean[] queueRaw = new boolean[8];
+	private int queueStart = 0;
+	private int queueSize = 0;
+	
+	//	current event
+	private int eventType = START_OF_INPUT;
+	private TagType eventTag = null;
+	private int eventDepth = 0;
+	private char[] eventBuffer = this.tokenChars;
+	private int eventLength = 0;
+	
+	//	open elements, and elements closed implicitly by an end tag
+	private TagType[] stack = new TagType[16];
+	private int stackSize = 0;
+	private Vector missingEndTags = new Vector();
+	
+	//	type of element whose end tag to crop all content up to, if any
+	private TagType awaitedEndTag = null;
+	
+	//	tag type caches
+	private String[] tagNames = new String[512];
+	private HashMap tagTypes = new HashMap();
+	
+	PullParser(LookaheadReader charSource, Grammar grammar) {
+		this.charSource = charSource;
+		this.grammar = grammar;
+		this.correctErrors = this.grammar.correctErrors();
+		
+		//	get characters for tag recognition
+		this.tagStart = this.grammar.getTagStart();
+		this.tagEnd = this.grammar.getTagEnd();
+		this.endTagMarker = this.grammar.getEndTagMarker();
+		
+		//	get comment markers (shortened for error correction, as in TokenSource)
+		String csm = this.grammar.getCommentStartMarker();
+		this.commentStartMarker = (this.correctErrors ? csm.substring(0, (csm.length() - (csm.length() / 3))) : csm);
+		String cem = this.grammar.getCommentEndMarker();
+		this.commentEndMarker = (this.correctErrors ? cem.substring(cem.length() / 3) : cem);
+		
+		//	get processing instruction and DTD markers
+		this.processingInstructionStartMarker = this.grammar.getProcessingInstructionStartMarker();
+		this.processingInstructionEndMarker = this.grammar.getProcessingInstructionEndMarker();
+		this.dtdStartMarker = this.grammar.getDtdStartMarker();
+		this.dtdEndMarker = this.grammar.getDtdEndMarker();
+	}
+	
+	/**
+	 * Advance to the next event.
+	 * @return the type of the next event
+	 * @throws IOException
+	 */
+	public int next() throws IOException {
+		if (this.eventType == END_OF_INPUT)
+			return END_OF_INPUT;
+		while (this.queueSize == 0)
+			this.readToken();
+		
+		//	get next event from queue
+		this.eventType = this.queueTypes[this.queueStart];
+		this.eventTag = this.queueTags[this.queueStart];
+		this.eventDepth = this.queueDepths[this.queueStart];
+		boolean raw = this.queueRaw[this.queueStart];
+		this.queueTags[this.queueStart] = null;
+		this.queueStart = ((this.queueStart + 1) % this.queueTypes.length);
+		this.queueSize--;
+		
+		//	point to token characters, or generate end tag
+		if (raw) {
+			this.eventBuffer = this.tokenChars;
+			this.eventLength = this.tokenLength;
+		}
+		else if (this.eventType == END_TAG) {
+			this.eventBuffer = this.getEndTagChars(this.eventTag.translated);
+			this.eventLength = (this.eventTag.translated.length() + 3);
+		}
+		else {
+			this.eventBuffer = this.tokenChars;
+			this.eventLength = 0;
+		}
+		return this.eventType;
+	}
+	
+	/**
+	 * Check if there are more events to retrieve via next().
+	 * @return true if there are more events, false otherwise
+	 */
+	public boolean hasNext() {
+		return (this.eventType != END_OF_INPUT);
+	}
+	
+	/**
+	 * @return the type of the current event
+	 */
+	public int getEventType() {
+		return this.eventType;
+	}
+	
+	/**
+	 * Retrieve the buffer holding the characters of the current event. The
+	 * buffer is re-used for subsequent events, so client code must not hold
+	 * on to it beyond the next call to next(), and must not modify it.
+	 * @return the character buffer
+	 */
+	public char[] getBuffer() {
+		return this.eventBuffer;
+	}
+	
+	/**
+	 * @return the offset of the characters of the current event in the buffer
+	 */
+	public int getOffset() {
+		return 0;
+	}
+	
+	/**
+	 * @return the number of characters of the current event
+	 */
+	public int getLength() {
+		return this.eventLength;
+	}
+	
+	/**
+	 * Retrieve the characters of the current event as a String. This method
+	 * creates a new String on every invocation.
+	 * @return the characters of the current event
+	 */
+	public String getText() {
+		return new String(this.eventBuffer, 0, this.eventLength);
+	}
+	
+	/**
+	 * Retrieve the type of the current tag, as translated by the grammar. For
+	 * events other than START_TAG and END_TAG, this method returns null.
+	 * @return the type of the current tag
+	 */
+	public String getTagType() {
+		return ((this.eventTag == null) ? null : this.eventTag.translated);
+	}
+	
+	/**
+	 * Check if the current event is the start of a singular tag, i.e., a tag
+	 * that is marked as singular in the input or is of a type the grammar
+	 * defines as singular. The END_TAG event of the tag follows immediately.
+	 * @return true if the current event is a singular tag
+	 */
+	public boolean isSingularTag() {
+		if (this.eventType != START_TAG)
+			return false;
+		if (this.eventTag.singular)
+			return true;
+		return ((this.eventLength > 2) && (this.eventBuffer[this.eventLength - 2] == this.endTagMarker));
+	}
+	
+	/**
+	 * Retrieve the nesting depth of the current event. For a START_TAG event,
+	 * this is the depth of the element started, with the outmost element at
+	 * depth 1; for an END_TAG event, it is the depth of the element ended;
+	 * for all other events, it is the number of elements open around them.
+	 * @return the nesting depth of the current event
+	 */
+	public int getDepth() {
+		return this.eventDepth;
+	}
+	
+	/**
+	 * Parse the attributes of the current tag. For events other than
+	 * START_TAG, this method returns an empty attribute set.
+	 * @return the attributes of the current tag
+	 */
+	public TreeNodeAttributeSet getAttributes() {
+		if ((this.eventType != START_TAG) || (this.eventLength == 0))
+			return new TreeNodeAttributeSet(this.grammar);
+		return TreeNodeAttributeSet.getTagAttributes(this.getText(), this.grammar);
+	}
+	
+	Grammar getGrammar() {
+		return this.grammar;
+	}
+	
+	/**
+	 * Close the parser and the underlying input.
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		this.charSource.close();
+	}
+	
+	private char[] getEndTagChars(String type) {
+		int length = (type.length() + 3);
+		if (this.endTagChars.length < length)
+			this.endTagChars = new char[length * 2];
+		this.endTagChars[0] = this.tagStart;
+		this.endTagChars[1] = this.endTagMarker;
+		type.getChars(0, type.length(), this.endTagChars, 2);
+		this.endTagChars[length - 1] = this.tagEnd;
+		return this.endTagChars;
+	}
+	
+	private void readToken() throws IOException {
+		this.tokenLength = 0;
+		
+		//	end of input, close open elements
+		if (this.charSource.peek() == -1) {
+			while (this.stackSize != 0)
+				this.enqueue(END_TAG, this.pop(), (this.stackSize + 1), false);
+			this.enqueue(END_OF_INPUT, null, 0, false);
+			return;
+		}
+		
+		//	waiting for some end tag, crop everything up to it as data
+		if (this.awaitedEndTag != null) {
+			TagType awaited = this.awaitedEndTag;
+			this.awaitedEndTag = null;
+			this.skipWhitespace();
+			this.cropUpToEndTag(awaited.type);
+			if (this.tokenLength != 0)
+				this.enqueue(TEXT, null, this.stackSize, true);
+		}
+		
+		//	comment
+		else if (this.charSource.startsWith(this.commentStartMarker, false)) {
+			this.cropUpTo(this.commentEndMarker);
+			this.enqueue(COMMENT, null, this.stackSize, true);
+		}
+		
+		//	DTD
+		else if (this.charSource.startsWith(this.dtdStartMarker, false)) {
+			this.cropUpTo(this.dtdEndMarker);
+			this.enqueue(DTD, null, this.stackSize, true);
+		}
+		
+		//	processing instruction
+		else if (this.charSource.startsWith(this.processingInstructionStartMarker, false)) {
+			this.cropUpTo(this.processingInstructionEndMarker);
+			this.enqueue(PROCESSING_INSTRUCTION, null, this.stackSize, true);
+		}
+		
+		//	tag, or data the grammar does not consider a tag
+		else if (this.isTagStart()) {
+			TagType tag = this.cropTag();
+			if (tag == null)
+				this.enqueue(TEXT, null, this.stackSize, true);
+			else this.handleTag(tag);
+		}
+		
+		//	character data
+		else {
+			boolean whitespaceOnly = this.cropData();
+			if (!whitespaceOnly)
+				this.enqueue(TEXT, null, this.stackSize, true);
+		}
+	}
+	
+	private boolean isTagStart() throws IOException {
+		if (this.charSource.peek() != this.tagStart)
+			return false;
+		int ch = this.charSource.peek(1);
+		if (ch == -1)
+			return false;
+		if (Character.isLetter((char) ch))
+			return true;
+		if ((ch == '_') || (ch == ':'))
+			return true;
+		return (ch == this.endTagMarker);
+	}
+	
+	private void handleTag(TagType tag) throws IOException {
+		
+		//	handle end tag
+		if (tag.endTag) {
+			
+			//	tag closed implicitly before
+			if (this.missingEndTags.remove(tag.lowerCase))
+				return;
+			
+			//	end tag does not match any open tag
+			if (this.search(tag.type) == -1) {
+				if (this.correctErrors)
+					return;
+				throw new UnexpectedEndTagException("The following tag has never been opened: <" + tag.type + ">");
+			}
+			
+			//	close tags opened after the matching start tag
+			while ((this.stackSize != 0) && !this.stack[this.stackSize - 1].type.equalsIgnoreCase(tag.type)) {
+				TagType closed = this.pop();
+				this.missingEndTags.add(closed.lowerCase);
+				this.enqueue(END_TAG, closed, (this.stackSize + 1), false);
+			}
+			
+			//	if end tag(s) missing and not correcting errors, throw exception
+			if (!this.correctErrors && (this.missingEndTags.size() != 0))
+				throw new MissingEndTagException("The following tag(s) have not been closed properly: <" + TreeTools.concatVector(this.missingEndTags, ">, <") + ">");
+			
+			//	close matching tag, using the token proper
+			TagType closed = this.pop();
+			this.enqueue(END_TAG, closed, (this.stackSize + 1), true);
+			return;
+		}
+		
+		//	handle start tag
+		this.missingEndTags.clear();
+		
+		//	ascend to next appropriate parent tag, closing lower tags implicitly
+		while ((this.stackSize != 0) && ((this.searchParent(tag.type) > 0) || !this.embeddingValid(tag.type))) {
+			if (!this.correctErrors)
+				throw new InvalidNestingException("<" + this.stack[this.stackSize - 1].type + "> is not a valid parent for <" + tag.type + "> in the context of the Grammar in use (" + this.grammar.getClass().getName() + ")");
+			TagType closed = this.pop();
+			this.enqueue(END_TAG, closed, (this.stackSize + 1), false);
+		}
+		
+		//	singular tag, report end right away
+		if (tag.singular || ((this.tokenLength > 2) && (this.tokenChars[this.tokenLength - 2] == this.endTagMarker))) {
+			this.enqueue(START_TAG, tag, (this.stackSize + 1), true);
+			this.enqueue(END_TAG, tag, (this.stackSize + 1), false);
+		}
+		
+		//	descend to new element
+		else {
+			this.push(tag);
+			this.enqueue(START_TAG, tag, this.stackSize, true);
+			if (tag.waitForEndTag)
+				this.awaitedEndTag = tag;
+		}
+	}
+	
+	//	find the first possible parent for a tag in the stack, counting from the top, as in Parser
+	private int searchParent(String type) {
+		for (int i = 0; i < this.stackSize; i++) {
+			if (this.grammar.canBeChildOf(type, this.stack[this.stackSize - 1 - i].type))
+				return i;
+		}
+		return -1;
+	}
+	
+	//	check whether a tag can appear within all the tags in the stack, as in Parser
+	private boolean embeddingValid(String type) {
+		for (int i = 0; i < this.stackSize; i++) {
+			if (!this.grammar.canBeEmbeddedIn(type, this.stack[this.stackSize - 1 - i].type))
+				return false;
+		}
+		return true;
+	}
+	
+	private int search(String type) {
+		for (int i = (this.stackSize - 1); i >= 0; i--) {
+			if (this.stack[i].type.equalsIgnoreCase(type))
+				return (this.stackSize - 1 - i);
+		}
+		return -1;
+	}
+	
+	private void push(TagType tag) {
+		if (this.stackSize == this.stack.length) {
+			TagType[] stack = new TagType[this.stack.length * 2];
+			System.arraycopy(this.stack, 0, stack, 0, this.stackSize);
+			this.stack = stack;
+		}
+		this.stack[this.stackSize++] = tag;
+	}
+	
+	private TagType pop() {
+		TagType tag = this.stack[--this.stackSize];
+		this.stack[this.stackSize] = null;
+		return tag;
+	}
+	
+	private void enqueue(int type, TagType tag, int depth, boolean raw) {
+		if (this.queueSize == this.queueTypes.length) {
+			int[] queueTypes = new int[this.queueTypes.length * 2];
+			TagType[] queueTags = new TagType[this.queueTypes.length * 2];
+			int[] queueDepths = new int[this.queueTypes.length * 2];
+			boolean[] queueRaw = new boolean[this.queueTypes.length * 2];
+			for (int q = 0; q < this.queueSize; q++) {
+				int i = ((this.queueStart + q) % this.queueTypes.length);
+				queueTypes[q] = this.queueTypes[i];
+				queueTags[q] = this.queueTags[i];
+				queueDepths[q] = this.queueDepths[i];
+				queueRaw[q] = this.queueRaw[i];
+			}
+			this.queueTypes = queueTypes;
+			this.queueTags = queueTags;
+			this.queueDepths = queueDepths;
+			this.queueRaw = queueRaw;
+			this.queueStart = 0;
+		}
+		int i = ((this.queueStart + this.queueSize) % this.queueTypes.length);
+		this.queueTypes[i] = type;
+		this.queueTags[i] = tag;
+		this.queueDepths[i] = depth;
+		this.queueRaw[i] = raw;
+		this.queueSize++;
+	}
+	
+	private void append(char ch) {
+		if (this.tokenLength == this.tokenChars.length) {
+			char[] tokenChars = new char[this.tokenChars.length * 2];
+			System.arraycopy(this.tokenChars, 0, tokenChars, 0, this.tokenLength);
+			this.tokenChars = tokenChars;
+		}
+		this.tokenChars[this.tokenLength++] = ch;
+	}
+	
+	private void skipWhitespace() throws IOException {
+		while ((this.charSource.peek() != -1) && this.grammar.isWhitespace((char) this.charSource.peek()))
+			this.charSource.read();
+	}
+	
+	private void cropUpTo(String stopSequence) throws IOException {
+		char stopChar = stopSequence.charAt(0);
+		while (this.charSource.peek() != -1) {
+			if ((this.charSource.peek() == stopChar) && this.charSource.startsWith(stopSequence, false)) {
+				for (int c = 0; c < stopSequence.length(); c++)
+					this.append((char) this.charSource.read());
+				break;
+			}
+			this.append((char) this.charSource.read());
+		}
+	}
+	
+	private void cropUpToEndTag(String type) throws IOException {
+		while (this.charSource.peek() != -1) {
+			if ((this.charSource.peek() == this.tagStart) && (this.charSource.peek(1) == this.endTagMarker) && this.charSource.startsWith(type, false, 2) && (this.charSource.peek(type.length() + 2) == this.tagEnd))
+				break;
+			this.append((char) this.charSource.read());
+		}
+	}
+	
+	private TagType cropTag() throws IOException {
+		
+		//	crop tag start and end tag marker
+		this.append((char) this.charSource.read());
+		if (this.charSource.peek() == this.endTagMarker)
+			this.append((char) this.charSource.read());
+		
+		//	crop name, up to first tag whitespace
+		while (this.charSource.peek() != -1) {
+			char ch = ((char) this.charSource.peek());
+			if ((ch == this.tagEnd) || this.grammar.isTagWhitespace(ch))
+				break;
+			this.append((char) this.charSource.read());
+		}
+		int nameEnd = this.tokenLength;
+		
+		//	crop rest of tag, observing quoted attribute values
+		char quoter = 0;
+		boolean afterValueSeparator = false;
+		char tagAttributeValueSeparator = this.grammar.getTagAttributeValueSeparator();
+		while (this.charSource.peek() != -1) {
+			char ch = ((char) this.charSource.read());
+			this.append(ch);
+			if (quoter != 0) {
+				if (ch == quoter)
+					quoter = 0;
+			}
+			else if (ch == this.tagEnd)
+				break;
+			else if (afterValueSeparator && this.grammar.isTagAttributeValueQuoter(ch))
+				quoter = ch;
+			if (ch == tagAttributeValueSeparator)
+				afterValueSeparator = true;
+			else if (!this.grammar.isWhitespace(ch))
+				afterValueSeparator = false;
+		}
+		
+		//	check if tag complete, and if grammar considers it a tag at all
+		if (this.tokenChars[this.tokenLength - 1] != this.tagEnd)
+			return null;
+		TagType tag = this.getTagType(nameEnd);
+		return (tag.isTag ? tag : null);
+	}
+	
+	private boolean cropData() throws IOException {
+		boolean whitespaceOnly = true;
+		while (this.charSource.peek() != -1) {
+			char ch = ((char) this.charSource.peek());
+			
+			//	start of markup / end of data
+			if (ch == this.tagStart) {
+				if (this.isTagStart())
+					break;
+				if (this.charSource.startsWith(this.commentStartMarker, false))
+					break;
+				if (this.charSource.startsWith(this.dtdStartMarker, false))
+					break;
+				if (this.charSource.startsWith(this.processingInstructionStartMarker, false))
+					break;
+			}
+			else if ((ch == this.commentStartMarker.charAt(0)) && this.charSource.startsWith(this.commentStartMarker, false))
+				break;
+			else if ((ch == this.dtdStartMarker.charAt(0)) && this.charSource.startsWith(this.dtdStartMarker, false))
+				break;
+			else if ((ch == this.processingInstructionStartMarker.charAt(0)) && this.charSource.startsWith(this.processingInstructionStartMarker, false))
+				break;
+			
+			if (whitespaceOnly && !this.grammar.isWhitespace(ch))
+				whitespaceOnly = false;
+			this.append((char) this.charSource.read());
+		}
+		return whitespaceOnly;
+	}
+	
+	//	get the type of a tag whose start and name are in the token buffer, using a cache of names to avoid creating a String for every tag
+	private TagType getTagType(int nameEnd) {
+		int hash = 0;
+		for (int c = 0; c < nameEnd; c++)
+			hash = ((31 * hash) + this.tokenChars[c]);
+		int slot = ((hash & 0x7FFFFFFF) % this.tagNames.length);
+		String name = this.tagNames[slot];
+		if ((name == null) || !this.matches(name, nameEnd)) {
+			name = new String(this.tokenChars, 0, nameEnd);
+			this.tagNames[slot] = name;
+		}
+		TagType tag = ((TagType) this.tagTypes.get(name));
+		if (tag == null) {
+			tag = new TagType((name + this.tagEnd), this.grammar);
+			this.tagTypes.put(name, tag);
+		}
+		return tag;
+	}
+	
+	private boolean matches(String name, int nameEnd) {
+		if (name.length() != nameEnd)
+			return false;
+		for (int c = 0; c < nameEnd; c++) {
+			if (name.charAt(c) != this.tokenChars[c])
+				return false;
+		}
+		return true;
+	}
+	
+	//	properties of a tag type, as obtained from the grammar once per tag name
+	private static class TagType {
+		final boolean isTag;
+		final boolean endTag;
+		final String type;
+		final String lowerCase;
+		final String translated;
+		final boolean singular;
+		final boolean waitForEndTag;
+		TagType(String nameTag, Grammar grammar) {
+			this.isTag = grammar.isTag(nameTag);
+			this.endTag = (this.isTag && grammar.isEndTag(nameTag));
+			this.type = grammar.getType(nameTag);
+			this.lowerCase = this.type.toLowerCase();
+			this.translated = grammar.translateTag(this.type);
+			String tag = (grammar.getTagStart() + this.type + grammar.getTagEnd());
+			this.singular = grammar.isSingularTag(tag);
+			this.waitForEndTag = grammar.waitForEndTag(tag);
+		}
+	}
+}
@@ -32,9 +32,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayDeque;
 import java.util.Vector;
 
 import de.uka.ipd.idaho.htmlXmlUtil.exceptions.ParseException;
@@ -68,8 +68,12 @@ public class TokenSource {
 	private final boolean correctErrors;
 	private final boolean correctCharEncoding;
 	
+	private final String markupStartChars;
+	private final int markupLookahead;
+	
 	private int tokenLookahead;
-	private Vector tokenBuffer = new Vector();
+	private ArrayDeque tokenBuffer = new ArrayDeque();
+	private Vector tokenSequence = new Vector(); // for the grammar to check, which requires a Vector
 	
 	private LookaheadReader charSource;
 	private Grammar grammar;
@@ -103,6 +107,21 @@ public class TokenSource {
 		this.dtdStartMarker = this.grammar.getDtdStartMarker();
 		this.dtdEndMarker = this.grammar.getDtdEndMarker();
 		
+		//	collect characters that can start markup, and how far out we need to look to recognize the latter
+		StringBuffer markupStartChars = new StringBuffer();
+		markupStartChars.append(this.tagStart);
+		int markupLookahead = 2;
+		String[] markupStartMarkers = {this.commentStartMarker, this.dtdStartMarker, this.processingInstructionStartMarker};
+		for (int m = 0; m < markupStartMarkers.length; m++) {
+			if (markupStartMarkers[m].length() == 0)
+				continue;
+			if (markupStartChars.indexOf(markupStartMarkers[m].substring(0, 1)) == -1)
+				markupStartChars.append(markupStartMarkers[m].charAt(0));
+			markupLookahead = Math.max(markupLookahead, markupStartMarkers[m].length());
+		}
+		this.markupStartChars = markupStartChars.toString();
+		this.markupLookahead = markupLookahead;
+		
 		//	get token lookahead required for error correction
 		this.tokenLookahead = this.grammar.getTokenLookahead() + 1;
 		
@@ -126,33 +145,47 @@ public class TokenSource {
 	 */
 	public String retrieveToken() throws IOException {
 		this.produceTokens();
-		return ((this.tokenBuffer.size() == 0) ? null : ((String) this.tokenBuffer.remove(0)));
+		return ((String) this.tokenBuffer.pollFirst());
 	}
 	
 	private void produceTokens() throws IOException {
 		String awaitedEndTag = null;
+		String stopTag = null;
+		int bufferSize = this.tokenBuffer.size();
 		
 		//	refill buffer
 		while ((this.charSource.peek() != -1) && ((this.tokenBuffer.size() < this.tokenLookahead) || (awaitedEndTag != null))) {
-			String token = this.produceToken((awaitedEndTag == null) ? null : ("" + this.tagStart + "" + this.endTagMarker + "" + awaitedEndTag + "" + this.tagEnd));
+			String token = this.produceToken(stopTag);
 			if (DEBUG) System.out.println("TokenSource got token: " + token);
 			if (token.length() == 0)
 				continue;
 			
 			//	tag token, might have to wait for end tag
 			if (this.grammar.isTag(token)) {
-				if ((awaitedEndTag != null) && this.grammar.isEndTag(token) && awaitedEndTag.equalsIgnoreCase(this.grammar.getType(token)))
+				if ((awaitedEndTag != null) && this.grammar.isEndTag(token) && awaitedEndTag.equalsIgnoreCase(this.grammar.getType(token))) {
 					awaitedEndTag = null;
-				else if (this.grammar.waitForEndTag(token))
+					stopTag = null;
+				}
+				else if (this.grammar.waitForEndTag(token)) {
 					awaitedEndTag = this.grammar.getType(token);
+					stopTag = ("" + this.tagStart + "" + this.endTagMarker + "" + awaitedEndTag + "" + this.tagEnd);
+				}
 			}
 			
 			//	store token
-			this.tokenBuffer.addElement(token);
+			this.tokenBuffer.addLast(token);
 		}
 		
-		//	check buffer
-		this.grammar.ckeckTokenSequence(this.tokenBuffer);
+		//	nothing new to check (buffer was checked when its tokens came in)
+		if (this.tokenBuffer.size() == bufferSize)
+			return;
+		
+		//	check buffer (grammar works on a Vector, so we hand over the tokens and take them back afterwards)
+		this.tokenSequence.addAll(this.tokenBuffer);
+		this.grammar.ckeckTokenSequence(this.tokenSequence);
+		this.tokenBuffer.clear();
+		this.tokenBuffer.addAll(this.tokenSequence);
+		this.tokenSequence.clear();
 	}
 	
 	private String produceToken(String stopTag) throws IOException {
@@ -196,45 +229,94 @@ public class TokenSource {
 	}
 	
 	private void skipWhitespace(boolean buffer) throws IOException {
-		StringBuffer whitespace = new StringBuffer();
-		
-		//	crop space
-		while ((this.charSource.peek() != -1) && this.grammar.isWhitespace((char) this.charSource.peek()))
-			whitespace.append((char) this.charSource.read());
-		
-		//	buffer if asked to
-		this.skippedWhitespace = (buffer ? whitespace.toString() : "");
+		StringBuilder whitespace = null;
+		this.skippedWhitespace = "";
+		while (true) {
+			int buffered = this.charSource.getBufferedLength();
+			if (buffered == 0)
+				break;
+			
+			//	scan space in buffer
+			int length = 0;
+			while ((length < buffered) && this.grammar.isWhitespace(this.charSource.getBufferedChar(length)))
+				length++;
+			
+			//	crop space, buffering it only if asked to
+			if (!buffer)
+				this.charSource.skip(length);
+			else if ((whitespace == null) && (length < buffered))
+				this.skippedWhitespace = this.charSource.readString(length);
+			else {
+				if (whitespace == null)
+					whitespace = new StringBuilder();
+				this.charSource.read(whitespace, length);
+			}
+			
+			//	space ends inside buffer, we're done
+			if (length < buffered)
+				break;
+		}
+		if (whitespace != null)
+			this.skippedWhitespace = whitespace.toString();
 	}
 	
 	private String cropUpTo(String stopSequence, boolean includeStopSequence) throws IOException {
-		StringBuffer token = new StringBuffer();
+		StringBuilder token = null;
+		int tokenLength = 0;
 		char stopChar = stopSequence.charAt(0);
-		while (this.charSource.peek() != -1) {
+		while (true) {
+			int buffered = this.charSource.getBufferedLength();
+			if (buffered == 0)
+				break;
 			
-			//	stop sequence reached
-			if ((this.charSource.peek() == stopChar) && this.charSource.startsWith(stopSequence, false)) {
-				
-				//	handle stop sequence and buffer subsequent whitespace
-				if (includeStopSequence || (token.length() == 0)) {
-					for (int c = 0; c < stopSequence.length(); c++)
-						token.append((char) this.charSource.read());
-					this.skipWhitespace(true);
+			//	scan buffer for stop sequence, only up to where it can still end inside the buffer
+			int scanEnd = (this.charSource.isInputBuffered() ? buffered : (buffered - stopSequence.length() + 1));
+			int stopIndex = -1;
+			for (int i = 0; i < scanEnd; i++)
+				if ((this.charSource.getBufferedChar(i) == stopChar) && this.charSource.bufferedStartsWith(stopSequence, false, i)) {
+					stopIndex = i;
+					break;
 				}
-				
-				//	we're done here
-				break;
+			
+			//	stop sequence not in buffer, crop what we've scanned and continue
+			if (stopIndex == -1) {
+				if (token == null)
+					token = new StringBuilder();
+				this.charSource.read(token, scanEnd);
+				tokenLength += scanEnd;
+				continue;
+			}
+			
+			//	handle stop sequence and buffer subsequent whitespace
+			String tokenString;
+			if (includeStopSequence || ((tokenLength + stopIndex) == 0)) {
+				if (token == null)
+					tokenString = this.charSource.readString(stopIndex + stopSequence.length());
+				else {
+					this.charSource.read(token, (stopIndex + stopSequence.length()));
+					tokenString = token.toString();
+				}
+				this.skipWhitespace(true);
+			}
+			
+			//	leave stop sequence for subsequent token
+			else if (token == null)
+				tokenString = this.charSource.readString(stopIndex);
+			else {
+				this.charSource.read(token, stopIndex);
+				tokenString = token.toString();
 			}
 			
-			//	other character
-			else token.append((char) this.charSource.read());
+			//	we're done here
+			return tokenString;
 		}
 		
-		//	finally ...
-		return token.toString();
+		//	end of input reached before stop sequence
+		return ((token == null) ? "" : token.toString());
 	}
 	
 	private String cropTag() throws IOException {
-		StringBuffer tag = new StringBuffer();
+		StringBuilder tag = new StringBuilder();
 		boolean gotEndTagMarker = false;
 		tag.append((char) this.charSource.read());
 		
@@ -328,7 +410,8 @@ public class TokenSource {
 			else attribValue = attribName;
 			
 			//	append normalized attribute
-			tag.append(this.tagAttributeSeparator + attribName + this.tagAttributeValueSeparator + this.grammar.getTagAttributeValueQuoter() + attribValue + this.grammar.getTagAttributeValueQuoter());
+			char quoter = this.grammar.getTagAttributeValueQuoter();
+			tag.append(this.tagAttributeSeparator).append(attribName).append(this.tagAttributeValueSeparator).append(quoter).append(attribValue).append(quoter);
 		}
 		
 		//	end tag marker at end of singular tag
@@ -351,7 +434,71 @@ public class TokenSource {
 	}
 	
 	private String cropData() throws IOException {
-		StringBuffer data = new StringBuffer(this.skippedWhitespace);
+		
+		//	characters need individual handling for encoding
+		if (this.correctCharEncoding)
+			return this.cropEncodedData();
+		
+		StringBuilder data = null;
+		while (true) {
+			int buffered = this.charSource.getBufferedLength();
+			if (buffered == 0)
+				break;
+			
+			//	scan buffer for end of data, only up to where we can still recognize markup inside the buffer
+			int scanEnd = (this.charSource.isInputBuffered() ? buffered : (buffered - this.markupLookahead));
+			int dataEnd = this.findDataEnd(scanEnd, buffered);
+			
+			//	data ends inside buffer, slice it in one go if possible
+			if (dataEnd != -1) {
+				if (data != null) {
+					this.charSource.read(data, dataEnd);
+					break;
+				}
+				String dataString = this.charSource.readString(dataEnd);
+				return ((this.skippedWhitespace.length() == 0) ? dataString : (this.skippedWhitespace + dataString));
+			}
+			
+			//	data continues beyond buffer, crop what we've scanned and continue
+			if (data == null)
+				data = new StringBuilder(this.skippedWhitespace);
+			this.charSource.read(data, scanEnd);
+		}
+		
+		//	finally ...
+		return ((data == null) ? this.skippedWhitespace : data.toString());
+	}
+	
+	private int findDataEnd(int scanEnd, int buffered) {
+		for (int i = 0; i < scanEnd; i++) {
+			char ch = this.charSource.getBufferedChar(i);
+			if (this.markupStartChars.indexOf(ch) == -1)
+				continue;
+			
+			//	start of comment, DTD, or processing instruction / end of data
+			if (this.charSource.bufferedStartsWith(this.commentStartMarker, false, i))
+				return i;
+			if (this.charSource.bufferedStartsWith(this.dtdStartMarker, false, i))
+				return i;
+			if (this.charSource.bufferedStartsWith(this.processingInstructionStartMarker, false, i))
+				return i;
+			
+			//	start of tag, or data starting with tag start / end of data
+			if (ch == this.tagStart) {
+				char nextCh = (((i + 1) < buffered) ? this.charSource.getBufferedChar(i + 1) : ((char) -1));
+				if (Character.isLetter(nextCh))
+					return i;
+				if ("_:".indexOf(nextCh) != -1)
+					return i;
+				if (nextCh == this.endTagMarker)
+					return i;
+			}
+		}
+		return -1;
+	}
+	
+	private String cropEncodedData() throws IOException {
+		StringBuilder data = new StringBuilder(this.skippedWhitespace);
 		while (this.charSource.peek() != -1) {
 			
 			//	start of comment / end of data
@@ -378,19 +525,12 @@ public class TokenSource {
 					break;
 			}
 			
-			//	check encoding if activated
-			if (this.correctCharEncoding) {
-				
-				//	possible start of encoded character
-				if (this.charSource.peek() == '&')
-					data.append(LookaheadReader.cropCharCode(this.charSource, this.grammar));
-				
-				//	encode current character
-				else data.append(this.grammar.getCharCode((char) this.charSource.read()));
-			}
+			//	possible start of encoded character
+			if (this.charSource.peek() == '&')
+				data.append(LookaheadReader.cropCharCode(this.charSource, this.grammar));
 			
-			//	other character
-			else data.append((char) this.charSource.read());
+			//	encode current character
+			else data.append(this.grammar.getCharCode((char) this.charSource.read()));
 		}
 		
 		//	finally ...
@@ -425,7 +565,9 @@ public class TokenSource {
 	public static TokenSource getTokenSource(InputStream stream) throws IOException {
 		return getTokenSource(stream, null);
 	}
-	/**	create a TokenSource providing tokens parsed from an InputStream in the context of the specified Grammar 
+	/**	create a TokenSource providing tokens parsed from an InputStream in the context of the specified Grammar. The
+	 * encoding of the data is detected from its byte order mark or XML declaration, defaulting to UTF-8, or to
+	 * ISO-8859-1 if the start of the data is not valid UTF-8.
 	 * @param 	stream	the InputStream to parse the tokens from
 	 * @param 	grammar	the Grammar that's context to parse the tokens in
 	 * @return	a TokenSource providing tokens parsed from the specified InputStream in the context of the specified Grammar 
@@ -434,7 +576,7 @@ public class TokenSource {
 	public static TokenSource getTokenSource(InputStream stream, Grammar grammar) throws IOException {
 		if (grammar == null)
 			grammar = new StandardGrammar(); 
-		return new TokenSource(new LookaheadReader(new InputStreamReader(stream/*, TODO guessEncoding()*/), (grammar.getCharLookahead()+1)), grammar);
+		return new TokenSource(new LookaheadReader(new DecodingReader(stream), (grammar.getCharLookahead()+1)), grammar);
 	}
 	
 	/**	create a TokenSource providing tokens parsed from a Reader in the context of the StandradGrammar 
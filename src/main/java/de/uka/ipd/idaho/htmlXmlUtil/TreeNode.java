@@ -120,6 +120,20 @@ public class TreeNode {
 		this(parent, type, "", TreeNodeAttributeSet.getTagAttributes(null, null));
 	}
 	
+	/*	Constructor for subclasses that keep value, attributes, and child nodes
+	 * elsewhere, and override all the methods accessing them, so this node
+	 * does not have to create an attribute set and a child node list of its
+	 * own. Such subclasses have to override getChildNodeCount() and
+	 * getChildNode(int) in particular, as all other read access to the child
+	 * nodes goes through these two methods.
+	 */
+	TreeNode(String type) {
+		this.nodeType = type;
+		this.nodeValue = "";
+		this.attributes = null;
+		this.childNodes = null;
+	}
+	
 	/**	add the specified node to this node's child nodes
 	 */
 	public void addChildNode(TreeNode newChildNode) {
@@ -165,8 +179,8 @@ public class TreeNode {
 	/**	@return	true if and only if this node has at least one child node of the specified type
 	 */
 	public boolean hasChildNodeOfType(String type) {
-		for (int i = 0; i < this.childNodes.size(); i++)
-			if (((TreeNode) this.childNodes.get(i)).getNodeType().equalsIgnoreCase(type)) return true;
+		for (int i = 0; i < this.getChildNodeCount(); i++)
+			if (this.getChildNode(i).getNodeType().equalsIgnoreCase(type)) return true;
 		
 		return false;
 	}
@@ -181,8 +195,8 @@ public class TreeNode {
 	 */
 	public int getChildNodeCount(String type) {
 		int counter = 0;
-		for (int i = 0; i < this.childNodes.size(); i++)
-			if (((TreeNode) this.childNodes.get(i)).getNodeType().equalsIgnoreCase(type)) counter++;
+		for (int i = 0; i < this.getChildNodeCount(); i++)
+			if (this.getChildNode(i).getNodeType().equalsIgnoreCase(type)) counter++;
 		
 		return counter;
 	}
@@ -190,8 +204,8 @@ public class TreeNode {
 	/**	@return	the index of the argument node within this node, or -1 if the specified node is not a child node of this node
 	 */
 	public int getChildNodeIndex(TreeNode node) {
-		for (int i = 0; i < this.childNodes.size(); i++)
-			if (node == this.childNodes.get(i)) return i;
+		for (int i = 0; i < this.getChildNodeCount(); i++)
+			if (node == this.getChildNode(i)) return i;
 		return -1;
 	}
 
@@ -199,9 +213,9 @@ public class TreeNode {
 	 */
 	public int getTypeSpecificChildNodeIndex(TreeNode node) {
 		int counter = 0;
-		for (int i = 0; i < this.childNodes.size(); i++) {
-			if (node == this.childNodes.get(i)) return counter;
-			if (node.getNodeType().equalsIgnoreCase(((TreeNode) this.childNodes.get(i)).getNodeType())) counter++;
+		for (int i = 0; i < this.getChildNodeCount(); i++) {
+			if (node == this.getChildNode(i)) return counter;
+			if (node.getNodeType().equalsIgnoreCase(this.getChildNode(i).getNodeType())) counter++;
 		}
 		return -1;
 	}
@@ -217,7 +231,7 @@ public class TreeNode {
 	public TreeNode[] getChildNodes(String type) {
 		if (type == null) return this.getChildNodes();
 		Vector children = new Vector();
-		for (int i = 0; i < this.childNodes.size(); i++) if (((TreeNode) this.childNodes.get(i)).getNodeType().equalsIgnoreCase(type)) children.addElement(this.childNodes.get(i));
+		for (int i = 0; i < this.getChildNodeCount(); i++) if (this.getChildNode(i).getNodeType().equalsIgnoreCase(type)) children.addElement(this.getChildNode(i));
 		return ((TreeNode[]) children.toArray(new TreeNode[children.size()]));
 	}
 	
@@ -238,9 +252,9 @@ public class TreeNode {
 	 */
 	public TreeNode getChildNode(String type, int index) {
 		int counter = -1;
-		for (int i = 0; i < this.childNodes.size(); i++) {
-			if (((TreeNode) this.childNodes.get(i)).getNodeType().equalsIgnoreCase(type)) counter++;
-			if (counter == index) return ((TreeNode) this.childNodes.get(i));
+		for (int i = 0; i < this.getChildNodeCount(); i++) {
+			if (this.getChildNode(i).getNodeType().equalsIgnoreCase(type)) counter++;
+			if (counter == index) return this.getChildNode(i);
 		}
 		return null;
 	}
@@ -376,27 +390,27 @@ public class TreeNode {
 //		
 		//	comment, DTD, etc. node
 		if (this.nodeType.equalsIgnoreCase(COMMENT_NODE_TYPE) || this.nodeType.equalsIgnoreCase(DTD_NODE_TYPE) || this.nodeType.equalsIgnoreCase(PROCESSING_INSTRUCTION_NODE_TYPE))
-			return this.nodeValue + "\n";
+			return this.getNodeValue() + "\n";
 		
 		//	data node
 		else if (this.nodeType.equalsIgnoreCase(DATA_NODE_TYPE))
 //			return grammar.escape(this.nodeValue) + "\n";
-			return ((this.nodeValue.trim().length() == 0) ? "" : (grammar.escape(this.nodeValue) + "\n"));
+			return ((this.getNodeValue().trim().length() == 0) ? "" : (grammar.escape(this.getNodeValue()) + "\n"));
 		
 		//	singular data node as only child 
-		else if ((this.childNodes.size() == 1) && ((TreeNode) this.childNodes.get(0)).getNodeType().equalsIgnoreCase(DATA_NODE_TYPE))
-			return (indent + this.getStartTag(grammar) + grammar.escape(((TreeNode) this.childNodes.get(0)).getNodeValue()) + this.getEndTag(grammar) + "\n");
+		else if ((this.getChildNodeCount() == 1) && this.getChildNode(0).getNodeType().equalsIgnoreCase(DATA_NODE_TYPE))
+			return (indent + this.getStartTag(grammar) + grammar.escape(this.getChildNode(0).getNodeValue()) + this.getEndTag(grammar) + "\n");
 		
 		//	no child nodes
-		else if (this.childNodes.size() == 0)
+		else if (this.getChildNodeCount() == 0)
 			return (indent + this.getSingularTag(grammar) + "\n");
 		
 		//	otherwise
 		else {
 			StringBuffer returnValue = new StringBuffer();
 			
-			for (int i = 0; i < this.childNodes.size(); i++)
-				if (this.childNodes.get(i) != null) returnValue = returnValue.append(((TreeNode) this.childNodes.get(i)).treeToCode(ind, (this.nodeType.equals(ROOT_NODE_TYPE) ? level : (level + 1)), grammar));
+			for (int i = 0; i < this.getChildNodeCount(); i++)
+				if (this.getChildNode(i) != null) returnValue = returnValue.append(this.getChildNode(i).treeToCode(ind, (this.nodeType.equals(ROOT_NODE_TYPE) ? level : (level + 1)), grammar));
 			
 			//	root node
 			if (this.nodeType.equals(ROOT_NODE_TYPE))
@@ -453,18 +467,18 @@ public class TreeNode {
 //			
 		//	comment, DTD, etc node
 		if (this.nodeType.equalsIgnoreCase(COMMENT_NODE_TYPE) || this.nodeType.equalsIgnoreCase(DTD_NODE_TYPE) || this.nodeType.equalsIgnoreCase(PROCESSING_INSTRUCTION_NODE_TYPE))
-			receiver.storeToken(this.nodeValue, level);
+			receiver.storeToken(this.getNodeValue(), level);
 			
 		//	datanode
 		else if (this.nodeType.equalsIgnoreCase(DATA_NODE_TYPE))
-			receiver.storeToken(grammar.escape(this.nodeValue), level);
+			receiver.storeToken(grammar.escape(this.getNodeValue()), level);
 			
 		//	singular data node as only child 
-		else if ((this.childNodes.size() == 1) && ((TreeNode) this.childNodes.get(0)).getNodeType().equalsIgnoreCase(DATA_NODE_TYPE))
-			receiver.storeToken((indent + this.getStartTag(grammar) + grammar.escape(((TreeNode) this.childNodes.get(0)).getNodeValue()) + this.getEndTag(grammar)), level);
+		else if ((this.getChildNodeCount() == 1) && this.getChildNode(0).getNodeType().equalsIgnoreCase(DATA_NODE_TYPE))
+			receiver.storeToken((indent + this.getStartTag(grammar) + grammar.escape(this.getChildNode(0).getNodeValue()) + this.getEndTag(grammar)), level);
 			
 		//	no child nodes
-		else if (this.childNodes.size() == 0)
+		else if (this.getChildNodeCount() == 0)
 			receiver.storeToken((indent + this.getSingularTag(grammar)), level);
 			
 		//	otherwise
@@ -474,9 +488,9 @@ public class TreeNode {
 			if (!this.nodeType.equals(ROOT_NODE_TYPE)) receiver.storeToken((indent + this.getStartTag(grammar)), level);
 			
 			//	iterate through children
-			for (int i = 0; i < this.childNodes.size(); i++) {
-				if (this.childNodes.get(i) != null)
-					((TreeNode) this.childNodes.get(i)).treeToCode(receiver, ind, (this.nodeType.equals(ROOT_NODE_TYPE) ? level : (level + 1)), grammar);
+			for (int i = 0; i < this.getChildNodeCount(); i++) {
+				if (this.getChildNode(i) != null)
+					this.getChildNode(i).treeToCode(receiver, ind, (this.nodeType.equals(ROOT_NODE_TYPE) ? level : (level + 1)), grammar);
 			}
 			
 			//	write end tag
@@ -551,8 +565,8 @@ public class TreeNode {
 	 */
 	public int countNodesInSubtree() {
 		int numberOfNodes = 1;
-		for (int i = 0; i < this.childNodes.size(); i++) {
-			numberOfNodes += ((TreeNode) this.childNodes.get(i)).countNodesInSubtree();
+		for (int i = 0; i < this.getChildNodeCount(); i++) {
+			numberOfNodes += this.getChildNode(i).countNodesInSubtree();
 		}
 		return numberOfNodes;
 	}
@@ -562,20 +576,20 @@ public class TreeNode {
 	public int countNodesInSubtree(String type) {
 		int numberOfNodes = 0;
 		if (this.nodeType.equalsIgnoreCase(type)) numberOfNodes++;
-		for (int i = 0; i < this.childNodes.size(); i++)
-			numberOfNodes += ((TreeNode) this.childNodes.get(i)).countNodesInSubtree(type);
+		for (int i = 0; i < this.getChildNodeCount(); i++)
+			numberOfNodes += this.getChildNode(i).countNodesInSubtree(type);
 		return numberOfNodes;
 	}
 	
 	/**	@return	the number of leaf nodes in this node's subtree 
 	 */
 	public int countLeafNodesInSubtree() {
-		if (this.childNodes.size() == 0) {
+		if (this.getChildNodeCount() == 0) {
 			return 1;
 		} else {
 			int numberOfLeafs = 0;
-			for (int i = 0; i < this.childNodes.size(); i++) {
-				numberOfLeafs += ((TreeNode) this.childNodes.get(i)).countLeafNodesInSubtree();
+			for (int i = 0; i < this.getChildNodeCount(); i++) {
+				numberOfLeafs += this.getChildNode(i).countLeafNodesInSubtree();
 			}
 			return numberOfLeafs;
 		}
@@ -615,8 +629,8 @@ public class TreeNode {
 	 */
 	public void markSubtree() {
 		this.marked = true;
-		for (int i = 0; i < this.childNodes.size(); i++) {
-			((TreeNode) this.childNodes.get(i)).markSubtree();
+		for (int i = 0; i < this.getChildNodeCount(); i++) {
+			this.getChildNode(i).markSubtree();
 		}
 	}
 	
@@ -624,8 +638,8 @@ public class TreeNode {
 	 */
 	public void unmarkSubtree() {
 		this.marked = false;
-		for (int i = 0; i < this.childNodes.size(); i++) {
-			((TreeNode) this.childNodes.get(i)).unmarkSubtree();
+		for (int i = 0; i < this.getChildNodeCount(); i++) {
+			this.getChildNode(i).unmarkSubtree();
 		}
 	}
 	
@@ -652,7 +666,7 @@ public class TreeNode {
 	public int computeDocumentOrderPosition(int firstPosition) {
 		this.documentOrderPosition = firstPosition;
 		int pos = firstPosition;
-		for (int c = 0; c < this.childNodes.size(); c++) {
+		for (int c = 0; c < this.getChildNodeCount(); c++) {
 			TreeNode child = this.getChildNode(c);
 			pos++;
 			pos = child.computeDocumentOrderPosition(pos);
@@ -678,7 +692,7 @@ public class TreeNode {
 	 */
 	public String toString() {
 		if (this.nodeType.equalsIgnoreCase(DATA_NODE_TYPE))
-			return this.nodeValue;
+			return this.getNodeValue();
 		else return this.nodeType + ": " + this.getAttributesForTag(' ', '=', '"');
 	}
 	
@@ -30,8 +30,6 @@ package de.uka.ipd.idaho.htmlXmlUtil;
 
 import java.io.IOException;
 import java.io.StringReader;
-import java.util.ArrayList;
-import java.util.Properties;
 
 import de.uka.ipd.idaho.htmlXmlUtil.exceptions.ParseException;
 import de.uka.ipd.idaho.htmlXmlUtil.grammars.Grammar;
@@ -40,7 +38,12 @@ import de.uka.ipd.idaho.htmlXmlUtil.grammars.StandardGrammar;
 /**
  * Container for the attributes of an XML element, much like
  * java.util.Properties, but handling the key Strings in a case insensitive
- * fashion to facilitate handling HTML.
+ * fashion to facilitate handling HTML.<br>
+ * Attribute sets obtained from getTagAttributes() keep the tag and parse it
+ * only on the first access to the attributes, as most tags are never asked
+ * for their attributes. The attributes are stored in flat arrays and looked
+ * up by linear search, which is faster than hashing for the small number of
+ * attributes a tag usually has.
  * 
  * @author sautter
  */
@@ -48,30 +51,60 @@ public class TreeNodeAttributeSet {
 	
 	private Grammar grammar;
 	
-	//	map for case-insensitive access
-	private Properties names = new Properties();
+	//	tag to parse attributes from on first access, null once parsed
+	private volatile String tag = null;
 	
-	//	map for name / value pairs
-	private Properties values = new Properties();
-	
-	//	list for sequential access
-	private ArrayList nameList = new ArrayList();
+	//	attribute names in original case, keys for case-insensitive access, and values, in order of addition
+	private String[] names = null;
+	private String[] keys = null;
+	private String[] values = null;
+	private int size = 0;
 	
 	private TreeNodeAttributeSet() {
 		this(new StandardGrammar());
 	}
 	
-	private TreeNodeAttributeSet(Grammar grammar) {
+	TreeNodeAttributeSet(Grammar grammar) {
 		this.grammar = grammar;
 	}
 	
+	private TreeNodeAttributeSet(String tag, Grammar grammar) {
+		this.grammar = grammar;
+		this.tag = tag;
+	}
+	
+	//	make sure attributes are parsed from tag
+	private void ensureParsed() {
+		if (this.tag != null)
+			this.parseTag();
+	}
+	
+	private synchronized void parseTag() {
+		String tag = this.tag;
+		if (tag == null)
+			return;
+		try {
+			fillTagAttributeSet(tag, this.grammar, this);
+		} catch (IOException ioe) { /* does not happen with a StringReader, but Java don't know */ }
+		this.tag = null;
+	}
+	
+	private int indexOf(String key) {
+		for (int a = 0; a < this.size; a++) {
+			if (this.keys[a].equals(key))
+				return a;
+		}
+		return -1;
+	}
+	
 	/**	check if the TreeNodeAttributeSet contains a given attribute
 	 * @param	attributeName	the attribute's name
 	 * @return true if and only if this TreeNodeAttributeSet contains the attribute identified by the specified name
 	 */
 	public boolean containsAttribute(String attributeName) {
+		this.ensureParsed();
 		String key = this.getKey(attributeName);
-		return this.values.containsKey(key);
+		return (this.indexOf(key) != -1);
 	}
 	
 	/**	read the value of an attribute
@@ -79,8 +112,7 @@ public class TreeNodeAttributeSet {
 	 * @return	the value of the specified attribute, or null, if there is no such attribute
 	 */
 	public String getAttribute(String attributeName) {
-		String key = this.getKey(attributeName);
-		return this.values.getProperty(key);
+		return this.getAttribute(attributeName, null);
 	}
 	
 	/**	read the value of an attribute
@@ -89,8 +121,10 @@ public class TreeNodeAttributeSet {
 	 * @return	the value of the specified attribute, or def, if there is no such attribute
 	 */
 	public String getAttribute(String attributeName, String def) {
+		this.ensureParsed();
 		String key = this.getKey(attributeName);
-		return this.values.getProperty(key, def);
+		int index = this.indexOf(key);
+		return ((index == -1) ? def : this.values[index]);
 	}
 	
 	/**	add a attribute / value pair
@@ -100,12 +134,46 @@ public class TreeNodeAttributeSet {
 	 * 	Note: if the specified attribute is already set for this node, it's value is changed to the specified value 
 	 */
 	public String setAttribute(String attributeName, String value) {
+		this.ensureParsed();
+		return this.doSetAttribute(attributeName, value);
+	}
+	
+	private String doSetAttribute(String attributeName, String value) {
+		if ((attributeName == null) || (value == null))
+			throw new NullPointerException(); // as Properties would
 		String key = this.getKey(attributeName);
-		String oldValue = this.values.getProperty(key);
-		this.names.setProperty(key, attributeName);
-		this.values.setProperty(key, value);
-		if (!this.nameList.contains(key)) this.nameList.add(key);
-		return oldValue;
+		int index = this.indexOf(key);
+		
+		//	existing attribute, keep position
+		if (index != -1) {
+			String oldValue = this.values[index];
+			this.names[index] = attributeName;
+			this.values[index] = value;
+			return oldValue;
+		}
+		
+		//	new attribute, append it
+		if (this.names == null) {
+			this.names = new String[4];
+			this.keys = new String[4];
+			this.values = new String[4];
+		}
+		else if (this.size == this.names.length) {
+			String[] names = new String[this.size * 2];
+			System.arraycopy(this.names, 0, names, 0, this.size);
+			this.names = names;
+			String[] keys = new String[this.size * 2];
+			System.arraycopy(this.keys, 0, keys, 0, this.size);
+			this.keys = keys;
+			String[] values = new String[this.size * 2];
+			System.arraycopy(this.values, 0, values, 0, this.size);
+			this.values = values;
+		}
+		this.names[this.size] = attributeName;
+		this.keys[this.size] = key;
+		this.values[this.size] = value;
+		this.size++;
+		return null;
 	}
 	
 	/**	remove an attribute
@@ -113,20 +181,30 @@ public class TreeNodeAttributeSet {
 	 * @return the attribute's value
 	 */
 	public String removeAttribute(String attributeName) {
+		this.ensureParsed();
 		String key = this.getKey(attributeName);
-		String oldValue = this.values.getProperty(key);
-		this.names.remove(key);
-		this.values.remove(key);
-		this.nameList.remove(key);
+		int index = this.indexOf(key);
+		if (index == -1)
+			return null;
+		String oldValue = this.values[index];
+		int tail = (this.size - index - 1);
+		System.arraycopy(this.names, (index + 1), this.names, index, tail);
+		System.arraycopy(this.keys, (index + 1), this.keys, index, tail);
+		System.arraycopy(this.values, (index + 1), this.values, index, tail);
+		this.size--;
+		this.names[this.size] = null;
+		this.keys[this.size] = null;
+		this.values[this.size] = null;
 		return oldValue;
 	}
 	
 	/**	@return	all attribute names in an array
 	 */
 	public String[] getAttributeNames() {
-		String[] ret = new String[this.nameList.size()];
-		for (int i = 0; i < ret.length; i++)
-			ret[i] = this.names.getProperty((String) this.nameList.get(i));
+		this.ensureParsed();
+		String[] ret = new String[this.size];
+		if (this.size != 0)
+			System.arraycopy(this.names, 0, ret, 0, this.size);
 		return ret;
 	}
 	
@@ -146,34 +224,35 @@ public class TreeNodeAttributeSet {
 	 */
 	public String[] getAttributeValuePairs(char attributeValueSeparator, char quoter, Grammar grammar) {
 		String[] ret = this.getAttributeNames();
-		for (int i = 0; i < ret.length; i++) {
-			String value = this.getAttribute(ret[i], ret[i]);
-			if (value != null)
-				ret[i] += (attributeValueSeparator + "" + quoter + "" + grammar.escape(value) + "" + quoter);
-		}
+		for (int i = 0; i < ret.length; i++)
+			ret[i] += (attributeValueSeparator + "" + quoter + "" + grammar.escape(this.values[i]) + "" + quoter);
 		return ret;
 	}
 	
 	/**	@return	all attribute / value pairs listed in a single String
 	 */
 	public String getAttributeValueString(Grammar grammar) {
-		String[] attributes = this.getAttributeValuePairs(grammar);
-		StringBuffer assembler = new StringBuffer();
-		for (int i = 0; i < attributes.length; i++) {
-			if (i != 0) assembler.append(grammar.getTagAttributeSeparator());
-			assembler.append(attributes[i]);
-		}
-		return assembler.toString();
+		return this.getAttributeValueString(grammar.getTagAttributeSeparator(), grammar.getTagAttributeValueSeparator(), grammar.getTagAttributeValueQuoter(), grammar);
 	}
 	
 	/**	@return	all attribute / value pairs listed in a single String
 	 */
 	public String getAttributeValueString(char attributeSeparator, char attributeValueSeparator, char quoter) {
-		String[] attributes = this.getAttributeValuePairs(attributeValueSeparator, quoter);
+		return this.getAttributeValueString(attributeSeparator, attributeValueSeparator, quoter, this.grammar);
+	}
+	
+	private String getAttributeValueString(char attributeSeparator, char attributeValueSeparator, char quoter, Grammar grammar) {
+		this.ensureParsed();
+		if (this.size == 0)
+			return "";
 		StringBuffer assembler = new StringBuffer();
-		for (int i = 0; i < attributes.length; i++) {
+		for (int i = 0; i < this.size; i++) {
 			if (i != 0) assembler.append(attributeSeparator);
-			assembler.append(attributes[i]);
+			assembler.append(this.names[i]);
+			assembler.append(attributeValueSeparator);
+			assembler.append(quoter);
+			assembler.append(grammar.escape(this.values[i]));
+			assembler.append(quoter);
 		}
 		return assembler.toString();
 	}
@@ -181,22 +260,26 @@ public class TreeNodeAttributeSet {
 	/**	remove all attribute / value pairs
 	 */
 	public void clear() {
-		this.names.clear();
-		this.values.clear();
-		this.nameList.clear();
+		this.tag = null;
+		this.names = null;
+		this.keys = null;
+		this.values = null;
+		this.size = 0;
 	}
 	
 	/** check whether this TreeNodeAttributeSet is empty
 	 * @return true if and only if this TreeNodeAttributeSet contains no key/value pairs
 	 */
 	public boolean isEmpty() {
-		return this.names.isEmpty();
+		this.ensureParsed();
+		return (this.size == 0);
 	}
 	
 	/**	@return	the number of key/value pairs contained in this TreeNodeAttributeSet
 	 */
 	public int size() {
-		return this.names.size();
+		this.ensureParsed();
+		return this.size;
 	}
 	
 	/**	@return	a key value for the HashMaps produced from the specified String
@@ -205,17 +288,33 @@ public class TreeNodeAttributeSet {
 		return ((string != null) ? string.toLowerCase() : null);
 	}
 	
-	/**	parse the attribute / value pairs out of the specified tag
+	/**	obtain the attribute / value pairs of the specified tag. The tag is only parsed on the first access to the
+	 * attributes, and not at all if it cannot contain any attributes.
 	 * @param 	tag			the tag to be parsed
 	 * @param 	grammar		the Grammar in whose context to parse the attributes
 	 * @return	the argument tag's attribute / value pairs in a Properties object
 	 */
 	public static TreeNodeAttributeSet getTagAttributes(String tag, Grammar grammar) {
-		TreeNodeAttributeSet attributes = new TreeNodeAttributeSet(grammar);
-		if ((tag != null) || (grammar != null)) try {
-			fillTagAttributeSet(tag, grammar, attributes);
-		} catch (IOException ioe) { /* does not happen with a StringReader, but Java don't know */ }
-		return attributes;
+		if ((tag == null) || (grammar == null) || !mayHaveAttributes(tag, grammar))
+			return new TreeNodeAttributeSet(grammar);
+		return new TreeNodeAttributeSet(tag, grammar);
+	}
+	
+	//	check if anything but whitespace, end tag marker, and tag end follows after the tag type
+	private static boolean mayHaveAttributes(String tag, Grammar grammar) {
+		char tagEnd = grammar.getTagEnd();
+		char endTagMarker = grammar.getEndTagMarker();
+		int c = 1;
+		if ((c < tag.length()) && (tag.charAt(c) == endTagMarker))
+			c++;
+		while ((c < tag.length()) && (Character.isLetterOrDigit(tag.charAt(c)) || ("_:-.".indexOf(tag.charAt(c)) != -1)))
+			c++;
+		for (; c < tag.length(); c++) {
+			char ch = tag.charAt(c);
+			if ((ch != tagEnd) && (ch != endTagMarker) && !grammar.isWhitespace(ch))
+				return true;
+		}
+		return false;
 	}
 	
 	private static void fillTagAttributeSet(String tag, Grammar grammar, TreeNodeAttributeSet attributes) throws IOException {
@@ -260,7 +359,7 @@ public class TreeNodeAttributeSet {
 			else attribValue = attribName;
 			
 			//	append normalized attribute
-			attributes.setAttribute(attribName, grammar.unescape(attribValue));
+			attributes.doSetAttribute(attribName, grammar.unescape(attribValue));
 		}
 	}
 	
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitt Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITT KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.htmlXmlUtil.accessories;
+
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import de.uka.ipd.idaho.htmlXmlUtil.TreeNode;
+
+/**
+ * Iterator over the nodes of a tree of TreeNode objects in depth first order,
+ * each node before its children, the same order as the one of the array
+ * returned by the treeToDepthFirstOrder() method of TreeTools. The iterator
+ * keeps the path from the root to the current node in arrays it grows as
+ * needed, so iterating does not create any objects, except for the rare
+ * growth of these arrays. Via the reset() method, a single instance can be
+ * reused for iterating over many trees.<br>
+ * The tree must not be modified while an iteration is in progress.
+ * 
+ * @author sautter
+ */
+public class DepthFirstIterator implements Iterator {
+	
+	private TreeNode root;
+	private TreeNode[] pathNodes = new TreeNode[16];
+	private int[] pathChildIndexes = new int[16];
+	private int pathLength = 0;
+	
+	/**	Constructor
+	 * @param	root	the root of the tree to iterate over (may be null)
+	 */
+	public DepthFirstIterator(TreeNode root) {
+		this.root = root;
+	}
+	
+	/**
+	 * Restart the iteration, with another tree.
+	 * @param root the root of the tree to iterate over (may be null)
+	 */
+	public void reset(TreeNode root) {
+		for (int p = 0; p < this.pathLength; p++)
+			this.pathNodes[p] = null;
+		this.pathLength = 0;
+		this.root = root;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.util.Iterator#hasNext()
+	 */
+	public boolean hasNext() {
+		if (this.pathLength == 0)
+			return (this.root != null);
+		for (int p = (this.pathLength - 1); p >= 0; p--) {
+			if (this.pathChildIndexes[p] < this.pathNodes[p].getChildNodeCount())
+				return true;
+		}
+		return false;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.util.Iterator#next()
+	 */
+	public Object next() {
+		return this.nextNode();
+	}
+	
+	/**
+	 * Retrieve the next node, without the cast required with next().
+	 * @return the next node
+	 * @throws NoSuchElementException if there are no more nodes
+	 */
+	public TreeNode nextNode() {
+		
+		//	start with root
+		if (this.pathLength == 0) {
+			if (this.root == null)
+				throw new NoSuchElementException();
+			this.push(this.root);
+			this.root = null;
+			return this.pathNodes[0];
+		}
+		
+		//	go to next child of deepest node that has one left
+		while (this.pathLength != 0) {
+			TreeNode node = this.pathNodes[this.pathLength - 1];
+			int childIndex = this.pathChildIndexes[this.pathLength - 1];
+			if (childIndex < node.getChildNodeCount()) {
+				this.pathChildIndexes[this.pathLength - 1]++;
+				TreeNode child = node.getChildNode(childIndex);
+				this.push(child);
+				return child;
+			}
+			this.pathNodes[--this.pathLength] = null;
+		}
+		throw new NoSuchElementException();
+	}
+	
+	private void push(TreeNode node) {
+		if (this.pathLength == this.pathNodes.length) {
+			TreeNode[] pathNodes = new TreeNode[this.pathNodes.length * 2];
+			System.arraycopy(this.pathNodes, 0, pathNodes, 0, this.pathLength);
+			this.pathNodes = pathNodes;
+			int[] pathChildIndexes = new int[this.pathChildIndexes.length * 2];
+			System.arraycopy(this.pathChildIndexes, 0, pathChildIndexes, 0, this.pathLength);
+			this.pathChildIndexes = pathChildIndexes;
+		}
+		this.pathNodes[this.pathLength] = node;
+		this.pathChildIndexes[this.pathLength] = 0;
+		this.pathLength++;
+	}
+	
+	/**
+	 * Skip the subtree of the node last returned by next(), so the next call to
+	 * next() returns the next node outside that subtree.
+	 */
+	public void skipSubtree() {
+		if (this.pathLength != 0)
+			this.pathChildIndexes[this.pathLength - 1] = this.pathNodes[this.pathLength - 1].getChildNodeCount();
+	}
+	
+	/**
+	 * @return the depth of the node last returned by next(), relative to the root of the iteration (0 for the root itself)
+	 */
+	public int getDepth() {
+		return (this.pathLength - 1);
+	}
+	
+	/**
+	 * This iterator does not support removal, as the tree must not be modified
+	 * during the iteration.
+	 * @see java.util.Iterator#remove()
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+}
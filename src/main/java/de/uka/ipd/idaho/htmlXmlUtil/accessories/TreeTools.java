@@ -28,8 +28,8 @@
 package de.uka.ipd.idaho.htmlXmlUtil.accessories;
 
 
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Stack;
 import java.util.Vector;
 
 import de.uka.ipd.idaho.htmlXmlUtil.TreeNode;
@@ -1168,15 +1168,15 @@ public class TreeTools {
 	 *         String (in depth first order)
 	 */
 	public static String getPathOfValue(TreeNode root, String searchValue) {
-
-		TreeNode currentNode = getNodeOfType(root, TreeNode.DATA_NODE_TYPE);
-
-		while (currentNode != null) {
-			if (currentNode.getNodeValue().toLowerCase().indexOf(searchValue.toLowerCase()) > -1)
-				return getRootPathOfNode(currentNode);
-			currentNode = getNodeOfType(root, TreeNode.DATA_NODE_TYPE);
-		}
-		return "";
+		final String lowerCaseSearchValue = searchValue.toLowerCase();
+		TreeNode node = visitTree(root, new TreeVisitor() {
+			public int visitNode(TreeNode node, int treeDepth) {
+				if ((treeDepth != 0) && node.getNodeType().equalsIgnoreCase(TreeNode.DATA_NODE_TYPE) && (node.getNodeValue().toLowerCase().indexOf(lowerCaseSearchValue) > -1))
+					return TERMINATE;
+				else return CONTINUE;
+			}
+		});
+		return ((node == null) ? "" : getRootPathOfNode(node));
 	}
 
 	/**
@@ -1191,60 +1191,33 @@ public class TreeTools {
 	}
 
 	/**
-	 * get a node of the the specified type
+	 * get a node of the the specified type. The returned node is marked, so a
+	 * subsequent call returns the next node of the specified type; if there
+	 * are no more nodes of the specified type, the marks are removed from the
+	 * tree.
 	 * @param root the root node of the tree to search in
 	 * @param searchTag the node type to search
 	 * @return the first node that's type matches the specified one (in depth
 	 *         first order)
 	 */
-	public static TreeNode getNodeOfType(TreeNode root, String searchTag) {
-
-		Stack searchStack = new Stack();
-		TreeNode currentNode = root;
-		int currentNodeIndex = 0;
-		
+	public static TreeNode getNodeOfType(TreeNode root, final String searchTag) {
 		if (root == null)
 			return null;
 		
-		while (currentNode != null && (currentNode != root || currentNodeIndex < currentNode.getChildNodeCount())) {
-
-			//	return node of desired type if not marked
-			if (currentNodeIndex < currentNode.getChildNodeCount() && !currentNode.getChildNode(currentNodeIndex).isMarked() && currentNode.getChildNode(currentNodeIndex).getNodeType().equalsIgnoreCase(searchTag)) {
-				currentNode.getChildNode(currentNodeIndex).markNode();
-				return currentNode.getChildNode(currentNodeIndex);
-			}
-			
-			//	otherwise continue search
-			else {
-				
-				//	current node has children
-				if (currentNodeIndex < currentNode.getChildNodeCount() && currentNode.getChildNode(currentNodeIndex).getChildNodeCount() > 0) {
-
-					//	push index for that level onto the stack, decend and set index to 0
-					searchStack.push(new Integer(currentNodeIndex));
-					currentNode = currentNode.getChildNode(currentNodeIndex);
-					currentNodeIndex = 0;
-				}
-				
-				//	no children
-				else {
-					
-					//	switch to next child node, if there is one
-					if (currentNodeIndex < currentNode.getChildNodeCount())
-						currentNodeIndex++;
-					
-					//	mark current node as searched, ascend, get index of the next higher level and switch to next node
-					else {
-						currentNode.markNode();
-						currentNode = currentNode.getParent();
-						currentNodeIndex = ((Integer) searchStack.pop()).intValue()+1;
-					}
-				}
+		//	find first unmarked node of desired type below root
+		TreeNode node = visitTree(root, new TreeVisitor() {
+			public int visitNode(TreeNode node, int treeDepth) {
+				if ((treeDepth != 0) && !node.isMarked() && node.getNodeType().equalsIgnoreCase(searchTag))
+					return TERMINATE;
+				else return CONTINUE;
 			}
-		}
-	
-		root.unmarkSubtree();
-		return null;
+		});
+		
+		//	mark node so next call returns next node, or clean up if there are no more nodes
+		if (node == null)
+			root.unmarkSubtree();
+		else node.markNode();
+		return node;
 	}
 	
 	/**
@@ -1255,10 +1228,12 @@ public class TreeTools {
 	 *         array in depth first order)
 	 */
 	public static TreeNode[] getAllNodesOfType(TreeNode root, String searchTag) {
-		TreeNode[] tree = treeToDepthFirstOrder(root);
-		Vector nodes = new Vector();
-		for (int i = 0; i < tree.length; i++)
-			if (tree[i].getNodeType().equalsIgnoreCase(searchTag)) nodes.add(tree[i]);
+		ArrayList nodes = new ArrayList();
+		for (DepthFirstIterator dfi = new DepthFirstIterator(root); dfi.hasNext();) {
+			TreeNode node = dfi.nextNode();
+			if (node.getNodeType().equalsIgnoreCase(searchTag))
+				nodes.add(node);
+		}
 		return ((TreeNode[]) nodes.toArray(new TreeNode[nodes.size()]));
 	}
 
@@ -1290,55 +1265,35 @@ public class TreeTools {
 		return "";
 	}
 	
+	/**
+	 * visit the nodes of a tree in depth first order, until the visitor
+	 * terminates the traversal
+	 * @param root the root of the tree
+	 * @param visitor the visitor to hand the nodes to
+	 * @return the node the visitor terminated the traversal at, or null if the
+	 *         traversal ran through the whole tree
+	 */
+	public static TreeNode visitTree(TreeNode root, TreeVisitor visitor) {
+		for (DepthFirstIterator dfi = new DepthFirstIterator(root); dfi.hasNext();) {
+			TreeNode node = dfi.nextNode();
+			int action = visitor.visitNode(node, dfi.getDepth());
+			if (action == TreeVisitor.TERMINATE)
+				return node;
+			else if (action == TreeVisitor.SKIP_SUBTREE)
+				dfi.skipSubtree();
+		}
+		return null;
+	}
+	
 	/**
 	 * get the nodes of a tree in depth first order
 	 * @param root the root of the tree
 	 * @return an array containing the nodes of the tree in depth first order
 	 */
 	public static TreeNode[] treeToDepthFirstOrder(TreeNode root) {
-		
-		//	check parameters
-		if (root == null) return new TreeNode[0];
-		
-		Vector treeInOrder = new Vector();
-		Stack searchStack = new Stack();
-		TreeNode currentNode = root;
-		int currentNodeIndex = 0;
-		treeInOrder.addElement(root);
-
-		while (currentNode != null && (currentNode != root || currentNodeIndex < currentNode.getChildNodeCount())) {
-			
-			//	if the current node has children
-			if (currentNodeIndex < currentNode.getChildNodeCount() && currentNode.getChildNode(currentNodeIndex).getChildNodeCount() > 0) {
-				
-				//	push index for that level onto the stack, decend and set index to 0
-				searchStack.push(new Integer(currentNodeIndex));
-				currentNode = currentNode.getChildNode(currentNodeIndex);
-				treeInOrder.addElement(currentNode);
-				currentNodeIndex = 0;
-			}
-			
-			//	no children
-			else {
-				
-				//	switch to next child node, if there is one
-				if (currentNodeIndex < currentNode.getChildNodeCount()) {
-					treeInOrder.addElement(currentNode.getChildNode(currentNodeIndex));
-					currentNodeIndex++;
-				}
-				
-				//	no more child nodes to visit
-				else {
-					
-					// ascend, get index of the next higher level and switch to next node
-					currentNode = currentNode.getParent();
-					if (!searchStack.empty())
-						currentNodeIndex = ((Integer) searchStack.pop()).intValue()+1;
-				}
-			}
-		}
-		
-		//	return nodes
+		ArrayList treeInOrder = new ArrayList();
+		for (DepthFirstIterator dfi = new DepthFirstIterator(root); dfi.hasNext();)
+			treeInOrder.add(dfi.nextNode());
 		return ((TreeNode[]) treeInOrder.toArray(new TreeNode[treeInOrder.size()]));
 	}
 	
@@ -1376,17 +1331,17 @@ public class TreeTools {
 	 * @return true if and only if both trees are equal
 	 */
 	public static boolean treesEqual(TreeNode root1, TreeNode root2) {
+		DepthFirstIterator tree1 = new DepthFirstIterator(root1);
+		DepthFirstIterator tree2 = new DepthFirstIterator(root2);
 		
-		TreeNode[] tree1 = treeToDepthFirstOrder(root1);
-		TreeNode[] tree2 = treeToDepthFirstOrder(root2);
-		int index = 0;
-		
-		//	compare the trees node by node
-		while ((tree1.length == tree2.length) && (index < tree1.length))
-			index = ((tree1[index].getNodeType().equalsIgnoreCase(tree2[index].getNodeType())) ? (index + 1) : (tree1.length + 1));
+		//	compare the trees node by node, stopping at first difference
+		while (tree1.hasNext() && tree2.hasNext()) {
+			if (!tree1.nextNode().getNodeType().equalsIgnoreCase(tree2.nextNode().getNodeType()))
+				return false;
+		}
 		
-		//	return comparison result
-		return ((tree1.length == tree2.length) && (index == tree1.length));
+		//	trees are equal if both end at the same node
+		return (tree1.hasNext() == tree2.hasNext());
 	}
 	
 	/**
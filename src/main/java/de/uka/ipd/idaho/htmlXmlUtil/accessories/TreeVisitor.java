@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitt Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITT KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.htmlXmlUtil.accessories;
+
+
+import de.uka.ipd.idaho.htmlXmlUtil.TreeNode;
+
+/**
+ * Visitor for the nodes of a tree of TreeNode objects, to hand to the
+ * visitTree() method of TreeTools. The nodes are visited in depth first order,
+ * each node before its children. With the return value of the visitNode()
+ * method, the visitor controls how the traversal proceeds, so it can skip
+ * subtrees it is not interested in, or terminate the traversal as soon as it
+ * has found what it is looking for.
+ * 
+ * @author sautter
+ */
+public interface TreeVisitor {
+	
+	/** return value of visitNode() indicating to proceed with the children of the visited node */
+	public static final int CONTINUE = 0;
+	
+	/** return value of visitNode() indicating to proceed with the next node outside the subtree of the visited node */
+	public static final int SKIP_SUBTREE = 1;
+	
+	/** return value of visitNode() indicating to terminate the traversal */
+	public static final int TERMINATE = 2;
+	
+	/**	visit a node
+	 * @param	node		the node to visit
+	 * @param	treeDepth	the depth of the node, relative to the root of the traversal (0 for the root itself)
+	 * @return one of CONTINUE, SKIP_SUBTREE, and TERMINATE
+	 */
+	public abstract int visitNode(TreeNode node, int treeDepth);
+}
@@ -0,0 +1,640 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitt Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITT KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.htmlXmlUtil.xPath;
+
+
+import java.util.ArrayList;
+import java.util.Properties;
+
+import de.uka.ipd.idaho.htmlXmlUtil.TreeNode;
+import de.uka.ipd.idaho.htmlXmlUtil.xPath.exceptions.InvalidArgumentsException;
+import de.uka.ipd.idaho.htmlXmlUtil.xPath.exceptions.UndefinedFunctionException;
+import de.uka.ipd.idaho.htmlXmlUtil.xPath.exceptions.XPathException;
+import de.uka.ipd.idaho.htmlXmlUtil.xPath.types.XPathBoolean;
+import de.uka.ipd.idaho.htmlXmlUtil.xPath.types.XPathNodeSet;
+import de.uka.ipd.idaho.htmlXmlUtil.xPath.types.XPathNumber;
+import de.uka.ipd.idaho.htmlXmlUtil.xPath.types.XPathObject;
+import de.uka.ipd.idaho.htmlXmlUtil.xPath.types.XPathString;
+
+/**
+ * Compiled form of an XPath, i.e., a tree of operators built from the steps,
+ * predicates, and expressions produced by the XPathParser. Compilation
+ * resolves function names to the functions they invoke, turns comparisons of
+ * an attribute to a string literal into a direct attribute value test, and
+ * merges a '//' step with a subsequent step whose predicates do not depend on
+ * the context position into a single descendant step. If an XPathIndex is
+ * given for evaluation, descendant steps read the nodes of the type they test
+ * for, or with the attribute value their first predicate tests for, from the
+ * index, instead of walking the subtrees of their start nodes.<br>
+ * A compiled XPath is bound to the XPathEngine it was compiled for, and to the
+ * state of the function libraries at compile time.
+ * 
+ * @author sautter
+ */
+final class CompiledXPath {
+	
+	private final XPathEngine engine;
+	private final int functionModCount;
+	private final Step[] steps;
+	
+	private CompiledXPath(XPathEngine engine, int functionModCount, Step[] steps) {
+		this.engine = engine;
+		this.functionModCount = functionModCount;
+		this.steps = steps;
+	}
+	
+	/**	check if this compiled XPath is valid for use with a given XPathEngine
+	 * @param	engine	the XPathEngine to check
+	 * @return true if this XPath was compiled for the specified engine, and no functions were added or removed since
+	 */
+	boolean isValidFor(XPathEngine engine) {
+		return ((this.engine == engine) && (this.functionModCount == XPathEngine.getFunctionModCount()));
+	}
+	
+	/**	evaluate the compiled XPath
+	 * @param	startNodes			the NodeSet with the TreeNodes to start at
+	 * @param	variableBindings	the variable bindings which are currently valid
+	 * @param	index				the index of the tree the start nodes belong to (may be null)
+	 * @return the NodeSet resulting form the evaluation
+	 * @throws XPathException
+	 */
+	XPathNodeSet evaluate(XPathNodeSet startNodes, Properties variableBindings, XPathIndex index) throws XPathException {
+		return evaluateSteps(this.steps, startNodes, new Evaluation(variableBindings, index));
+	}
+	
+	private static XPathNodeSet evaluateSteps(Step[] steps, XPathNodeSet startNodes, Evaluation ev) throws XPathException {
+		XPathNodeSet result = startNodes;
+		for (int s = 0; s < steps.length; s++)
+			result = steps[s].evaluate(result, ev);
+		return result;
+	}
+	
+	/**	compile an XPath for use with a given XPathEngine
+	 * @param	path	the XPath to compile
+	 * @param	engine	the XPathEngine to resolve functions against
+	 * @return the compiled XPath
+	 */
+	static CompiledXPath compile(XPath path, XPathEngine engine) {
+		int functionModCount = XPathEngine.getFunctionModCount();
+		return new CompiledXPath(engine, functionModCount, compileSteps(path.steps, engine));
+	}
+	
+	private static Step[] compileSteps(XPathStep[] steps, XPathEngine engine) {
+		if (steps == null)
+			return new Step[0];
+		ArrayList compiledSteps = new ArrayList();
+		for (int s = 0; s < steps.length; s++) {
+			Step step = compileStep(steps[s], engine);
+			Step last = (compiledSteps.isEmpty() ? null : ((Step) compiledSteps.get(compiledSteps.size() - 1)));
+			
+			//	anything but '//' before current step, or predicates depend on context position
+			if ((last == null) || !last.isDescendantOrSelfNode() || !step.predicatesPositionFree)
+				compiledSteps.add(step);
+			
+			//	'//' step followed by another one
+			else if (step.isDescendantOrSelfNode()) {}
+			
+			//	'//' step followed by child or descendant step, merge into descendant step
+			else if ("child".equals(step.axis) || "descendant".equals(step.axis))
+				compiledSteps.set((compiledSteps.size() - 1), new Step("descendant", step.filterType, step.predicates));
+			
+			//	'//' step followed by descendant-or-self step, merge into latter
+			else if ("descendant-or-self".equals(step.axis))
+				compiledSteps.set((compiledSteps.size() - 1), step);
+			
+			//	other axis
+			else compiledSteps.add(step);
+		}
+		return ((Step[]) compiledSteps.toArray(new Step[compiledSteps.size()]));
+	}
+	
+	private static Step compileStep(XPathStep step, XPathEngine engine) {
+		String filterType;
+		if ("node()".equals(step.nodeTest) || "*".equals(step.nodeTest))
+			filterType = null;
+		else if ("comment()".equals(step.nodeTest))
+			filterType = TreeNode.COMMENT_NODE_TYPE;
+		else if ("text()".equals(step.nodeTest))
+			filterType = TreeNode.DATA_NODE_TYPE;
+		else filterType = step.nodeTest;
+		return new Step(((step.axis == null) ? "child" : step.axis), filterType, compilePredicates(step.predicates, engine));
+	}
+	
+	private static Predicate[] compilePredicates(XPathPredicate[] predicates, XPathEngine engine) {
+		if (predicates == null)
+			return new Predicate[0];
+		Predicate[] compiledPredicates = new Predicate[predicates.length];
+		for (int p = 0; p < predicates.length; p++)
+			compiledPredicates[p] = new Predicate((predicates[p].expression == null) ? null : compileExpression(predicates[p].expression, engine));
+		return compiledPredicates;
+	}
+	
+	private static Expression compileExpression(XPathExpression expression, XPathEngine engine) {
+		if (expression instanceof XPathUnaryExpression)
+			return compileUnaryExpression(((XPathUnaryExpression) expression), engine);
+		else if (expression instanceof XPathBinaryExpression)
+			return compileBinaryExpression(((XPathBinaryExpression) expression), engine);
+		else return new Constant(new XPathBoolean(false));
+	}
+	
+	private static Expression compileUnaryExpression(XPathUnaryExpression expression, XPathEngine engine) {
+		if (expression.literal != null)
+			return new Constant(expression.literal);
+		if (expression.number != null)
+			return new Constant(expression.isNegative ? new XPathNumber(-expression.number.value) : expression.number);
+		if (expression.variableName != null)
+			return new Variable(expression.variableName);
+		if (expression.enclosedExpression != null)
+			return new Enclosed(compileExpression(expression.enclosedExpression, engine), expression.isNegative);
+		if (expression.functionName != null) {
+			Expression[] args = new Expression[(expression.functionArgs == null) ? 0 : expression.functionArgs.length];
+			for (int a = 0; a < args.length; a++)
+				args[a] = compileExpression(expression.functionArgs[a], engine);
+			Step[] path = null;
+			if ((expression.pathExpression != null) && (expression.pathExpression.steps != null) && (expression.pathExpression.steps.length != 0))
+				path = compileSteps(expression.pathExpression.steps, engine);
+			return new FunctionCall(expression.functionName, args, compilePredicates(expression.predicates, engine), path, expression.isNegative, engine);
+		}
+		if (expression.pathExpression != null)
+			return new Path(compileSteps(expression.pathExpression.steps, engine));
+		if ((expression.partExpressions != null) && (expression.partExpressions.length != 0)) {
+			Expression[] parts = new Expression[expression.partExpressions.length];
+			for (int p = 0; p < parts.length; p++)
+				parts[p] = compileExpression(expression.partExpressions[p], engine);
+			return new Union(parts);
+		}
+		return new Constant(new XPathBoolean(false));
+	}
+	
+	private static Expression compileBinaryExpression(XPathBinaryExpression expression, XPathEngine engine) {
+		if (expression.leftExpression == null)
+			return new Constant(new XPathBoolean(true));
+		Expression left = compileExpression(expression.leftExpression, engine);
+		if (expression.rightExpression == null)
+			return left;
+		Expression right = compileExpression(expression.rightExpression, engine);
+		
+		//	comparison of attribute to string literal
+		if ("=".equals(expression.operator)) {
+			String attribute = getAttributeName(left);
+			if ((attribute != null) && (right instanceof Constant) && (((Constant) right).value instanceof XPathString))
+				return new AttributeEquals(attribute, ((XPathString) ((Constant) right).value).value);
+			attribute = getAttributeName(right);
+			if ((attribute != null) && (left instanceof Constant) && (((Constant) left).value instanceof XPathString))
+				return new AttributeEquals(attribute, ((XPathString) ((Constant) left).value).value);
+		}
+		
+		return new Binary(expression.operator, left, right);
+	}
+	
+	//	get the attribute name from a path expression consisting of a single attribute step, null for other expressions
+	private static String getAttributeName(Expression expression) {
+		if (!(expression instanceof Path))
+			return null;
+		Step[] steps = ((Path) expression).steps;
+		if ((steps.length != 1) || !"attribute".equals(steps[0].axis) || (steps[0].filterType == null) || (steps[0].predicates.length != 0))
+			return null;
+		return steps[0].filterType;
+	}
+	
+	/**	the state of an evaluation
+	 */
+	private static class Evaluation {
+		final Properties variableBindings;
+		final XPathIndex index;
+		Evaluation(Properties variableBindings, XPathIndex index) {
+			this.variableBindings = variableBindings;
+			this.index = index;
+		}
+	}
+	
+	/**	a compiled location step
+	 */
+	private static class Step {
+		final String axis;
+		final String filterType;
+		final Predicate[] predicates;
+		
+		final boolean reverse;
+		final boolean isDescendantAxis;
+		final boolean includesSelf;
+		final boolean predicatesPositionFree;
+		
+		//	attribute value test of the first predicate, for use with the index
+		final String indexAttribute;
+		final String indexValue;
+		
+		Step(String axis, String filterType, Predicate[] predicates) {
+			this.axis = axis;
+			this.filterType = filterType;
+			this.predicates = predicates;
+			this.reverse = (this.axis.startsWith("preceding") || this.axis.startsWith("ancestor"));
+			this.isDescendantAxis = this.axis.startsWith("descendant");
+			this.includesSelf = this.axis.endsWith("self");
+			boolean predicatesPositionFree = true;
+			for (int p = 0; p < this.predicates.length; p++)
+				predicatesPositionFree = (predicatesPositionFree && this.predicates[p].isPositionFree());
+			this.predicatesPositionFree = predicatesPositionFree;
+			
+			//	nodes lacking the attribute match an empty value, so we cannot use the index for the latter
+			if ((this.predicates.length != 0) && (this.predicates[0].expression instanceof AttributeEquals) && (((AttributeEquals) this.predicates[0].expression).value.length() != 0)) {
+				this.indexAttribute = ((AttributeEquals) this.predicates[0].expression).attribute;
+				this.indexValue = ((AttributeEquals) this.predicates[0].expression).value;
+			}
+			else {
+				this.indexAttribute = null;
+				this.indexValue = null;
+			}
+		}
+		
+		boolean isDescendantOrSelfNode() {
+			return ("descendant-or-self".equals(this.axis) && (this.filterType == null) && (this.predicates.length == 0));
+		}
+		
+		XPathNodeSet evaluate(XPathNodeSet startNodes, Evaluation ev) throws XPathException {
+			XPathNodeSet result = new XPathNodeSet(this.reverse);
+			int coveredStart = -1;
+			int coveredEnd = -1;
+			for (int n = 0; n < startNodes.size(); n++) {
+				TreeNode node = startNodes.get(n);
+				int pos = ((this.isDescendantAxis && (ev.index != null)) ? ev.index.positionOf(node) : -1);
+				
+				//	evaluate axis and node test on tree
+				XPathNodeSet nodeResult;
+				int firstPredicate = 0;
+				if (pos == -1)
+					nodeResult = XPathEngine.evaluateAxis(this.axis, node, this.filterType, this.reverse);
+				
+				//	nothing to add if predicates independent of context and node in subtree of previous start node
+				else if (this.predicatesPositionFree && (coveredStart < pos) && (pos <= coveredEnd))
+					continue;
+				
+				//	evaluate axis and node test on index
+				else {
+					coveredStart = pos;
+					coveredEnd = ev.index.getSubtreeEnd(pos);
+					nodeResult = this.getDescendants(ev.index, pos);
+					if (this.indexAttribute != null)
+						firstPredicate = 1;
+				}
+				
+				//	apply predicates
+				for (int p = firstPredicate; p < this.predicates.length; p++)
+					nodeResult = this.predicates[p].apply(nodeResult, ev);
+				
+				//	copy nodes to result
+				result.addAll(nodeResult);
+			}
+			return result;
+		}
+		
+		private XPathNodeSet getDescendants(XPathIndex index, int pos) {
+			XPathNodeSet nodes = new XPathNodeSet(this.reverse);
+			int from = (this.includesSelf ? pos : (pos + 1));
+			int to = index.getSubtreeEnd(pos);
+			
+			//	no node test, use whole subtree
+			if ((this.indexAttribute == null) && (this.filterType == null)) {
+				for (int p = from; p <= to; p++)
+					nodes.add(index.getNode(p));
+				return nodes;
+			}
+			
+			//	use nodes with attribute value or type from index
+			int[] positions = ((this.indexAttribute == null) ? index.getTypePositions(this.filterType) : index.getAttributeValuePositions(this.indexAttribute, this.indexValue));
+			for (int p = XPathIndex.indexOf(positions, from); (p < positions.length) && (positions[p] <= to); p++) {
+				TreeNode node = index.getNode(positions[p]);
+				if ((this.indexAttribute == null) || (this.filterType == null) || this.filterType.equals(node.getNodeType()))
+					nodes.add(node);
+			}
+			return nodes;
+		}
+	}
+	
+	/**	a compiled predicate
+	 */
+	private static class Predicate {
+		final Expression expression;
+		Predicate(Expression expression) {
+			this.expression = expression;
+		}
+		
+		//	check if the predicate selects the same nodes regardless of context position and size
+		boolean isPositionFree() {
+			return ((this.expression == null) || (!this.expression.usesContextPosition() && !this.expression.mayBeNumber()));
+		}
+		
+		XPathNodeSet apply(XPathNodeSet nodeSet, Evaluation ev) throws XPathException {
+			if (this.expression == null)
+				return nodeSet;
+			XPathNodeSet resultNodeSet = new XPathNodeSet(nodeSet.isReverseDocOrder);
+			int size = nodeSet.size();
+			for (int n = 0; n < size; n++) {
+				TreeNode node = nodeSet.get(n);
+				XPathObject xpo = this.expression.evaluate(ev, node, (n + 1), size);
+				if (xpo instanceof XPathNumber) {
+					if (xpo.asNumber().value == (n + 1))
+						resultNodeSet.add(node);
+				}
+				else if (xpo.asBoolean().value)
+					resultNodeSet.add(node);
+			}
+			return resultNodeSet;
+		}
+	}
+	
+	/**	a compiled expression
+	 */
+	private static abstract class Expression {
+		abstract XPathObject evaluate(Evaluation ev, TreeNode contextNode, int contextPosition, int contextSize) throws XPathException;
+		
+		//	check if the value of the expression depends on the context position or size
+		abstract boolean usesContextPosition();
+		
+		//	check if the expression can evaluate to a number, which a predicate compares to the context position
+		abstract boolean mayBeNumber();
+	}
+	
+	private static class Constant extends Expression {
+		final XPathObject value;
+		Constant(XPathObject value) {
+			this.value = value;
+		}
+		XPathObject evaluate(Evaluation ev, TreeNode contextNode, int contextPosition, int contextSize) throws XPathException {
+			return this.value;
+		}
+		boolean usesContextPosition() {
+			return false;
+		}
+		boolean mayBeNumber() {
+			return (this.value instanceof XPathNumber);
+		}
+	}
+	
+	private static class Variable extends Expression {
+		final String name;
+		Variable(String name) {
+			this.name = name;
+		}
+		XPathObject evaluate(Evaluation ev, TreeNode contextNode, int contextPosition, int contextSize) throws XPathException {
+			return new XPathString(ev.variableBindings.getProperty(this.name));
+		}
+		boolean usesContextPosition() {
+			return false;
+		}
+		boolean mayBeNumber() {
+			return false;
+		}
+	}
+	
+	private static class Enclosed extends Expression {
+		final Expression expression;
+		final boolean isNegative;
+		Enclosed(Expression expression, boolean isNegative) {
+			this.expression = expression;
+			this.isNegative = isNegative;
+		}
+		XPathObject evaluate(Evaluation ev, TreeNode contextNode, int contextPosition, int contextSize) throws XPathException {
+			XPathObject result = this.expression.evaluate(ev, contextNode, contextPosition, contextSize);
+			if (this.isNegative && (result instanceof XPathNumber))
+				return new XPathNumber(-result.asNumber().value);
+			return result;
+		}
+		boolean usesContextPosition() {
+			return this.expression.usesContextPosition();
+		}
+		boolean mayBeNumber() {
+			return this.expression.mayBeNumber();
+		}
+	}
+	
+	private static class FunctionCall extends Expression {
+		final String name;
+		final Expression[] args;
+		final Predicate[] predicates;
+		final Step[] path;
+		final boolean isNegative;
+		
+		//	resolved functions, in the order they are tried in
+		final XPathFunction function;
+		final int coreFunction;
+		final XPathFunction defaultFunction;
+		
+		FunctionCall(String name, Expression[] args, Predicate[] predicates, Step[] path, boolean isNegative, XPathEngine engine) {
+			this.name = name;
+			this.args = args;
+			this.predicates = predicates;
+			this.path = path;
+			this.isNegative = isNegative;
+			this.function = engine.getFunction(this.name);
+			this.coreFunction = XPathEngine.getCoreFunction(this.name);
+			this.defaultFunction = (((this.coreFunction == -1) && !engine.isDefaultEngine()) ? XPath.DEFAULT_ENGINE.getFunction(this.name) : null);
+		}
+		
+		XPathObject evaluate(Evaluation ev, TreeNode contextNode, int contextPosition, int contextSize) throws XPathException {
+			XPathObject[] args = new XPathObject[this.args.length];
+			for (int a = 0; a < args.length; a++)
+				args[a] = this.args[a].evaluate(ev, contextNode, contextPosition, contextSize);
+			XPathObject xpo = this.execute(contextNode, contextPosition, contextSize, args);
+			
+			if (xpo instanceof XPathNumber)
+				return (this.isNegative ? new XPathNumber(-xpo.asNumber().value) : xpo);
+			
+			if (this.predicates.length != 0) {
+				if (!(xpo instanceof XPathNodeSet)) throw new InvalidArgumentsException("Predicates are applicable only for NodeSets.");
+				XPathNodeSet nodeSet = ((XPathNodeSet) xpo);
+				for (int p = 0; p < this.predicates.length; p++)
+					nodeSet = this.predicates[p].apply(nodeSet, ev);
+				xpo = nodeSet;
+			}
+			
+			if (this.path != null) {
+				if (!(xpo instanceof XPathNodeSet)) throw new InvalidArgumentsException("Path expressions are applicable only for NodeSets.");
+				return evaluateSteps(this.path, ((XPathNodeSet) xpo), ev);
+			}
+			
+			return xpo;
+		}
+		
+		private XPathObject execute(TreeNode contextNode, int contextPosition, int contextSize, XPathObject[] args) throws XPathException {
+			if (this.function != null) try {
+				return this.function.execute(contextNode, contextPosition, contextSize, args);
+			} catch (Exception e) {}
+			if (this.coreFunction != -1)
+				return XPathEngine.executeCoreFunction(this.coreFunction, contextNode, contextPosition, contextSize, args);
+			if (this.defaultFunction != null) try {
+				return this.defaultFunction.execute(contextNode, contextPosition, contextSize, args);
+			} catch (Exception e) {}
+			throw new UndefinedFunctionException("The function '" + this.name + "' is not defined.");
+		}
+		
+		boolean usesContextPosition() {
+			if ((this.function != null) || (this.defaultFunction != null))
+				return true;
+			if ((this.coreFunction == XPathEngine.POSITION_FUNCTION) || (this.coreFunction == XPathEngine.LAST_FUNCTION))
+				return true;
+			for (int a = 0; a < this.args.length; a++) {
+				if (this.args[a].usesContextPosition())
+					return true;
+			}
+			return false;
+		}
+		
+		boolean mayBeNumber() {
+			if ((this.function != null) || (this.defaultFunction != null))
+				return true;
+			switch (this.coreFunction) {
+				case XPathEngine.BOOLEAN_FUNCTION:
+				case XPathEngine.CONTAINS_FUNCTION:
+				case XPathEngine.FALSE_FUNCTION:
+				case XPathEngine.LANG_FUNCTION:
+				case XPathEngine.NOT_FUNCTION:
+				case XPathEngine.STARTS_WITH_FUNCTION:
+				case XPathEngine.TRUE_FUNCTION:
+				case XPathEngine.ID_FUNCTION:
+				case XPathEngine.CONCAT_FUNCTION:
+				case XPathEngine.LOCAL_NAME_FUNCTION:
+				case XPathEngine.NAME_FUNCTION:
+				case XPathEngine.NAMESPACE_URI_FUNCTION:
+				case XPathEngine.NORMALIZE_SPACE_FUNCTION:
+				case XPathEngine.STRING_FUNCTION:
+				case XPathEngine.SUBSTRING_FUNCTION:
+				case XPathEngine.SUBSTRING_AFTER_FUNCTION:
+				case XPathEngine.SUBSTRING_BEFORE_FUNCTION:
+				case XPathEngine.TRANSLATE_FUNCTION:
+					return false;
+				default:
+					return true;
+			}
+		}
+	}
+	
+	private static class Path extends Expression {
+		final Step[] steps;
+		Path(Step[] steps) {
+			this.steps = steps;
+		}
+		XPathObject evaluate(Evaluation ev, TreeNode contextNode, int contextPosition, int contextSize) throws XPathException {
+			if (contextNode.getDocumentOrderPosition() == -1)
+				contextNode.computeDocumentOrderPosition(0);
+			XPathNodeSet startNodes = new XPathNodeSet();
+			startNodes.add(contextNode);
+			return evaluateSteps(this.steps, startNodes, ev);
+		}
+		boolean usesContextPosition() {
+			return false;
+		}
+		boolean mayBeNumber() {
+			return false;
+		}
+	}
+	
+	private static class Union extends Expression {
+		final Expression[] parts;
+		Union(Expression[] parts) {
+			this.parts = parts;
+		}
+		XPathObject evaluate(Evaluation ev, TreeNode contextNode, int contextPosition, int contextSize) throws XPathException {
+			XPathNodeSet result = new XPathNodeSet();
+			for (int p = 0; p < this.parts.length; p++) {
+				XPathObject xpo = this.parts[p].evaluate(ev, contextNode, contextPosition, contextSize);
+				if (!(xpo instanceof XPathNodeSet))
+					throw new InvalidArgumentsException("Union expressions are applicable only for NodeSets.");
+				result.addAll((XPathNodeSet) xpo);
+			}
+			return result;
+		}
+		boolean usesContextPosition() {
+			for (int p = 0; p < this.parts.length; p++) {
+				if (this.parts[p].usesContextPosition())
+					return true;
+			}
+			return false;
+		}
+		boolean mayBeNumber() {
+			return false;
+		}
+	}
+	
+	private static class Binary extends Expression {
+		final String operator;
+		final Expression left;
+		final Expression right;
+		Binary(String operator, Expression left, Expression right) {
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+		XPathObject evaluate(Evaluation ev, TreeNode contextNode, int contextPosition, int contextSize) throws XPathException {
+			XPathObject left = this.left.evaluate(ev, contextNode, contextPosition, contextSize);
+			
+			//	evaluate OR and AND operator
+			if ("or".equals(this.operator)) {
+				if (left.asBoolean().value)
+					return new XPathBoolean(true);
+				return new XPathBoolean(this.right.evaluate(ev, contextNode, contextPosition, contextSize).asBoolean().value);
+			}
+			else if ("and".equals(this.operator)) {
+				if (!left.asBoolean().value)
+					return new XPathBoolean(false);
+				return new XPathBoolean(this.right.evaluate(ev, contextNode, contextPosition, contextSize).asBoolean().value);
+			}
+			
+			//	evaluate other operators
+			XPathObject right = this.right.evaluate(ev, contextNode, contextPosition, contextSize);
+			return XPathEngine.applyOperator(this.operator, left, right);
+		}
+		boolean usesContextPosition() {
+			return (this.left.usesContextPosition() || this.right.usesContextPosition());
+		}
+		boolean mayBeNumber() {
+			return !("or".equals(this.operator) || "and".equals(this.operator) || "=".equals(this.operator) || "!=".equals(this.operator) || "<".equals(this.operator) || "<=".equals(this.operator) || ">=".equals(this.operator) || ">".equals(this.operator));
+		}
+	}
+	
+	/**	comparison of an attribute to a string literal, equivalent to comparing the attribute node, which has the empty string as its value if the attribute is not set
+	 */
+	private static class AttributeEquals extends Expression {
+		final String attribute;
+		final String value;
+		AttributeEquals(String attribute, String value) {
+			this.attribute = attribute;
+			this.value = value;
+		}
+		XPathObject evaluate(Evaluation ev, TreeNode contextNode, int contextPosition, int contextSize) throws XPathException {
+			String value = contextNode.getAttribute(this.attribute);
+			return new XPathBoolean(this.value.equals((value == null) ? "" : value));
+		}
+		boolean usesContextPosition() {
+			return false;
+		}
+		boolean mayBeNumber() {
+			return false;
+		}
+	}
+}
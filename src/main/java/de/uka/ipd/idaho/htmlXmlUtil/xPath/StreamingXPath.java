@@ -0,0 +1,511 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitt Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITT KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.htmlXmlUtil.xPath;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import de.uka.ipd.idaho.htmlXmlUtil.Parser;
+import de.uka.ipd.idaho.htmlXmlUtil.TokenReceiver;
+import de.uka.ipd.idaho.htmlXmlUtil.TreeNode;
+import de.uka.ipd.idaho.htmlXmlUtil.TreeNodeAttributeSet;
+import de.uka.ipd.idaho.htmlXmlUtil.grammars.Grammar;
+
+/**
+ * Evaluator for a forward-only subset of XPath that works on the token stream
+ * a Parser sends out in streaming mode, so it can extract elements from large
+ * documents without the whole document ever being held in memory. Hand an
+ * instance to one of the stream() methods of a Parser using the same Grammar,
+ * and call close() after the parser is done. Supported are paths consisting of
+ * child ('/') and descendant ('//') steps with element name tests, '*',
+ * 'node()', 'text()', or 'comment()', with attribute predicates ('[@attr]',
+ * '[@attr='value']', '[@attr!='value']') and position predicates ('[2]').
+ * The latter cannot follow an explicit 'descendant::' axis, as the context
+ * position would depend on nodes not seen yet. A path is evaluated on the
+ * (virtual) root node of the document, and selects the same nodes the
+ * XPathEngine does on the root node of the parsed tree, in document order.<br>
+ * By default, each matching node is built as a TreeNode with its subtree,
+ * and handed to the matchFound() method, which collects the matches for the
+ * getMatches() method; sub classes can overwrite matchFound() to process the
+ * matches as they come in. If a TokenReceiver is specified for output
+ * instead, the tokens of the matching subtrees are forwarded to the latter,
+ * and no TreeNodes are built at all. In both cases, the memory required by the
+ * evaluation depends on the size of the matching subtrees and the depth of
+ * the document, but not on its overall size.
+ * 
+ * @author sautter
+ */
+public class StreamingXPath extends TokenReceiver {
+	
+	private static final int POSITION = 0;
+	private static final int ATTRIBUTE_TEST = 1;
+	private static final int ATTRIBUTE_EQUALS = 2;
+	private static final int ATTRIBUTE_NOT_EQUALS = 3;
+	
+	private final XPath path;
+	private final Grammar grammar;
+	private final TokenReceiver output;
+	
+	private final String[] stepTypes;
+	private final boolean[] stepIsDescendant;
+	private final StreamPredicate[][] stepPredicates;
+	private final int[] stepCounterOffsets;
+	private final int counterCount;
+	
+	private Frame[] frames = new Frame[16];
+	private int depth = 0;
+	private int matchDepth = -1;
+	private ArrayList pendingMatches = new ArrayList();
+	
+	private ArrayList matches = new ArrayList();
+	private int matchCount = 0;
+	
+	/**	Constructor
+	 * @param	path		the XPath expression to evaluate
+	 * @param	grammar		the Grammar of the Parser providing the tokens
+	 * @throws IllegalArgumentException if the XPath expression is not in the subset supported for streaming
+	 */
+	public StreamingXPath(String path, Grammar grammar) throws IOException {
+		this(XPath.getXPath(path), grammar, null);
+	}
+	
+	/**	Constructor
+	 * @param	path		the XPath expression to evaluate
+	 * @param	grammar		the Grammar of the Parser providing the tokens
+	 * @throws IllegalArgumentException if the XPath expression is not in the subset supported for streaming
+	 */
+	public StreamingXPath(XPath path, Grammar grammar) throws IOException {
+		this(path, grammar, null);
+	}
+	
+	/**	Constructor
+	 * @param	path		the XPath expression to evaluate
+	 * @param	grammar		the Grammar of the Parser providing the tokens
+	 * @param	output		the TokenReceiver to forward the tokens of the matching subtrees to (null builds TreeNodes)
+	 * @throws IllegalArgumentException if the XPath expression is not in the subset supported for streaming
+	 */
+	public StreamingXPath(XPath path, Grammar grammar, TokenReceiver output) throws IOException {
+		this.path = path;
+		this.grammar = grammar;
+		this.output = output;
+		
+		ArrayList steps = new ArrayList();
+		String error = compileSteps(path, steps);
+		if (error != null)
+			throw new IllegalArgumentException("Cannot stream XPath '" + path.toString() + "': " + error);
+		
+		this.stepTypes = new String[steps.size()];
+		this.stepIsDescendant = new boolean[steps.size()];
+		this.stepPredicates = new StreamPredicate[steps.size()][];
+		this.stepCounterOffsets = new int[steps.size()];
+		int counterCount = 0;
+		for (int s = 0; s < steps.size(); s++) {
+			StreamStep step = ((StreamStep) steps.get(s));
+			this.stepTypes[s] = step.type;
+			this.stepIsDescendant[s] = step.isDescendant;
+			this.stepPredicates[s] = step.predicates;
+			this.stepCounterOffsets[s] = counterCount;
+			counterCount += step.predicates.length;
+		}
+		this.counterCount = counterCount;
+		
+		//	the virtual root node is the context of the first step
+		Frame root = this.getFrame(0);
+		root.matched[0] = true;
+		root.context[0] = true;
+	}
+	
+	/**
+	 * Check if an XPath expression can be evaluated by a StreamingXPath.
+	 * @param path the XPath expression to check
+	 * @return true if the expression is in the subset supported for streaming
+	 */
+	public static boolean isStreamable(XPath path) {
+		return (compileSteps(path, new ArrayList()) == null);
+	}
+	
+	//	translate the steps of an XPath into streaming steps, returning an error message if the path is not streamable
+	private static String compileSteps(XPath path, ArrayList streamSteps) {
+		if ((path.steps == null) || (path.steps.length == 0))
+			return "empty path";
+		boolean descendant = false;
+		for (int s = 0; s < path.steps.length; s++) {
+			XPathStep step = path.steps[s];
+			String axis = ((step.axis == null) ? "child" : step.axis);
+			int predicateCount = ((step.predicates == null) ? 0 : step.predicates.length);
+			
+			//	'//', or '.'
+			if ("node()".equals(step.nodeTest) && (predicateCount == 0) && ("descendant-or-self".equals(axis) || "self".equals(axis))) {
+				descendant = (descendant || "descendant-or-self".equals(axis));
+				continue;
+			}
+			
+			if (!"child".equals(axis) && !"descendant".equals(axis))
+				return ("unsupported axis '" + axis + "'");
+			String type;
+			if ("node()".equals(step.nodeTest) || "*".equals(step.nodeTest))
+				type = null;
+			else if ("comment()".equals(step.nodeTest))
+				type = TreeNode.COMMENT_NODE_TYPE;
+			else if ("text()".equals(step.nodeTest))
+				type = TreeNode.DATA_NODE_TYPE;
+			else if ((step.nodeTest == null) || (step.nodeTest.indexOf('(') != -1))
+				return ("unsupported node test '" + step.nodeTest + "'");
+			else type = step.nodeTest;
+			
+			StreamPredicate[] predicates = new StreamPredicate[predicateCount];
+			for (int p = 0; p < predicateCount; p++) {
+				predicates[p] = compilePredicate(step.predicates[p].expression);
+				if (predicates[p] == null)
+					return ("unsupported predicate '" + step.predicates[p].toString() + "'");
+				
+				//	context position on descendant axis counts across all descendants of the context node, which a forward-only evaluation cannot do
+				if ((predicates[p].kind == POSITION) && "descendant".equals(axis))
+					return "position predicate on descendant axis";
+			}
+			
+			streamSteps.add(new StreamStep(type, (descendant || "descendant".equals(axis)), predicates));
+			descendant = false;
+		}
+		if (descendant)
+			return "path ends with '//'";
+		return null;
+	}
+	
+	private static StreamPredicate compilePredicate(XPathExpression expression) {
+		if (expression instanceof XPathBinaryExpression) {
+			XPathBinaryExpression binary = ((XPathBinaryExpression) expression);
+			if (binary.leftExpression == null)
+				return null;
+			if (binary.rightExpression == null)
+				return compilePredicate(binary.leftExpression);
+			int kind;
+			if ("=".equals(binary.operator))
+				kind = ATTRIBUTE_EQUALS;
+			else if ("!=".equals(binary.operator))
+				kind = ATTRIBUTE_NOT_EQUALS;
+			else return null;
+			String attribute = getAttributeName(binary.leftExpression);
+			String value = getLiteral(binary.rightExpression);
+			if ((attribute == null) || (value == null)) {
+				attribute = getAttributeName(binary.rightExpression);
+				value = getLiteral(binary.leftExpression);
+			}
+			return (((attribute == null) || (value == null)) ? null : new StreamPredicate(kind, attribute, value, 0));
+		}
+		else if (expression instanceof XPathUnaryExpression) {
+			XPathUnaryExpression unary = ((XPathUnaryExpression) expression);
+			if (unary.number != null)
+				return new StreamPredicate(POSITION, null, null, (unary.isNegative ? -unary.number.value : unary.number.value));
+			String attribute = getAttributeName(unary);
+			return ((attribute == null) ? null : new StreamPredicate(ATTRIBUTE_TEST, attribute, null, 0));
+		}
+		else return null;
+	}
+	
+	//	get the attribute name from a path expression consisting of a single attribute step, null for other expressions
+	private static String getAttributeName(XPathExpression expression) {
+		if (!(expression instanceof XPathUnaryExpression))
+			return null;
+		XPathUnaryExpression unary = ((XPathUnaryExpression) expression);
+		if ((unary.functionName != null) || (unary.predicates != null) || (unary.pathExpression == null))
+			return null;
+		XPathStep[] steps = unary.pathExpression.steps;
+		if ((steps == null) || (steps.length != 1) || !"attribute".equals(steps[0].axis) || "*".equals(steps[0].nodeTest) || ((steps[0].predicates != null) && (steps[0].predicates.length != 0)))
+			return null;
+		return steps[0].nodeTest;
+	}
+	
+	private static String getLiteral(XPathExpression expression) {
+		if (!(expression instanceof XPathUnaryExpression))
+			return null;
+		XPathUnaryExpression unary = ((XPathUnaryExpression) expression);
+		return ((unary.literal == null) ? null : unary.literal.value);
+	}
+	
+	/**	@return	the XPath expression evaluated by this StreamingXPath
+	 */
+	public XPath getXPath() {
+		return this.path;
+	}
+	
+	/**	@return	the number of matching nodes found so far
+	 */
+	public int getMatchCount() {
+		return this.matchCount;
+	}
+	
+	/**
+	 * Retrieve the matching nodes collected by the default implementation
+	 * of the matchFound() method. If a TokenReceiver was specified for output,
+	 * or if a sub class overwrites matchFound(), this method returns an empty
+	 * array.
+	 * @return an array holding the matching nodes, in document order
+	 */
+	public TreeNode[] getMatches() {
+		return ((TreeNode[]) this.matches.toArray(new TreeNode[this.matches.size()]));
+	}
+	
+	/**
+	 * Receive a matching node, together with its subtree. This method is
+	 * invoked after the end tag of the outermost enclosing match has been
+	 * received, so nested matches arrive in document order, and belong to the
+	 * same tree; the outermost match has no parent node. This default
+	 * implementation collects the matches for the getMatches() method, sub
+	 * classes can overwrite it to process matches as they come in. This method
+	 * is not used if a TokenReceiver was specified for output.
+	 * @param match the matching node
+	 * @throws IOException
+	 */
+	protected void matchFound(TreeNode match) throws IOException {
+		this.matches.add(match);
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.htmlXmlUtil.TokenReceiver#storeToken(java.lang.String, int)
+	 */
+	public void storeToken(String token, int treeDepth) throws IOException {
+		if (token == null)
+			return;
+		
+		//	handle tag
+		if (this.grammar.isTag(token)) {
+			if (this.grammar.isEndTag(token)) {
+				if (this.depth == 0)
+					return;
+				if ((this.output != null) && (this.matchDepth != -1))
+					this.output.storeToken(token, treeDepth);
+				this.endNode();
+			}
+			else {
+				this.startNode(token, this.grammar.getType(token), "", true);
+				if ((this.output != null) && (this.matchDepth != -1))
+					this.output.storeToken(token, treeDepth);
+				if (this.grammar.isSingularTag(token))
+					this.endNode();
+			}
+		}
+		
+		//	handle other tokens as leaf nodes, as the XPathEngine matches them with '*' as well
+		else {
+			if (this.grammar.isComment(token))
+				this.startNode(token, TreeNode.COMMENT_NODE_TYPE, token, false);
+			else if (this.grammar.isDTD(token))
+				this.startNode(token, TreeNode.DTD_NODE_TYPE, token, false);
+			else if (this.grammar.isProcessingInstruction(token))
+				this.startNode(token, TreeNode.PROCESSING_INSTRUCTION_NODE_TYPE, token, false);
+			else this.startNode(token, TreeNode.DATA_NODE_TYPE, this.grammar.unescape(token), false);
+			if ((this.output != null) && (this.matchDepth != -1))
+				this.output.storeToken(token, treeDepth);
+			this.endNode();
+		}
+	}
+	
+	private void startNode(String token, String type, String value, boolean isElement) {
+		Frame parent = this.frames[this.depth];
+		Frame frame = this.getFrame(this.depth + 1);
+		TreeNodeAttributeSet attributes = null;
+		
+		//	test node against steps, counting positions in parent
+		int steps = this.stepTypes.length;
+		frame.matched[0] = false;
+		frame.context[0] = parent.context[0];
+		boolean anyContext = frame.context[0];
+		for (int s = 0; s < steps; s++) {
+			boolean matched = (this.stepIsDescendant[s] ? parent.context[s] : parent.matched[s]);
+			if (matched && (this.stepTypes[s] != null) && !this.stepTypes[s].equals(type))
+				matched = false;
+			for (int p = 0; matched && (p < this.stepPredicates[s].length); p++) {
+				StreamPredicate predicate = this.stepPredicates[s][p];
+				if (predicate.kind == POSITION)
+					matched = (++parent.counters[this.stepCounterOffsets[s] + p] == predicate.position);
+				else {
+					if (attributes == null)
+						attributes = (isElement ? TreeNodeAttributeSet.getTagAttributes(token, this.grammar) : TreeNodeAttributeSet.getTagAttributes(null, null));
+					matched = predicate.matches(attributes);
+				}
+			}
+			frame.matched[s + 1] = matched;
+			frame.context[s + 1] = (parent.context[s + 1] || matched);
+			anyContext = (anyContext || frame.context[s + 1]);
+		}
+		
+		//	no need for counting in subtree if it cannot contain matches
+		if ((this.counterCount != 0) && anyContext && isElement)
+			Arrays.fill(frame.counters, 0);
+		
+		boolean isMatch = frame.matched[steps];
+		if (isMatch) {
+			this.matchCount++;
+			if (this.matchDepth == -1)
+				this.matchDepth = (this.depth + 1);
+		}
+		
+		//	build node if inside matching subtree
+		if ((this.matchDepth != -1) && (this.output == null)) {
+			TreeNode parentNode = ((this.matchDepth == (this.depth + 1)) ? null : parent.node);
+			if (isElement)
+				frame.node = new TreeNode(parentNode, type, "", ((attributes == null) ? TreeNodeAttributeSet.getTagAttributes(token, this.grammar) : attributes));
+			else frame.node = new TreeNode(parentNode, type, value);
+			if (parentNode != null)
+				parentNode.addChildNode(frame.node);
+			if (isMatch)
+				this.pendingMatches.add(frame.node);
+		}
+		else frame.node = null;
+		
+		this.depth++;
+	}
+	
+	private void endNode() throws IOException {
+		Frame frame = this.frames[this.depth];
+		this.depth--;
+		
+		//	end of outermost matching subtree, hand out matches
+		if (this.matchDepth == (this.depth + 1)) {
+			this.matchDepth = -1;
+			if (this.output == null) {
+				TreeNode[] matches = ((TreeNode[]) this.pendingMatches.toArray(new TreeNode[this.pendingMatches.size()]));
+				this.pendingMatches.clear();
+				for (int m = 0; m < matches.length; m++)
+					this.matchFound(matches[m]);
+			}
+		}
+		frame.node = null;
+	}
+	
+	/* (non-Javadoc)
+	 * @see de.uka.ipd.idaho.htmlXmlUtil.TokenReceiver#close()
+	 */
+	public void close() throws IOException {
+		
+		//	end elements left open at end of input
+		while (this.depth > 0)
+			this.endNode();
+		
+		if (this.output != null)
+			this.output.close();
+	}
+	
+	private Frame getFrame(int depth) {
+		if (depth == this.frames.length) {
+			Frame[] frames = new Frame[this.frames.length * 2];
+			System.arraycopy(this.frames, 0, frames, 0, this.frames.length);
+			this.frames = frames;
+		}
+		if (this.frames[depth] == null)
+			this.frames[depth] = new Frame(this.stepTypes.length, this.counterCount);
+		return this.frames[depth];
+	}
+	
+	/**
+	 * Evaluate an XPath expression on the data provided by an InputStream in
+	 * streaming mode.
+	 * @param path the XPath expression to evaluate
+	 * @param parser the Parser to use
+	 * @param input the InputStream providing the data to evaluate the expression on
+	 * @return an array holding the matching nodes, in document order
+	 * @throws IllegalArgumentException if the XPath expression is not in the subset supported for streaming
+	 */
+	public static TreeNode[] evaluate(String path, Parser parser, InputStream input) throws IOException {
+		StreamingXPath sxp = new StreamingXPath(path, parser.getGrammar());
+		parser.stream(input, sxp);
+		sxp.close();
+		return sxp.getMatches();
+	}
+	
+	/**
+	 * Evaluate an XPath expression on the data provided by a Reader in
+	 * streaming mode.
+	 * @param path the XPath expression to evaluate
+	 * @param parser the Parser to use
+	 * @param input the Reader providing the data to evaluate the expression on
+	 * @return an array holding the matching nodes, in document order
+	 * @throws IllegalArgumentException if the XPath expression is not in the subset supported for streaming
+	 */
+	public static TreeNode[] evaluate(String path, Parser parser, Reader input) throws IOException {
+		StreamingXPath sxp = new StreamingXPath(path, parser.getGrammar());
+		parser.stream(input, sxp);
+		sxp.close();
+		return sxp.getMatches();
+	}
+	
+	/**	the evaluation state of an open node
+	 */
+	private static class Frame {
+		final boolean[] matched;	//	node matches step s-1, i.e., its children are candidates for child step s
+		final boolean[] context;	//	node or one of its ancestors matches step s-1, i.e., its children are candidates for descendant step s
+		final int[] counters;	//	positions of children for position predicates
+		TreeNode node = null;
+		Frame(int steps, int counters) {
+			this.matched = new boolean[steps + 1];
+			this.context = new boolean[steps + 1];
+			this.counters = new int[counters];
+		}
+	}
+	
+	private static class StreamStep {
+		final String type;
+		final boolean isDescendant;
+		final StreamPredicate[] predicates;
+		StreamStep(String type, boolean isDescendant, StreamPredicate[] predicates) {
+			this.type = type;
+			this.isDescendant = isDescendant;
+			this.predicates = predicates;
+		}
+	}
+	
+	private static class StreamPredicate {
+		final int kind;
+		final String attribute;
+		final String value;
+		final double position;
+		StreamPredicate(int kind, String attribute, String value, double position) {
+			this.kind = kind;
+			this.attribute = attribute;
+			this.value = value;
+			this.position = position;
+		}
+		boolean matches(TreeNodeAttributeSet attributes) {
+			
+			//	like in the XPathEngine, which yields an attribute node for absent attributes as well, an attribute test holds for any node
+			if (this.kind == ATTRIBUTE_TEST)
+				return true;
+			
+			//	absent attributes compare like empty ones, as in the XPathEngine
+			String value = attributes.getAttribute(this.attribute);
+			if (value == null)
+				value = "";
+			return ((this.kind == ATTRIBUTE_EQUALS) == this.value.equals(value));
+		}
+	}
+}
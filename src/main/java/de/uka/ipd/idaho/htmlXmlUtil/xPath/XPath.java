@@ -40,13 +40,21 @@ import de.uka.ipd.idaho.htmlXmlUtil.xPath.types.XPathString;
  * An XPath expression, as defined in the XPath specification. The static
  * execute() methods use an internal default instance of XPathEngine. Adding a
  * function via the addFunction() method will result in this function being
- * available in all XPathEngines throughout the JVM.
+ * available in all XPathEngines throughout the JVM.<br>
+ * An XPath cannot be modified once parsed, so a single instance can be shared
+ * and evaluated by many threads at the same time. The static getXPath() method
+ * hands out such shared instances from a cache. Note that the static
+ * evaluatePath() methods without an index argument (re)compute the document
+ * order positions of the tree below the start node on every call; for
+ * concurrent evaluation against the same tree, use an XPathIndex of the tree,
+ * which computes these positions once.
  * 
  * @author sautter
  */
 public class XPath {
 	
 	XPathStep[] steps = new XPathStep[0];
+	private volatile CompiledXPath compiled = null;
 	
 	/**	Constructor
 	 */
@@ -71,6 +79,17 @@ public class XPath {
 		return evaluatePath(this, startNode, variableBindings);
 	}
 	
+	/**	evaluate the XPath query, using an index of the tree the start node belongs to
+	 * @param	startNode			the TreeNode to start at
+	 * @param	variableBindings	the variable bindings which are currently valid
+	 * @param	index				the index of the tree to use (may be null)
+	 * @return the NodeSet resulting form the evaluation
+	 * @throws XPathException
+	 */
+	public XPathNodeSet evaluate(TreeNode startNode, Properties variableBindings, XPathIndex index) throws XPathException {
+		return evaluatePath(this, startNode, variableBindings, index);
+	}
+	
 	/**	evaluate the XPath query
 	 * @param	startNodes			the NodeSet with the TreeNodes to start at
 	 * @param	variableBindings	the variable bindings which are currently valid
@@ -81,6 +100,19 @@ public class XPath {
 		return evaluatePath(this, startNodes, variableBindings);
 	}
 	
+	/**	get the compiled form of the XPath for use with a given XPathEngine, compiling it if necessary
+	 * @param	engine	the XPathEngine to use the compiled XPath with
+	 * @return the compiled XPath
+	 */
+	CompiledXPath getCompiled(XPathEngine engine) {
+		CompiledXPath compiled = this.compiled;
+		if ((compiled == null) || !compiled.isValidFor(engine)) {
+			compiled = CompiledXPath.compile(this, engine);
+			this.compiled = compiled;
+		}
+		return compiled;
+	}
+	
 	/**	@see java.lang.Object#toString()
 	 */
 	public String toString() {
@@ -96,6 +128,17 @@ public class XPath {
 	
 	public static final XPathEngine DEFAULT_ENGINE = new XPathEngine(true);
 	
+	/** the cache backing the static getXPath() method */
+	public static final XPathCache DEFAULT_CACHE = new XPathCache();
+	
+	/**	retrieve the parsed form of an XPath expression from the default cache, parsing it only on the first request
+	 * @param	path	the string representation of the XPath expression
+	 * @return the parsed XPath expression, shared with all other callers requesting the same expression
+	 */
+	public static XPath getXPath(String path) {
+		return DEFAULT_CACHE.getXPath(path);
+	}
+	
 	/**	add a custom function to the default function library (will overwrite the original function if it has the same name)
 	 * @param	functionName	the name the function will be invokable with in XPath queries
 	 * @param	function		the XPathFunction to be added
@@ -153,6 +196,20 @@ public class XPath {
 		return DEFAULT_ENGINE.evaluatePath(path, startNode, variableBindings);
 	}
 
+	/**	evaluate an XPath query, using an index of the tree the start node belongs to
+	 * @param	path				the XPath to evaluate
+	 * @param	startNode			the TreeNode to start at
+	 * @param	variableBindings	the variable bindings which are currently valid
+	 * @param	index				the index of the tree to use (may be null)
+	 * @return the NodeSet resulting form the evaluation
+	 * @throws XPathException
+	 */
+	public static XPathNodeSet evaluatePath(XPath path, TreeNode startNode, Properties variableBindings, XPathIndex index) throws XPathException {
+		if (index == null)
+			startNode.computeDocumentOrderPosition(0);
+		return DEFAULT_ENGINE.evaluatePath(path, startNode, variableBindings, index);
+	}
+	
 	/**	evaluate an XPath query
 	 * @param	path				the XPath to evaluate
 	 * @param	startNodes			the NodeSet with the TreeNodes to start at
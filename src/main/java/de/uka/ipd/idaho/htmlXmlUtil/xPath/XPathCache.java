@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitt Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITT KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.htmlXmlUtil.xPath;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.uka.ipd.idaho.htmlXmlUtil.xPath.exceptions.XPathSyntaxException;
+
+/**
+ * Bounded cache of parsed XPath expressions, keyed by their string
+ * representation. Since XPath objects are immutable once parsed, the cached
+ * instances can be evaluated by many threads at the same time. Lookups do not
+ * lock; if the cache exceeds its maximum size, the least recently used quarter
+ * of its entries are evicted. Expressions with syntax errors are not cached.
+ * The cache keeps statistics on hits, misses, evictions, and on the time spent
+ * parsing, which client code can use to tune the maximum size.
+ * 
+ * @author sautter
+ */
+public class XPathCache {
+	
+	/** the maximum size of a cache created with the default constructor, 1024 */
+	public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+	
+	private final int maximumSize;
+	private final ConcurrentHashMap paths = new ConcurrentHashMap();
+	private final AtomicLong accessClock = new AtomicLong();
+	private final Object evictionLock = new Object();
+	
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong parseNanos = new AtomicLong();
+	
+	/** Constructor creating a cache with the default maximum size
+	 */
+	public XPathCache() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+	
+	/** Constructor
+	 * @param maximumSize the maximum number of XPath expressions to cache
+	 */
+	public XPathCache(int maximumSize) {
+		if (maximumSize < 1)
+			throw new IllegalArgumentException("Invalid maximum size " + maximumSize);
+		this.maximumSize = maximumSize;
+	}
+	
+	/**
+	 * Retrieve the parsed form of an XPath expression, parsing it on a cache
+	 * miss.
+	 * @param path the string representation of the XPath expression
+	 * @return the parsed XPath expression
+	 * @throws XPathSyntaxException if the argument is not a valid XPath expression
+	 */
+	public XPath getXPath(String path) throws XPathSyntaxException {
+		if (path == null)
+			return new XPath(path);
+		CacheEntry entry = ((CacheEntry) this.paths.get(path));
+		if (entry != null) {
+			entry.lastAccess = this.accessClock.incrementAndGet();
+			this.hits.incrementAndGet();
+			return entry.path;
+		}
+		
+		this.misses.incrementAndGet();
+		long start = System.nanoTime();
+		XPath xPath = new XPath(path);
+		this.parseNanos.addAndGet(System.nanoTime() - start);
+		
+		//	another thread might have parsed the same path in the meantime, use first one to keep compiled form shared
+		entry = new CacheEntry(xPath, this.accessClock.incrementAndGet());
+		CacheEntry existing = ((CacheEntry) this.paths.putIfAbsent(path, entry));
+		if (existing != null)
+			return existing.path;
+		
+		if (this.paths.size() > this.maximumSize)
+			this.evict();
+		return xPath;
+	}
+	
+	private void evict() {
+		synchronized (this.evictionLock) {
+			if (this.paths.size() <= this.maximumSize)
+				return;
+			
+			//	sort entries by last access
+			ArrayList entries = new ArrayList(this.paths.entrySet());
+			final long[] lastAccess = new long[entries.size()];
+			Integer[] order = new Integer[entries.size()];
+			for (int e = 0; e < entries.size(); e++) {
+				lastAccess[e] = ((CacheEntry) ((Map.Entry) entries.get(e)).getValue()).lastAccess;
+				order[e] = new Integer(e);
+			}
+			Arrays.sort(order, new Comparator() {
+				public int compare(Object o1, Object o2) {
+					long la1 = lastAccess[((Integer) o1).intValue()];
+					long la2 = lastAccess[((Integer) o2).intValue()];
+					return ((la1 < la2) ? -1 : ((la1 == la2) ? 0 : 1));
+				}
+			});
+			
+			//	remove least recently used quarter (at least down to maximum size)
+			int evict = Math.max((entries.size() - this.maximumSize), (this.maximumSize / 4));
+			for (int e = 0; e < Math.min(evict, order.length); e++) {
+				Map.Entry entry = ((Map.Entry) entries.get(order[e].intValue()));
+				if (this.paths.remove(entry.getKey(), entry.getValue()))
+					this.evictions.incrementAndGet();
+			}
+		}
+	}
+	
+	/**
+	 * Check if the cache contains the parsed form of an XPath expression. This
+	 * method does not affect the statistics or the eviction order.
+	 * @param path the string representation of the XPath expression
+	 * @return true if the expression is in the cache
+	 */
+	public boolean contains(String path) {
+		return this.paths.containsKey(path);
+	}
+	
+	/**
+	 * Remove all XPath expressions from the cache. This method does not reset
+	 * the statistics.
+	 */
+	public void clear() {
+		this.paths.clear();
+	}
+	
+	/**
+	 * @return the number of XPath expressions currently in the cache
+	 */
+	public int size() {
+		return this.paths.size();
+	}
+	
+	/**
+	 * @return the maximum number of XPath expressions in the cache
+	 */
+	public int getMaximumSize() {
+		return this.maximumSize;
+	}
+	
+	/**
+	 * @return the number of lookups answered from the cache
+	 */
+	public long getHitCount() {
+		return this.hits.get();
+	}
+	
+	/**
+	 * @return the number of lookups that required parsing
+	 */
+	public long getMissCount() {
+		return this.misses.get();
+	}
+	
+	/**
+	 * @return the fraction of lookups answered from the cache, 0 if there were no lookups so far
+	 */
+	public double getHitRate() {
+		long hits = this.hits.get();
+		long lookups = (hits + this.misses.get());
+		return ((lookups == 0) ? 0 : (((double) hits) / lookups));
+	}
+	
+	/**
+	 * @return the number of XPath expressions evicted from the cache due to its size limit
+	 */
+	public long getEvictionCount() {
+		return this.evictions.get();
+	}
+	
+	/**
+	 * @return the total time spent parsing XPath expressions on cache misses, in nanoseconds
+	 */
+	public long getParseTime() {
+		return this.parseNanos.get();
+	}
+	
+	/**
+	 * Reset the statistics of the cache to zero.
+	 */
+	public void resetStatistics() {
+		this.hits.set(0);
+		this.misses.set(0);
+		this.evictions.set(0);
+		this.parseNanos.set(0);
+	}
+	
+	/**	@see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return ("XPathCache[size=" + this.size() + "/" + this.maximumSize + ", hits=" + this.getHitCount() + ", misses=" + this.getMissCount() + ", evictions=" + this.getEvictionCount() + "]");
+	}
+	
+	private static class CacheEntry {
+		final XPath path;
+		volatile long lastAccess;
+		CacheEntry(XPath path, long lastAccess) {
+			this.path = path;
+			this.lastAccess = lastAccess;
+		}
+	}
+}
@@ -80,13 +80,27 @@ public class XPathEngine {
 	 * @throws XPathException
 	 */
 	public XPathNodeSet evaluatePath(XPath path, TreeNode startNode, Properties variableBindings) throws XPathException {
-		if (variableBindings == null)
-			variableBindings = dummyVariableBindings;
+		return this.evaluatePath(path, startNode, variableBindings, null);
+	}
+	
+	/**
+	 * evaluate an XPath query, using an index of the tree the start node
+	 * belongs to. The index has to be built for the current state of the tree,
+	 * i.e., after any modifications. Start nodes not covered by the index are
+	 * handled without it.
+	 * @param path the XPath to evaluate
+	 * @param startNode the TreeNode to start at
+	 * @param variableBindings the variable bindings which are currently valid
+	 * @param index the index of the tree to use (may be null)
+	 * @return the NodeSet resulting form the evaluation
+	 * @throws XPathException
+	 */
+	public XPathNodeSet evaluatePath(XPath path, TreeNode startNode, Properties variableBindings, XPathIndex index) throws XPathException {
 		if (startNode.getDocumentOrderPosition() == -1)
 			startNode.computeDocumentOrderPosition(0);
 		XPathNodeSet result = new XPathNodeSet();
 		result.add(startNode);
-		return this.evaluatePath(path, result, variableBindings);
+		return this.evaluatePath(path, result, variableBindings, index);
 	}
 	
 	/**
@@ -98,108 +112,96 @@ public class XPathEngine {
 	 * @throws XPathException
 	 */
 	public XPathNodeSet evaluatePath(XPath path, XPathNodeSet startNodes, Properties variableBindings) throws XPathException {
-		if (variableBindings == null)
-			variableBindings = dummyVariableBindings;
-		XPathNodeSet result = startNodes;
-		for (int s = 0; s < path.steps.length; s++)
-			result = this.evaluateStep(path.steps[s], result, variableBindings);
-		return result;
+		return this.evaluatePath(path, startNodes, variableBindings, null);
 	}
 	
 	/**
-	 * evaluate an XPathStep
-	 * @param
+	 * evaluate an XPath query, using an index of the tree the start nodes
+	 * belong to. The index has to be built for the current state of the tree,
+	 * i.e., after any modifications. Start nodes not covered by the index are
+	 * handled without it.
+	 * @param path the XPath to evaluate
 	 * @param startNodes the NodeSet with the TreeNodes to start at
 	 * @param variableBindings the variable bindings which are currently valid
+	 * @param index the index of the tree to use (may be null)
 	 * @return the NodeSet resulting form the evaluation
 	 * @throws XPathException
 	 */
-	private XPathNodeSet evaluateStep(XPathStep step, XPathNodeSet startNodes, Properties variableBindings) throws XPathException {
-		if (step.axis == null) step.axis = "child";
-		XPathNodeSet result = new XPathNodeSet(step.axis.startsWith("preceding") || step.axis.startsWith("ancestor"));
-		String filterType;
-		if ("node()".equals(step.nodeTest) || "*".equals(step.nodeTest))
-			filterType = null;
-		else if ("comment()".equals(step.nodeTest))
-			filterType = TreeNode.COMMENT_NODE_TYPE;
-		else if ("text()".equals(step.nodeTest))
-			filterType = TreeNode.DATA_NODE_TYPE;
-		else filterType = step.nodeTest;
+	public XPathNodeSet evaluatePath(XPath path, XPathNodeSet startNodes, Properties variableBindings, XPathIndex index) throws XPathException {
+		if (variableBindings == null)
+			variableBindings = dummyVariableBindings;
+		return path.getCompiled(this).evaluate(startNodes, variableBindings, index);
+	}
+	
+	/**
+	 * evaluate an axis and node test for a single node
+	 * @param axis the name of the axis
+	 * @param node the TreeNode to evaluate the axis for
+	 * @param filterType the node type to filter by (null for all nodes)
+	 * @param reverse order the result in reverse document order?
+	 * @return the NodeSet resulting form the evaluation
+	 */
+	static XPathNodeSet evaluateAxis(String axis, TreeNode node, String filterType, boolean reverse) {
+		XPathNodeSet nodeResult = new XPathNodeSet(reverse);
 		
-		for (int n = 0; n < startNodes.size(); n++) {
-			XPathNodeSet nodeResult = new XPathNodeSet(result.isReverseDocOrder);
-			TreeNode node = startNodes.get(n);
-			
-			//	evaluate axis and node test
-			if (step.axis.startsWith("ancestor"))
-				nodeResult = getAncestor(node, filterType);
-				
-			else if (step.axis.startsWith("descendant"))
-				nodeResult = getDescendant(node, filterType);
-				
-			else if (step.axis.startsWith("preceding")) {
-				nodeResult = getPreceedingSibling(node, (step.axis.endsWith("sibling") ? filterType : null));
-				if (!step.axis.endsWith("sibling")) {
-					XPathNodeSet temp = getAncestor(node, null);
-					for (int a = 0; a < temp.size(); a++)
-						nodeResult.addAll(getPreceedingSibling(temp.get(a), null));
-					temp = new XPathNodeSet(nodeResult.isReverseDocOrder);
-					for (int p = 0; p < nodeResult.size(); p++)
-						temp.addAll(getDescendant(nodeResult.get(p), filterType));
-					nodeResult.addAll(temp);
-					nodeResult = nodeResult.filterByType(filterType);
-				}
-			}
-			else if (step.axis.startsWith("following")) {
-				nodeResult = getFollowingSibling(node, (step.axis.endsWith("sibling") ? filterType : null));
-				if (!step.axis.endsWith("sibling")) {
-					XPathNodeSet temp = getAncestor(node, null);
-					for (int a = 0; a < temp.size(); a++)
-						nodeResult.addAll(getPreceedingSibling(temp.get(a), null));
-					temp = new XPathNodeSet(nodeResult.isReverseDocOrder);
-					for (int f = 0; f < nodeResult.size(); f++)
-						temp.addAll(getDescendant(nodeResult.get(f), filterType));
-					nodeResult.addAll(temp);
-					nodeResult = nodeResult.filterByType(filterType);
-				}
-			}
-			else if ("parent".equals(step.axis)) {
-				TreeNode parent = node.getParent();
-				if ((parent != null) && ((filterType == null) || filterType.equals(parent.getNodeType()))) 
-					nodeResult.add(parent);
-			}
-			else if ("child".equals(step.axis)) {
-				for (int c = 0; c < node.getChildNodeCount(); c++) {
-					TreeNode child = node.getChildNode(c);
-					if ((filterType == null) || filterType.equals(child.getNodeType()))
-						nodeResult.add(child);
-				}
-			}
-			else if ("attribute".equals(step.axis)) {
-				if (filterType == null) {
-					String[] attributeNames = node.getAttributeNames();
-					for (int a = 0; a < attributeNames.length; a++)
-						nodeResult.add(node.getAttributeNode(attributeNames[a]));
-				}
-				else nodeResult.add(node.getAttributeNode(filterType));
-			}
+		//	evaluate axis and node test
+		if (axis.startsWith("ancestor"))
+			nodeResult = getAncestor(node, filterType);
 			
-			if (step.axis.endsWith("self"))
-				nodeResult.add(node);
+		else if (axis.startsWith("descendant"))
+			nodeResult = getDescendant(node, filterType);
 			
-			nodeResult = nodeResult.filterByType(filterType);
-			
-			//	apply predicates
-			if (step.predicates != null) {
-				for (int p = 0; p < step.predicates.length; p++)
-					nodeResult = this.applyPredicate(step.predicates[p], nodeResult, variableBindings);
-			}
-			
-			//	copy nodes to result
-			result.addAll(nodeResult);
+		else if (axis.startsWith("preceding")) {
+			nodeResult = getPreceedingSibling(node, (axis.endsWith("sibling") ? filterType : null));
+			if (!axis.endsWith("sibling")) {
+				XPathNodeSet temp = getAncestor(node, null);
+				for (int a = 0; a < temp.size(); a++)
+					nodeResult.addAll(getPreceedingSibling(temp.get(a), null));
+				temp = new XPathNodeSet(nodeResult.isReverseDocOrder);
+				for (int p = 0; p < nodeResult.size(); p++)
+					temp.addAll(getDescendant(nodeResult.get(p), filterType));
+				nodeResult.addAll(temp);
+				nodeResult = nodeResult.filterByType(filterType);
+			}
+		}
+		else if (axis.startsWith("following")) {
+			nodeResult = getFollowingSibling(node, (axis.endsWith("sibling") ? filterType : null));
+			if (!axis.endsWith("sibling")) {
+				XPathNodeSet temp = getAncestor(node, null);
+				for (int a = 0; a < temp.size(); a++)
+					nodeResult.addAll(getPreceedingSibling(temp.get(a), null));
+				temp = new XPathNodeSet(nodeResult.isReverseDocOrder);
+				for (int f = 0; f < nodeResult.size(); f++)
+					temp.addAll(getDescendant(nodeResult.get(f), filterType));
+				nodeResult.addAll(temp);
+				nodeResult = nodeResult.filterByType(filterType);
+			}
+		}
+		else if ("parent".equals(axis)) {
+			TreeNode parent = node.getParent();
+			if ((parent != null) && ((filterType == null) || filterType.equals(parent.getNodeType()))) 
+				nodeResult.add(parent);
+		}
+		else if ("child".equals(axis)) {
+			for (int c = 0; c < node.getChildNodeCount(); c++) {
+				TreeNode child = node.getChildNode(c);
+				if ((filterType == null) || filterType.equals(child.getNodeType()))
+					nodeResult.add(child);
+			}
+		}
+		else if ("attribute".equals(axis)) {
+			if (filterType == null) {
+				String[] attributeNames = node.getAttributeNames();
+				for (int a = 0; a < attributeNames.length; a++)
+					nodeResult.add(node.getAttributeNode(attributeNames[a]));
+			}
+			else nodeResult.add(node.getAttributeNode(filterType));
 		}
 		
-		return result;
+		if (axis.endsWith("self"))
+			nodeResult.add(node);
+		
+		return nodeResult.filterByType(filterType);
 	}
 	
 	/**	compute the ancestor axis of a given TreeNode
@@ -297,136 +299,21 @@ public class XPathEngine {
 		}
 	}
 	
-	/**	filter a NodeSet according to a predicate expression
-	 * @param	nodeSet				the XPathNodeSet to be filtered
-	 * @param	axisName			the name of the axis
-	 * @param	variableBindings	the current variable bindings
-	 * @return
-	 */
-	private XPathNodeSet applyPredicate(XPathPredicate predicate, XPathNodeSet nodeSet, Properties variableBindings) throws XPathException {
-		if (predicate.expression == null)
-			return nodeSet;
-		XPathNodeSet resultNodeSet = new XPathNodeSet(nodeSet.isReverseDocOrder);
-		int size = nodeSet.size();
-		for (int n = 0; n < size; n++) {
-			TreeNode node = nodeSet.get(n);
-			XPathObject xpo = this.evaluateExpression(predicate.expression, node, (n + 1), size, variableBindings);
-			if (xpo instanceof XPathNumber) {
-				if (xpo.asNumber().value == (n + 1))
-					resultNodeSet.add(node);
-			}
-			else if (xpo.asBoolean().value)
-				resultNodeSet.add(node);
-		}
-		return resultNodeSet;
-	}
-	
-	/**	evaluate an XPath expression
-	 * @param	expression			the XPath expression to evaluate
-	 * @param	contextNode			the context node
-	 * @param	contextPosition		the context position
-	 * @param	contextSize			the context size
-	 * @param	variableBindings	the variable bindings
-	 * @return the resulting XPathObject
+	/**	apply a binary operator other than 'and' and 'or' to its already evaluated operands
+	 * @param	operator	the operator to apply
+	 * @param	left		the value of the left operand
+	 * @param	right		the value of the right operand
+	 * @return the result of the operation
+	 * @throws XPathException
 	 */
-	private XPathObject evaluateExpression(XPathExpression expression, TreeNode contextNode, int contextPosition, int contextSize, Properties variableBindings) throws XPathException {
-		if (expression instanceof XPathUnaryExpression)
-			return this.evaluateUnaryExpression(((XPathUnaryExpression) expression), contextNode, contextPosition, contextSize, variableBindings);
-		else if (expression instanceof XPathBinaryExpression)
-			return this.evaluateBinaryExpression(((XPathBinaryExpression) expression), contextNode, contextPosition, contextSize, variableBindings);
-		else return new XPathBoolean(false);
-	}
-	
-	private XPathObject evaluateUnaryExpression(XPathUnaryExpression expression, TreeNode contextNode, int contextPosition, int contextSize, Properties variableBindings) throws XPathException {
-		if (expression.literal != null)
-			return expression.literal;
-		if (expression.number != null)
-			return (expression.isNegative ? new XPathNumber(-expression.number.value) : expression.number);
-		if (expression.variableName != null)
-			return new XPathString(variableBindings.getProperty(expression.variableName));
-		if (expression.enclosedExpression != null) {
-			XPathObject result = this.evaluateExpression(expression.enclosedExpression, contextNode, contextPosition, contextSize, variableBindings);
-			if (result instanceof XPathNumber)
-				return (expression.isNegative ? new XPathNumber(-result.asNumber().value) : result);
-			return this.evaluateExpression(expression.enclosedExpression, contextNode, contextPosition, contextSize, variableBindings);
-		}
-		if (expression.functionName != null) {
-			
-			XPathObject[] args = new XPathObject[expression.functionArgs.length];
-			for (int a = 0; a < args.length; a++)
-				args[a] = this.evaluateExpression(expression.functionArgs[a], contextNode, contextPosition, contextSize, variableBindings);
-			XPathObject xpo = this.executeFunction(expression.functionName, contextNode, contextPosition, contextSize, args);
-			
-			if (xpo instanceof XPathNumber)
-				return (expression.isNegative ? new XPathNumber(-xpo.asNumber().value) : xpo);
-			
-			if ((expression.predicates != null) && (expression.predicates.length != 0)) {
-				if (!(xpo instanceof XPathNodeSet)) throw new InvalidArgumentsException("Predicates are applicable only for NodeSets.");
-				XPathNodeSet nodeSet = ((XPathNodeSet) xpo);
-				for (int p = 0; p < expression.predicates.length; p++)
-					nodeSet = this.applyPredicate(expression.predicates[p], nodeSet, variableBindings);
-				xpo = nodeSet;
-			}
-			
-			if ((expression.pathExpression != null) && (expression.pathExpression.steps != null) && (expression.pathExpression.steps.length != 0)) {
-				if (!(xpo instanceof XPathNodeSet)) throw new InvalidArgumentsException("Path expressions are applicable only for NodeSets.");
-				XPathNodeSet nodeSet = ((XPathNodeSet) xpo);
-				return this.evaluatePath(expression.pathExpression, nodeSet, variableBindings);
-			}
-			
-			return xpo;
-		}
-		if (expression.pathExpression != null)
-			return this.evaluatePath(expression.pathExpression, contextNode, variableBindings);
-		if ((expression.partExpressions != null) && (expression.partExpressions.length != 0)) {
-			XPathNodeSet result = new XPathNodeSet();
-			for (int p = 1; p < expression.partExpressions.length; p++) {
-				XPathObject xpo = this.evaluateExpression(expression.partExpressions[p], contextNode, contextPosition, contextSize, variableBindings);
-				if (!(xpo instanceof XPathNodeSet))
-					throw new InvalidArgumentsException("Union expressions are applicable only for NodeSets.");
-				XPathNodeSet nodeSet = ((XPathNodeSet) xpo);
-				for (int n = 0; n < expression.predicates.length; n++)
-					result.add(nodeSet.get(n));
-			}
-			return result;
-		}
-		return new XPathBoolean(false);
-	}
-	
-	private XPathObject evaluateBinaryExpression(XPathBinaryExpression expression, TreeNode contextNode, int contextPosition, int contextSize, Properties variableBindings) throws XPathException {
-		if (expression.leftExpression == null)
-			return new XPathBoolean(true);
-		
-		//	get left result
-		XPathObject left = this.evaluateExpression(expression.leftExpression, contextNode, contextPosition, contextSize, variableBindings);
-		if (expression.rightExpression == null)
-			return left;
-		
-		//	evaluate OR and AND operator
-		if ("or".equals(expression.operator)) {
-			boolean res = left.asBoolean().value;
-			if (res)
-				return new XPathBoolean(true);
-			XPathObject right = this.evaluateExpression(expression.rightExpression, contextNode, contextPosition, contextSize, variableBindings);
-			return new XPathBoolean(right.asBoolean().value);
-		}
-		else if ("and".equals(expression.operator)) {
-			boolean res = left.asBoolean().value;
-			if (!res)
-				return new XPathBoolean(false);
-			XPathObject right = this.evaluateExpression(expression.rightExpression, contextNode, contextPosition, contextSize, variableBindings);
-			return new XPathBoolean(right.asBoolean().value);
-		}
-		
-		//	get right result
-		XPathObject right = this.evaluateExpression(expression.rightExpression, contextNode, contextPosition, contextSize, variableBindings);
+	static XPathObject applyOperator(String operator, XPathObject left, XPathObject right) throws XPathException {
 		
 		//	check if NodeSets involved
 		boolean leftIsSet = (left instanceof XPathNodeSet);
 		boolean rightIsSet = (right instanceof XPathNodeSet);
 		
 		//	evaluate = and != operators
-		if ("!=".equals(expression.operator)) {
+		if ("!=".equals(operator)) {
 			if (leftIsSet && rightIsSet) {
 				XPathString[] leftStrings = XPath.stringValues((XPathNodeSet) left);
 				XPathString[] rightStrings = XPath.stringValues((XPathNodeSet) right);
@@ -476,7 +363,7 @@ public class XPathEngine {
 				else return new XPathBoolean(!left.asString().value.equals(right.asString().value));
 			}
 		}
-		else if ("=".equals(expression.operator)) {
+		else if ("=".equals(operator)) {
 			if (leftIsSet && rightIsSet) {
 				XPathString[] leftStrings = XPath.stringValues((XPathNodeSet) left);
 				XPathString[] rightStrings = XPath.stringValues((XPathNodeSet) right);
@@ -528,7 +415,7 @@ public class XPathEngine {
 		}
 		
 		//	evaluate <, <=, >= and > operators
-		if ("<".equals(expression.operator)) {
+		if ("<".equals(operator)) {
 			if (leftIsSet && rightIsSet) {
 				XPathString[] leftStrings = XPath.stringValues((XPathNodeSet) left);
 				XPathString[] rightStrings = XPath.stringValues((XPathNodeSet) right);
@@ -554,7 +441,7 @@ public class XPathEngine {
 			}
 			else return new XPathBoolean(left.asNumber().value < right.asNumber().value);
 		}
-		else if ("<=".equals(expression.operator)) {
+		else if ("<=".equals(operator)) {
 			if (leftIsSet && rightIsSet) {
 				XPathString[] leftStrings = XPath.stringValues((XPathNodeSet) left);
 				XPathString[] rightStrings = XPath.stringValues((XPathNodeSet) right);
@@ -580,7 +467,7 @@ public class XPathEngine {
 			}
 			else return new XPathBoolean(left.asNumber().value <= right.asNumber().value);
 		}
-		else if (">=".equals(expression.operator)) {
+		else if (">=".equals(operator)) {
 			if (leftIsSet && rightIsSet) {
 				XPathString[] leftStrings = XPath.stringValues((XPathNodeSet) left);
 				XPathString[] rightStrings = XPath.stringValues((XPathNodeSet) right);
@@ -606,7 +493,7 @@ public class XPathEngine {
 			}
 			else return new XPathBoolean(left.asNumber().value >= right.asNumber().value);
 		}
-		else if (">".equals(expression.operator)) {
+		else if (">".equals(operator)) {
 			if (leftIsSet && rightIsSet) {
 				XPathString[] leftStrings = XPath.stringValues((XPathNodeSet) left);
 				XPathString[] rightStrings = XPath.stringValues((XPathNodeSet) right);
@@ -634,27 +521,100 @@ public class XPathEngine {
 		}
 		
 		//	evaluate + and - operators
-		if ("+".equals(expression.operator))
+		if ("+".equals(operator))
 			return new XPathNumber(left.asNumber().value + right.asNumber().value);
 			
-		else if ("-".equals(expression.operator))
+		else if ("-".equals(operator))
 			return new XPathNumber(left.asNumber().value - right.asNumber().value);
 		
 		//	evaluate *, MOD and DIV operators
-		if ("*".equals(expression.operator))
+		if ("*".equals(operator))
 			return new XPathNumber(left.asNumber().value * right.asNumber().value);
 			
-		else if ("mod".equals(expression.operator))
+		else if ("mod".equals(operator))
 			return new XPathNumber(left.asNumber().value % right.asNumber().value);
 			
-		else if ("div".equals(expression.operator))
+		else if ("div".equals(operator))
 			return new XPathNumber(left.asNumber().value / right.asNumber().value);
 		
-		throw new UndefinedOperatorException("The operator '" + expression.operator + "' is not defined.");
+		throw new UndefinedOperatorException("The operator '" + operator + "' is not defined.");
+	}
+	
+	//	identifiers of the core functions, resolved from function names by getCoreFunction()
+	static final int BOOLEAN_FUNCTION = 0;
+	static final int CONTAINS_FUNCTION = 1;
+	static final int FALSE_FUNCTION = 2;
+	static final int LANG_FUNCTION = 3;
+	static final int NOT_FUNCTION = 4;
+	static final int STARTS_WITH_FUNCTION = 5;
+	static final int TRUE_FUNCTION = 6;
+	static final int ID_FUNCTION = 7;
+	static final int CEILING_FUNCTION = 8;
+	static final int COUNT_FUNCTION = 9;
+	static final int FLOOR_FUNCTION = 10;
+	static final int LAST_FUNCTION = 11;
+	static final int NUMBER_FUNCTION = 12;
+	static final int POSITION_FUNCTION = 13;
+	static final int ROUND_FUNCTION = 14;
+	static final int STRING_LENGTH_FUNCTION = 15;
+	static final int SUM_FUNCTION = 16;
+	static final int CONCAT_FUNCTION = 17;
+	static final int LOCAL_NAME_FUNCTION = 18;
+	static final int NAME_FUNCTION = 19;
+	static final int NAMESPACE_URI_FUNCTION = 20;
+	static final int NORMALIZE_SPACE_FUNCTION = 21;
+	static final int STRING_FUNCTION = 22;
+	static final int SUBSTRING_FUNCTION = 23;
+	static final int SUBSTRING_AFTER_FUNCTION = 24;
+	static final int SUBSTRING_BEFORE_FUNCTION = 25;
+	static final int TRANSLATE_FUNCTION = 26;
+	
+	private static final HashMap coreFunctions = new HashMap();
+	static {
+		String[] coreFunctionNames = {
+			"boolean",
+			"contains",
+			"false",
+			"lang",
+			"not",
+			"starts-with",
+			"true",
+			"id",
+			"ceiling",
+			"count",
+			"floor",
+			"last",
+			"number",
+			"position",
+			"round",
+			"string-length",
+			"sum",
+			"concat",
+			"local-name",
+			"name",
+			"namespace-uri",
+			"normalize-space",
+			"string",
+			"substring",
+			"substring-after",
+			"substring-before",
+			"translate"
+		};
+		for (int f = 0; f < coreFunctionNames.length; f++)
+			coreFunctions.put(coreFunctionNames[f], new Integer(f));
+	}
+	
+	/**	resolve the name of an XPath core function
+	 * @param	functionName	the name of the function
+	 * @return the identifier of the core function with the specified name, or -1 if there is no such function
+	 */
+	static int getCoreFunction(String functionName) {
+		Integer function = ((Integer) coreFunctions.get(functionName.toLowerCase()));
+		return ((function == null) ? -1 : function.intValue());
 	}
 	
 	/**	execute an XPath core function
-	 * @param	functionName		the name of the function to be executed
+	 * @param	function			the identifier of the function to be executed, as returned by getCoreFunction()
 	 * @param	contextNode			the context node
 	 * @param	contextPosition		the context position
 	 * @param	contextSize			the context size
@@ -662,42 +622,35 @@ public class XPathEngine {
 	 * @return the result of the function execution
 	 * @throws XPathException
 	 */
-	private XPathObject executeFunction(String functionName, TreeNode contextNode, int contextPosition, int contextSize, XPathObject[] args) throws XPathException {
-		
-		//	execute custom function if there is one for the specified name
-		if (customFunctions.containsKey(functionName)) try {
-			XPathFunction function = ((XPathFunction) customFunctions.get(functionName));
-			return function.execute(contextNode, contextPosition, contextSize, args);
-		} catch (Exception e) {}
-		
-		if ("boolean".equalsIgnoreCase(functionName)) {
+	static XPathObject executeCoreFunction(int function, TreeNode contextNode, int contextPosition, int contextSize, XPathObject[] args) throws XPathException {
+		if (function == BOOLEAN_FUNCTION) {
 			if (args.length != 1) throw new InvalidArgumentsException("The function 'boolean' requires 1 argument(s) of type(s) XPathObject.");
 			return args[0].asBoolean();
 		}
-		else if ("contains".equalsIgnoreCase(functionName)) {
+		else if (function == CONTAINS_FUNCTION) {
 			if (args.length != 2) throw new InvalidArgumentsException("The function 'contains' requires 2 argument(s) of type(s) XPathString.");
 			return new XPathBoolean(args[0].asString().value.indexOf(args[1].asString().value) != -1);
 		}
-		else if ("false".equalsIgnoreCase(functionName)) {
+		else if (function == FALSE_FUNCTION) {
 			if (args.length != 0) throw new InvalidArgumentsException("The function 'false' requires 0 argument(s).");
 			return new XPathBoolean(false);
 		}
-		else if ("lang".equalsIgnoreCase(functionName)) {
+		else if (function == LANG_FUNCTION) {
 			if ((args.length != 1) || !(args[0] instanceof XPathString)) throw new InvalidArgumentsException("The function 'boolean' requires 1 argument(s) of type(s) XPathString.");
 			return new XPathBoolean(true);
 		}
-		else if ("not".equalsIgnoreCase(functionName))
+		else if (function == NOT_FUNCTION)
 			return new XPathBoolean(!args[0].asBoolean().value);
 			
-		else if ("starts-with".equalsIgnoreCase(functionName)) {
+		else if (function == STARTS_WITH_FUNCTION) {
 			if (args.length != 2) throw new InvalidArgumentsException("The function 'starts-with' requires 2 argument(s) of type(s) XPathString.");
 			return new XPathBoolean(args[0].asString().value.startsWith(args[1].asString().value));
 		}
-		else if ("true".equalsIgnoreCase(functionName)) {
+		else if (function == TRUE_FUNCTION) {
 			if (args.length != 0) throw new InvalidArgumentsException("The function 'true' requires 0 argument(s).");
 			return new XPathBoolean(true);
 		}
-		else if ("id".equalsIgnoreCase(functionName)) {
+		else if (function == ID_FUNCTION) {
 			if (args.length != 1) throw new InvalidArgumentsException("The function 'id' requires 1 argument(s) of type(s) XPathObject.");
 			
 			TreeNode root = contextNode;
@@ -724,23 +677,23 @@ public class XPathEngine {
 			
 			return nodeSet;
 		}
-		else if ("ceiling".equalsIgnoreCase(functionName)) {
+		else if (function == CEILING_FUNCTION) {
 			if (args.length != 1) throw new InvalidArgumentsException("The function 'ceiling' requires 1 argument(s) of type(s) XPathNumber.");
 			return new XPathNumber(Math.ceil(args[0].asNumber().value));
 		}
-		else if ("count".equalsIgnoreCase(functionName)) {
+		else if (function == COUNT_FUNCTION) {
 			if ((args.length == 1) && (args[0] instanceof XPathNodeSet)) return new XPathNumber(((XPathNodeSet) args[0]).size());
 			throw new InvalidArgumentsException("The function 'count' requires 1 argument(s) of type(s) XPathNodeSet.");
 		}
-		else if ("floor".equalsIgnoreCase(functionName)) {
+		else if (function == FLOOR_FUNCTION) {
 			if (args.length != 1) throw new InvalidArgumentsException("The function 'floor' requires 1 argument(s) of type(s) XPathNumber.");
 			return new XPathNumber(Math.floor(args[0].asNumber().value));
 		}
-		else if ("last".equalsIgnoreCase(functionName)) {
+		else if (function == LAST_FUNCTION) {
 			if (args.length != 0) throw new InvalidArgumentsException("The function 'last' requires 0 argument(s).");
 			return new XPathNumber(contextSize);
 		}
-		else if ("number".equalsIgnoreCase(functionName)) {
+		else if (function == NUMBER_FUNCTION) {
 			if (args.length == 0) {
 				XPathNodeSet nodeSet = new XPathNodeSet();
 				nodeSet.add(contextNode);
@@ -749,15 +702,15 @@ public class XPathEngine {
 			else if (args.length == 1) return args[0].asNumber();
 			throw new InvalidArgumentsException("The function 'number' requires 0 argument(s) or 1 argument(s) of type(s) XPathObject.");
 		}
-		else if ("position".equalsIgnoreCase(functionName)) {
+		else if (function == POSITION_FUNCTION) {
 			if (args.length != 0) throw new InvalidArgumentsException("The function 'position' requires 0 argument(s).");
 			return new XPathNumber(contextPosition);
 		}
-		else if ("round".equalsIgnoreCase(functionName)) {
+		else if (function == ROUND_FUNCTION) {
 			if (args.length != 1) throw new InvalidArgumentsException("The function 'round' requires 1 argument(s) of type(s) XPathNumber.");
 			return new XPathNumber(Math.round(args[0].asNumber().value));
 		}
-		else if ("string-length".equalsIgnoreCase(functionName)) {
+		else if (function == STRING_LENGTH_FUNCTION) {
 			if (args.length == 0) {
 				XPathNodeSet nodeSet = new XPathNodeSet();
 				nodeSet.add(contextNode);
@@ -766,7 +719,7 @@ public class XPathEngine {
 			else if (args.length == 1) return new XPathNumber(args[0].asString().value.length());
 			throw new InvalidArgumentsException("The function 'string-length' requires 0 argument(s) or 1 argument(s) of type(s) XPathString.");
 		}
-		else if ("sum".equalsIgnoreCase(functionName)) {
+		else if (function == SUM_FUNCTION) {
 			if ((args.length != 1) || !(args[0] instanceof XPathNodeSet)) throw new InvalidArgumentsException("The function 'sum' requires 1 argument(s) of type(s) XPathNodeSet.");
 			
 			XPathNodeSet nodeSet = ((XPathNodeSet) args[0]);
@@ -780,7 +733,7 @@ public class XPathEngine {
 			}
 			return new XPathNumber(sum);
 		}
-		else if ("concat".equalsIgnoreCase(functionName)) {
+		else if (function == CONCAT_FUNCTION) {
 			if (args.length < 2) throw new InvalidArgumentsException("The function 'concat' requires 2 or more argument(s) of type(s) XPathString.");
 			
 			StringBuffer assembler = new StringBuffer("");
@@ -788,7 +741,7 @@ public class XPathEngine {
 				assembler.append(((a == 0) ? "" : " ") + args[a].asString().value);
 			return new XPathString(assembler.toString());
 		}
-		else if ("local-name".equalsIgnoreCase(functionName)) {
+		else if (function == LOCAL_NAME_FUNCTION) {
 			if (args.length == 0) return new XPathString(contextNode.getNodeType());
 			else if ((args.length == 1) && (args[0] instanceof XPathNodeSet)) {
 				XPathNodeSet gpas = ((XPathNodeSet) args[0]);
@@ -796,7 +749,7 @@ public class XPathEngine {
 			}
 			throw new InvalidArgumentsException("The function 'local-name' requires 0 argument(s) or 1 argument(s) of type(s) XPathNodeSet.");
 		}
-		else if ("name".equalsIgnoreCase(functionName)) {
+		else if (function == NAME_FUNCTION) {
 			if (args.length == 0) return new XPathString(contextNode.getNodeType());
 			else if ((args.length == 1) && (args[0] instanceof XPathNodeSet)) {
 				XPathNodeSet gpas = ((XPathNodeSet) args[0]);
@@ -804,12 +757,12 @@ public class XPathEngine {
 			}
 			throw new InvalidArgumentsException("The function 'name' requires 0 argument(s) or 1 argument(s) of type(s) XPathNodeSet.");
 		}
-		else if ("namespace-uri".equalsIgnoreCase(functionName)) {
+		else if (function == NAMESPACE_URI_FUNCTION) {
 			if (args.length == 0) return new XPathString("This implementation uses generic namespaces.");
 			else if (args[0] instanceof XPathNodeSet) return new XPathString("This implementation uses generic namespaces.");
 			throw new InvalidArgumentsException("The function 'namespace-uri' requires 0 argument(s) or 1 argument(s) of type(s) XPathNodeSet.");
 		}
-		else if ("normalize-space".equalsIgnoreCase(functionName)) {
+		else if (function == NORMALIZE_SPACE_FUNCTION) {
 			String toNormalize;
 			if (args.length == 0) {
 				XPathNodeSet nodeSet = new XPathNodeSet();
@@ -836,7 +789,7 @@ public class XPathEngine {
 			
 			return new XPathString(assembler.toString().trim());
 		}
-		else if ("string".equalsIgnoreCase(functionName)) {
+		else if (function == STRING_FUNCTION) {
 			if (args.length == 0) {
 				XPathNodeSet nodeSet = new XPathNodeSet();
 				nodeSet.add(contextNode);
@@ -845,7 +798,7 @@ public class XPathEngine {
 			else if (args.length == 1) return args[0].asString();
 			throw new InvalidArgumentsException("The function 'string' requires 0 argument(s) or 1 argument(s) of type(s) XPathObject.");
 		}
-		else if ("substring".equalsIgnoreCase(functionName)) {
+		else if (function == SUBSTRING_FUNCTION) {
 			if ((args.length != 2) && (args.length != 3)) throw new InvalidArgumentsException("The function 'substring' requires 2 or 3 argument(s) of type(s) XPathString, XPathNumber" + ((args.length > 3) ? ", XPathNumber" : "") + ".");
 			if (!(args[1] instanceof XPathNumber)) throw new InvalidArgumentsException("The function 'substring' requires 2 or 3 argument(s) of type(s) XPathString, XPathNumber" + ((args.length == 3) ? ", XPathNumber" : "") + ".");
 			if ((args.length == 3) && !(args[2] instanceof XPathNumber)) throw new InvalidArgumentsException("The function 'substring' requires 2 or 3 argument(s) of type(s) XPathString, XPathNumber" + ((args.length == 3) ? ", XPathNumber" : "") + ".");
@@ -864,7 +817,7 @@ public class XPathEngine {
 			if ((s + l) > args[0].asString().value.length()) l = args[0].asString().value.length() - s;
 			return new XPathString(args[0].asString().value.substring(s, (s + l)));
 		}
-		else if ("substring-after".equalsIgnoreCase(functionName)) {
+		else if (function == SUBSTRING_AFTER_FUNCTION) {
 			if (args.length != 2) throw new InvalidArgumentsException("The function 'substring-after' requires 2 argument(s) of type(s) XPathString.");
 			
 			int s = args[0].asString().value.indexOf(args[1].asString().value);
@@ -873,14 +826,14 @@ public class XPathEngine {
 			if (s >= args[0].asString().value.length()) return new XPathString("");
 			return new XPathString(args[0].asString().value.substring(s));
 		}
-		else if ("substring-before".equalsIgnoreCase(functionName)) {
+		else if (function == SUBSTRING_BEFORE_FUNCTION) {
 			if (args.length != 2) throw new InvalidArgumentsException("The function 'substring-before' requires 2 argument(s) of type(s) XPathString.");
 			
 			int l = args[0].asString().value.indexOf(args[1].asString().value);
 			if (l == -1) return new XPathString("");
 			return new XPathString(args[0].asString().value.substring(0, l));
 		}
-		else if ("translate".equalsIgnoreCase(functionName)) {
+		else if (function == TRANSLATE_FUNCTION) {
 			if (args.length != 3) throw new InvalidArgumentsException("The function 'translate' requires 3 argument(s) of type(s) XPathString.");
 			
 			String originals = args[1].asString().value;
@@ -902,21 +855,44 @@ public class XPathEngine {
 			return new XPathString(assembler.toString());
 		}
 		
-		if (this.isDefaultEngine) throw new UndefinedFunctionException("The function '" + functionName + "' is not defined.");
-		
-		return XPath.DEFAULT_ENGINE.executeFunction(functionName, contextNode, contextPosition, contextSize, args);
+		throw new UndefinedFunctionException("The function with identifier " + function + " is not defined.");
 	}
 	
 	//	register for custom functions
 	private final HashMap customFunctions = new HashMap();
 	
+	//	modification counter for the custom functions of all engines, invalidating compiled XPaths
+	private static volatile int functionModCount = 0;
+	
+	/**	@return the current modification count of the custom functions of all XPathEngines
+	 */
+	static int getFunctionModCount() {
+		return functionModCount;
+	}
+	
+	/**	retrieve a custom function from the function library of this XPathEngine
+	 * @param	functionName	the name of the function
+	 * @return the function with the specified name, or null if there is no such function
+	 */
+	XPathFunction getFunction(String functionName) {
+		return ((XPathFunction) this.customFunctions.get(functionName));
+	}
+	
+	/**	@return true if this is the default engine, false otherwise
+	 */
+	boolean isDefaultEngine() {
+		return this.isDefaultEngine;
+	}
+	
 	/**	add a custom function to the function library of this XPathEngine (will overwrite the original function if it has the same name, the same is true for equally named custom functions in the default function library)
 	 * @param	functionName	the name the function will be invocable with in XPath queries
 	 * @param	function		the XPathFunction to be added
 	 */
 	public void addFunction(String functionName, XPathFunction function) {
-		if ((functionName != null) && (function != null))
+		if ((functionName != null) && (function != null)) {
 			this.customFunctions.put(functionName, function);
+			functionModCount++;
+		}
 	}
 	
 	/**	remove a custom function from the function library of this XPathEngine
@@ -924,7 +900,10 @@ public class XPathEngine {
 	 * @return the function that was just removed, or null if there was no function with the specified name
 	 */
 	public XPathFunction removeFunction(String functionName) {
-		return ((XPathFunction) this.customFunctions.remove(functionName));
+		XPathFunction function = ((XPathFunction) this.customFunctions.remove(functionName));
+		if (function != null)
+			functionModCount++;
+		return function;
 	}
 	
 	/**	representation of IDref-based node selection
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2006-, IPD Boehm, Universitaet Karlsruhe (TH) / KIT, by Guido Sautter
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Universitt Karlsruhe (TH) nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY UNIVERSITT KARLSRUHE (TH) / KIT AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.uka.ipd.idaho.htmlXmlUtil.xPath;
+
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import de.uka.ipd.idaho.htmlXmlUtil.TreeNode;
+
+/**
+ * Index over a tree of TreeNodes, speeding up the evaluation of XPath
+ * expressions on that tree. The index numbers the nodes in document order and
+ * records for each node the number of the last node in its subtree, so one
+ * node is a descendant of another one if and only if its number lies in the
+ * range spanned by the subtree of the latter. In addition, the index lists the
+ * numbers of the nodes of each type, and, built on first request, the numbers
+ * of the nodes having a specific value in an attribute. An XPathEngine uses
+ * these lists to evaluate steps like '//tag[@attr='value']' on the nodes
+ * concerned only, instead of walking the whole tree.<br>
+ * The index reflects the tree at the time it was created. After any
+ * modification to the tree, a new index has to be created. Creating an index
+ * (re)computes the document order position of all the nodes in the tree.
+ * Once created, an index can be used by many threads at the same time.
+ * 
+ * @author sautter
+ */
+public class XPathIndex {
+	
+	private static final int[] NO_POSITIONS = new int[0];
+	
+	private final TreeNode root;
+	private final TreeNode[] nodes;
+	private final int[] subtreeEnds;
+	
+	private final HashMap typePositions = new HashMap();
+	private volatile HashMap attributeValuePositions = new HashMap();
+	
+	/**	Constructor
+	 * @param	root	the root node of the tree to index
+	 */
+	public XPathIndex(TreeNode root) {
+		this.root = root;
+		int size = (this.root.computeDocumentOrderPosition(0) + 1);
+		this.nodes = new TreeNode[size];
+		this.subtreeEnds = new int[size];
+		HashMap typeLists = new HashMap();
+		this.indexSubtree(this.root, typeLists);
+		for (Iterator tit = typeLists.keySet().iterator(); tit.hasNext();) {
+			String type = ((String) tit.next());
+			this.typePositions.put(type, ((PositionList) typeLists.get(type)).toArray());
+		}
+	}
+	
+	//	index a subtree, returning the position of its last node
+	private int indexSubtree(TreeNode node, HashMap typeLists) {
+		int pos = node.getDocumentOrderPosition();
+		this.nodes[pos] = node;
+		PositionList typeList = ((PositionList) typeLists.get(node.getNodeType()));
+		if (typeList == null) {
+			typeList = new PositionList();
+			typeLists.put(node.getNodeType(), typeList);
+		}
+		typeList.add(pos);
+		int end = pos;
+		for (int c = 0; c < node.getChildNodeCount(); c++)
+			end = this.indexSubtree(node.getChildNode(c), typeLists);
+		this.subtreeEnds[pos] = end;
+		return end;
+	}
+	
+	/**
+	 * @return the root node of the indexed tree
+	 */
+	public TreeNode getRoot() {
+		return this.root;
+	}
+	
+	/**
+	 * @return the number of nodes in the indexed tree
+	 */
+	public int size() {
+		return this.nodes.length;
+	}
+	
+	/**
+	 * Test if a TreeNode is an ancestor of another TreeNode, based on the
+	 * document order numbering of the index rather than on walking up the tree.
+	 * @param ancestor the potential ancestor
+	 * @param descendant the potential descendant
+	 * @return true if the first node is an ancestor of the second one
+	 */
+	public boolean isAncestor(TreeNode ancestor, TreeNode descendant) {
+		int aPos = this.positionOf(ancestor);
+		int dPos = this.positionOf(descendant);
+		if ((aPos == -1) || (dPos == -1))
+			return false;
+		return ((aPos < dPos) && (dPos <= this.subtreeEnds[aPos]));
+	}
+	
+	/**
+	 * Retrieve the nodes of a given type.
+	 * @param type the node type
+	 * @return an array holding the nodes of the specified type, in document order
+	 */
+	public TreeNode[] getNodesOfType(String type) {
+		return this.getNodes(this.getTypePositions(type));
+	}
+	
+	/**
+	 * Retrieve the nodes that have a given value in a given attribute. The
+	 * index for an attribute is built on the first request.
+	 * @param attribute the name of the attribute
+	 * @param value the value of the attribute
+	 * @return an array holding the nodes with the specified attribute value, in document order
+	 */
+	public TreeNode[] getNodesWithAttribute(String attribute, String value) {
+		return this.getNodes(this.getAttributeValuePositions(attribute, value));
+	}
+	
+	private TreeNode[] getNodes(int[] positions) {
+		TreeNode[] nodes = new TreeNode[positions.length];
+		for (int p = 0; p < positions.length; p++)
+			nodes[p] = this.nodes[positions[p]];
+		return nodes;
+	}
+	
+	/**	get the position of a node in the index
+	 * @param	node	the node to find
+	 * @return the position of the node, or -1 if the node is not covered by the index
+	 */
+	int positionOf(TreeNode node) {
+		int pos = node.getDocumentOrderPosition();
+		return (((pos >= 0) && (pos < this.nodes.length) && (this.nodes[pos] == node)) ? pos : -1);
+	}
+	
+	/**	get the node at some position
+	 * @param	pos	the position
+	 * @return the node at the specified position
+	 */
+	TreeNode getNode(int pos) {
+		return this.nodes[pos];
+	}
+	
+	/**	get the position of the last node in the subtree of the node at some position
+	 * @param	pos	the position of the subtree root
+	 * @return the position of the last node in the subtree
+	 */
+	int getSubtreeEnd(int pos) {
+		return this.subtreeEnds[pos];
+	}
+	
+	/**	get the positions of the nodes of some type
+	 * @param	type	the node type
+	 * @return the ascending positions of the nodes of the specified type
+	 */
+	int[] getTypePositions(String type) {
+		int[] positions = ((int[]) this.typePositions.get(type));
+		return ((positions == null) ? NO_POSITIONS : positions);
+	}
+	
+	/**	get the positions of the nodes having some value in an attribute
+	 * @param	attribute	the name of the attribute
+	 * @param	value		the attribute value
+	 * @return the ascending positions of the nodes with the specified attribute value
+	 */
+	int[] getAttributeValuePositions(String attribute, String value) {
+		HashMap valuePositions = ((HashMap) this.attributeValuePositions.get(attribute));
+		if (valuePositions == null)
+			valuePositions = this.indexAttribute(attribute);
+		int[] positions = ((int[]) valuePositions.get(value));
+		return ((positions == null) ? NO_POSITIONS : positions);
+	}
+	
+	//	build the index for an attribute, replacing the map of indexes on completion so readers do not need to lock
+	private synchronized HashMap indexAttribute(String attribute) {
+		HashMap valuePositions = ((HashMap) this.attributeValuePositions.get(attribute));
+		if (valuePositions == null) {
+			HashMap valueLists = new HashMap();
+			for (int n = 0; n < this.nodes.length; n++) {
+				String nodeValue = this.nodes[n].getAttribute(attribute);
+				if (nodeValue == null)
+					continue;
+				PositionList valueList = ((PositionList) valueLists.get(nodeValue));
+				if (valueList == null) {
+					valueList = new PositionList();
+					valueLists.put(nodeValue, valueList);
+				}
+				valueList.add(n);
+			}
+			valuePositions = new HashMap();
+			for (Iterator vit = valueLists.keySet().iterator(); vit.hasNext();) {
+				String nodeValue = ((String) vit.next());
+				valuePositions.put(nodeValue, ((PositionList) valueLists.get(nodeValue)).toArray());
+			}
+			HashMap attributeValuePositions = new HashMap(this.attributeValuePositions);
+			attributeValuePositions.put(attribute, valuePositions);
+			this.attributeValuePositions = attributeValuePositions;
+		}
+		return valuePositions;
+	}
+	
+	/**	find the first of some ascending positions that is greater than or equal to a given position
+	 * @param	positions	the positions to search
+	 * @param	pos			the position to search for
+	 * @return the index of the first position not less than the specified one
+	 */
+	static int indexOf(int[] positions, int pos) {
+		int index = Arrays.binarySearch(positions, pos);
+		return ((index < 0) ? (-index - 1) : index);
+	}
+	
+	private static class PositionList {
+		private int[] positions = new int[4];
+		private int size = 0;
+		void add(int pos) {
+			if (this.size == this.positions.length) {
+				int[] positions = new int[this.positions.length * 2];
+				System.arraycopy(this.positions, 0, positions, 0, this.size);
+				this.positions = positions;
+			}
+			this.positions[this.size++] = pos;
+		}
+		int[] toArray() {
+			int[] positions = new int[this.size];
+			System.arraycopy(this.positions, 0, positions, 0, this.size);
+			return positions;
+		}
+	}
+}